@@ -25,12 +25,15 @@ import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.jsonrpc.ApiException;
 import org.xbmc.kore.jsonrpc.ApiList;
 import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.Addons;
 import org.xbmc.kore.jsonrpc.method.AudioLibrary;
 import org.xbmc.kore.jsonrpc.method.VideoLibrary;
+import org.xbmc.kore.jsonrpc.type.AddonType;
 import org.xbmc.kore.jsonrpc.type.AudioType;
 import org.xbmc.kore.jsonrpc.type.LibraryType;
 import org.xbmc.kore.jsonrpc.type.VideoType;
 import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.service.library.SyncAddons;
 import org.xbmc.kore.service.library.SyncMusic;
 import org.xbmc.kore.service.library.SyncMusicVideos;
 import org.xbmc.kore.service.library.SyncTVShows;
@@ -57,6 +60,9 @@ public class Database {
         SyncMusicVideos syncMusicVideos = new SyncMusicVideos(hostInfo.getId(), null);
         insertMusicVideos(context, contentResolver, syncMusicVideos);
 
+        SyncAddons syncAddons = new SyncAddons(hostInfo.getId(), false, null);
+        insertAddons(context, contentResolver, syncAddons);
+
         return hostInfo;
     }
 
@@ -178,4 +184,13 @@ public class Database {
 
         syncMusicVideos.insertMusicVideos(musicVideoList, contentResolver);
     }
+
+    private static void insertAddons(Context context, ContentResolver contentResolver, SyncAddons syncAddons)
+        throws ApiException, IOException {
+        Addons.GetAddons getAddons = new Addons.GetAddons();
+        String result = FileUtils.readFile(context, "Addons.GetAddons.json");
+        ArrayList<AddonType.Details> addonList = (ArrayList) getAddons.resultFromJson(result);
+
+        syncAddons.insertAddons(addonList, contentResolver);
+    }
 }
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.testutils;
+
+import android.content.Context;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Library of any size, built from the items on the JSON fixtures in the debug assets.
+ * Item i is a copy of fixture item i (modulo the number of fixture items), with new ids and
+ * titles, so that the library looks like a real one to the decoders and the database.
+ * <p>
+ * For a library of size N there are N movies, N songs and about N episodes. The other items
+ * are derived from those: {@link #SONGS_PER_ALBUM} songs per album,
+ * {@link #ALBUMS_PER_ARTIST} albums per artist, and {@link #SEASONS_PER_TVSHOW} seasons of
+ * {@link #EPISODES_PER_SEASON} episodes per TV show.
+ */
+public class SyntheticLibrary {
+    public static final int SONGS_PER_ALBUM = 10;
+    public static final int ALBUMS_PER_ARTIST = 2;
+    public static final int GENRES = 20;
+    public static final int SEASONS_PER_TVSHOW = 5;
+    public static final int EPISODES_PER_SEASON = 20;
+    public static final int EPISODES_PER_TVSHOW = SEASONS_PER_TVSHOW * EPISODES_PER_SEASON;
+
+    private static final String RESULT_NODE = "result";
+    private static final String LIMITS_NODE = "limits";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int size;
+
+    private final List<ObjectNode> movieTemplates, tvShowTemplates, seasonTemplates, episodeTemplates,
+            artistTemplates, albumTemplates, songTemplates, genreTemplates;
+
+    /**
+     * Creates a library
+     * @param context Context used to read the fixtures
+     * @param size Number of movies, songs and (roughly) episodes
+     */
+    public SyntheticLibrary(Context context, int size) throws IOException {
+        this.size = size;
+        movieTemplates = readTemplates(context, "Video.Details.Movie.json", "movies");
+        tvShowTemplates = readTemplates(context, "VideoLibrary.GetTVShows.json", "tvshows");
+        seasonTemplates = readTemplates(context, "VideoLibrary.GetSeasons.json", "seasons");
+        episodeTemplates = readTemplates(context, "VideoLibrary.GetEpisodes.json", "episodes");
+        artistTemplates = readTemplates(context, "AudioLibrary.GetArtists.json", "artists");
+        albumTemplates = readTemplates(context, "AudioLibrary.GetAlbums.json", "albums");
+        songTemplates = readTemplates(context, "AudioLibrary.GetSongs.json", "songs");
+        genreTemplates = readTemplates(context, "AudioLibrary.GetGenres.json", "genres");
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMovieCount() {
+        return size;
+    }
+
+    public int getSongCount() {
+        return size;
+    }
+
+    public int getAlbumCount() {
+        return Math.max(1, (size + SONGS_PER_ALBUM - 1) / SONGS_PER_ALBUM);
+    }
+
+    public int getArtistCount() {
+        return Math.max(1, (getAlbumCount() + ALBUMS_PER_ARTIST - 1) / ALBUMS_PER_ARTIST);
+    }
+
+    public int getTVShowCount() {
+        return Math.max(1, size / EPISODES_PER_TVSHOW);
+    }
+
+    public int getEpisodeCount() {
+        return getTVShowCount() * EPISODES_PER_TVSHOW;
+    }
+
+    /**
+     * Returns the result node that Kodi would send for a library method
+     * @param method Method name
+     * @param params Parameters of the request, can be null
+     * @return Result node, or null if the method isn't supported
+     */
+    public ObjectNode getResult(String method, JsonNode params) {
+        int start = 0, end = Integer.MAX_VALUE;
+        if ((params != null) && params.has(LIMITS_NODE)) {
+            start = params.get(LIMITS_NODE).path("start").asInt(0);
+            end = params.get(LIMITS_NODE).path("end").asInt(Integer.MAX_VALUE);
+        }
+        int tvshowId = (params != null) ? params.path("tvshowid").asInt(-1) : -1;
+
+        switch (method) {
+            case "VideoLibrary.GetMovies":
+                return listResult("movies", start, end, getMovieCount(), new ItemFactory() {
+                    @Override
+                    public ObjectNode create(int i) {
+                        return movie(i);
+                    }
+                });
+            case "VideoLibrary.GetTVShows":
+                return listResult("tvshows", start, end, getTVShowCount(), new ItemFactory() {
+                    @Override
+                    public ObjectNode create(int i) {
+                        return tvShow(i);
+                    }
+                });
+            case "VideoLibrary.GetSeasons": {
+                final int show = Math.max(tvshowId - 1, 0);
+                return listResult("seasons", start, end, SEASONS_PER_TVSHOW, new ItemFactory() {
+                    @Override
+                    public ObjectNode create(int i) {
+                        return season(show, i);
+                    }
+                });
+            }
+            case "VideoLibrary.GetEpisodes": {
+                if (tvshowId == -1) {
+                    return listResult("episodes", start, end, getEpisodeCount(), new ItemFactory() {
+                        @Override
+                        public ObjectNode create(int i) {
+                            return episode(i / EPISODES_PER_TVSHOW, i % EPISODES_PER_TVSHOW);
+                        }
+                    });
+                }
+                final int show = tvshowId - 1;
+                return listResult("episodes", start, end, EPISODES_PER_TVSHOW, new ItemFactory() {
+                    @Override
+                    public ObjectNode create(int i) {
+                        return episode(show, i);
+                    }
+                });
+            }
+            case "AudioLibrary.GetArtists":
+                return listResult("artists", start, end, getArtistCount(), new ItemFactory() {
+                    @Override
+                    public ObjectNode create(int i) {
+                        return artist(i);
+                    }
+                });
+            case "AudioLibrary.GetAlbums":
+                return listResult("albums", start, end, getAlbumCount(), new ItemFactory() {
+                    @Override
+                    public ObjectNode create(int i) {
+                        return album(i);
+                    }
+                });
+            case "AudioLibrary.GetSongs":
+                return listResult("songs", start, end, getSongCount(), new ItemFactory() {
+                    @Override
+                    public ObjectNode create(int i) {
+                        return song(i);
+                    }
+                });
+            case "AudioLibrary.GetGenres":
+                return listResult("genres", start, end, GENRES, new ItemFactory() {
+                    @Override
+                    public ObjectNode create(int i) {
+                        return genre(i);
+                    }
+                });
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the full JSON response that Kodi would send for a library method, as used by
+     * {@link org.xbmc.kore.jsonrpc.ApiMethod#resultFromJson(String)}
+     * @param method Method name
+     * @param params Parameters of the request, can be null
+     */
+    public String getResponse(String method, JsonNode params) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.put("id", 1);
+        response.set(RESULT_NODE, getResult(method, params));
+        return response.toString();
+    }
+
+    private interface ItemFactory {
+        ObjectNode create(int i);
+    }
+
+    private ObjectNode listResult(String listNode, int start, int end, int total, ItemFactory factory) {
+        start = Math.min(Math.max(start, 0), total);
+        end = Math.max(Math.min(end, total), start);
+
+        ArrayNode items = objectMapper.createArrayNode();
+        for (int i = start; i < end; i++) {
+            items.add(factory.create(i));
+        }
+        ObjectNode limits = objectMapper.createObjectNode();
+        limits.put("start", start);
+        limits.put("end", end);
+        limits.put("total", total);
+
+        ObjectNode result = objectMapper.createObjectNode();
+        result.set(listNode, items);
+        result.set(LIMITS_NODE, limits);
+        return result;
+    }
+
+    private ObjectNode movie(int i) {
+        ObjectNode movie = copy(movieTemplates, i);
+        movie.put("movieid", i + 1);
+        movie.put("title", "Movie " + (i + 1));
+        movie.put("label", "Movie " + (i + 1));
+        movie.put("file", "/media/movies/movie" + (i + 1) + ".mkv");
+        return movie;
+    }
+
+    private ObjectNode tvShow(int show) {
+        ObjectNode tvShow = copy(tvShowTemplates, show);
+        tvShow.put("tvshowid", show + 1);
+        tvShow.put("title", "TV show " + (show + 1));
+        tvShow.put("label", "TV show " + (show + 1));
+        tvShow.put("season", SEASONS_PER_TVSHOW);
+        tvShow.put("episode", EPISODES_PER_TVSHOW);
+        return tvShow;
+    }
+
+    private ObjectNode season(int show, int season) {
+        ObjectNode node = copy(seasonTemplates, season);
+        node.put("seasonid", show * SEASONS_PER_TVSHOW + season + 1);
+        node.put("tvshowid", show + 1);
+        node.put("season", season + 1);
+        node.put("label", "Season " + (season + 1));
+        node.put("showtitle", "TV show " + (show + 1));
+        node.put("episode", EPISODES_PER_SEASON);
+        return node;
+    }
+
+    private ObjectNode episode(int show, int episode) {
+        int season = episode / EPISODES_PER_SEASON;
+        ObjectNode node = copy(episodeTemplates, show * EPISODES_PER_TVSHOW + episode);
+        node.put("episodeid", show * EPISODES_PER_TVSHOW + episode + 1);
+        node.put("tvshowid", show + 1);
+        node.put("seasonid", show * SEASONS_PER_TVSHOW + season + 1);
+        node.put("season", season + 1);
+        node.put("episode", episode % EPISODES_PER_SEASON + 1);
+        node.put("title", "Episode " + (episode + 1));
+        node.put("label", "Episode " + (episode + 1));
+        node.put("showtitle", "TV show " + (show + 1));
+        node.put("file", "/media/tvshows/show" + (show + 1) + "/episode" + (episode + 1) + ".mkv");
+        return node;
+    }
+
+    private ObjectNode artist(int i) {
+        ObjectNode artist = copy(artistTemplates, i);
+        artist.put("artistid", i + 1);
+        artist.put("artist", "Artist " + (i + 1));
+        artist.put("label", "Artist " + (i + 1));
+        return artist;
+    }
+
+    private ObjectNode album(int i) {
+        int artist = i / ALBUMS_PER_ARTIST;
+        int genre = i % GENRES;
+        ObjectNode album = copy(albumTemplates, i);
+        album.put("albumid", i + 1);
+        album.put("title", "Album " + (i + 1));
+        album.put("label", "Album " + (i + 1));
+        album.set("artistid", intArray(artist + 1));
+        album.set("artist", stringArray("Artist " + (artist + 1)));
+        album.put("displayartist", "Artist " + (artist + 1));
+        album.set("genreid", intArray(genre + 1));
+        album.set("genre", stringArray("Genre " + (genre + 1)));
+        return album;
+    }
+
+    private ObjectNode song(int i) {
+        int album = i / SONGS_PER_ALBUM;
+        int artist = album / ALBUMS_PER_ARTIST;
+        int genre = album % GENRES;
+        ObjectNode song = copy(songTemplates, i);
+        song.put("songid", i + 1);
+        song.put("title", "Song " + (i + 1));
+        song.put("label", "Song " + (i + 1));
+        song.put("albumid", album + 1);
+        song.put("album", "Album " + (album + 1));
+        song.put("track", i % SONGS_PER_ALBUM + 1);
+        song.set("artistid", intArray(artist + 1));
+        song.set("artist", stringArray("Artist " + (artist + 1)));
+        song.set("albumartistid", intArray(artist + 1));
+        song.set("albumartist", stringArray("Artist " + (artist + 1)));
+        song.put("displayartist", "Artist " + (artist + 1));
+        song.set("genreid", intArray(genre + 1));
+        song.set("genre", stringArray("Genre " + (genre + 1)));
+        song.put("file", "/media/music/album" + (album + 1) + "/song" + (i + 1) + ".mp3");
+        return song;
+    }
+
+    private ObjectNode genre(int i) {
+        ObjectNode genre = copy(genreTemplates, i);
+        genre.put("genreid", i + 1);
+        genre.put("title", "Genre " + (i + 1));
+        genre.put("label", "Genre " + (i + 1));
+        return genre;
+    }
+
+    private ArrayNode intArray(int value) {
+        return objectMapper.createArrayNode().add(value);
+    }
+
+    private ArrayNode stringArray(String value) {
+        return objectMapper.createArrayNode().add(value);
+    }
+
+    private static ObjectNode copy(List<ObjectNode> templates, int i) {
+        return templates.get(i % templates.size()).deepCopy();
+    }
+
+    private List<ObjectNode> readTemplates(Context context, String fixture, String listNode)
+            throws IOException {
+        JsonNode items = objectMapper.readTree(FileUtils.readFile(context, fixture))
+                                     .get(RESULT_NODE).get(listNode);
+        List<ObjectNode> templates = new ArrayList<>(items.size());
+        for (JsonNode item : items) {
+            templates.add((ObjectNode) item);
+        }
+        return templates;
+    }
+}
@@ -46,6 +46,7 @@ public class MockTcpServer {
     private boolean running;
     private ExecutorService executor;
     private int port = -1;
+    private volatile long responseIntervalMillis = 100;
     private InetSocketAddress inetSocketAddress;
 
     private final Set<Socket> openClientSockets =
@@ -77,6 +78,15 @@ public class MockTcpServer {
         connectionHandler = handler;
     }
 
+    /**
+     * Sets how often the handler is checked for responses to send. Defaults to 100 ms, lower it
+     * when measuring latencies
+     * @param millis Interval in ms
+     */
+    public void setResponseInterval(long millis) {
+        responseIntervalMillis = millis;
+    }
+
     /**
      * Starts the server on localhost on a random free port
      * @throws IOException
@@ -201,7 +211,7 @@ public class MockTcpServer {
                 try {
                     while ( ! (serverSocket.isClosed() || socket.isClosed()) ) {
                         sendResponse();
-                        Thread.sleep(100);
+                        Thread.sleep(responseIntervalMillis);
                     }
                 } catch (IOException e) {
                     LogUtils.LOGW(TAG, " sending response from " + socket.getInetAddress() + " failed: " + e);
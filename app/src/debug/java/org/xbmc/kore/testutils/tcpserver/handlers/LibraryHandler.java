@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.testutils.tcpserver.handlers;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.xbmc.kore.testutils.SyntheticLibrary;
+import org.xbmc.kore.testutils.tcpserver.handlers.jsonrpc.JsonResponse;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.ArrayList;
+
+/**
+ * Simulates the VideoLibrary and AudioLibrary JSON-RPC API, serving a {@link SyntheticLibrary}
+ */
+public class LibraryHandler extends ConnectionHandler {
+    private static final String TAG = LogUtils.makeLogTag(LibraryHandler.class);
+
+    private static final String ID_NODE = "id";
+    private static final String PARAMS_NODE = "params";
+
+    private final SyntheticLibrary library;
+
+    public LibraryHandler(SyntheticLibrary library) {
+        this.library = library;
+    }
+
+    @Override
+    public String[] getType() {
+        return new String[]{"VideoLibrary.GetMovies", "VideoLibrary.GetTVShows",
+                            "VideoLibrary.GetSeasons", "VideoLibrary.GetEpisodes",
+                            "AudioLibrary.GetArtists", "AudioLibrary.GetAlbums",
+                            "AudioLibrary.GetSongs", "AudioLibrary.GetGenres"};
+    }
+
+    @Override
+    public ArrayList<JsonResponse> createResponse(String method, ObjectNode jsonRequest) {
+        ArrayList<JsonResponse> jsonResponses = new ArrayList<>();
+
+        int methodId = jsonRequest.get(ID_NODE).asInt(-1);
+        ObjectNode result = library.getResult(method, jsonRequest.get(PARAMS_NODE));
+        if (result != null) {
+            jsonResponses.add(new LibraryResponse(methodId, result));
+        } else {
+            LogUtils.LOGD(TAG, "method: " + method + ", not implemented");
+        }
+        return jsonResponses;
+    }
+
+    private static class LibraryResponse extends JsonResponse {
+        LibraryResponse(int id, ObjectNode result) {
+            super(id);
+            ((ObjectNode) getResultNode(TYPE.OBJECT)).setAll(result);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.NetworkInfo;
+
+/**
+ * Base for request handlers of images on the network, outside of Picasso.
+ * <p>
+ * Picasso only lets its own request handlers be retried, and only they can tell whether a
+ * download came from the disk cache, through package private members. This class is in
+ * Picasso's package to give both to its subclasses, with the same behaviour as Picasso's
+ * network request handler.
+ */
+public abstract class NetworkRetryingRequestHandler extends RequestHandler {
+    private static final int RETRY_COUNT = 2;
+
+    @Override
+    int getRetryCount() {
+        return RETRY_COUNT;
+    }
+
+    @Override
+    boolean shouldRetry(boolean airplaneMode, NetworkInfo info) {
+        return (info == null) || info.isConnected();
+    }
+
+    @Override
+    boolean supportsReplay() {
+        return true;
+    }
+
+    /**
+     * Returns where a downloaded image was loaded from
+     * @param response Response of the downloader
+     */
+    protected static Picasso.LoadedFrom getLoadedFrom(Downloader.Response response) {
+        return response.cached ? Picasso.LoadedFrom.DISK : Picasso.LoadedFrom.NETWORK;
+    }
+}
@@ -90,8 +90,14 @@ public class Settings {
     public static final String KEY_PREF_PAUSE_DURING_CALLS = "pref_pause_during_calls";
     public static final boolean DEFAULT_PREF_PAUSE_DURING_CALLS = false;
 
+    // Sync the library in the background, while charging on an unmetered network
+    public static final String KEY_PREF_BACKGROUND_SYNC = "pref_background_sync";
+    public static final boolean DEFAULT_PREF_BACKGROUND_SYNC = true;
+
     // Other keys used in preferences.xml
     public static final String KEY_PREF_ABOUT = "pref_about";
+    public static final String KEY_PREF_CONNECTION_METRICS = "pref_connection_metrics";
+    public static final String KEY_PREF_SYNC_REPORTS = "pref_sync_reports";
 
     // Filter watched movies on movie list
     public static final String KEY_PREF_MOVIES_FILTER_HIDE_WATCHED = "movies_filter_hide_watched";
@@ -221,4 +227,41 @@ public class Settings {
     }
     public static final String DEFAULT_PREF_NAME_BOOKMARKED_ADDON = "Content";
 
+    /**
+     * Keys for the fingerprint of the library on each host, per sync type, taken on the last sync
+     */
+    private static final String KEY_PREF_LIBRARY_FINGERPRINT = "library_fingerprint_";
+    public static String getLibraryFingerprintPrefKey(int hostId, String syncType) {
+        return Settings.KEY_PREF_LIBRARY_FINGERPRINT + hostId + "_" + syncType;
+    }
+
+    /**
+     * Keys for the time of the last successful sync on each host, per sync type
+     */
+    private static final String KEY_PREF_LAST_LIBRARY_SYNC = "last_library_sync_";
+    public static String getLastLibrarySyncPrefKey(int hostId, String syncType) {
+        return Settings.KEY_PREF_LAST_LIBRARY_SYNC + hostId + "_" + syncType;
+    }
+
+    /**
+     * Keys for the columns and sort orders of the library lists, kept on their snapshots
+     */
+    private static final String KEY_PREF_LIBRARY_SNAPSHOT_PROJECTION = "library_snapshot_projection_";
+    public static String getLibrarySnapshotProjectionPrefKey(String listName) {
+        return Settings.KEY_PREF_LIBRARY_SNAPSHOT_PROJECTION + listName;
+    }
+    private static final String KEY_PREF_LIBRARY_SNAPSHOT_SORT_ORDERS = "library_snapshot_sort_orders_";
+    public static String getLibrarySnapshotSortOrdersPrefKey(String listName) {
+        return Settings.KEY_PREF_LIBRARY_SNAPSHOT_SORT_ORDERS + listName;
+    }
+
+    /**
+     * Key for the device UUID a host publishes on mDNS, used to recognize it when its address
+     * changes
+     */
+    private static final String KEY_PREF_HOST_UUID = "host_uuid_";
+    public static String getHostUuidPrefKey(int hostId) {
+        return Settings.KEY_PREF_HOST_UUID + hostId;
+    }
+
 }
@@ -17,9 +17,11 @@ package org.xbmc.kore.host;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import org.xbmc.kore.host.actions.GetPlaylist;
 import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiException;
 import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.jsonrpc.method.JSONRPC;
 import org.xbmc.kore.jsonrpc.method.Player;
@@ -43,7 +45,8 @@ import java.util.List;
  * Depending on the connection protocol this class registers itself as an observer for
  * {@link HostConnection.PlayerNotificationsObserver} and forwards the notifications it gets,
  * or, if through HTTP, starts a periodic polling of XBMC, and tries to discern when a change in
- * the player has occurred, notifying the listeners
+ * the player has occurred, notifying the listeners. The polling backs off while nothing changes,
+ * as the playback clock keeps the position up to date in between
  *
  * NOTE: An object of this class should always be called from the same thread.
  */
@@ -173,12 +176,32 @@ public class HostConnectionObserver
     // It's checked everytime it reaches 0, being reset afterwards
     private int checkPlaylistFrequencyCounter = 0;
 
+    /**
+     * Client side model of the playback position, kept up to date with the notifications and
+     * results we get from Kodi
+     */
+    private final PlaybackClock playbackClock = new PlaybackClock();
+
+    /**
+     * Minimum interval between corrections of the playback clock drift, in ms
+     */
+    private static final long CLOCK_CORRECTION_INTERVAL = 60000;
+    private long lastClockCorrection = 0;
+    private boolean correctingPlaybackClock = false;
+
+    /**
+     * Bounds of the HTTP polling interval, in ms. The interval doubles after each poll, up to
+     * the maximum, and goes back to the minimum when a change is seen or a refresh is forced
+     */
+    private static final int HTTP_MIN_CHECK_INTERVAL = 2000,
+            HTTP_MAX_CHECK_INTERVAL = 16000;
+    private int httpCheckInterval = HTTP_MIN_CHECK_INTERVAL;
+
     // Associate the Handler with the UI thread
     private Handler checkerHandler = new Handler(Looper.getMainLooper());
     private Runnable httpCheckerRunnable = new Runnable() {
         @Override
         public void run() {
-            final int HTTP_NOTIFICATION_CHECK_INTERVAL = 2000;
             // If no one is listening to this, just exit
             if (playerEventsObservers.isEmpty()
                 && applicationEventsObservers.isEmpty()
@@ -201,7 +224,8 @@ public class HostConnectionObserver
                 }
             }
 
-            checkerHandler.postDelayed(this, HTTP_NOTIFICATION_CHECK_INTERVAL);
+            checkerHandler.postDelayed(this, httpCheckInterval);
+            httpCheckInterval = Math.min(httpCheckInterval * 2, HTTP_MAX_CHECK_INTERVAL);
         }
     };
 
@@ -233,6 +257,10 @@ public class HostConnectionObserver
                         checkPlaylist();
                     }
 
+                    if (SystemClock.elapsedRealtime() - lastClockCorrection > CLOCK_CORRECTION_INTERVAL) {
+                        correctPlaybackClock();
+                    }
+
                     checkerHandler.postDelayed(tcpCheckerRunnable, PING_AFTER_SUCCESS_CHECK_INTERVAL);
                 }
 
@@ -259,11 +287,35 @@ public class HostConnectionObserver
     }
     private HostState hostState;
 
+    /**
+     * Called on the main thread when the connection to the host fails, see
+     * {@link #setConnectionFailedListener(Runnable)}
+     */
+    private Runnable connectionFailedListener;
+
     public HostConnectionObserver(HostConnection connection) {
         this.hostState = new HostState();
         this.connection = connection;
     }
 
+    /**
+     * Sets a listener called when the host can't be reached, once each time the connection
+     * goes from working, or unknown, to failing
+     * @param listener Listener, called on the main thread
+     */
+    public void setConnectionFailedListener(Runnable listener) {
+        this.connectionFailedListener = listener;
+    }
+
+    /**
+     * Returns the playback clock, which extrapolates the playback position on Kodi.
+     * It is only kept up to date while there are player observers registered
+     * @return Playback clock
+     */
+    public PlaybackClock getPlaybackClock() {
+        return playbackClock;
+    }
+
     /**
      * Registers a new observer that will be notified about player events
      * @param observer Observer
@@ -398,8 +450,33 @@ public class HostConnectionObserver
      * Unregisters all observers
      */
     public void stopObserving() {
-        for (final PlayerEventsObserver observer : playerEventsObservers)
-            observer.observerOnStopObserving();
+        stopObserving(true);
+    }
+
+    /**
+     * Moves the registered observers to another connection observer, without them being told,
+     * as when the current host moved to another address. This one stops observing
+     * @param other Observer of the new connection
+     */
+    void transferObservers(HostConnectionObserver other) {
+        List<PlayerEventsObserver> players = new ArrayList<>(playerEventsObservers);
+        List<PlaylistEventsObserver> playlists = new ArrayList<>(playlistEventsObservers);
+        List<ApplicationEventsObserver> applications = new ArrayList<>(applicationEventsObservers);
+        stopObserving(false);
+
+        for (PlayerEventsObserver observer : players)
+            other.registerPlayerObserver(observer);
+        for (PlaylistEventsObserver observer : playlists)
+            other.registerPlaylistObserver(observer);
+        for (ApplicationEventsObserver observer : applications)
+            other.registerApplicationObserver(observer);
+    }
+
+    private void stopObserving(boolean notifyObservers) {
+        if (notifyObservers) {
+            for (final PlayerEventsObserver observer : playerEventsObservers)
+                observer.observerOnStopObserving();
+        }
 
         playerEventsObservers.clear();
         playlistEventsObservers.clear();
@@ -414,6 +491,7 @@ public class HostConnectionObserver
             checkerHandler.removeCallbacks(tcpCheckerRunnable);
         }
         hostState = new HostState();
+        playbackClock.reset();
     }
 
     @Override
@@ -441,18 +519,35 @@ public class HostConnectionObserver
     }
 
     public void onResume(org.xbmc.kore.jsonrpc.notification.Player.OnResume notification) {
+        updatePlaybackClockSpeed(notification.data);
         checkWhatsPlaying();
     }
 
     public void onPause(org.xbmc.kore.jsonrpc.notification.Player.OnPause notification) {
+        updatePlaybackClockSpeed(notification.data);
         checkWhatsPlaying();
     }
 
     public void onSpeedChanged(org.xbmc.kore.jsonrpc.notification.Player.OnSpeedChanged notification) {
+        updatePlaybackClockSpeed(notification.data);
         checkWhatsPlaying();
     }
 
+    private void updatePlaybackClockSpeed(NotificationsData data) {
+        if ((data != null) && (data.player != null) &&
+            (data.player.playerId == playbackClock.getPlayerId())) {
+            playbackClock.setSpeed(data.player.speed);
+        }
+    }
+
     public void onSeek(org.xbmc.kore.jsonrpc.notification.Player.OnSeek notification) {
+        // Move the clock right away, so that the views that follow it jump to the new position.
+        // The observers that show the reported position, like a paused now playing screen or the
+        // notification, still need a refresh with it
+        if (playbackClock.isActive()) {
+            playbackClock.seek(notification.time);
+        }
+        forceReply = true;
         checkWhatsPlaying();
     }
 
@@ -468,8 +563,11 @@ public class HostConnectionObserver
     }
 
     public void onAVChange(org.xbmc.kore.jsonrpc.notification.Player.OnAVChange notification) {
-        // Just ignore this, as it is fired by Kodi very often, and we're only
-        // interested in play/resume/stop changes
+        // This is fired by Kodi very often, and we're only interested in play/resume/stop
+        // changes, but it is a good moment to check if the playback clock drifted
+        if (SystemClock.elapsedRealtime() - lastClockCorrection > CLOCK_CORRECTION_INTERVAL) {
+            correctPlaybackClock();
+        }
     }
 
     /**
@@ -548,10 +646,26 @@ public class HostConnectionObserver
         if (connection.getProtocol() == HostConnection.PROTOCOL_TCP) {
             checkerHandler.post(tcpCheckerRunnable);
         } else {
+            httpCheckInterval = HTTP_MIN_CHECK_INTERVAL;
             checkerHandler.post(httpCheckerRunnable);
         }
     }
 
+    /**
+     * Brings the HTTP polling back to its minimum interval, as something changed on Kodi and
+     * more changes are likely to follow. Nothing is done on TCP, which gets notifications
+     */
+    private void resetHttpCheckInterval() {
+        if ((connection.getProtocol() == HostConnection.PROTOCOL_TCP) ||
+            (httpCheckInterval == HTTP_MIN_CHECK_INTERVAL))
+            return;
+
+        httpCheckInterval = HTTP_MIN_CHECK_INTERVAL;
+        // Bring the pending poll forward. If no one is listening, it just exits
+        checkerHandler.removeCallbacks(httpCheckerRunnable);
+        checkerHandler.postDelayed(httpCheckerRunnable, httpCheckInterval);
+    }
+
     private void getApplicationProperties() {
         org.xbmc.kore.jsonrpc.method.Application.GetProperties getProperties =
                 new org.xbmc.kore.jsonrpc.method.Application.GetProperties(org.xbmc.kore.jsonrpc.method.Application.GetProperties.VOLUME,
@@ -559,6 +673,8 @@ public class HostConnectionObserver
         getProperties.execute(connection, new ApiCallback<ApplicationType.PropertyValue>() {
             @Override
             public void onSuccess(ApplicationType.PropertyValue result) {
+                if ((hostState.volumeMuted != result.muted) || (hostState.volumeLevel != result.volume))
+                    resetHttpCheckInterval();
                 hostState.volumeMuted = result.muted;
                 hostState.volumeLevel = result.volume;
 
@@ -596,6 +712,7 @@ public class HostConnectionObserver
 
                 if (!(hostState.lastGetPlaylistResults != null &&
                     hostState.lastGetPlaylistResults.equals(result))) {
+                    resetHttpCheckInterval();
                     for (PlaylistEventsObserver observer : playlistEventsObservers) {
                         observer.playlistsAvailable(result);
                     }
@@ -782,6 +899,49 @@ public class HostConnectionObserver
         }, checkerHandler);
     }
 
+    /**
+     * Asks Kodi for the playback position and corrects the playback clock.
+     * If the clock drifted more than {@link PlaybackClock#DRIFT_THRESHOLD} or the total time or
+     * speed changed, observers are refreshed with a full check of what's playing
+     */
+    private void correctPlaybackClock() {
+        if (!playbackClock.isActive() || correctingPlaybackClock || checkingWhatsPlaying)
+            return;
+
+        correctingPlaybackClock = true;
+        lastClockCorrection = SystemClock.elapsedRealtime();
+        final int playerId = playbackClock.getPlayerId(),
+                speed = playbackClock.getSpeed(),
+                totalTime = playbackClock.getTotalTime();
+
+        Player.GetProperties getProperties =
+                new Player.GetProperties(playerId, PlayerType.PropertyName.SPEED,
+                                         PlayerType.PropertyName.TIME, PlayerType.PropertyName.TOTALTIME);
+        getProperties.execute(connection, new ApiCallback<PlayerType.PropertyValue>() {
+            @Override
+            public void onSuccess(PlayerType.PropertyValue result) {
+                correctingPlaybackClock = false;
+                if (playbackClock.getPlayerId() != playerId)
+                    return;
+
+                long drift = playbackClock.update(playerId, result);
+                if ((Math.abs(drift) > PlaybackClock.DRIFT_THRESHOLD) ||
+                    (playbackClock.getSpeed() != speed) ||
+                    (playbackClock.getTotalTime() != totalTime)) {
+                    LogUtils.LOGD(TAG, "Playback clock drifted " + drift + "ms, refreshing what's playing");
+                    forceReply = true;
+                    checkWhatsPlaying();
+                }
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                correctingPlaybackClock = false;
+                notifyConnectionError(errorCode, description, playerEventsObservers);
+            }
+        }, checkerHandler);
+    }
+
     // Whether to force a reply or if the results are equal to the last one, don't reply
     private boolean forceReply = false;
 
@@ -794,6 +954,13 @@ public class HostConnectionObserver
      */
     private void notifyConnectionError(final int errorCode, final String description, List<PlayerEventsObserver> observers) {
         checkingWhatsPlaying = false;
+        playbackClock.reset();
+        if ((hostState.lastCallResult != PlayerEventsObserver.PLAYER_CONNECTION_ERROR) &&
+            ((errorCode == ApiException.IO_EXCEPTION_WHILE_CONNECTING) ||
+             (errorCode == ApiException.IO_EXCEPTION_WHILE_SENDING_REQUEST)) &&
+            (connectionFailedListener != null)) {
+            connectionFailedListener.run();
+        }
         // Reply if different from last result
         if (forceReply ||
             (hostState.lastCallResult != PlayerEventsObserver.PLAYER_CONNECTION_ERROR) ||
@@ -828,11 +995,13 @@ public class HostConnectionObserver
      */
     private void notifyNothingIsPlaying(List<PlayerEventsObserver> observers) {
         checkingWhatsPlaying = false;
+        playbackClock.reset();
         // Reply if forced or different from last result
         if (forceReply ||
             (hostState.lastCallResult != PlayerEventsObserver.PLAYER_IS_STOPPED)) {
             hostState.lastCallResult = PlayerEventsObserver.PLAYER_IS_STOPPED;
             forceReply = false;
+            resetHttpCheckInterval();
             // Copy list to prevent ConcurrentModificationExceptions
             List<PlayerEventsObserver> allObservers = new ArrayList<>(observers);
             for (final PlayerEventsObserver observer : allObservers) {
@@ -877,6 +1046,7 @@ public class HostConnectionObserver
                                           final ListType.ItemsAll getItemResult,
                                           List<PlayerEventsObserver> observers) {
         checkingWhatsPlaying = false;
+        playbackClock.update(getActivePlayersResult.playerid, getPropertiesResult);
         int currentCallResult = (getPropertiesResult.speed == 0) ?
                                 PlayerEventsObserver.PLAYER_IS_PAUSED : PlayerEventsObserver.PLAYER_IS_PLAYING;
 
@@ -889,6 +1059,7 @@ public class HostConnectionObserver
             hostState.lastGetPropertiesResult = getPropertiesResult;
             hostState.lastGetItemResult = getItemResult;
             forceReply = false;
+            resetHttpCheckInterval();
             // Copy list to prevent ConcurrentModificationExceptions
             List<PlayerEventsObserver> allObservers = new ArrayList<>(observers);
 
@@ -899,18 +1070,18 @@ public class HostConnectionObserver
 
         // Workaround for when playing has started but time info isn't updated yet.
         // See https://github.com/xbmc/Kore/issues/78#issuecomment-104148064
-        // If the playing time returned is 0sec, we'll schedule another check
-        // to give Kodi some time to report the correct playing time
+        // If the playing time returned is 0sec, we'll schedule a correction of the playback
+        // clock to give Kodi some time to report the correct playing time. Observers are only
+        // refreshed if the clock drifted.
         if ((currentCallResult == PlayerEventsObserver.PLAYER_IS_PLAYING) &&
             (connection.getProtocol() == HostConnection.PROTOCOL_TCP) &&
             (getPropertiesResult.time.ToSeconds() == 0)) {
-            LogUtils.LOGD(TAG, "Scheduling new call to check what's playing because time is 0.");
+            LogUtils.LOGD(TAG, "Scheduling playback clock correction because time is 0.");
             final int RECHECK_INTERVAL = 3000;
             checkerHandler.postDelayed(new Runnable() {
                 @Override
                 public void run() {
-                    forceReply = true;
-                    checkWhatsPlaying();
+                    correctPlaybackClock();
                 }
             }, RECHECK_INTERVAL);
         }
@@ -990,6 +1161,7 @@ public class HostConnectionObserver
     public void refreshWhatsPlaying() {
         LogUtils.LOGD(TAG, "Forcing a refresh of what's playing");
         forceReply = true;
+        resetHttpCheckInterval();
         checkWhatsPlaying();
     }
 
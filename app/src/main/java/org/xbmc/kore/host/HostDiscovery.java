@@ -0,0 +1,660 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.host;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.Patterns;
+
+import org.xbmc.kore.Settings;
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.JSONRPC;
+import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.NetUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceInfo;
+import javax.jmdns.ServiceListener;
+
+/**
+ * Discovers Kodi hosts on the local network.
+ * <p>
+ * A single mDNS listener is kept while the discovery is running, and hosts are reported to the
+ * {@link Listener} as soon as they are resolved. If multicast seems blocked (no host is resolved
+ * after {@link #SWEEP_DELAY}) the local subnet is swept, looking for hosts that answer to
+ * {@link JSONRPC.Ping} on the default HTTP port. The sweep opens non blocking connections to the
+ * whole subnet from a single thread, and only pings the addresses that accept them.
+ * <p>
+ * Whenever a saved host is resolved through mDNS on a different address, its address is
+ * updated, so that it doesn't point to a stale address. Saved hosts are recognized by the
+ * device UUID Kodi publishes on mDNS (remembered the first time the host is seen on its saved
+ * address) or, failing that, by their MAC address. Besides the host list and the wizard, which
+ * run the discovery while shown, {@link #relocate(HostInfo)} looks for a saved host when
+ * connecting to it fails.
+ * <p>
+ * {@link #start(Listener, boolean)} and {@link #stop()} should be called on the main thread,
+ * and the listener is called on the main thread.
+ */
+public class HostDiscovery {
+    private static final String TAG = LogUtils.makeLogTag(HostDiscovery.class);
+
+    // See http://sourceforge.net/p/xbmc/mailman/message/28667703/
+    // _xbmc-jsonrpc-http._tcp
+    // _xbmc-jsonrpc-h._tcp
+    // _xbmc-jsonrpc-tcp._tcp
+    // _xbmc-jsonrpc._tcp
+    private static final String MDNS_XBMC_SERVICENAME = "_xbmc-jsonrpc-h._tcp.local.";
+
+    /**
+     * Time after which the discovery is reported as finished, although the mDNS listener keeps
+     * running and reporting hosts until stopped
+     */
+    private static final int DISCOVERY_TIMEOUT = 5000;
+    /**
+     * Time after which, if no host was resolved through mDNS, the subnet is swept
+     */
+    private static final int SWEEP_DELAY = 2000;
+    private static final int SWEEP_CONNECT_TIMEOUT = 500;
+    /**
+     * Time after which the discovery thread is stopped, if idle, in seconds
+     */
+    private static final long DISCOVERY_THREAD_KEEP_ALIVE = 30;
+
+    /**
+     * mDNS TXT record with the device UUID of Kodi
+     */
+    private static final String MDNS_UUID_PROPERTY = "uuid";
+
+    /**
+     * Callback interface for the discovery results
+     */
+    public interface Listener {
+        /**
+         * A host was found. Might be called again for the same host name if its address changes
+         * @param hostInfo Host found, not saved on the database
+         */
+        void onHostFound(HostInfo hostInfo);
+
+        /**
+         * A saved host was found on a different address, and was updated
+         * @param hostInfo Updated host
+         */
+        void onSavedHostUpdated(HostInfo hostInfo);
+
+        /**
+         * The initial discovery finished. Hosts might still be reported after this, until the
+         * discovery is stopped
+         * @param hostsFound Number of hosts found
+         */
+        void onDiscoveryFinished(int hostsFound);
+    }
+
+    /**
+     * State of one mDNS listener. It's created, started and closed on the discovery thread, so
+     * that a run being stopped never races with the next one being started
+     */
+    private static class MdnsRun {
+        final int generation;
+        final InetAddress wifiInetAddress;
+        JmDNS jmDns;
+        ServiceListener serviceListener;
+
+        MdnsRun(int generation, InetAddress wifiInetAddress) {
+            this.generation = generation;
+            this.wifiInetAddress = wifiInetAddress;
+        }
+    }
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Runs the blocking work of the discovery (mDNS start and stop, subnet sweep, ARP lookups)
+     * in order, on a single thread that is stopped when idle
+     */
+    private final ThreadPoolExecutor discoveryExecutor;
+
+    private Listener listener;
+    private boolean sweepSubnet;
+    // Incremented on each start and stop, to ignore results from a previous discovery
+    private volatile int generation = 0;
+
+    private MdnsRun mdnsRun;
+    private WifiManager.MulticastLock multicastLock;
+    private InetAddress wifiInetAddress;
+
+    // Hosts found, keyed by address and port
+    private final HashMap<String, HostInfo> foundHosts = new HashMap<>();
+    private boolean timeoutElapsed, sweepStarted, sweepRunning, finishReported;
+
+    public HostDiscovery(Context context) {
+        this.context = context.getApplicationContext();
+        discoveryExecutor = new ThreadPoolExecutor(1, 1,
+                                                   DISCOVERY_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                                                   new LinkedBlockingQueue<Runnable>());
+        discoveryExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts discovering hosts, stopping a previous discovery if it is running
+     * @param listener Listener to report to
+     * @param sweepSubnet Whether to sweep the subnet if multicast seems blocked
+     */
+    public void start(Listener listener, boolean sweepSubnet) {
+        stop();
+
+        LogUtils.LOGD(TAG, "Starting host discovery");
+        this.listener = listener;
+        this.sweepSubnet = sweepSubnet;
+        final int currentGeneration = ++generation;
+        foundHosts.clear();
+        timeoutElapsed = false;
+        sweepStarted = false;
+        sweepRunning = false;
+        finishReported = false;
+
+        wifiInetAddress = null;
+        WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        if (wifiManager != null) {
+            wifiInetAddress = NetUtils.intToInetAddress(wifiManager.getConnectionInfo().getIpAddress());
+            multicastLock = wifiManager.createMulticastLock("kore2.multicastlock");
+            multicastLock.setReferenceCounted(false);
+            multicastLock.acquire();
+        }
+
+        final MdnsRun run = new MdnsRun(currentGeneration, wifiInetAddress);
+        mdnsRun = run;
+        discoveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                startMdnsListener(run);
+            }
+        });
+
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (foundHosts.isEmpty()) startSweep();
+            }
+        }, SWEEP_DELAY);
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                timeoutElapsed = true;
+                maybeReportFinished();
+            }
+        }, DISCOVERY_TIMEOUT);
+    }
+
+    /**
+     * Looks for a saved host that can't be reached, so that its address is updated if it moved.
+     * Only mDNS is used, as the host is recognized by the UUID or MAC address of the hosts
+     * resolved through it, and the discovery stops by itself after {@link #DISCOVERY_TIMEOUT}.
+     * Does nothing if the discovery is already running or the host can't be recognized, see
+     * {@link #canRelocate(HostInfo)}
+     * @param saved Saved host
+     * @return Whether the search started
+     */
+    public boolean relocate(HostInfo saved) {
+        if (isRunning() || !canRelocate(saved))
+            return false;
+
+        LogUtils.LOGD(TAG, "Looking for " + saved.getName() + ", unreachable on " + saved.getAddress());
+        start(new Listener() {
+            @Override
+            public void onHostFound(HostInfo hostInfo) { }
+
+            @Override
+            public void onSavedHostUpdated(HostInfo hostInfo) {
+                // HostManager switches the connection if it's the current host
+                LogUtils.LOGD(TAG, "Found " + hostInfo.getName() + " on " + hostInfo.getAddress());
+            }
+
+            @Override
+            public void onDiscoveryFinished(int hostsFound) {
+                stop();
+            }
+        }, false);
+        return true;
+    }
+
+    /**
+     * Returns whether a saved host can be recognized on another address: it was saved with an
+     * IP address, and its UUID or MAC address is known.
+     * Package-private for testing
+     */
+    boolean canRelocate(HostInfo saved) {
+        if (!Patterns.IP_ADDRESS.matcher(saved.getAddress()).matches())
+            return false;
+        String savedUuid = PreferenceManager.getDefaultSharedPreferences(context)
+                                            .getString(Settings.getHostUuidPrefKey(saved.getId()), null);
+        return !TextUtils.isEmpty(savedUuid) || !TextUtils.isEmpty(saved.getMacAddress());
+    }
+
+    /**
+     * Returns whether the discovery is running
+     */
+    public boolean isRunning() {
+        return listener != null;
+    }
+
+    /**
+     * Stops the discovery, releasing all the resources. Nothing is reported after this
+     */
+    public void stop() {
+        if (listener == null)
+            return;
+
+        LogUtils.LOGD(TAG, "Stopping host discovery");
+        listener = null;
+        // Makes a running sweep and the pending results bail out
+        generation++;
+        handler.removeCallbacksAndMessages(null);
+
+        final MdnsRun run = mdnsRun;
+        mdnsRun = null;
+        if (run != null) {
+            discoveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    stopMdnsListener(run);
+                }
+            });
+        }
+
+        if (multicastLock != null) {
+            multicastLock.release();
+            multicastLock = null;
+        }
+    }
+
+    /**
+     * Creates the mDNS listener of a run. Runs on the discovery thread
+     */
+    private void startMdnsListener(final MdnsRun run) {
+        if (run.generation != generation)
+            return;
+
+        try {
+            run.jmDns = (run.wifiInetAddress != null) ? JmDNS.create(run.wifiInetAddress) : JmDNS.create();
+            run.serviceListener = new ServiceListener() {
+                @Override
+                public void serviceAdded(ServiceEvent event) {
+                    // Ask for the details, which are reported through serviceResolved
+                    event.getDNS().requestServiceInfo(event.getType(), event.getName(), 1);
+                }
+
+                @Override
+                public void serviceRemoved(ServiceEvent event) { }
+
+                @Override
+                public void serviceResolved(ServiceEvent event) {
+                    ServiceInfo serviceInfo = event.getInfo();
+                    String[] addresses = serviceInfo.getHostAddresses();
+                    if (addresses.length == 0) {
+                        LogUtils.LOGD(TAG, "Resolved " + serviceInfo.getName() + " without address");
+                        return;
+                    }
+                    postHostFound(run.generation,
+                                  createHostInfo(serviceInfo.getName(), addresses[0], serviceInfo.getPort()),
+                                  serviceInfo.getPropertyString(MDNS_UUID_PROPERTY), true);
+                }
+            };
+            run.jmDns.addServiceListener(MDNS_XBMC_SERVICENAME, run.serviceListener);
+        } catch (IOException e) {
+            LogUtils.LOGD(TAG, "Couldn't start the mDNS listener", e);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (run.generation == generation) startSweep();
+                }
+            });
+        }
+    }
+
+    /**
+     * Closes the mDNS listener of a run. Runs on the discovery thread
+     */
+    private void stopMdnsListener(MdnsRun run) {
+        if (run.jmDns == null)
+            return;
+
+        try {
+            run.jmDns.removeServiceListener(MDNS_XBMC_SERVICENAME, run.serviceListener);
+            run.jmDns.close();
+        } catch (IOException e) {
+            LogUtils.LOGD(TAG, "Error closing the mDNS listener", e);
+        }
+        run.jmDns = null;
+        run.serviceListener = null;
+    }
+
+    /**
+     * Sweeps the /24 subnet of the wifi address, pinging the hosts that accept connections on
+     * the default HTTP port. Called on the main thread
+     */
+    private void startSweep() {
+        if (!sweepSubnet || sweepStarted || (listener == null) ||
+            (wifiInetAddress == null) || (wifiInetAddress.getAddress().length != 4))
+            return;
+
+        LogUtils.LOGD(TAG, "No host found through mDNS, sweeping the subnet");
+        sweepStarted = true;
+        sweepRunning = true;
+        final int currentGeneration = generation;
+        final byte[] ownAddress = wifiInetAddress.getAddress();
+        discoveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> candidates = findListeningAddresses(currentGeneration, ownAddress);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        pingCandidates(currentGeneration, candidates);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Opens non blocking connections to the default HTTP port of every address on the /24
+     * subnet, and waits up to {@link #SWEEP_CONNECT_TIMEOUT} for them. Runs on the discovery
+     * thread
+     * @return Addresses that accepted the connection
+     */
+    private List<String> findListeningAddresses(int currentGeneration, byte[] ownAddress) {
+        List<String> listening = new ArrayList<>();
+        Selector selector = null;
+        try {
+            selector = Selector.open();
+            for (int i = 1; i < 255; i++) {
+                if (i == (ownAddress[3] & 0xff))
+                    continue;
+
+                byte[] candidateAddress = ownAddress.clone();
+                candidateAddress[3] = (byte) i;
+                InetAddress candidate;
+                try {
+                    candidate = InetAddress.getByAddress(candidateAddress);
+                } catch (UnknownHostException e) {
+                    throw new AssertionError();
+                }
+
+                SocketChannel channel = SocketChannel.open();
+                try {
+                    channel.configureBlocking(false);
+                    if (channel.connect(new InetSocketAddress(candidate, HostInfo.DEFAULT_HTTP_PORT))) {
+                        listening.add(candidate.getHostAddress());
+                        channel.close();
+                    } else {
+                        channel.register(selector, SelectionKey.OP_CONNECT, candidate);
+                    }
+                } catch (IOException e) {
+                    channel.close();
+                }
+            }
+
+            long deadline = SystemClock.elapsedRealtime() + SWEEP_CONNECT_TIMEOUT;
+            long remaining;
+            while ((currentGeneration == generation) &&
+                   ((remaining = deadline - SystemClock.elapsedRealtime()) > 0)) {
+                selector.select(remaining);
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            listening.add(((InetAddress) key.attachment()).getHostAddress());
+                        }
+                    } catch (IOException ignored) {
+                        // Refused, nothing listening there
+                    }
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            LogUtils.LOGD(TAG, "Error sweeping the subnet", e);
+        } finally {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    try {
+                        key.channel().close();
+                    } catch (IOException ignored) { }
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) { }
+            }
+        }
+        return listening;
+    }
+
+    /**
+     * Pings the addresses found listening on the subnet sweep, reporting the ones that answer.
+     * Called on the main thread
+     */
+    private void pingCandidates(final int currentGeneration, List<String> candidates) {
+        if (currentGeneration != generation)
+            return;
+
+        final int[] pendingPings = {candidates.size()};
+        if (pendingPings[0] == 0) {
+            finishSweep();
+            return;
+        }
+
+        for (final String address : candidates) {
+            HostInfo hostInfo = new HostInfo(address, address, HostConnection.PROTOCOL_HTTP,
+                                             HostInfo.DEFAULT_HTTP_PORT, HostInfo.DEFAULT_TCP_PORT,
+                                             null, null, false, HostInfo.DEFAULT_EVENT_SERVER_PORT,
+                                             false, true);
+            new HostConnection(hostInfo, SWEEP_CONNECT_TIMEOUT).execute(new JSONRPC.Ping(), new ApiCallback<String>() {
+                @Override
+                public void onSuccess(String result) {
+                    if (currentGeneration != generation) return;
+                    LogUtils.LOGD(TAG, "Found host " + address + " on the subnet sweep");
+                    hostFound(createHostInfo(address, address, HostInfo.DEFAULT_HTTP_PORT), null, false);
+                    pingFinished();
+                }
+
+                @Override
+                public void onError(int errorCode, String description) {
+                    if (currentGeneration != generation) return;
+                    pingFinished();
+                }
+
+                private void pingFinished() {
+                    if (--pendingPings[0] == 0) finishSweep();
+                }
+            }, handler);
+        }
+    }
+
+    private void finishSweep() {
+        LogUtils.LOGD(TAG, "Subnet sweep finished");
+        sweepRunning = false;
+        maybeReportFinished();
+    }
+
+    private void postHostFound(final int currentGeneration, final HostInfo hostInfo,
+                               final String uuid, final boolean fromMdns) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (currentGeneration == generation) hostFound(hostInfo, uuid, fromMdns);
+            }
+        });
+    }
+
+    private void hostFound(HostInfo hostInfo, String uuid, boolean fromMdns) {
+        if (listener == null)
+            return;
+
+        String key = hostInfo.getAddress() + ":" + hostInfo.getHttpPort();
+        if (foundHosts.containsKey(key))
+            return;
+        foundHosts.put(key, hostInfo);
+
+        LogUtils.LOGD(TAG, "Found host " + hostInfo.getName() + " on " + key);
+        listener.onHostFound(hostInfo);
+        if (fromMdns) {
+            updateSavedHosts(hostInfo, uuid);
+        }
+    }
+
+    /**
+     * Updates the address of the saved hosts that match the host found, if they are saved with
+     * a different IP address. See {@link #findMovedHosts(List, HostInfo, String, List)}.
+     * Called on the main thread
+     */
+    private void updateSavedHosts(final HostInfo found, String uuid) {
+        final List<HostInfo> macCandidates = new ArrayList<>();
+        List<HostInfo> movedHosts = findMovedHosts(HostManager.getInstance(context).getHosts(),
+                                                   found, uuid, macCandidates);
+        for (HostInfo saved : movedHosts) {
+            moveSavedHost(saved, found.getAddress());
+        }
+
+        if (macCandidates.isEmpty())
+            return;
+        final int currentGeneration = generation;
+        discoveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String foundMacAddress = NetUtils.getMacAddress(found.getAddress());
+                if (foundMacAddress == null)
+                    return;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (currentGeneration != generation)
+                            return;
+                        for (HostInfo saved : macCandidates) {
+                            if (isSameMacAddress(saved.getMacAddress(), foundMacAddress)) {
+                                moveSavedHost(saved, found.getAddress());
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the saved hosts that are the host found, saved on a different IP address. Hosts
+     * saved with a hostname are left alone.
+     * <p>
+     * Saved hosts are matched by the UUID of the host found, which is remembered when a saved
+     * host is found on its saved address. Saved hosts whose UUID isn't known yet but have a MAC
+     * address can't be matched here, and are returned on {@code macCandidates}, to be matched
+     * against the MAC address of the host found.
+     * Package-private for testing
+     * @param savedHosts Saved hosts
+     * @param found Host found through mDNS
+     * @param uuid UUID published by the host found, or null
+     * @param macCandidates Filled with the saved hosts that can only be matched by MAC address
+     * @return Saved hosts that moved to the address of the host found
+     */
+    List<HostInfo> findMovedHosts(List<HostInfo> savedHosts, HostInfo found, String uuid,
+                                  List<HostInfo> macCandidates) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        List<HostInfo> movedHosts = new ArrayList<>();
+        for (HostInfo saved : savedHosts) {
+            if (saved.getHttpPort() != found.getHttpPort())
+                continue;
+
+            String uuidKey = Settings.getHostUuidPrefKey(saved.getId());
+            String savedUuid = preferences.getString(uuidKey, null);
+            if (saved.getAddress().equals(found.getAddress())) {
+                // Remember which device this host is, to recognize it if it moves
+                if (!TextUtils.isEmpty(uuid) && !uuid.equals(savedUuid)) {
+                    preferences.edit().putString(uuidKey, uuid).apply();
+                }
+                continue;
+            }
+            if (!Patterns.IP_ADDRESS.matcher(saved.getAddress()).matches())
+                continue;
+
+            if (!TextUtils.isEmpty(savedUuid)) {
+                if (savedUuid.equals(uuid)) {
+                    movedHosts.add(saved);
+                }
+            } else if (!TextUtils.isEmpty(saved.getMacAddress())) {
+                macCandidates.add(saved);
+            }
+        }
+        return movedHosts;
+    }
+
+    private void moveSavedHost(HostInfo saved, String address) {
+        LogUtils.LOGD(TAG, "Host " + saved.getName() + " moved from " + saved.getAddress() +
+                           " to " + address);
+        HostInfo updated = HostManager.getInstance(context).updateHostAddress(saved, address);
+        if ((updated != null) && (listener != null)) {
+            listener.onSavedHostUpdated(updated);
+        }
+    }
+
+    /**
+     * Compares two MAC addresses, ignoring case and separators
+     */
+    static boolean isSameMacAddress(String macAddress, String otherMacAddress) {
+        if ((macAddress == null) || (otherMacAddress == null))
+            return false;
+        String normalized = macAddress.replaceAll("[^0-9A-Fa-f]", "");
+        return !normalized.isEmpty() &&
+               normalized.equalsIgnoreCase(otherMacAddress.replaceAll("[^0-9A-Fa-f]", ""));
+    }
+
+    private void maybeReportFinished() {
+        if (finishReported || !timeoutElapsed || sweepRunning || (listener == null))
+            return;
+        finishReported = true;
+        listener.onDiscoveryFinished(foundHosts.size());
+    }
+
+    private static HostInfo createHostInfo(String name, String address, int httpPort) {
+        return new HostInfo(name, address, HostConnection.PROTOCOL_TCP, httpPort,
+                            HostInfo.DEFAULT_TCP_PORT, null, null, true,
+                            HostInfo.DEFAULT_EVENT_SERVER_PORT, false, true);
+    }
+}
@@ -15,30 +15,46 @@
  */
 package org.xbmc.kore.host;
 
+import android.content.AsyncQueryHandler;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.format.DateUtils;
 
+import com.squareup.okhttp.Cache;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.picasso.LruCache;
 import com.squareup.picasso.OkHttpDownloader;
 import com.squareup.picasso.Picasso;
 
 import org.xbmc.kore.Settings;
 import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.CommandCoalescer;
 import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.jsonrpc.method.Application;
 import org.xbmc.kore.jsonrpc.type.ApplicationType;
+import org.xbmc.kore.provider.LibrarySnapshot;
 import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.service.library.LibraryNotificationsHandler;
+import org.xbmc.kore.utils.BitmapPool;
 import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.NetUtils;
+import org.xbmc.kore.utils.PooledNetworkRequestHandler;
+import org.xbmc.kore.utils.StartupTrace;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Manages XBMC Hosts
@@ -73,17 +89,91 @@ public class HostManager {
      */
     private Picasso currentPicasso = null;
 
+    /**
+     * Memory cache of decoded images, and pool of bitmaps to decode them into, shared by the
+     * {@link Picasso} of every host so that switching hosts doesn't drop them. Picasso keys the
+     * images by url, which includes the host address, and target size
+     */
+    private final LruCache imageMemoryCache;
+    private final BitmapPool bitmapPool;
+
+    /**
+     * Disk cache of the images, also shared by the {@link Picasso} of every host. Sizing it
+     * walks the disk, so it's prepared in the background as soon as the manager is created
+     */
+    private final FutureTask<Cache> imageDiskCache;
+
+    /**
+     * How long to wait for the image disk cache when creating a {@link Picasso}, in ms. After
+     * that, it's set on the {@link OkHttpClient} once it's prepared
+     */
+    private static final long IMAGE_DISK_CACHE_WAIT = 50;
+
+    /**
+     * Clients of the {@link Picasso} created before the image disk cache was prepared
+     */
+    private final ArrayList<OkHttpClient> clientsWaitingForDiskCache = new ArrayList<>();
+
     /**
      * Current connection observer
      */
     private HostConnectionObserver currentHostConnectionObserver = null;
 
+    /**
+     * Looks for the current host on the network when it can't be reached, in case it moved
+     */
+    private HostDiscovery hostRelocator = null;
+    private long lastRelocation = 0;
+
+    /**
+     * Minimum time between two searches for the current host, in ms
+     */
+    private static final long RELOCATE_INTERVAL = 60 * 1000;
+
+    /**
+     * Coalescer for absolute value commands sent to the current connection
+     */
+    private CommandCoalescer currentCommandCoalescer = null;
+
+    /**
+     * Keeps the local library up to date with the library notifications of the current connection
+     */
+    private LibraryNotificationsHandler currentLibraryNotificationsHandler = null;
+
     /**
      * Singleton constructor
      * @param context Context (can pass Activity context, will get App Context)
      */
 	protected HostManager(Context context) {
+		StartupTrace.Span span = StartupTrace.getInstance().begin("Create host manager");
 		this.context = context.getApplicationContext();
+		imageMemoryCache = new LruCache(this.context);
+		bitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+		imageDiskCache = new FutureTask<Cache>(new Callable<Cache>() {
+			@Override
+			public Cache call() {
+				StartupTrace.Span span = StartupTrace.getInstance().begin("Prepare image disk cache");
+				try {
+					File cacheDir = NetUtils.createDefaultCacheDir(HostManager.this.context);
+					return new Cache(cacheDir, NetUtils.calculateDiskCacheSize(cacheDir));
+				} finally {
+					span.end();
+				}
+			}
+		}) {
+			@Override
+			protected void done() {
+				Cache cache = getImageDiskCache(0);
+				synchronized (clientsWaitingForDiskCache) {
+					for (OkHttpClient client : clientsWaitingForDiskCache) {
+						client.setCache(cache);
+					}
+					clientsWaitingForDiskCache.clear();
+				}
+			}
+		};
+		new Thread(imageDiskCache, "ImageDiskCache").start();
+		span.end();
 	}
 
 	/**
@@ -119,11 +209,15 @@ public class HostManager {
         if (forcedReload || (hosts.isEmpty())) {
             hosts.clear();
 
+            StartupTrace.Span span = StartupTrace.getInstance().begin("Load hosts");
             Cursor cursor = context.getContentResolver()
                                    .query(MediaContract.Hosts.CONTENT_URI,
                                            MediaContract.Hosts.ALL_COLUMNS,
                                            null, null, null);
-            if (cursor == null) return hosts;
+            if (cursor == null) {
+                span.end();
+                return hosts;
+            }
 
             if (cursor.getCount() > 0) {
                 while (cursor.moveToNext()) {
@@ -157,6 +251,7 @@ public class HostManager {
                 }
             }
             cursor.close();
+            span.end();
         }
 		return hosts;
 	}
@@ -204,7 +299,12 @@ public class HostManager {
                     currentHostInfo = getHostInfo();
 
                     if (currentHostInfo != null) {
+                        StartupTrace.Span span = StartupTrace.getInstance().begin("Create connection");
                         currentHostConnection = new HostConnection(currentHostInfo);
+                        currentLibraryNotificationsHandler =
+                                new LibraryNotificationsHandler(context, currentHostInfo);
+                        currentLibraryNotificationsHandler.register(currentHostConnection);
+                        span.end();
                     }
                 }
             }
@@ -227,7 +327,9 @@ public class HostManager {
 //                        .build();
 
                 // Http client should already handle authentication
-                OkHttpClient picassoClient = getConnection().getOkHttpClient().clone();
+                HostConnection hostConnection = getConnection();
+                StartupTrace.Span span = StartupTrace.getInstance().begin("Create image loader");
+                OkHttpClient picassoClient = hostConnection.getOkHttpClient().clone();
 
 //                OkHttpClient picassoClient = new OkHttpClient();
 //                // Set authentication on the client
@@ -246,21 +348,52 @@ public class HostManager {
 //                    });
 //                }
 
-                // Set cache
-                File cacheDir = NetUtils.createDefaultCacheDir(context);
-                long cacheSize = NetUtils.calculateDiskCacheSize(cacheDir);
-                picassoClient.setCache(new com.squareup.okhttp.Cache(cacheDir,cacheSize));
+                // Set cache, later if it isn't prepared yet, so as not to block the main thread
+                Cache cache = getImageDiskCache(IMAGE_DISK_CACHE_WAIT);
+                if (cache != null) {
+                    picassoClient.setCache(cache);
+                } else {
+                    synchronized (clientsWaitingForDiskCache) {
+                        if (imageDiskCache.isDone()) {
+                            picassoClient.setCache(getImageDiskCache(0));
+                        } else {
+                            LogUtils.LOGD(TAG, "Image disk cache not prepared yet, setting it later");
+                            clientsWaitingForDiskCache.add(picassoClient);
+                        }
+                    }
+                }
 
+                OkHttpDownloader downloader = new OkHttpDownloader(picassoClient);
                 currentPicasso = new Picasso.Builder(context)
-                        .downloader(new OkHttpDownloader(picassoClient))
+                        .downloader(downloader)
+                        .memoryCache(imageMemoryCache)
+                        .addRequestHandler(new PooledNetworkRequestHandler(downloader, bitmapPool))
 //                        .indicatorsEnabled(BuildConfig.DEBUG)
                         .build();
+                span.end();
             }
         }
 
         return currentPicasso;
     }
 
+    /**
+     * Returns the image disk cache, waiting a bit for it to be prepared if it isn't yet, which
+     * should only happen if images are needed right after the app starts
+     * @param timeout Maximum time to wait, in ms
+     * @return Disk cache, or null if it couldn't be prepared or isn't prepared yet
+     */
+    private Cache getImageDiskCache(long timeout) {
+        try {
+            return imageDiskCache.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException | ExecutionException e) {
+            LogUtils.LOGW(TAG, "Couldn't prepare the image disk cache", e);
+            return null;
+        }
+    }
+
     /**
      * Returns the current {@link HostConnectionObserver} for the current connection
      * @return The {@link HostConnectionObserver} for the current connection
@@ -270,11 +403,37 @@ public class HostManager {
             currentHostConnection = getConnection();
             if (currentHostConnection != null) {
                 currentHostConnectionObserver = new HostConnectionObserver(currentHostConnection);
+                currentHostConnectionObserver.setConnectionFailedListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        relocateCurrentHost();
+                    }
+                });
             }
         }
         return currentHostConnectionObserver;
     }
 
+    /**
+     * Returns the {@link CommandCoalescer} for the current connection.
+     * Callbacks of commands executed through it are called on the main thread
+     * @return The {@link CommandCoalescer} for the current connection, or null if there's no host
+     */
+    public CommandCoalescer getCommandCoalescer() {
+        if (currentCommandCoalescer == null) {
+            synchronized (this) {
+                if (currentCommandCoalescer == null) {
+                    HostConnection hostConnection = getConnection();
+                    if (hostConnection != null) {
+                        currentCommandCoalescer = new CommandCoalescer(hostConnection,
+                                                                       new Handler(Looper.getMainLooper()));
+                    }
+                }
+            }
+        }
+        return currentCommandCoalescer;
+    }
+
     /**
 	 * Sets the current host.
 	 * @param hostInfo Host info
@@ -423,6 +582,78 @@ public class HostManager {
         return newHost;
     }
 
+    /**
+     * Changes the address of a host, keeping the rest of its settings. If it is the current
+     * host, the connection to it is reset.
+     * The host list is updated right away, and the database asynchronously, so this can be
+     * called on the main thread
+     * @param hostInfo Host to update
+     * @param address New address
+     * @return Updated {@link HostInfo} object, or null if the host isn't saved
+     */
+    public HostInfo updateHostAddress(HostInfo hostInfo, String address) {
+        int index = -1;
+        for (int i = 0; i < hosts.size(); i++) {
+            if (hosts.get(i).getId() == hostInfo.getId()) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1)
+            return null;
+
+        HostInfo newHostInfo = new HostInfo(
+                hostInfo.getId(), hostInfo.getName(), address, hostInfo.getProtocol(),
+                hostInfo.getHttpPort(), hostInfo.getTcpPort(),
+                hostInfo.getUsername(), hostInfo.getPassword(),
+                hostInfo.getMacAddress(), hostInfo.getWolPort(),
+                hostInfo.getShowAsDirectShareTarget(), hostInfo.getUseEventServer(),
+                hostInfo.getEventServerPort(), hostInfo.getKodiVersionMajor(),
+                hostInfo.getKodiVersionMinor(), hostInfo.getKodiVersionRevision(),
+                hostInfo.getKodiVersionTag(), hostInfo.getUpdated(), hostInfo.isHttps);
+        hosts.set(index, newHostInfo);
+
+        ContentValues values = new ContentValues();
+        values.put(MediaContract.HostsColumns.ADDRESS, address);
+        new AsyncQueryHandler(context.getContentResolver()) {}
+                .startUpdate(0, null, MediaContract.Hosts.buildHostUri(hostInfo.getId()),
+                             values, null, null);
+
+        if ((currentHostInfo != null) && (currentHostInfo.getId() == newHostInfo.getId())) {
+            // Keep the screens observing the host, they'd only register again when resumed
+            HostConnectionObserver previousObserver = currentHostConnectionObserver;
+            currentHostConnectionObserver = null;
+            switchHost(newHostInfo);
+            if (previousObserver != null) {
+                HostConnectionObserver observer = getHostConnectionObserver();
+                if (observer != null) {
+                    previousObserver.transferObservers(observer);
+                } else {
+                    previousObserver.stopObserving();
+                }
+            }
+        }
+        return newHostInfo;
+    }
+
+    /**
+     * Looks for the current host through mDNS, and updates its address if it moved, see
+     * {@link HostDiscovery#relocate(HostInfo)}. Called on the main thread when the current
+     * connection starts failing, at most once every {@link #RELOCATE_INTERVAL}
+     */
+    private void relocateCurrentHost() {
+        long now = SystemClock.elapsedRealtime();
+        if ((currentHostInfo == null) || ((lastRelocation != 0) && (now - lastRelocation < RELOCATE_INTERVAL)))
+            return;
+
+        if (hostRelocator == null) {
+            hostRelocator = new HostDiscovery(context);
+        }
+        if (hostRelocator.relocate(currentHostInfo)) {
+            lastRelocation = now;
+        }
+    }
+
     /**
      * Deletes a host from the database.
      * If the delete host is the current one, we will try too change the current one to another
@@ -436,6 +667,7 @@ public class HostManager {
             public void run() {
                 context.getContentResolver()
                        .delete(MediaContract.Hosts.buildHostUri(hostId), null, null);
+                LibrarySnapshot.delete(context, hostId);
             }
         }).start();
 
@@ -466,6 +698,17 @@ public class HostManager {
             currentHostConnectionObserver = null;
         }
 
+        if (currentCommandCoalescer != null) {
+            LogUtils.LOGD(TAG, "Releasing command coalescer. Elided commands: " +
+                               currentCommandCoalescer.getElidedCount());
+            currentCommandCoalescer = null;
+        }
+
+        if (currentLibraryNotificationsHandler != null) {
+            currentLibraryNotificationsHandler.unregister(currentHostConnection);
+            currentLibraryNotificationsHandler = null;
+        }
+
         if (currentHostConnection != null) {
             currentHostConnection.disconnect();
             currentHostConnection = null;
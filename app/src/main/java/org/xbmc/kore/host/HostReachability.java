@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.host;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.xbmc.kore.jsonrpc.ApiException;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.HostTransport;
+import org.xbmc.kore.jsonrpc.method.JSONRPC;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps track of the reachability of the saved hosts.
+ * <p>
+ * Hosts are probed concurrently, with a {@link JSONRPC.Ping} to their HTTP port, so that only a
+ * Kodi answering to JSON-RPC is considered available, not just anything accepting connections
+ * on that port. The last known
+ * status of each one is cached, so that screens that show it (host list, navigation drawer,
+ * direct share targets) can show it immediately and only probe again when it is older than
+ * {@link #STATUS_TTL}.
+ * <p>
+ * Listeners are called on the main thread, and only when the status of a host changes.
+ */
+public class HostReachability {
+    private static final String TAG = LogUtils.makeLogTag(HostReachability.class);
+
+    public static final int STATUS_UNKNOWN = 0,
+            STATUS_AVAILABLE = 1,
+            STATUS_UNAVAILABLE = 2;
+
+    /**
+     * Time during which a probed status is considered current, in ms
+     */
+    public static final long STATUS_TTL = 30000;
+
+    /**
+     * Connect timeout of each probe, in ms
+     */
+    private static final int PROBE_TIMEOUT = 1000;
+
+    /**
+     * Interface to be notified of the status changes
+     */
+    public interface StatusListener {
+        /**
+         * The status of a host changed
+         * @param hostInfo Host probed
+         * @param status One of the STATUS constants
+         */
+        void onHostStatusChanged(HostInfo hostInfo, int status);
+    }
+
+    /**
+     * Checks whether a host is available. Called on a background thread
+     */
+    interface Prober {
+        /**
+         * Probes a host, blocking until its status is known
+         * @param hostInfo Host to probe
+         * @return {@link #STATUS_AVAILABLE} or {@link #STATUS_UNAVAILABLE}
+         */
+        int probe(HostInfo hostInfo);
+    }
+
+    /**
+     * Pings the JSON-RPC endpoint of the host
+     */
+    private static final Prober PING_PROBER = new Prober() {
+        @Override
+        public int probe(HostInfo hostInfo) {
+            try {
+                new HostConnection(hostInfo, PROBE_TIMEOUT).executeOnCurrentThread(new JSONRPC.Ping());
+                return STATUS_AVAILABLE;
+            } catch (ApiException e) {
+                return STATUS_UNAVAILABLE;
+            }
+        }
+    };
+
+    private static HostReachability instance = null;
+
+    private Prober prober = PING_PROBER;
+    // Null to probe on the shared transport threads
+    private Executor probeExecutor = null;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final HashMap<Integer, CachedStatus> statuses = new HashMap<>();
+    private final HashSet<Integer> probing = new HashSet<>();
+    private final List<StatusListener> listeners = new ArrayList<>();
+
+    /**
+     * Last known status of a host, and the address it refers to
+     */
+    private static class CachedStatus {
+        final String address;
+        final int port;
+        final int status;
+        final long timestamp;
+
+        CachedStatus(HostInfo hostInfo, int status) {
+            this.address = hostInfo.getAddress();
+            this.port = hostInfo.getHttpPort();
+            this.status = status;
+            this.timestamp = SystemClock.elapsedRealtime();
+        }
+
+        boolean isFor(HostInfo hostInfo) {
+            return address.equals(hostInfo.getAddress()) && (port == hostInfo.getHttpPort());
+        }
+
+        boolean isCurrent() {
+            return SystemClock.elapsedRealtime() - timestamp < STATUS_TTL;
+        }
+    }
+
+    /**
+     * Returns the singleton
+     */
+    public static synchronized HostReachability getInstance() {
+        if (instance == null) {
+            instance = new HostReachability();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a listener. Should be called on the main thread
+     * @param listener Listener
+     */
+    public void registerListener(StatusListener listener) {
+        if (!listeners.contains(listener))
+            listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener. Should be called on the main thread
+     * @param listener Listener
+     */
+    public void unregisterListener(StatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the last known status of a host, even if it is not current anymore
+     * @param hostInfo Host
+     * @return One of the STATUS constants, {@link #STATUS_UNKNOWN} if the host wasn't probed yet,
+     * or its address changed since then
+     */
+    public synchronized int getStatus(HostInfo hostInfo) {
+        CachedStatus cachedStatus = statuses.get(hostInfo.getId());
+        if ((cachedStatus == null) || !cachedStatus.isFor(hostInfo))
+            return STATUS_UNKNOWN;
+        return cachedStatus.status;
+    }
+
+    /**
+     * Probes the hosts whose status is not current, concurrently. The registered listeners are
+     * notified of the hosts whose status changes
+     * @param hosts Hosts to check
+     * @param force Whether to probe the hosts even if their status is current
+     */
+    public void refresh(List<HostInfo> hosts, boolean force) {
+        for (HostInfo hostInfo : hosts) {
+            refresh(hostInfo, force);
+        }
+    }
+
+    /**
+     * Probes a host if its status is not current. The registered listeners are notified if its
+     * status changes
+     * @param hostInfo Host to check
+     * @param force Whether to probe the host even if its status is current
+     */
+    public void refresh(final HostInfo hostInfo, boolean force) {
+        final Prober currentProber;
+        final Executor executor;
+        synchronized (this) {
+            CachedStatus cachedStatus = statuses.get(hostInfo.getId());
+            if (!force && (cachedStatus != null) &&
+                cachedStatus.isFor(hostInfo) && cachedStatus.isCurrent())
+                return;
+            if (!probing.add(hostInfo.getId()))
+                return;
+            currentProber = prober;
+            executor = probeExecutor;
+        }
+
+        Runnable probe = new Runnable() {
+            @Override
+            public void run() {
+                final int status = currentProber.probe(hostInfo);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        setStatus(hostInfo, status);
+                    }
+                });
+            }
+        };
+        if (executor != null) {
+            executor.execute(probe);
+        } else {
+            HostTransport.getInstance().execute(hostInfo, probe);
+        }
+    }
+
+    /**
+     * Replaces how hosts are probed. For testing
+     * @param prober Prober to use, or null to ping the hosts
+     * @param executor Executor to run the probes on, or null to use the shared transport threads
+     */
+    synchronized void setProber(Prober prober, Executor executor) {
+        this.prober = (prober != null) ? prober : PING_PROBER;
+        this.probeExecutor = executor;
+    }
+
+    /**
+     * Invalidates the cached statuses, so that the next refresh probes all the hosts
+     */
+    public synchronized void invalidate() {
+        statuses.clear();
+    }
+
+    private void setStatus(HostInfo hostInfo, int status) {
+        int previousStatus;
+        synchronized (this) {
+            probing.remove(hostInfo.getId());
+            previousStatus = getStatus(hostInfo);
+            statuses.put(hostInfo.getId(), new CachedStatus(hostInfo, status));
+        }
+
+        if (status == previousStatus)
+            return;
+        LogUtils.LOGD(TAG, "Host " + hostInfo.getName() + " is now " +
+                           ((status == STATUS_AVAILABLE) ? "available" : "unavailable"));
+        // Copy, as listeners may unregister themselves
+        for (StatusListener listener : new ArrayList<>(listeners)) {
+            listener.onHostStatusChanged(hostInfo, status);
+        }
+    }
+}
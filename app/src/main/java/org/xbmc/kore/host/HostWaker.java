@@ -0,0 +1,516 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.host;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiException;
+import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.JSONRPC;
+import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.NetUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wakes up a host with Wake on LAN and detects when it's ready as soon as possible.
+ * <p>
+ * After sending the magic packet, the host's HTTP and TCP ports are probed in parallel, with
+ * short timeouts that grow while it doesn't answer. Once a port accepts connections, the host
+ * is ready when it answers a {@link JSONRPC.Ping}. The probes are steps scheduled on a thread of
+ * the waker, and the ping is sent asynchronously, so no thread is held waiting between them.
+ * <p>
+ * Meanwhile, the calls made on the host's connection are held back, instead of failing after
+ * the connect timeout, and are sent in order as soon as the host is ready. If it doesn't
+ * wake up in {@link #WAKE_TIMEOUT}, their error callbacks are called.
+ * <p>
+ * Every call is held, except that a getter, like the observers' polls, replaces an identical
+ * one already held, so that they don't pile up during the wake up. The replaced ones fail
+ * right away, as do the oldest ones past {@link #MAX_HELD_CALLS}.
+ */
+public class HostWaker {
+    private static final String TAG = LogUtils.makeLogTag(HostWaker.class);
+
+    /**
+     * Time to wait for the host to wake up, in ms
+     */
+    public static final long WAKE_TIMEOUT = TimeUnit.MINUTES.toMillis(2);
+
+    /**
+     * Connect timeouts of the successive probes, in ms. The last one is used from then on
+     */
+    private static final int[] PROBE_TIMEOUTS = {250, 500, 1000, 2000};
+
+    /**
+     * Minimum time to wait for the answer to the ping, once a port is open, in ms
+     */
+    private static final int PING_TIMEOUT = 2000;
+
+    /**
+     * Interval at which the magic packet is sent again, as it may get lost, in ms
+     */
+    private static final long WOL_RESEND_INTERVAL = 10000;
+
+    /**
+     * Maximum number of calls held back per host
+     */
+    static final int MAX_HELD_CALLS = 16;
+
+    /**
+     * Interface to be notified of the outcome of a wake up
+     */
+    public interface WakeListener {
+        /**
+         * The host answered
+         * @param hostInfo Host woken up
+         * @param timeToReady Time from sending the magic packet until the host answered, in ms
+         */
+        void onHostReady(HostInfo hostInfo, long timeToReady);
+
+        /**
+         * The host didn't answer in {@link #WAKE_TIMEOUT}
+         * @param hostInfo Host
+         */
+        void onHostNotReady(HostInfo hostInfo);
+    }
+
+    /**
+     * Sends the Wake on LAN magic packet
+     */
+    interface WolSender {
+        void send(HostInfo hostInfo);
+    }
+
+    private static final WolSender DEFAULT_WOL_SENDER = new WolSender() {
+        @Override
+        public void send(HostInfo hostInfo) {
+            NetUtils.sendWolMagicPacket(hostInfo.getMacAddress(),
+                                        hostInfo.getAddress(), hostInfo.getWolPort());
+        }
+    };
+
+    private static HostWaker instance = null;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService probeExecutor;
+    private final HashMap<Integer, Wake> wakes = new HashMap<>();
+    private volatile WolSender wolSender = DEFAULT_WOL_SENDER;
+
+    /**
+     * Returns the singleton
+     */
+    public static synchronized HostWaker getInstance() {
+        if (instance == null) {
+            instance = new HostWaker();
+        }
+        return instance;
+    }
+
+    private HostWaker() {
+        probeExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "HostWaker");
+            }
+        });
+    }
+
+    /**
+     * Returns whether a host is being woken up
+     * @param hostInfo Host
+     */
+    public synchronized boolean isWaking(HostInfo hostInfo) {
+        return wakes.containsKey(hostInfo.getId());
+    }
+
+    /**
+     * For testing: replaces the sender of the magic packet
+     * @param wolSender Sender to use, null to restore the default one
+     */
+    void setWolSender(WolSender wolSender) {
+        this.wolSender = (wolSender != null) ? wolSender : DEFAULT_WOL_SENDER;
+    }
+
+    /**
+     * For testing: returns the names of the methods being held back for a host, in the order
+     * they'll be sent
+     * @param hostInfo Host
+     */
+    List<String> getHeldMethods(HostInfo hostInfo) {
+        Wake wake;
+        synchronized (this) {
+            wake = wakes.get(hostInfo.getId());
+        }
+        List<String> methods = new ArrayList<>();
+        if (wake != null) {
+            synchronized (wake) {
+                for (HeldCall<?> call : wake.heldCalls) {
+                    methods.add(call.method.getMethodName());
+                }
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Wakes up a host. If it's already being woken up, the listener is added to the ongoing
+     * wake up instead
+     * @param hostInfo Host to wake up
+     * @param hostConnection Connection to the host whose calls are held back until it's ready,
+     *                       can be null
+     * @param listener Listener to notify on the main thread, can be null
+     */
+    public void wake(HostInfo hostInfo, HostConnection hostConnection, WakeListener listener) {
+        Wake wake;
+        synchronized (this) {
+            wake = wakes.get(hostInfo.getId());
+            if (wake != null) {
+                wake.addListener(listener);
+                return;
+            }
+            wake = new Wake(hostInfo, hostConnection);
+            wake.addListener(listener);
+            wakes.put(hostInfo.getId(), wake);
+        }
+        if (hostConnection != null) {
+            hostConnection.setRequestGate(wake);
+        }
+        probeExecutor.execute(wake);
+    }
+
+    /**
+     * Returns whether two calls are the same getter, so that the later one can replace the
+     * earlier one. Other calls, like repeated key presses, are all sent
+     */
+    private static boolean isSameGetter(ApiMethod<?> method, ApiMethod<?> other) {
+        String methodName = method.getMethodName();
+        if (!methodName.equals(other.getMethodName()) ||
+            !(methodName.contains(".Get") || methodName.equals(JSONRPC.Ping.METHOD_NAME)))
+            return false;
+        JsonNode params = method.toJsonObject().get(ApiMethod.PARAMS_NODE);
+        JsonNode otherParams = other.toJsonObject().get(ApiMethod.PARAMS_NODE);
+        return (params == null) ? (otherParams == null) : params.equals(otherParams);
+    }
+
+    /**
+     * Call held back while waking up the host
+     */
+    private static class HeldCall<T> {
+        final ApiMethod<T> method;
+        final ApiCallback<T> callback;
+        final Handler handler;
+
+        HeldCall(ApiMethod<T> method, ApiCallback<T> callback, Handler handler) {
+            this.method = method;
+            this.callback = callback;
+            this.handler = handler;
+        }
+
+        void execute(HostConnection hostConnection) {
+            hostConnection.execute(method, callback, handler);
+        }
+
+        void fail(final int errorCode, final String description) {
+            if (callback == null)
+                return;
+            Runnable error = new Runnable() {
+                @Override
+                public void run() {
+                    callback.onError(errorCode, description);
+                }
+            };
+            if (handler != null) {
+                handler.post(error);
+            } else {
+                error.run();
+            }
+        }
+    }
+
+    /**
+     * A wake up in progress, that holds back the calls on the host connection until it's done
+     */
+    private class Wake implements Runnable, HostConnection.RequestGate {
+        final HostInfo hostInfo;
+        final HostConnection hostConnection;
+        final List<WakeListener> listeners = new ArrayList<>();
+        final List<HeldCall<?>> heldCalls = new ArrayList<>();
+        boolean done = false;
+
+        // Only used on the probe thread
+        long start = -1, lastWol, probeStartedAt;
+        int attempt = 0, probeTimeout;
+        HostConnection pingConnection;
+        ScheduledFuture<?> pingTimeout;
+
+        Wake(HostInfo hostInfo, HostConnection hostConnection) {
+            this.hostInfo = hostInfo;
+            this.hostConnection = hostConnection;
+        }
+
+        synchronized void addListener(WakeListener listener) {
+            if (listener != null)
+                listeners.add(listener);
+        }
+
+        @Override
+        public synchronized <T> boolean hold(ApiMethod<T> method, ApiCallback<T> callback, Handler handler) {
+            if (done)
+                return false;
+            LogUtils.LOGD(TAG, "Holding back " + method.getMethodName() + " until the host is ready");
+            for (Iterator<HeldCall<?>> iterator = heldCalls.iterator(); iterator.hasNext(); ) {
+                HeldCall<?> call = iterator.next();
+                if (isSameGetter(call.method, method)) {
+                    iterator.remove();
+                    call.fail(ApiException.IO_EXCEPTION_WHILE_CONNECTING,
+                              "Superseded by a newer call while the host wakes up");
+                    break;
+                }
+            }
+            if (heldCalls.size() >= MAX_HELD_CALLS) {
+                heldCalls.remove(0).fail(ApiException.IO_EXCEPTION_WHILE_CONNECTING,
+                                         "Too many calls while the host wakes up");
+            }
+            heldCalls.add(new HeldCall<>(method, callback, handler));
+            return true;
+        }
+
+        /**
+         * Runs a probe on the probe thread, sending the magic packet first if it's due
+         */
+        @Override
+        public void run() {
+            probeStartedAt = SystemClock.elapsedRealtime();
+            if (start == -1) {
+                start = probeStartedAt;
+            }
+            if ((attempt == 0) || (probeStartedAt - lastWol >= WOL_RESEND_INTERVAL)) {
+                wolSender.send(hostInfo);
+                lastWol = probeStartedAt;
+            }
+
+            probeTimeout = PROBE_TIMEOUTS[Math.min(attempt, PROBE_TIMEOUTS.length - 1)];
+            attempt++;
+            if (isPortOpen(probeTimeout)) {
+                ping(probeTimeout);
+            } else {
+                scheduleNextProbe();
+            }
+        }
+
+        /**
+         * Schedules the next probe, or gives up if the host didn't wake up in time
+         */
+        private void scheduleNextProbe() {
+            long now = SystemClock.elapsedRealtime();
+            if (now - start >= WAKE_TIMEOUT) {
+                finish(false, now - start);
+                return;
+            }
+            // Refused connections fail right away, don't spin on them
+            probeExecutor.schedule(this, Math.max(0, probeStartedAt + probeTimeout - now),
+                                   TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Probes the HTTP and TCP ports in parallel
+         * @return Whether any of them accepted a connection in the timeout
+         */
+        private boolean isPortOpen(int timeout) {
+            Selector selector = null;
+            List<SocketChannel> channels = new ArrayList<>(2);
+            try {
+                selector = Selector.open();
+                for (int port : new int[] {hostInfo.getHttpPort(), hostInfo.getTcpPort()}) {
+                    SocketChannel channel = SocketChannel.open();
+                    channels.add(channel);
+                    channel.configureBlocking(false);
+                    if (channel.connect(new InetSocketAddress(hostInfo.getAddress(), port)))
+                        return true;
+                    channel.register(selector, SelectionKey.OP_CONNECT);
+                }
+
+                long deadline = SystemClock.elapsedRealtime() + timeout;
+                long remaining;
+                while ((remaining = deadline - SystemClock.elapsedRealtime()) > 0) {
+                    if (selector.select(remaining) == 0)
+                        continue;
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        try {
+                            if (((SocketChannel) key.channel()).finishConnect())
+                                return true;
+                        } catch (IOException e) {
+                            // This port refused the connection
+                            key.cancel();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                    if (selector.keys().size() == countCancelled(selector))
+                        return false;
+                }
+                return false;
+            } catch (IOException | IllegalArgumentException e) {
+                return false;
+            } finally {
+                for (SocketChannel channel : channels) {
+                    closeQuietly(channel);
+                }
+                if (selector != null) {
+                    try {
+                        selector.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+            }
+        }
+
+        private int countCancelled(Selector selector) {
+            int cancelled = 0;
+            for (SelectionKey key : selector.keys()) {
+                if (!key.isValid())
+                    cancelled++;
+            }
+            return cancelled;
+        }
+
+        /**
+         * Checks that Kodi answers on the JSON RPC API, and not just the network stack. The
+         * answer, or its timeout, is handled on the probe thread
+         */
+        private void ping(int timeout) {
+            final HostConnection connection = new HostConnection(hostInfo, timeout);
+            pingConnection = connection;
+            pingTimeout = probeExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    pingAnswered(connection, false, "Timed out");
+                }
+            }, Math.max(timeout, PING_TIMEOUT), TimeUnit.MILLISECONDS);
+            // Answered on the connection's thread, handled on the probe thread
+            connection.execute(new JSONRPC.Ping(), new ApiCallback<String>() {
+                @Override
+                public void onSuccess(String result) {
+                    onAnswer(true, null);
+                }
+
+                @Override
+                public void onError(int errorCode, String description) {
+                    onAnswer(false, description);
+                }
+
+                private void onAnswer(final boolean answered, final String error) {
+                    probeExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            pingAnswered(connection, answered, error);
+                        }
+                    });
+                }
+            }, null);
+        }
+
+        private void pingAnswered(HostConnection connection, boolean answered, String error) {
+            // Only the first outcome of the current ping counts
+            if (connection != pingConnection)
+                return;
+            pingConnection = null;
+            pingTimeout.cancel(false);
+            connection.disconnect();
+            if (answered) {
+                finish(true, SystemClock.elapsedRealtime() - start);
+            } else {
+                LogUtils.LOGD(TAG, "Host " + hostInfo.getName() + " isn't answering yet: " + error);
+                scheduleNextProbe();
+            }
+        }
+
+        private void finish(final boolean ready, final long timeToReady) {
+            final List<WakeListener> listenersToNotify;
+            synchronized (HostWaker.this) {
+                wakes.remove(hostInfo.getId());
+            }
+            // Calls made meanwhile wait on the lock, so that they're sent after the held ones
+            synchronized (this) {
+                // Let the held calls through the gate
+                done = true;
+                if (ready) {
+                    LogUtils.LOGD(TAG, "Host " + hostInfo.getName() + " ready in " + timeToReady +
+                                       " ms, sending " + heldCalls.size() + " held back calls");
+                    for (HeldCall<?> call : heldCalls) {
+                        call.execute(hostConnection);
+                    }
+                } else {
+                    LogUtils.LOGD(TAG, "Host " + hostInfo.getName() + " didn't wake up in " +
+                                       timeToReady + " ms");
+                    for (HeldCall<?> call : heldCalls) {
+                        call.fail(ApiException.IO_EXCEPTION_WHILE_CONNECTING,
+                                  "Host didn't wake up in " + (WAKE_TIMEOUT / 1000) + " s");
+                    }
+                }
+                heldCalls.clear();
+                listenersToNotify = new ArrayList<>(listeners);
+            }
+            if (hostConnection != null) {
+                hostConnection.setRequestGate(null);
+            }
+            if (ready) {
+                HostReachability.getInstance().refresh(hostInfo, true);
+            }
+
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (WakeListener listener : listenersToNotify) {
+                        if (ready) {
+                            listener.onHostReady(hostInfo, timeToReady);
+                        } else {
+                            listener.onHostNotReady(hostInfo);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.host;
+
+import android.os.SystemClock;
+
+import org.xbmc.kore.jsonrpc.type.GlobalType;
+import org.xbmc.kore.jsonrpc.type.PlayerType;
+
+/**
+ * Client side model of the playback position on Kodi.
+ * <p>
+ * The clock is anchored on the last position reported by Kodi (through
+ * {@link org.xbmc.kore.jsonrpc.method.Player.GetProperties} or a player notification) and
+ * extrapolates the current position from the elapsed time and the play speed, so that the
+ * remote, the now playing panel and the notification can show the playback position without
+ * asking Kodi for it. {@link HostConnectionObserver} keeps it up to date, and only asks Kodi
+ * for the position when it suspects it drifted.
+ * <p>
+ * All the methods should be called on the main thread.
+ */
+public class PlaybackClock {
+    /**
+     * Difference between the extrapolated and the reported position above which the
+     * observers should be refreshed, in ms
+     */
+    public static final long DRIFT_THRESHOLD = 2000;
+
+    private int playerId = -1;
+    private int speed = 0;
+    private long anchorPosition = 0;
+    private long anchorRealtime = 0;
+    private long totalTime = 0;
+
+    /**
+     * Anchors the clock on the properties returned by Kodi
+     * @param playerId Player id the properties refer to
+     * @param propertyValue Result of {@link org.xbmc.kore.jsonrpc.method.Player.GetProperties},
+     *                      with at least the speed and time properties
+     * @return Difference between the position extrapolated before this update and the reported
+     * one, in ms. 0 if the clock wasn't anchored on this player before
+     */
+    public long update(int playerId, PlayerType.PropertyValue propertyValue) {
+        if (propertyValue.time == null) {
+            setSpeed(propertyValue.speed);
+            return 0;
+        }
+
+        long reported = toMillis(propertyValue.time);
+        long drift = (this.playerId == playerId) ? getPositionMillis() - reported : 0;
+
+        this.playerId = playerId;
+        this.speed = propertyValue.speed;
+        if (propertyValue.totaltime != null) {
+            this.totalTime = toMillis(propertyValue.totaltime);
+        }
+        anchor(reported);
+        return drift;
+    }
+
+    /**
+     * Moves the clock to a new position, keeping the speed. Call this on Player.OnSeek or when
+     * the user seeks
+     * @param time New position
+     */
+    public void seek(GlobalType.Time time) {
+        if (time == null) return;
+        anchor(toMillis(time));
+    }
+
+    /**
+     * Moves the clock to a new position, keeping the speed
+     * @param seconds New position, in seconds
+     */
+    public void seekToSeconds(int seconds) {
+        anchor(seconds * 1000L);
+    }
+
+    /**
+     * Changes the speed, keeping the current position. Call this on Player.OnSpeedChanged,
+     * OnPause or OnResume
+     * @param speed New play speed. 0 when paused
+     */
+    public void setSpeed(int speed) {
+        if (speed == this.speed) return;
+        anchor(getPositionMillis());
+        this.speed = speed;
+    }
+
+    /**
+     * Stops the clock, when nothing is playing or the connection is lost
+     */
+    public void reset() {
+        playerId = -1;
+        speed = 0;
+        totalTime = 0;
+        anchor(0);
+    }
+
+    /**
+     * Returns whether the clock is anchored on a player
+     */
+    public boolean isActive() {
+        return playerId != -1;
+    }
+
+    /**
+     * Returns whether the position is moving
+     */
+    public boolean isRunning() {
+        return isActive() && (speed != 0);
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public int getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Returns the extrapolated position, in ms. Clamped between 0 and the total time (if known)
+     */
+    public long getPositionMillis() {
+        long position = anchorPosition + (SystemClock.elapsedRealtime() - anchorRealtime) * speed;
+        if (position < 0) return 0;
+        if ((totalTime > 0) && (position > totalTime)) return totalTime;
+        return position;
+    }
+
+    /**
+     * Returns the extrapolated position, in seconds
+     */
+    public int getPosition() {
+        return (int) (getPositionMillis() / 1000);
+    }
+
+    /**
+     * Returns the total time of the item being played, in seconds, or 0 if unknown
+     */
+    public int getTotalTime() {
+        return (int) (totalTime / 1000);
+    }
+
+    private void anchor(long position) {
+        anchorPosition = position;
+        anchorRealtime = SystemClock.elapsedRealtime();
+    }
+
+    private static long toMillis(GlobalType.Time time) {
+        return time.ToSeconds() * 1000L + time.milliseconds;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.host;
+
+import android.os.Handler;
+
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiException;
+import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.Playlist;
+import org.xbmc.kore.jsonrpc.type.PlaylistType;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Queues edits made locally to Kodi playlists, and sends them to Kodi in a single JSON RPC
+ * batch request.
+ * <p>
+ * The edits are applied locally right away by the caller, and queued here with the positions
+ * they refer to at the time they were made. On {@link #commit()} they're translated to the
+ * cheapest sequence of Playlist.Swap/Remove/Insert calls and sent in one request. Only one
+ * batch is in flight at a time; edits made meanwhile are sent when it finishes.
+ * <p>
+ * Kodi has no method to move an item, and the playing item can't be removed, so moving it takes
+ * one swap per position crossed. They're all sent in the same batch, so it's still a single
+ * round trip.
+ * <p>
+ * The connection is resolved on each commit, so that edits follow the current host.
+ * <p>
+ * If a batch fails the local playlist can't be trusted anymore, so the queued edits are
+ * dropped, and the {@link Listener} should reload the playlist from Kodi once.
+ * <p>
+ * All the methods should be called on the thread of the handler given on the constructor.
+ */
+public class PlaylistEditor {
+    private static final String TAG = LogUtils.makeLogTag(PlaylistEditor.class);
+
+    /**
+     * Distance up to which a move is sent as a sequence of swaps instead of a remove and insert
+     */
+    private static final int MAX_SWAPS_PER_MOVE = 2;
+
+    /**
+     * Interface to be notified of the outcome of the commits
+     */
+    public interface Listener {
+        /**
+         * All the edits committed were applied on Kodi
+         */
+        void onEditsApplied();
+
+        /**
+         * Some edit failed to apply. The playlists should be reloaded from Kodi
+         * @param errorCode Error code
+         * @param description Error description
+         */
+        void onEditsFailed(int errorCode, String description);
+    }
+
+    private static class Edit {
+        static final int MOVE = 0, REMOVE = 1, INSERT = 2;
+
+        final int type;
+        final int playlistId;
+        final int from;
+        int to;
+        final PlaylistType.Item item;
+
+        Edit(int type, int playlistId, int from, int to, PlaylistType.Item item) {
+            this.type = type;
+            this.playlistId = playlistId;
+            this.from = from;
+            this.to = to;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Returns the connection on which to send the edits
+     */
+    interface ConnectionProvider {
+        /**
+         * @return Current connection, or null if there's none
+         */
+        HostConnection getConnection();
+    }
+
+    private final ConnectionProvider connectionProvider;
+    private final Handler callbackHandler;
+    private Listener listener;
+
+    private final ArrayList<Edit> pendingEdits = new ArrayList<>();
+    private boolean batchInFlight = false;
+
+    /**
+     * Creates an editor
+     * @param hostManager Host manager, whose current connection is used to send the edits
+     * @param callbackHandler Handler on which the listener is called
+     */
+    public PlaylistEditor(final HostManager hostManager, Handler callbackHandler) {
+        this(new ConnectionProvider() {
+            @Override
+            public HostConnection getConnection() {
+                return hostManager.getConnection();
+            }
+        }, callbackHandler);
+    }
+
+    /**
+     * Creates an editor that gets its connection from a provider. For testing
+     */
+    PlaylistEditor(ConnectionProvider connectionProvider, Handler callbackHandler) {
+        this.connectionProvider = connectionProvider;
+        this.callbackHandler = callbackHandler;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues moving an item
+     * @param playlistId Playlist id
+     * @param from Position of the item
+     * @param to Position to move the item to
+     * @param item Item to move, used to insert it again on the new position. Pass null if it can't
+     *             be removed and inserted (it's playing, or it isn't a library item), so that it
+     *             is moved through swaps
+     */
+    public void move(int playlistId, int from, int to, PlaylistType.Item item) {
+        if (from == to) return;
+
+        // Merge with the previous move of the same item
+        if (!pendingEdits.isEmpty()) {
+            Edit last = pendingEdits.get(pendingEdits.size() - 1);
+            if ((last.type == Edit.MOVE) && (last.playlistId == playlistId) &&
+                (last.to == from) && ((last.item == null) == (item == null))) {
+                last.to = to;
+                if (last.from == last.to)
+                    pendingEdits.remove(pendingEdits.size() - 1);
+                return;
+            }
+        }
+        pendingEdits.add(new Edit(Edit.MOVE, playlistId, from, to, item));
+    }
+
+    /**
+     * Queues removing an item
+     * @param playlistId Playlist id
+     * @param position Position of the item
+     */
+    public void remove(int playlistId, int position) {
+        pendingEdits.add(new Edit(Edit.REMOVE, playlistId, position, position, null));
+    }
+
+    /**
+     * Queues removing several items, for instance after a multiple selection
+     * @param playlistId Playlist id
+     * @param positions Positions of the items, before removing any of them
+     */
+    public void remove(int playlistId, int[] positions) {
+        int[] sortedPositions = positions.clone();
+        Arrays.sort(sortedPositions);
+        // Remove from the end, so that the positions of the remaining items don't change
+        for (int i = sortedPositions.length - 1; i >= 0; i--) {
+            remove(playlistId, sortedPositions[i]);
+        }
+    }
+
+    /**
+     * Queues inserting an item
+     * @param playlistId Playlist id
+     * @param position Position to insert the item on
+     * @param item Item to insert
+     */
+    public void insert(int playlistId, int position, PlaylistType.Item item) {
+        pendingEdits.add(new Edit(Edit.INSERT, playlistId, position, position, item));
+    }
+
+    /**
+     * Returns whether there are edits not yet sent to Kodi
+     */
+    public boolean hasPendingEdits() {
+        return !pendingEdits.isEmpty();
+    }
+
+    /**
+     * Sends the queued edits to Kodi. If a batch is in flight, they are sent when it finishes.
+     * If there's no connection the edits are dropped, and the listener is told they failed
+     */
+    public void commit() {
+        if (batchInFlight || pendingEdits.isEmpty())
+            return;
+
+        List<ApiMethod<String>> methods = buildMethods(pendingEdits);
+        pendingEdits.clear();
+
+        HostConnection hostConnection = connectionProvider.getConnection();
+        if (hostConnection == null) {
+            LogUtils.LOGW(TAG, "No connection to commit the playlist edits on");
+            if (listener != null)
+                listener.onEditsFailed(ApiException.IO_EXCEPTION_WHILE_CONNECTING,
+                                       "No connection to the host");
+            return;
+        }
+
+        batchInFlight = true;
+        LogUtils.LOGD(TAG, "Committing " + methods.size() + " playlist edits");
+        hostConnection.executeBatch(methods, new ApiCallback<Integer>() {
+            @Override
+            public void onSuccess(Integer result) {
+                batchInFlight = false;
+                if (!pendingEdits.isEmpty()) {
+                    commit();
+                } else if (listener != null) {
+                    listener.onEditsApplied();
+                }
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                LogUtils.LOGW(TAG, "Failed to apply playlist edits: " + description);
+                batchInFlight = false;
+                // The queued edits refer to a playlist that's not what we thought it was
+                pendingEdits.clear();
+                if (listener != null)
+                    listener.onEditsFailed(errorCode, description);
+            }
+        }, callbackHandler);
+    }
+
+    /**
+     * Translates the edits to JSON RPC methods
+     */
+    private static List<ApiMethod<String>> buildMethods(List<Edit> edits) {
+        ArrayList<ApiMethod<String>> methods = new ArrayList<>();
+        for (Edit edit : edits) {
+            switch (edit.type) {
+                case Edit.MOVE:
+                    int distance = Math.abs(edit.to - edit.from);
+                    if ((edit.item == null) || (distance <= MAX_SWAPS_PER_MOVE)) {
+                        int step = (edit.to > edit.from) ? 1 : -1;
+                        for (int i = edit.from; i != edit.to; i += step) {
+                            methods.add(new Playlist.Swap(edit.playlistId, i, i + step));
+                        }
+                    } else {
+                        methods.add(new Playlist.Remove(edit.playlistId, edit.from));
+                        methods.add(new Playlist.Insert(edit.playlistId, edit.to, edit.item));
+                    }
+                    break;
+                case Edit.REMOVE:
+                    methods.add(new Playlist.Remove(edit.playlistId, edit.from));
+                    break;
+                case Edit.INSERT:
+                    methods.add(new Playlist.Insert(edit.playlistId, edit.from, edit.item));
+                    break;
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Returns the methods that would be sent for the queued edits. For testing
+     */
+    List<ApiMethod<String>> getPendingMethods() {
+        return buildMethods(pendingEdits);
+    }
+}
@@ -19,6 +19,7 @@ package org.xbmc.kore.host.actions;
 
 import androidx.annotation.Nullable;
 
+import org.xbmc.kore.jsonrpc.ApiException;
 import org.xbmc.kore.jsonrpc.ApiMethod;
 import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.jsonrpc.method.Playlist;
@@ -30,11 +31,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Retrieves the playlist items for the first non-empty playlist or null if no playlists are
  * available.
+ * <p>
+ * It runs on a {@link org.xbmc.kore.jsonrpc.HostTransport} worker, so its requests are sent on
+ * that thread instead of waiting for other workers of the same host.
  */
 public class GetPlaylist implements Callable<ArrayList<GetPlaylist.GetPlaylistResult>> {
     private static final String TAG = LogUtils.makeLogTag(GetPlaylist.class);
@@ -94,7 +97,7 @@ public class GetPlaylist implements Callable<ArrayList<GetPlaylist.GetPlaylistRe
     }
 
     @Override
-    public ArrayList<GetPlaylistResult> call() throws ExecutionException, InterruptedException {
+    public ArrayList<GetPlaylistResult> call() throws ApiException {
         if (playlistsTypesAndIds == null)
             playlistsTypesAndIds = getPlaylists(hostConnection);
 
@@ -112,20 +115,17 @@ public class GetPlaylist implements Callable<ArrayList<GetPlaylist.GetPlaylistRe
             return retrieveNonEmptyPlaylists();
     }
 
-    private GetPlaylistResult retrievePlaylistItemsForId(int playlistId) throws InterruptedException,
-                                                                                ExecutionException {
+    private GetPlaylistResult retrievePlaylistItemsForId(int playlistId) throws ApiException {
         List<ListType.ItemsAll> playlistItems = retrievePlaylistItems(hostConnection, playlistId);
         return new GetPlaylistResult(playlistId, getPlaylistType(playlistId), playlistItems);
     }
 
-    private GetPlaylistResult retrievePlaylistItemsForType(String type) throws InterruptedException,
-                                                                     ExecutionException {
+    private GetPlaylistResult retrievePlaylistItemsForType(String type) throws ApiException {
         List<ListType.ItemsAll> playlistItems = retrievePlaylistItems(hostConnection, playlistsTypesAndIds.get(type));
         return new GetPlaylistResult(playlistsTypesAndIds.get(type), type, playlistItems);
     }
 
-    private ArrayList<GetPlaylistResult> retrieveNonEmptyPlaylists() throws InterruptedException,
-                                                                     ExecutionException {
+    private ArrayList<GetPlaylistResult> retrieveNonEmptyPlaylists() throws ApiException {
         ArrayList<GetPlaylistResult> playlists = new ArrayList<>();
 
         for (String type : playlistsTypesAndIds.keySet()) {
@@ -138,9 +138,9 @@ public class GetPlaylist implements Callable<ArrayList<GetPlaylist.GetPlaylistRe
     }
 
     private HashMap<String, Integer> getPlaylists(HostConnection hostConnection)
-            throws ExecutionException, InterruptedException {
+            throws ApiException {
         HashMap<String, Integer> playlistsHashMap = new HashMap<>();
-        ArrayList<PlaylistType.GetPlaylistsReturnType> playlistsReturnTypes = hostConnection.execute(new Playlist.GetPlaylists()).get();
+        ArrayList<PlaylistType.GetPlaylistsReturnType> playlistsReturnTypes = hostConnection.executeOnCurrentThread(new Playlist.GetPlaylists());
         for (PlaylistType.GetPlaylistsReturnType type : playlistsReturnTypes) {
             playlistsHashMap.put(type.type, type.playlistid);
         }
@@ -149,11 +149,11 @@ public class GetPlaylist implements Callable<ArrayList<GetPlaylist.GetPlaylistRe
 
     private List<ListType.ItemsAll> retrievePlaylistItems(HostConnection hostConnection,
                                                                      int playlistId)
-            throws InterruptedException, ExecutionException {
+            throws ApiException {
 
         ApiMethod<List<ListType.ItemsAll>> apiMethod = new Playlist.GetItems(playlistId,
                                                                              propertiesToGet);
-        return hostConnection.execute(apiMethod).get();
+        return hostConnection.executeOnCurrentThread(apiMethod);
     }
 
     private String getPlaylistType(int playlistId) {
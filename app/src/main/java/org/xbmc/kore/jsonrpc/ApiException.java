@@ -80,6 +80,7 @@ public class ApiException extends Exception {
     public static int API_WAITING_ON_RESULT_INTERRUPTED = 104;
 
     private int code;
+    private int jsonRpcCode = 0;
 
 	/**
 	 * Constructor
@@ -111,6 +112,9 @@ public class ApiException extends Exception {
                 JsonUtils.stringFromJsonNode(jsonResponse.get(ApiMethod.ERROR_NODE), "message") :
                 "No message returned");
 		this.code = code;
+		if (jsonResponse.get(ApiMethod.ERROR_NODE) != null) {
+			this.jsonRpcCode = JsonUtils.intFromJsonNode(jsonResponse.get(ApiMethod.ERROR_NODE), "code", 0);
+		}
 	}
 
 	/**
@@ -120,4 +124,12 @@ public class ApiException extends Exception {
 	public int getCode() {
 		return code;
 	}
+
+	/**
+	 * Error code returned by Kodi, like -32602 for invalid params
+	 * @return JSON RPC error code, or 0 if the error wasn't returned by Kodi
+	 */
+	public int getJsonRpcCode() {
+		return jsonRpcCode;
+	}
 }
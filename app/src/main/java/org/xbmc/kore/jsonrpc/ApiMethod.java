@@ -26,7 +26,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.xbmc.kore.jsonrpc.type.ApiParameter;
 import org.xbmc.kore.utils.LogUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Abstract class base of all the JSON RPC API calls
@@ -209,6 +211,32 @@ public abstract class ApiMethod<T> {
 	 */
 	public ObjectNode toJsonObject() { return jsonRequest; }
 
+	/**
+	 * Writes the json representation of the current method to a stream, as UTF-8, without
+	 * building its string. Requests that are sent repeatedly with the same parameters are
+	 * written from a cached template.
+	 * @param out Stream to write to. It isn't flushed nor closed
+	 * @return Number of bytes written
+	 */
+	public int writeJson(OutputStream out) throws IOException {
+		return RequestTemplates.getInstance().write(this, out);
+	}
+
+	/**
+	 * Returns the UTF-8 json representation of the current method, see {@link #writeJson(OutputStream)}
+	 * @return Json representation of the current method
+	 */
+	public byte[] toJsonBytes() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+		try {
+			writeJson(out);
+		} catch (IOException e) {
+			// Not thrown by an in-memory stream
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+
 //	/**
 //	 * Calls the method represented by this object on the server.
 //	 * This call is always asynchronous. The results will be posted, through the callback parameter,
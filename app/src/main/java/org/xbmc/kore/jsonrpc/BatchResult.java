@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Martijn Brekhof. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.jsonrpc;
+
+import java.util.List;
+
+/**
+ * Results of the methods of a JSON RPC batch request, in the same order as the methods.
+ * <p>
+ * Kodi executes each method of a batch independently, so each one has either a result or an
+ * error of its own, and a failed method doesn't invalidate the results of the others.
+ *
+ * @param <T> The type of the return value of the methods
+ */
+public class BatchResult<T> {
+    private final List<T> results;
+    private final List<ApiException> errors;
+
+    /**
+     * Creates the results of a batch
+     * @param results Results of the methods, null for the ones that failed
+     * @param errors Errors of the methods, null for the ones that succeeded
+     */
+    public BatchResult(List<T> results, List<ApiException> errors) {
+        this.results = results;
+        this.errors = errors;
+    }
+
+    /**
+     * Returns the number of methods on the batch
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Returns whether a method succeeded
+     * @param index Position of the method on the batch
+     */
+    public boolean isSuccess(int index) {
+        return errors.get(index) == null;
+    }
+
+    /**
+     * Returns the result of a method
+     * @param index Position of the method on the batch
+     * @return Result
+     * @throws ApiException The error returned by the method, if it failed
+     */
+    public T get(int index) throws ApiException {
+        ApiException error = errors.get(index);
+        if (error != null)
+            throw error;
+        return results.get(index);
+    }
+
+    /**
+     * Returns the result of a method, if it succeeded
+     * @param index Position of the method on the batch
+     * @return Result, or null if the method failed
+     */
+    public T getResult(int index) {
+        return results.get(index);
+    }
+
+    /**
+     * Returns the error of a method
+     * @param index Position of the method on the batch
+     * @return Error, or null if the method succeeded
+     */
+    public ApiException getError(int index) {
+        return errors.get(index);
+    }
+
+    /**
+     * Returns the first error of the batch
+     * @return Error, or null if all the methods succeeded
+     */
+    public ApiException getFirstError() {
+        for (ApiException error : errors) {
+            if (error != null)
+                return error;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.jsonrpc;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.HashMap;
+
+/**
+ * Coalesces commands that set an absolute value (seek position, volume level, ...) on Kodi.
+ * <p>
+ * Dragging a seek or volume bar generates a command for each step. Sent independently on the
+ * {@link HostConnection} pool they pile up on a busy host and may arrive out of order, making
+ * the value jump back. This class keeps at most one command in flight per target, and while it
+ * is in flight only the latest command sent to that target is kept pending, so:
+ * <ul>
+ *     <li>Commands to the same target are delivered in order</li>
+ *     <li>Intermediate values are dropped (elided). Their callbacks are not called</li>
+ *     <li>The last value is always delivered</li>
+ * </ul>
+ * Only use this with absolute value commands. Relative commands (increment, decrement, seek
+ * forward, ...) must all be delivered, and should be executed directly on the connection.
+ */
+public class CommandCoalescer {
+    private static final String TAG = LogUtils.makeLogTag(CommandCoalescer.class);
+
+    /**
+     * Targets of the coalesced commands
+     */
+    public static final String TARGET_VOLUME = "volume";
+    public static final String TARGET_SEEK = "seek";
+
+    /**
+     * Time after which a command still in flight is considered lost, and the pending
+     * command for its target is sent anyway
+     */
+    private static final long IN_FLIGHT_TIMEOUT = 10000;
+
+    private final HostConnection hostConnection;
+    private final Handler callbackHandler;
+
+    private final HashMap<String, Target> targets = new HashMap<>();
+    private int elidedCount = 0;
+
+    private static class Command<T> {
+        final ApiMethod<T> method;
+        final ApiCallback<T> callback;
+
+        Command(ApiMethod<T> method, ApiCallback<T> callback) {
+            this.method = method;
+            this.callback = callback;
+        }
+    }
+
+    private static class Target {
+        /** Time the in flight command was sent, or -1 if there's none */
+        long sentAt = -1;
+        /** Sequence number of the last command sent */
+        int sequence = 0;
+        Command<?> pending;
+    }
+
+    /**
+     * Creates a coalescer
+     * @param hostConnection Connection on which to execute the commands
+     * @param callbackHandler Handler on which the callbacks are called
+     */
+    public CommandCoalescer(HostConnection hostConnection, Handler callbackHandler) {
+        this.hostConnection = hostConnection;
+        this.callbackHandler = callbackHandler;
+    }
+
+    /**
+     * Executes a command, or replaces the pending command for the target if there's one in flight.
+     * @param target Target of the command, one of the TARGET_* constants. Commands with different
+     *               targets are independent
+     * @param method Method to execute
+     * @param callback Callback, called on the handler given on the constructor. Not called if the
+     *                 command is elided. May be null
+     */
+    public synchronized <T> void execute(String target, ApiMethod<T> method, ApiCallback<T> callback) {
+        Target t = targets.get(target);
+        if (t == null) {
+            t = new Target();
+            targets.put(target, t);
+        }
+
+        Command<T> command = new Command<>(method, callback);
+        if ((t.sentAt < 0) || (SystemClock.elapsedRealtime() - t.sentAt > IN_FLIGHT_TIMEOUT)) {
+            send(t, command);
+            return;
+        }
+
+        if (t.pending != null) {
+            elidedCount++;
+            LogUtils.LOGD(TAG, "Elided " + t.pending.method.getMethodName() + " on " + target +
+                               ". Total elided: " + elidedCount);
+        }
+        t.pending = command;
+    }
+
+    /**
+     * Returns the number of commands that were replaced by a newer one before being sent
+     */
+    public synchronized int getElidedCount() {
+        return elidedCount;
+    }
+
+    private <T> void send(final Target target, final Command<T> command) {
+        target.sentAt = SystemClock.elapsedRealtime();
+        final int sequence = ++target.sequence;
+
+        hostConnection.execute(command.method, new ApiCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                onCommandFinished(target, sequence);
+                if (command.callback != null) command.callback.onSuccess(result);
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                onCommandFinished(target, sequence);
+                if (command.callback != null) command.callback.onError(errorCode, description);
+            }
+        }, callbackHandler);
+    }
+
+    private synchronized void onCommandFinished(Target target, int sequence) {
+        // A newer command was sent after this one timed out, wait for that one
+        if (target.sequence != sequence) return;
+
+        target.sentAt = -1;
+        Command<?> next = target.pending;
+        target.pending = null;
+        if (next != null) {
+            send(target, next);
+        }
+    }
+}
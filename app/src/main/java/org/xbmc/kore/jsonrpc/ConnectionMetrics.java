@@ -0,0 +1,443 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.jsonrpc;
+
+import org.xbmc.kore.utils.StartupTrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects metrics of the JSON RPC methods executed by {@link HostConnection}, per method name
+ * and protocol.
+ * <p>
+ * Each call is split in phases, so that a slow call can be attributed to the right place:
+ * <ul>
+ *     <li>Queue: waiting for a worker thread</li>
+ *     <li>Network: from sending the request until the response is read</li>
+ *     <li>Decode: parsing the response into the result object</li>
+ *     <li>Callback: from the result being ready until the callback returns, including
+ *     the wait on the callback handler</li>
+ * </ul>
+ * Request and response sizes, in bytes, and the error codes are also recorded. Errors returned
+ * by Kodi are also counted by their JSON RPC error code.
+ */
+public class ConnectionMetrics {
+
+    public static final int PHASE_QUEUE = 0,
+            PHASE_NETWORK = 1,
+            PHASE_DECODE = 2,
+            PHASE_CALLBACK = 3;
+    private static final int PHASE_COUNT = 4;
+    private static final String[] PHASE_NAMES = {"queue", "network", "decode", "callback"};
+
+    /**
+     * Upper bounds of the histogram buckets, in ms. The last bucket has no upper bound
+     */
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private static ConnectionMetrics instance = null;
+
+    /**
+     * Returns the singleton, shared by all the connections
+     */
+    public static synchronized ConnectionMetrics getInstance() {
+        if (instance == null) {
+            instance = new ConnectionMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Latency histogram with fixed buckets
+     */
+    public static class Histogram {
+        private final long[] counts = new long[BUCKET_BOUNDS.length + 1];
+        private long count, sumNanos, maxNanos;
+
+        void add(long nanos) {
+            long ms = nanos / 1000000;
+            int bucket = 0;
+            while ((bucket < BUCKET_BOUNDS.length) && (ms > BUCKET_BOUNDS[bucket]))
+                bucket++;
+            counts[bucket]++;
+            count++;
+            sumNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return (count == 0) ? 0 : sumNanos / 1e6 / count;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * Returns the upper bound of the bucket that holds the given percentile, in ms, or -1
+         * if it's on the last, unbounded, bucket
+         * @param percentile Percentile, between 0 and 100
+         */
+        public long getPercentileMillis(double percentile) {
+            long target = (long) Math.ceil(count * percentile / 100);
+            long accumulated = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                accumulated += counts[i];
+                if (accumulated >= target)
+                    return BUCKET_BOUNDS[i];
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Metrics of a method on a protocol
+     */
+    public static class MethodMetrics {
+        public final String methodName;
+        public final int protocol;
+        long calls, errors;
+        long requestBytes, responseBytes;
+        final Histogram[] phases = new Histogram[PHASE_COUNT];
+        final TreeMap<Integer, Long> errorCodes = new TreeMap<>();
+        final TreeMap<Integer, Long> jsonRpcErrorCodes = new TreeMap<>();
+
+        MethodMetrics(String methodName, int protocol) {
+            this.methodName = methodName;
+            this.protocol = protocol;
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                phases[i] = new Histogram();
+            }
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public Histogram getPhase(int phase) {
+            return phases[phase];
+        }
+    }
+
+    /**
+     * Listener notified of each call traced on a connection, with its phase timings
+     */
+    public interface TraceListener {
+        /**
+         * Called once the call is done, on the thread that finished it. On calls with
+         * a callback that's the callback thread, right after the callback returns
+         * @param trace Trace of the call
+         * @param errorCode Error code of the call, or -1 if it succeeded
+         */
+        void onTraceFinished(Trace trace, int errorCode);
+    }
+
+    /**
+     * Timings of a single call. Call its methods as the call goes through each phase, and
+     * {@link #finish(int)} once it's done
+     */
+    public class Trace {
+        final String methodName;
+        final int protocol;
+        final long createdAt;
+        final TraceListener listener;
+        // Set from different threads on TCP
+        volatile long sentAt = -1, receivedAt = -1, decodedAt = -1, finishedAt = -1;
+        volatile int requestBytes = -1, responseBytes = -1;
+        volatile int jsonRpcErrorCode = 0;
+        private boolean finished = false;
+
+        Trace(String methodName, int protocol, TraceListener listener) {
+            this.methodName = methodName;
+            this.protocol = protocol;
+            this.listener = listener;
+            this.createdAt = System.nanoTime();
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        /**
+         * Returns when the call was requested, in {@link System#nanoTime()} time
+         */
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public int getResponseBytes() {
+            return responseBytes;
+        }
+
+        /**
+         * Returns the time spent on a phase, in ns, or -1 if the call didn't go through it
+         * @param phase One of the PHASE constants
+         */
+        public long getPhaseNanos(int phase) {
+            long start, end;
+            switch (phase) {
+                case PHASE_QUEUE: start = createdAt; end = sentAt; break;
+                case PHASE_NETWORK: start = sentAt; end = receivedAt; break;
+                case PHASE_DECODE: start = receivedAt; end = decodedAt; break;
+                default: start = decodedAt; end = finishedAt; break;
+            }
+            return ((start < 0) || (end < 0)) ? -1 : end - start;
+        }
+
+        /**
+         * The request is being sent
+         * @param bytes Size of the request
+         */
+        public void sent(int bytes) {
+            sentAt = System.nanoTime();
+            requestBytes = bytes;
+        }
+
+        /**
+         * The request was streamed, and its size is now known
+         * @param bytes Size of the request
+         */
+        public void written(int bytes) {
+            requestBytes = bytes;
+        }
+
+        /**
+         * The response was read
+         * @param bytes Size of the response, or -1 if unknown
+         */
+        public void received(int bytes) {
+            received(bytes, System.nanoTime());
+        }
+
+        /**
+         * The response was read, before now
+         * @param bytes Size of the response, or -1 if unknown
+         * @param at When its last byte was read, in {@link System#nanoTime()} time
+         */
+        public void received(int bytes, long at) {
+            receivedAt = Math.max(at, sentAt);
+            responseBytes = bytes;
+        }
+
+        /**
+         * The response was decoded
+         */
+        public void decoded() {
+            decodedAt = System.nanoTime();
+        }
+
+        /**
+         * Wraps a callback so that the call is finished when it returns
+         * @param callback Callback to run
+         * @param errorCode Error code of the call, or -1 if it succeeded
+         * @return Runnable to post instead of the callback
+         */
+        public Runnable dispatch(final Runnable callback, final int errorCode) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callback.run();
+                    } finally {
+                        finish(errorCode);
+                    }
+                }
+            };
+        }
+
+        /**
+         * Wraps an error callback so that the call is finished, with the error, when it returns
+         * @param callback Callback to run
+         * @param error Error of the call
+         * @return Runnable to post instead of the callback
+         */
+        public Runnable dispatch(final Runnable callback, ApiException error) {
+            jsonRpcErrorCode = error.getJsonRpcCode();
+            return dispatch(callback, error.getCode());
+        }
+
+        /**
+         * The call failed
+         * @param error Error of the call
+         */
+        public void finish(ApiException error) {
+            jsonRpcErrorCode = error.getJsonRpcCode();
+            finish(error.getCode());
+        }
+
+        /**
+         * The call is done
+         * @param errorCode Error code of the call, or -1 if it succeeded
+         */
+        public void finish(int errorCode) {
+            synchronized (this) {
+                if (finished)
+                    return;
+                finished = true;
+                finishedAt = System.nanoTime();
+            }
+            record(this, errorCode);
+            if (errorCode < 0) {
+                StartupTrace.getInstance().commandFinished(methodName);
+            }
+            if (listener != null) {
+                listener.onTraceFinished(this, errorCode);
+            }
+        }
+    }
+
+    private final HashMap<String, MethodMetrics> metrics = new HashMap<>();
+    private long startedAt = System.currentTimeMillis();
+
+    /**
+     * Starts tracing a call. Call it as soon as the call is requested, so that the time
+     * waiting to be sent is included
+     * @param methodName Method name
+     * @param protocol {@link HostConnection#PROTOCOL_HTTP} or {@link HostConnection#PROTOCOL_TCP}
+     * @return Trace of the call
+     */
+    public Trace startTrace(String methodName, int protocol) {
+        return startTrace(methodName, protocol, null);
+    }
+
+    /**
+     * Starts tracing a call, notifying the listener when it's done
+     * @param methodName Method name
+     * @param protocol {@link HostConnection#PROTOCOL_HTTP} or {@link HostConnection#PROTOCOL_TCP}
+     * @param listener Listener to notify, can be null
+     * @return Trace of the call
+     */
+    public Trace startTrace(String methodName, int protocol, TraceListener listener) {
+        return new Trace(methodName, protocol, listener);
+    }
+
+    private synchronized void record(Trace trace, int errorCode) {
+        String key = trace.methodName + "|" + trace.protocol;
+        MethodMetrics methodMetrics = metrics.get(key);
+        if (methodMetrics == null) {
+            methodMetrics = new MethodMetrics(trace.methodName, trace.protocol);
+            metrics.put(key, methodMetrics);
+        }
+
+        methodMetrics.calls++;
+        if (errorCode >= 0) {
+            methodMetrics.errors++;
+            Long count = methodMetrics.errorCodes.get(errorCode);
+            methodMetrics.errorCodes.put(errorCode, (count == null) ? 1 : count + 1);
+            if (trace.jsonRpcErrorCode != 0) {
+                count = methodMetrics.jsonRpcErrorCodes.get(trace.jsonRpcErrorCode);
+                methodMetrics.jsonRpcErrorCodes.put(trace.jsonRpcErrorCode, (count == null) ? 1 : count + 1);
+            }
+        }
+        if (trace.requestBytes > 0)
+            methodMetrics.requestBytes += trace.requestBytes;
+        if (trace.responseBytes > 0)
+            methodMetrics.responseBytes += trace.responseBytes;
+
+        // Only record the phases the call went through
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            long nanos = trace.getPhaseNanos(phase);
+            if (nanos < 0)
+                break;
+            methodMetrics.phases[phase].add(nanos);
+        }
+    }
+
+    /**
+     * Clears all the metrics
+     */
+    public synchronized void reset() {
+        metrics.clear();
+        startedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns a human readable report of the metrics, ordered by total network time
+     */
+    public synchronized String getReport() {
+        List<MethodMetrics> sorted = new ArrayList<>(metrics.values());
+        Collections.sort(sorted, new Comparator<MethodMetrics>() {
+            @Override
+            public int compare(MethodMetrics m1, MethodMetrics m2) {
+                return Double.compare(totalMillis(m2.phases[PHASE_NETWORK]),
+                                      totalMillis(m1.phases[PHASE_NETWORK]));
+            }
+        });
+
+        StringBuilder report = new StringBuilder();
+        long elapsed = (System.currentTimeMillis() - startedAt) / 1000;
+        report.append(String.format(Locale.US, "Connection metrics for the last %d s\n", elapsed));
+        for (MethodMetrics m : sorted) {
+            report.append('\n')
+                  .append(m.methodName)
+                  .append(m.protocol == HostConnection.PROTOCOL_HTTP ? " (HTTP)\n" : " (TCP)\n");
+            report.append(String.format(Locale.US, "  calls %d, errors %d, sent %d B, received %d B\n",
+                                        m.calls, m.errors, m.requestBytes, m.responseBytes));
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                Histogram h = m.phases[phase];
+                if (h.getCount() == 0)
+                    continue;
+                report.append(String.format(Locale.US,
+                                            "  %-8s mean %.1f ms, p50 %s, p95 %s, max %.1f ms\n",
+                                            PHASE_NAMES[phase], h.getMeanMillis(),
+                                            formatBound(h.getPercentileMillis(50)),
+                                            formatBound(h.getPercentileMillis(95)),
+                                            h.getMaxMillis()));
+            }
+            for (Map.Entry<Integer, Long> error : m.errorCodes.entrySet()) {
+                report.append(String.format(Locale.US, "  error %d: %d times\n",
+                                            error.getKey(), error.getValue()));
+            }
+            for (Map.Entry<Integer, Long> error : m.jsonRpcErrorCodes.entrySet()) {
+                report.append(String.format(Locale.US, "  JSON RPC error %d: %d times\n",
+                                            error.getKey(), error.getValue()));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Returns the metrics of a method, or null if it wasn't called. For testing
+     */
+    synchronized MethodMetrics getMethodMetrics(String methodName, int protocol) {
+        return metrics.get(methodName + "|" + protocol);
+    }
+
+    private static double totalMillis(Histogram histogram) {
+        return histogram.getMeanMillis() * histogram.getCount();
+    }
+
+    private static String formatBound(long bound) {
+        return (bound < 0) ?
+               "> " + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] + " ms" :
+               "<= " + bound + " ms";
+    }
+}
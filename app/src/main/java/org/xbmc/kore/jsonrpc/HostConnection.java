@@ -21,10 +21,9 @@ import android.text.TextUtils;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.squareup.okhttp.Authenticator;
-import com.squareup.okhttp.Credentials;
 import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
@@ -33,27 +32,34 @@ import com.squareup.okhttp.Response;
 
 import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.jsonrpc.notification.Application;
+import org.xbmc.kore.jsonrpc.notification.AudioLibrary;
 import org.xbmc.kore.jsonrpc.notification.Input;
 import org.xbmc.kore.jsonrpc.notification.Player;
 import org.xbmc.kore.jsonrpc.notification.Playlist;
 import org.xbmc.kore.jsonrpc.notification.System;
+import org.xbmc.kore.jsonrpc.notification.VideoLibrary;
 import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.StringPool;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.ProtocolException;
-import java.net.Proxy;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Class responsible for communicating with the host.
@@ -111,6 +117,17 @@ public class HostConnection {
         void onPlaylistItemRemoved(Playlist.OnRemove notification);
     }
 
+    /**
+     * Interface that an observer must implement to be notified of VideoLibrary and
+     * AudioLibrary notifications
+     */
+    public interface LibraryNotificationsObserver {
+        void onVideoLibraryUpdate(VideoLibrary.OnUpdate notification);
+        void onVideoLibraryRemove(VideoLibrary.OnRemove notification);
+        void onAudioLibraryUpdate(AudioLibrary.OnUpdate notification);
+        void onAudioLibraryRemove(AudioLibrary.OnRemove notification);
+    }
+
     /**
 	 * Host to connect too
 	 */
@@ -123,13 +140,19 @@ public class HostConnection {
      */
     private int protocol;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Pools the text values of the responses while they're parsed, during syncs
+    private final ObjectMapper objectMapper = new ObjectMapper().setNodeFactory(StringPool.NODE_FACTORY);
 
 	/**
 	 * Socket used to communicate through TCP
 	 */
 	private Socket socket = null;
 
+	/**
+	 * Buffered stream to which the requests are written, on the TCP socket
+	 */
+	private OutputStream socketOutputStream = null;
+
     /**
      * Listener thread that will be listening on the TCP socket
      */
@@ -171,7 +194,19 @@ public class HostConnection {
     private final HashMap<PlaylistNotificationsObserver, Handler> playlistNotificationsObservers =
             new HashMap<>();
 
-    private ExecutorService executorService;
+    /**
+     * The observers that will be notified of library notifications
+     */
+    private final HashMap<LibraryNotificationsObserver, Handler> libraryNotificationsObservers =
+            new HashMap<>();
+
+    /**
+     * Worker threads and HTTP clients shared by all connections
+     */
+    private final HostTransport transport;
+    private final ConnectionMetrics metrics = ConnectionMetrics.getInstance();
+    private volatile ConnectionMetrics.TraceListener traceListener = null;
+    private volatile RequestGate requestGate = null;
 
     private final int connectTimeout;
 
@@ -179,12 +214,10 @@ public class HostConnection {
 
     public static final int TCP_READ_TIMEOUT = 30000; // ms
 
+    static final String TCP_LISTENER_THREAD_NAME_PREFIX = "HostConnection-TCP-";
+
     private static final int CALLABLE_TIMEOUT = 30000; // ms
 
-    /**
-     * OkHttpClient. Make sure it is initialized, by calling {@link #getOkHttpClient()}
-     */
-    private OkHttpClient httpClient = null;
     private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
 
     /**
@@ -213,8 +246,7 @@ public class HostConnection {
         this.hostInfo = hostInfo;
         // Start with the default host protocol
         this.protocol = hostInfo.getProtocol();
-        // Create a single threaded executor
-        this.executorService = Executors.newFixedThreadPool(5);
+        this.transport = HostTransport.getInstance();
         // Set timeout
         this.connectTimeout = connectTimeout;
     }
@@ -238,6 +270,36 @@ public class HostConnection {
         this.protocol = protocol;
     }
 
+    /**
+     * Sets a listener that gets the timings of each call made on this connection, on top of
+     * them being recorded on {@link ConnectionMetrics}
+     * @param traceListener Listener, or null to remove it
+     */
+    public void setTraceListener(ConnectionMetrics.TraceListener traceListener) {
+        this.traceListener = traceListener;
+    }
+
+    /**
+     * Holds back the calls made on a connection, to execute them later
+     */
+    public interface RequestGate {
+        /**
+         * Called for each call made on the connection, before it's sent
+         * @return Whether the call was held back. If so, it's up to the gate to execute it later
+         * on this connection, or to call its error callback
+         */
+        <T> boolean hold(ApiMethod<T> method, ApiCallback<T> callback, Handler handler);
+    }
+
+    /**
+     * Sets a gate that can hold back the calls made on this connection, for instance while
+     * the host is waking up
+     * @param requestGate Gate, or null to remove it
+     */
+    public void setRequestGate(RequestGate requestGate) {
+        this.requestGate = requestGate;
+    }
+
     public static boolean isValidProtocol(int protocol) {
         return ((protocol == PROTOCOL_TCP) || (protocol == PROTOCOL_HTTP));
     }
@@ -335,6 +397,23 @@ public class HostConnection {
         playlistNotificationsObservers.remove(observer);
     }
 
+    /**
+     * Registers an observer for library notifications
+     * @param observer The {@link LibraryNotificationsObserver}
+     */
+    public void registerLibraryNotificationsObserver(LibraryNotificationsObserver observer,
+                                                     Handler handler) {
+        libraryNotificationsObservers.put(observer, handler);
+    }
+
+    /**
+     * Unregisters and observer from the library notifications
+     * @param observer The {@link LibraryNotificationsObserver}
+     */
+    public void unregisterLibraryNotificationsObserver(LibraryNotificationsObserver observer) {
+        libraryNotificationsObservers.remove(observer);
+    }
+
     /**
 	 * Calls the given method on the server
 	 * This call is always asynchronous. The results will be posted, through the
@@ -354,12 +433,18 @@ public class HostConnection {
 		LogUtils.LOGD(TAG, "Starting method execute. Method: " + method.getMethodName() +
 			" on host: " + hostInfo.getJsonRpcHttpEndpoint());
 
+        RequestGate gate = requestGate;
+        if ((gate != null) && gate.hold(method, callback, handler)) {
+            return;
+        }
+
+        final ConnectionMetrics.Trace trace = metrics.startTrace(method.getMethodName(), protocol, traceListener);
         if (protocol == PROTOCOL_TCP) {
             // Do not call this from the runnable below as it may cause a race condition
             // with {@link #updateClientCallback(int, ApiCallback, Handler)}
             //
             // Save this method/callback for any later response
-            addClientCallback(method, callback, handler);
+            addClientCallback(method, callback, handler, trace);
         }
 
 		// Launch background thread
@@ -368,16 +453,152 @@ public class HostConnection {
             public void run() {
                 Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
                 if (protocol == PROTOCOL_HTTP) {
-                    executeThroughOkHttp(method, callback, handler);
+                    executeThroughOkHttp(method, callback, handler, trace);
                 } else {
-                    executeThroughTcp(method);
+                    executeThroughTcp(method, trace);
                 }
             }
         };
 
-        executorService.execute(command);
+        transport.execute(hostInfo, command);
 	}
 
+    /**
+     * Executes several methods in a single JSON RPC batch request, in the background.
+     * <p>
+     * Kodi executes the methods of a batch in order, each one independently of the others, so
+     * this is meant for methods whose results aren't needed, like a sequence of edits. The
+     * individual results are not returned, only whether all of them succeeded.
+     * <p>
+     * Batches are always sent through HTTP, independently of the connection protocol.
+     *
+     * @param methods Methods to execute, in order
+     * @param callback Called with the number of methods executed if all of them succeeded, or
+     *                 with the first error found otherwise. May be null
+     * @param handler {@link Handler} to invoke callbacks on. When null, the
+     *                callbacks are invoked on the same thread as the request.
+     */
+    public void executeBatch(final List<? extends ApiMethod<?>> methods,
+                             final ApiCallback<Integer> callback, final Handler handler) {
+        LogUtils.LOGD(TAG, "Starting batch execute of " + methods.size() + " methods on host: " +
+                           hostInfo.getJsonRpcHttpEndpoint());
+
+        final ConnectionMetrics.Trace trace = metrics.startTrace(getBatchName(methods), PROTOCOL_HTTP, traceListener);
+        transport.execute(hostInfo, new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    JsonNode jsonResponse = executeBatchThroughOkHttp(methods, trace);
+                    if (jsonResponse != null) {
+                        for (JsonNode methodResponse : jsonResponse) {
+                            if (methodResponse.has(ApiMethod.ERROR_NODE))
+                                throw new ApiException(ApiException.API_ERROR, (ObjectNode) methodResponse);
+                        }
+                        if (jsonResponse.size() < methods.size())
+                            throw new ApiException(ApiException.INVALID_JSON_RESPONSE_FROM_HOST,
+                                                   "Batch response is missing results.");
+                    }
+                    if (callback != null) {
+                        postOrRunNow(handler, trace.dispatch(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onSuccess(methods.size());
+                            }
+                        }, -1));
+                    } else {
+                        trace.finish(-1);
+                    }
+                } catch (final ApiException e) {
+                    if (callback != null) {
+                        postOrRunNow(handler, trace.dispatch(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onError(e.getCode(), e.getMessage());
+                            }
+                        }, e));
+                    } else {
+                        trace.finish(e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Executes several methods of the same type in a single JSON RPC batch request, in the
+     * background, and returns a future with their results.
+     * <p>
+     * This is meant to replace a sequence of independent requests, like getting the details of
+     * several items. Batches are always sent through HTTP, independently of the connection
+     * protocol. Each method gets its own result or error, matched through its id, so a method
+     * that fails doesn't fail the others. The future only fails if the batch as a whole does
+     * (it can't be sent, or the response isn't valid).
+     *
+     * @param methods Methods to execute
+     * @param <T> The type of the return value of the methods
+     * @return the future results of the methods, in the same order as the methods
+     */
+    public <T> Future<BatchResult<T>> executeBatch(final List<? extends ApiMethod<T>> methods) {
+        LogUtils.LOGD(TAG, "Starting batch execute of " + methods.size() + " methods on host: " +
+                           hostInfo.getJsonRpcHttpEndpoint());
+
+        final ApiFuture<BatchResult<T>> future = new ApiFuture<>();
+        final ConnectionMetrics.Trace trace = metrics.startTrace(getBatchName(methods), PROTOCOL_HTTP, traceListener);
+        transport.execute(hostInfo, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JsonNode jsonResponse = executeBatchThroughOkHttp(methods, trace);
+
+                    // Responses may come in any order, match them through their ids
+                    HashMap<Integer, ObjectNode> responses = new HashMap<>(methods.size());
+                    if (jsonResponse != null) {
+                        for (JsonNode methodResponse : jsonResponse) {
+                            responses.put(methodResponse.path(ApiMethod.ID_NODE).asInt(-1),
+                                          (ObjectNode) methodResponse);
+                        }
+                    }
+                    ArrayList<T> results = new ArrayList<>(methods.size());
+                    ArrayList<ApiException> errors = new ArrayList<>(methods.size());
+                    for (ApiMethod<T> method : methods) {
+                        ObjectNode methodResponse = responses.get(method.getId());
+                        T result = null;
+                        ApiException error = null;
+                        if (methodResponse == null) {
+                            error = new ApiException(ApiException.INVALID_JSON_RESPONSE_FROM_HOST,
+                                                     "Batch response is missing the result of " +
+                                                     method.getMethodName());
+                        } else if (methodResponse.has(ApiMethod.ERROR_NODE)) {
+                            error = new ApiException(ApiException.API_ERROR, methodResponse);
+                        } else {
+                            try {
+                                result = method.resultFromJson(methodResponse);
+                            } catch (ApiException e) {
+                                error = e;
+                            }
+                        }
+                        results.add(result);
+                        errors.add(error);
+                    }
+                    trace.decoded();
+                    BatchResult<T> batchResult = new BatchResult<>(results, errors);
+                    ApiException firstError = batchResult.getFirstError();
+                    if (firstError != null) {
+                        trace.finish(firstError);
+                    } else {
+                        trace.finish(-1);
+                    }
+                    future.complete(batchResult);
+                } catch (ApiException e) {
+                    future.completeExceptionally(e);
+                    trace.finish(e);
+                }
+            }
+        });
+        return future;
+    }
+
     /**
      * Executes the remote method in the background and returns a future that may be
      * awaited on any thread.
@@ -415,29 +636,74 @@ public class HostConnection {
         }, null);
         return future;
     }
-    
+
+    /**
+     * Executes a method through HTTP on the calling thread, independently of the connection
+     * protocol, and returns its result.
+     * <p>
+     * This blocks, so it should only be called on a background thread, and is meant for code
+     * that already runs on one of the {@link HostTransport} worker threads, where waiting on
+     * {@link #execute(ApiMethod)} would hold a worker waiting for another one.
+     * The call isn't recorded on the connection metrics.
+     *
+     * @param method The remote method to invoke
+     * @param <T> The type of the return value of the method
+     * @return Result of the method
+     * @throws ApiException If the method can't be sent or returns an error
+     */
+    public <T> T executeOnCurrentThread(ApiMethod<T> method) throws ApiException {
+        LogUtils.LOGD(TAG, "Sending request via HTTP on the current thread: " + method.getMethodName());
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(hostInfo.getJsonRpcHttpEndpoint())
+                    .post(RequestBody.create(MEDIA_TYPE_JSON, method.toJsonBytes()))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(ApiException.IO_EXCEPTION_WHILE_SENDING_REQUEST, e);
+        }
+        Response response = sendOkHttpRequest(getOkHttpClient(), request);
+        return method.resultFromJson(parseJsonResponse(handleOkHttpResponse(response)));
+    }
+
     /**
-     * Executes the {@link Callable} and waits for it to finish on a background thread. The
-     * result is returned using the {@link ApiCallback} and handler
-     * @param callable executed using an {@link ExecutorService}
+     * Executes the {@link Callable} on a background thread. The result is returned using the
+     * {@link ApiCallback} and handler, or an error if it doesn't finish in time, in which case
+     * the callable is interrupted, or dropped if it didn't start
+     * @param callable executed using the shared {@link HostTransport} worker threads
      * @param apiCallback used to return the result of the callable
      * @param handler used to execute the {@link ApiCallback} methods
      * @param <T> The callable return type
      */
     public <T> void execute(final Callable<T> callable, final ApiCallback<T> apiCallback, final Handler handler) {
-        final Future<T> future = executorService.submit(callable);
-        executorService.execute(new Runnable() {
+        // The result is delivered from the task itself, so that no worker is held waiting on it.
+        // Whichever comes first, the result or the timeout, is the only one delivered
+        final AtomicBoolean delivered = new AtomicBoolean(false);
+        final AtomicReference<Future<?>> running = new AtomicReference<>();
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                if (delivered.compareAndSet(false, true)) {
+                    // Give the worker back
+                    Future<?> task = running.get();
+                    if (task != null)
+                        task.cancel(true);
+                    apiCallback.onError(ApiException.API_WAITING_ON_RESULT_TIMEDOUT,
+                                        "Timed out waiting for the result");
+                }
+            }
+        };
+
+        running.set(transport.submit(hostInfo, Executors.callable(new Runnable() {
             @Override
             public void run() {
                 try {
-                    T result = future.get(CALLABLE_TIMEOUT, TimeUnit.MILLISECONDS);
+                    T result = callable.call();
                     handleSuccess(result);
-                } catch (ExecutionException e) {
-                    handleError(ApiException.API_ERROR, e.getMessage());
                 } catch (InterruptedException e) {
                     handleError(ApiException.API_WAITING_ON_RESULT_INTERRUPTED, e.getMessage());
-                } catch (TimeoutException e) {
-                    handleError(ApiException.API_WAITING_ON_RESULT_TIMEDOUT, e.getMessage());
+                } catch (Exception e) {
+                    handleError(ApiException.API_ERROR, e.getMessage());
                 }
             }
 
@@ -445,7 +711,10 @@ public class HostConnection {
                 handler.post(new Runnable() {
                     @Override
                     public void run() {
-                        apiCallback.onSuccess(result);
+                        if (delivered.compareAndSet(false, true)) {
+                            handler.removeCallbacks(timeout);
+                            apiCallback.onSuccess(result);
+                        }
                     }
                 });
             }
@@ -454,11 +723,15 @@ public class HostConnection {
                 handler.post(new Runnable() {
                     @Override
                     public void run() {
-                        apiCallback.onError(errorCode, message);
+                        if (delivered.compareAndSet(false, true)) {
+                            handler.removeCallbacks(timeout);
+                            apiCallback.onError(errorCode, message);
+                        }
                     }
                 });
             }
-        });
+        })));
+        handler.postDelayed(timeout, CALLABLE_TIMEOUT);
     }
 
     /**
@@ -481,8 +754,9 @@ public class HostConnection {
         synchronized (clientCallbacks) {
             String id = String.valueOf(methodId);
             if (clientCallbacks.containsKey(id)) {
-                clientCallbacks.put(id, new MethodCallInfo<>((ApiMethod<T>) clientCallbacks.get(id).method,
-                                                             callback, handler));
+                MethodCallInfo<?> methodCallInfo = clientCallbacks.get(id);
+                clientCallbacks.put(id, new MethodCallInfo<>((ApiMethod<T>) methodCallInfo.method,
+                                                             callback, handler, methodCallInfo.trace));
                 return true;
             }
             return  false;
@@ -495,10 +769,11 @@ public class HostConnection {
      * @param method Method
      * @param callback Callback
      * @param handler Handler
+     * @param trace Metrics trace of the call
      * @param <T> Method/Callback type
      */
     private <T> void addClientCallback(final ApiMethod<T> method, final ApiCallback<T> callback,
-                                       final Handler handler) {
+                                       final Handler handler, final ConnectionMetrics.Trace trace) {
 
         if (getProtocol() == PROTOCOL_HTTP)
             return;
@@ -518,7 +793,7 @@ public class HostConnection {
                 }
                 return;
             }
-            clientCallbacks.put(methodId, new MethodCallInfo<>(method, callback, handler));
+            clientCallbacks.put(methodId, new MethodCallInfo<>(method, callback, handler, trace));
         }
     }
 
@@ -526,73 +801,125 @@ public class HostConnection {
      * Sends the JSON RPC request through HTTP (using OkHttp library)
      */
     private <T> void executeThroughOkHttp(final ApiMethod<T> method, final ApiCallback<T> callback,
-                                          final Handler handler) {
+                                          final Handler handler, final ConnectionMetrics.Trace trace) {
         OkHttpClient client = getOkHttpClient();
-        String jsonRequest = method.toJsonString();
-        LogUtils.LOGD(TAG, "Sending request via HTTP: " + jsonRequest);
+        byte[] jsonRequest = method.toJsonBytes();
+        LogUtils.LOGD(TAG, "Sending request via HTTP: " + method.getMethodName() + " (id " + method.getId() + ")");
 
         try {
             Request request = new Request.Builder()
                     .url(hostInfo.getJsonRpcHttpEndpoint())
                     .post(RequestBody.create(MEDIA_TYPE_JSON, jsonRequest))
                     .build();
+            trace.sent(jsonRequest.length);
             Response response = sendOkHttpRequest(client, request);
-            final T result = method.resultFromJson(parseJsonResponse(handleOkHttpResponse(response)));
+            byte[] jsonResponse = handleOkHttpResponse(response);
+            trace.received(jsonResponse.length);
+            final T result = method.resultFromJson(parseJsonResponse(jsonResponse));
+            trace.decoded();
 
             if (callback != null) {
-                postOrRunNow(handler, new Runnable() {
+                postOrRunNow(handler, trace.dispatch(new Runnable() {
                     @Override
                     public void run() {
                         callback.onSuccess(result);
                     }
-                });
+                }, -1));
+            } else {
+                trace.finish(-1);
             }
         } catch (final ApiException e) {
             // Got an error, call error handler
             if (callback != null) {
-                postOrRunNow(handler, new Runnable() {
+                postOrRunNow(handler, trace.dispatch(new Runnable() {
                     @Override
                     public void run() {
                         callback.onError(e.getCode(), e.getMessage());
                     }
-                });
+                }, e));
+            } else {
+                trace.finish(e);
             }
         }
     }
 
     /**
-     * Initializes this class OkHttpClient
+     * Name under which a batch is recorded on the {@link ConnectionMetrics}
      */
-    public synchronized OkHttpClient getOkHttpClient() {
-        if (httpClient == null) {
-            httpClient = new OkHttpClient();
-            httpClient.setConnectTimeout(connectTimeout, TimeUnit.MILLISECONDS);
-
-            httpClient.setAuthenticator(new Authenticator() {
-                @Override
-                public Request authenticate(Proxy proxy, Response response) {
-                    if (TextUtils.isEmpty(hostInfo.getUsername()))
-                        return null;
-
-                    String credential = Credentials.basic(hostInfo.getUsername(), hostInfo.getPassword());
-                    return response.request().newBuilder().header("Authorization", credential).build();
-                }
+    private static String getBatchName(List<? extends ApiMethod<?>> methods) {
+        return methods.isEmpty() ? "Batch" : "Batch of " + methods.get(0).getMethodName();
+    }
 
-                @Override
-                public Request authenticateProxy(Proxy proxy, Response response) {
-                    return null;
-                }
-            });
+    /**
+     * Sends a JSON RPC batch request through HTTP. The responses of the methods, which may be
+     * errors, aren't checked
+     * @return Array with the responses of the methods, or null if there were no methods
+     * @throws ApiException If the batch can't be sent, or its response is not valid
+     */
+    private JsonNode executeBatchThroughOkHttp(List<? extends ApiMethod<?>> methods,
+                                               ConnectionMetrics.Trace trace) throws ApiException {
+        if (methods.isEmpty())
+            return null;
+
+        LinkedHashSet<String> methodNames = new LinkedHashSet<>();
+        for (ApiMethod<?> method : methods) {
+            methodNames.add(method.getMethodName());
+        }
+        LogUtils.LOGD(TAG, "Sending batch request via HTTP: " + methods.size() + " methods " + methodNames);
+
+        // Each method is written like a single request, so repeated ones use their template
+        ByteArrayOutputStream jsonRequest = new ByteArrayOutputStream(256 * methods.size());
+        try {
+            jsonRequest.write('[');
+            for (int i = 0; i < methods.size(); i++) {
+                if (i > 0)
+                    jsonRequest.write(',');
+                methods.get(i).writeJson(jsonRequest);
+            }
+            jsonRequest.write(']');
+        } catch (IOException e) {
+            throw new ApiException(ApiException.IO_EXCEPTION_WHILE_SENDING_REQUEST, e);
         }
-        return httpClient;
+        byte[] requestBody = jsonRequest.toByteArray();
+        Request request = new Request.Builder()
+                .url(hostInfo.getJsonRpcHttpEndpoint())
+                .post(RequestBody.create(MEDIA_TYPE_JSON, requestBody))
+                .build();
+        trace.sent(requestBody.length);
+        byte[] response = handleOkHttpResponse(sendOkHttpRequest(getOkHttpClient(), request));
+        trace.received(response.length);
+
+        JsonNode jsonResponse;
+        try {
+            jsonResponse = objectMapper.readTree(response);
+        } catch (IOException e) {
+            LogUtils.LOGW(TAG, "Got an exception while parsing JSON batch response.", e);
+            throw new ApiException(ApiException.INVALID_JSON_RESPONSE_FROM_HOST, e);
+        }
+
+        if (!jsonResponse.isArray()) {
+            // An invalid batch gets a single error response
+            if (jsonResponse.has(ApiMethod.ERROR_NODE))
+                throw new ApiException(ApiException.API_ERROR, (ObjectNode) jsonResponse);
+            throw new ApiException(ApiException.INVALID_JSON_RESPONSE_FROM_HOST,
+                                   "Batch response isn't an array.");
+        }
+        return jsonResponse;
+    }
+
+    /**
+     * Returns the OkHttpClient for this connection's host. The client is shared by all the
+     * connections to the same host, so it shouldn't be modified. Clone it if needed.
+     */
+    public OkHttpClient getOkHttpClient() {
+        return transport.getOkHttpClient(hostInfo, connectTimeout);
     }
 
     // Hack to circumvent a Protocol Exception that occurs when the server returns bogus Status Line
     // http://forum.kodi.tv/showthread.php?tid=224288
-    private OkHttpClient getNewOkHttpClientNoKeepAlive() {
+    private void disableKeepAlive() {
         java.lang.System.setProperty("http.keepAlive", "false");
-        httpClient = null;
-        return getOkHttpClient();
+        transport.evictConnections();
     }
 
     /**
@@ -608,7 +935,7 @@ public class HostConnection {
                             "Trying again without connection pooling to try to circunvent this", e);
             // Hack to circumvent a Protocol Exception that occurs when the server returns bogus Status Line
             // http://forum.kodi.tv/showthread.php?tid=224288
-            httpClient = getNewOkHttpClientNoKeepAlive();
+            disableKeepAlive();
             throw new ApiException(ApiException.IO_EXCEPTION_WHILE_SENDING_REQUEST, e);
         } catch (IOException e) {
             LogUtils.LOGW(TAG, "Failed to send OkHttp request.", e);
@@ -626,7 +953,7 @@ public class HostConnection {
      * @return Response body string
      * @throws ApiException {@link ApiException} if response can't be read/processed
      */
-    private String handleOkHttpResponse(Response response) throws ApiException {
+    private byte[] handleOkHttpResponse(Response response) throws ApiException {
         try {
 //			LogUtils.LOGD(TAG, "Reading HTTP response.");
             int responseCode = response.code();
@@ -634,9 +961,9 @@ public class HostConnection {
             switch (responseCode) {
                 case 200:
                     // All ok, read response
-                    String res = response.body().string();
+                    byte[] res = response.body().bytes();
                     response.body().close();
-					LogUtils.LOGD(TAG, "OkHTTP response: " + res);
+					LogUtils.LOGD(TAG, "OkHTTP response: " + res.length + " bytes");
                     return res;
                 case 401:
                     LogUtils.LOGD(TAG, "OkHTTP response read error. Got a 401: " + response);
@@ -665,7 +992,7 @@ public class HostConnection {
 	 * @return {@link com.fasterxml.jackson.databind.node.ObjectNode} constructed
 	 * @throws ApiException Exception trown if we can't parse the response
 	 */
-	private ObjectNode parseJsonResponse(String response) throws ApiException {
+	private ObjectNode parseJsonResponse(byte[] response) throws ApiException {
 //		LogUtils.LOGD(TAG, "Parsing JSON response");
 		try {
 			ObjectNode jsonResponse = (ObjectNode) objectMapper.readTree(response);
@@ -694,7 +1021,7 @@ public class HostConnection {
 	 * Sends the JSON RPC request through TCP
 	 * Keeps a background thread running, listening on a socket
 	 */
-	private <T> void executeThroughTcp(final ApiMethod<T> method) {
+	private <T> void executeThroughTcp(final ApiMethod<T> method, final ConnectionMetrics.Trace trace) {
         String methodId = String.valueOf(method.getId());
         try {
             synchronized (this) {
@@ -704,8 +1031,9 @@ public class HostConnection {
                     startListenerThread(socket);
                 }
 
-                // Write request
-                sendTcpRequest(socket, method.toJsonString());
+                // Write request, its size is only known once it's streamed
+                trace.sent(-1);
+                trace.written(sendTcpRequest(socket, method));
             }
 		} catch (final ApiException e) {
 			callErrorCallback(methodId, e);
@@ -728,6 +1056,7 @@ public class HostConnection {
             // We're setting a read timeout on the socket, so no need to explicitly close it
 			socket.setSoTimeout(TCP_READ_TIMEOUT);
 			socket.connect(address, connectTimeout);
+			transport.socketOpened(hostInfo);
 
 			return socket;
 		} catch (IOException e) {
@@ -737,17 +1066,21 @@ public class HostConnection {
 	}
 
 	/**
-	 * Send a TCP request
+	 * Send a TCP request, streaming it to the socket
 	 * @param socket Socket to write to
-	 * @param request Request to send
+	 * @param method Method to send
+	 * @return Size of the request
 	 * @throws ApiException Exception if can't send
 	 */
-	private void sendTcpRequest(Socket socket, String request) throws ApiException {
+	private int sendTcpRequest(Socket socket, ApiMethod<?> method) throws ApiException {
 		try {
-			LogUtils.LOGD(TAG, "Sending request via TCP: " + request);
-			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-			writer.write(request);
-			writer.flush();
+			LogUtils.LOGD(TAG, "Sending request via TCP: " + method.getMethodName() + " (id " + method.getId() + ")");
+			if (socketOutputStream == null) {
+				socketOutputStream = new BufferedOutputStream(socket.getOutputStream());
+			}
+			int bytes = method.writeJson(socketOutputStream);
+			socketOutputStream.flush();
+			return bytes;
 		} catch (Exception e) {
 			LogUtils.LOGW(TAG, "Failed to send TCP request.", e);
             disconnect();
@@ -766,12 +1099,19 @@ public class HostConnection {
 					// it will keep on going until disconnect() is called on this object.
 					// Note: Mind the objects used here: we use createParser because it doesn't
 					// close the socket after ObjectMapper.readTree.
-					JsonParser jsonParser = objectMapper.getFactory().createParser(socket.getInputStream());
+					// The time of the last read from the socket is when the response was
+					// received, the rest of readTree is spent decoding it
+					TimedInputStream socketInputStream = new TimedInputStream(socket.getInputStream());
+					JsonParser jsonParser = objectMapper.getFactory().createParser(socketInputStream);
 					ObjectNode jsonResponse;
+					long lastOffset = 0;
 					while ((jsonResponse = objectMapper.readTree(jsonParser)) != null) {
                         LogUtils.LOGD(TAG, "Read from socket: " + jsonResponse.toString());
 //                        LogUtils.LOGD_FULL(TAG, "Read from socket: " + jsonResponse.toString());
-						handleTcpResponse(jsonResponse);
+                        long offset = jsonParser.getCurrentLocation().getByteOffset();
+                        int responseBytes = (offset >= 0) ? (int) (offset - lastOffset) : -1;
+                        lastOffset = offset;
+						handleTcpResponse(jsonResponse, responseBytes, socketInputStream.lastReadAt);
 					}
 				} catch (JsonProcessingException e) {
 					LogUtils.LOGW(TAG, "Got an exception while parsing JSON response.", e);
@@ -783,7 +1123,7 @@ public class HostConnection {
                     disconnect();
                 }
 			}
-		});
+		}, TCP_LISTENER_THREAD_NAME_PREFIX + hostInfo.getAddress());
 	    tcpListenerThread.start();
 	}
 
@@ -797,7 +1137,7 @@ public class HostConnection {
         return ignore;
     }
 
-	private <T> void handleTcpResponse(ObjectNode jsonResponse) {
+	private <T> void handleTcpResponse(ObjectNode jsonResponse, int responseBytes, long receivedAt) {
         if (shouldIgnoreTcpResponse(jsonResponse))
             return;
 
@@ -1034,32 +1374,97 @@ public class HostConnection {
                     }
                     break;
                 }
+                case VideoLibrary.OnUpdate.NOTIFICATION_NAME: {
+                    final VideoLibrary.OnUpdate apiNotification =
+                            new VideoLibrary.OnUpdate(params);
+                    for (final LibraryNotificationsObserver observer :
+                            libraryNotificationsObservers.keySet()) {
+                        Handler handler = libraryNotificationsObservers.get(observer);
+                        postOrRunNow(handler, new Runnable() {
+                            @Override
+                            public void run() {
+                                observer.onVideoLibraryUpdate(apiNotification);
+                            }
+                        });
+                    }
+                    break;
+                }
+                case VideoLibrary.OnRemove.NOTIFICATION_NAME: {
+                    final VideoLibrary.OnRemove apiNotification =
+                            new VideoLibrary.OnRemove(params);
+                    for (final LibraryNotificationsObserver observer :
+                            libraryNotificationsObservers.keySet()) {
+                        Handler handler = libraryNotificationsObservers.get(observer);
+                        postOrRunNow(handler, new Runnable() {
+                            @Override
+                            public void run() {
+                                observer.onVideoLibraryRemove(apiNotification);
+                            }
+                        });
+                    }
+                    break;
+                }
+                case AudioLibrary.OnUpdate.NOTIFICATION_NAME: {
+                    final AudioLibrary.OnUpdate apiNotification =
+                            new AudioLibrary.OnUpdate(params);
+                    for (final LibraryNotificationsObserver observer :
+                            libraryNotificationsObservers.keySet()) {
+                        Handler handler = libraryNotificationsObservers.get(observer);
+                        postOrRunNow(handler, new Runnable() {
+                            @Override
+                            public void run() {
+                                observer.onAudioLibraryUpdate(apiNotification);
+                            }
+                        });
+                    }
+                    break;
+                }
+                case AudioLibrary.OnRemove.NOTIFICATION_NAME: {
+                    final AudioLibrary.OnRemove apiNotification =
+                            new AudioLibrary.OnRemove(params);
+                    for (final LibraryNotificationsObserver observer :
+                            libraryNotificationsObservers.keySet()) {
+                        Handler handler = libraryNotificationsObservers.get(observer);
+                        postOrRunNow(handler, new Runnable() {
+                            @Override
+                            public void run() {
+                                observer.onAudioLibraryRemove(apiNotification);
+                            }
+                        });
+                    }
+                    break;
+                }
             }
             LogUtils.LOGD(TAG, "Got a notification: " + jsonResponse.get("method").textValue());
 		} else {
 			String methodId = jsonResponse.get(ApiMethod.ID_NODE).asText();
+			final MethodCallInfo<?> methodCallInfo = clientCallbacks.get(methodId);
+			if (methodCallInfo != null) {
+				methodCallInfo.trace.received(responseBytes, receivedAt);
+			}
 
 			if (jsonResponse.has(ApiMethod.ERROR_NODE)) {
 				// Error response
 				callErrorCallback(methodId, new ApiException(ApiException.API_ERROR, jsonResponse));
 			} else {
 				// Success response
-				final MethodCallInfo<?> methodCallInfo = clientCallbacks.get(methodId);
-
                 if (methodCallInfo != null) {
                     try {
                         @SuppressWarnings("unchecked")
                         final T result = (T) methodCallInfo.method.resultFromJson(jsonResponse);
+                        methodCallInfo.trace.decoded();
                         @SuppressWarnings("unchecked")
                         final ApiCallback<T> callback = (ApiCallback<T>) methodCallInfo.callback;
 
                         if (callback != null) {
-                            postOrRunNow(methodCallInfo.handler, new Runnable() {
+                            postOrRunNow(methodCallInfo.handler, methodCallInfo.trace.dispatch(new Runnable() {
                                 @Override
                                 public void run() {
                                     callback.onSuccess(result);
                                 }
-                            });
+                            }, -1));
+                        } else {
+                            methodCallInfo.trace.finish(-1);
                         }
 
                         // We've replied, remove the client from the list
@@ -1084,12 +1489,14 @@ public class HostConnection {
                     final ApiCallback<T> callback = (ApiCallback<T>) methodCallInfo.callback;
 
                     if (callback != null) {
-                        postOrRunNow(methodCallInfo.handler, new Runnable() {
+                        postOrRunNow(methodCallInfo.handler, methodCallInfo.trace.dispatch(new Runnable() {
                             @Override
                             public void run() {
                                 callback.onError(error.getCode(), error.getMessage());
                             }
-                        });
+                        }, error));
+                    } else {
+                        methodCallInfo.trace.finish(error);
                     }
                 }
                 clientCallbacks.remove(methodId);
@@ -1101,12 +1508,14 @@ public class HostConnection {
                     final ApiCallback<T> callback = (ApiCallback<T>)methodCallInfo.callback;
 
                     if (callback != null) {
-                        postOrRunNow(methodCallInfo.handler, new Runnable() {
+                        postOrRunNow(methodCallInfo.handler, methodCallInfo.trace.dispatch(new Runnable() {
                             @Override
                             public void run() {
                                 callback.onError(error.getCode(), error.getMessage());
                             }
-                        });
+                        }, error));
+                    } else {
+                        methodCallInfo.trace.finish(error);
                     }
                 }
 
@@ -1127,6 +1536,7 @@ public class HostConnection {
 			if (socket != null) {
 				// Remove pending calls
                 clientCallbacks.clear();
+                transport.socketClosed(hostInfo);
 				if (!socket.isClosed()) {
 					socket.close();
 				}
@@ -1135,6 +1545,7 @@ public class HostConnection {
 			LogUtils.LOGE(TAG, "Error while closing socket", e);
 		} finally {
 			socket = null;
+			socketOutputStream = null;
 		}
 	}
 
@@ -1154,11 +1565,40 @@ public class HostConnection {
 		public final ApiMethod<T> method;
 		public final ApiCallback<T> callback;
 		public final Handler handler;
+		public final ConnectionMetrics.Trace trace;
 
-		public MethodCallInfo(ApiMethod<T> method, ApiCallback<T> callback, Handler handler) {
+		public MethodCallInfo(ApiMethod<T> method, ApiCallback<T> callback, Handler handler,
+							  ConnectionMetrics.Trace trace) {
 			this.method = method;
 			this.callback = callback;
 			this.handler = handler;
+			this.trace = trace;
+		}
+	}
+
+	/**
+	 * Input stream that records when data was last read from it, in
+	 * {@link java.lang.System#nanoTime()} time
+	 */
+	private static class TimedInputStream extends FilterInputStream {
+		volatile long lastReadAt = -1;
+
+		TimedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			lastReadAt = java.lang.System.nanoTime();
+			return read;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = super.read(buffer, offset, count);
+			lastReadAt = java.lang.System.nanoTime();
+			return read;
 		}
 	}
 }
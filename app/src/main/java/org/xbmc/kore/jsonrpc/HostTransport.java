@@ -0,0 +1,367 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.jsonrpc;
+
+import android.text.TextUtils;
+
+import com.squareup.okhttp.Authenticator;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Credentials;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.Proxy;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide transport resources shared by all the {@link HostConnection}s.
+ * <p>
+ * Connections are created liberally throughout the app (one per host in the host list, one
+ * per sync, ...) and are never explicitly released, so instead of each one owning its thread
+ * pool and {@link OkHttpClient}, they borrow them from here:
+ * <ul>
+ *     <li>A bounded pool of worker threads, which time out when idle. Each host can only use
+ *     {@link #MAX_TASKS_PER_HOST} of them at once, its other tasks wait in a queue of the host,
+ *     so that slow or offline hosts don't starve the others</li>
+ *     <li>A single OkHttp {@link ConnectionPool} and {@link Dispatcher}. The dispatcher runs
+ *     the asynchronous calls on its own threads, apart from the blocking work of the workers</li>
+ *     <li>One {@link OkHttpClient} per host configuration (address, port, credentials and
+ *     timeout), all sharing the connection pool. Only the {@link #MAX_HTTP_CLIENTS} most
+ *     recently used are kept</li>
+ * </ul>
+ * Per host counters of running tasks and open TCP sockets are kept, and can be inspected
+ * through {@link #dump(PrintWriter)}. The counters of idle hosts are dropped past
+ * {@link #MAX_HOST_STATS} hosts.
+ */
+public class HostTransport {
+    private static final String TAG = LogUtils.makeLogTag(HostTransport.class);
+
+    /**
+     * Maximum number of worker threads, shared by all hosts
+     */
+    static final int MAX_WORKER_THREADS = 12;
+    /**
+     * Maximum number of worker threads used by a single host at once
+     */
+    static final int MAX_TASKS_PER_HOST = 4;
+    /**
+     * Maximum number of {@link OkHttpClient}s kept, like the ones of the hosts found while
+     * scanning the network
+     */
+    static final int MAX_HTTP_CLIENTS = 16;
+    /**
+     * Maximum number of hosts whose counters are kept while they're idle
+     */
+    static final int MAX_HOST_STATS = 32;
+    /**
+     * Time after which an idle worker thread is stopped, in seconds
+     */
+    private static final long WORKER_KEEP_ALIVE = 30;
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long CONNECTION_KEEP_ALIVE = 5 * 60 * 1000; // ms
+
+    private static HostTransport instance = null;
+
+    private final ThreadPoolExecutor executor;
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+
+    // Access ordered, so the least recently used are the ones dropped
+    private final LinkedHashMap<String, OkHttpClient> httpClients =
+            new LinkedHashMap<String, OkHttpClient>(MAX_HTTP_CLIENTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, OkHttpClient> eldest) {
+                    return size() > MAX_HTTP_CLIENTS;
+                }
+            };
+    private final LinkedHashMap<String, HostStats> hostStats = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Usage counters of a host, and its tasks waiting for a worker
+     */
+    private static class HostStats {
+        int runningTasks = 0;
+        int queuedTasks = 0;
+        long executedTasks = 0;
+        int openSockets = 0;
+        // Tasks handed to the executor and not finished yet
+        int admittedTasks = 0;
+        final ArrayDeque<Runnable> waitingTasks = new ArrayDeque<>();
+
+        boolean isIdle() {
+            return (admittedTasks == 0) && waitingTasks.isEmpty() && (openSockets == 0);
+        }
+    }
+
+    /**
+     * Returns the singleton
+     * @return Transport shared by all connections
+     */
+    public static synchronized HostTransport getInstance() {
+        if (instance == null) {
+            instance = new HostTransport();
+        }
+        return instance;
+    }
+
+    private HostTransport() {
+        executor = new ThreadPoolExecutor(MAX_WORKER_THREADS, MAX_WORKER_THREADS,
+                                          WORKER_KEEP_ALIVE, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(),
+                                          new WorkerThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, CONNECTION_KEEP_ALIVE);
+        // With its own threads, which it bounds per host
+        dispatcher = new Dispatcher();
+    }
+
+    /**
+     * Returns the key that identifies a host on the counters
+     * @param hostInfo Host
+     * @return Key
+     */
+    static String hostKey(HostInfo hostInfo) {
+        return hostInfo.getName() + " (" + hostInfo.getAddress() + ")";
+    }
+
+    /**
+     * Runs a task on the shared worker threads, once the host has less than
+     * {@link #MAX_TASKS_PER_HOST} running
+     * @param hostInfo Host on whose behalf the task runs
+     * @param task Task
+     */
+    public void execute(HostInfo hostInfo, Runnable task) {
+        String hostKey = hostKey(hostInfo);
+        TrackedRunnable trackedTask = new TrackedRunnable(hostKey, task);
+        synchronized (hostStats) {
+            HostStats stats = getStats(hostKey);
+            if (stats.admittedTasks >= MAX_TASKS_PER_HOST) {
+                stats.waitingTasks.add(trackedTask);
+                return;
+            }
+            stats.admittedTasks++;
+        }
+        executor.execute(trackedTask);
+    }
+
+    /**
+     * Submits a task to the shared worker threads, like {@link #execute(HostInfo, Runnable)}.
+     * Cancelling the future interrupts the task if it's running
+     * @param hostInfo Host on whose behalf the task runs
+     * @param task Task
+     * @param <T> Task result type
+     * @return Future for the task result
+     */
+    public <T> Future<T> submit(HostInfo hostInfo, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(hostInfo, future);
+        return future;
+    }
+
+    /**
+     * Returns the shared {@link OkHttpClient} for a host. Clients are shared by all connections
+     * to the same host, so they shouldn't be modified. Clone them if needed.
+     * @param hostInfo Host
+     * @param connectTimeout Connection timeout in ms
+     * @return Client
+     */
+    public synchronized OkHttpClient getOkHttpClient(final HostInfo hostInfo, int connectTimeout) {
+        String clientKey = hostInfo.getAddress() + ":" + hostInfo.getHttpPort() + "|" +
+                           hostInfo.getUsername() + "|" + hostInfo.getPassword() + "|" +
+                           connectTimeout;
+        OkHttpClient httpClient = httpClients.get(clientKey);
+        if (httpClient == null) {
+            httpClient = new OkHttpClient();
+            httpClient.setConnectionPool(connectionPool);
+            httpClient.setDispatcher(dispatcher);
+            httpClient.setConnectTimeout(connectTimeout, TimeUnit.MILLISECONDS);
+
+            final String username = hostInfo.getUsername(),
+                    password = hostInfo.getPassword();
+            httpClient.setAuthenticator(new Authenticator() {
+                @Override
+                public Request authenticate(Proxy proxy, Response response) {
+                    if (TextUtils.isEmpty(username))
+                        return null;
+
+                    String credential = Credentials.basic(username, password);
+                    return response.request().newBuilder().header("Authorization", credential).build();
+                }
+
+                @Override
+                public Request authenticateProxy(Proxy proxy, Response response) {
+                    return null;
+                }
+            });
+            httpClients.put(clientKey, httpClient);
+        }
+        return httpClient;
+    }
+
+    /**
+     * Closes all the idle pooled HTTP connections, so that the next requests open new ones
+     */
+    public void evictConnections() {
+        connectionPool.evictAll();
+    }
+
+    void socketOpened(HostInfo hostInfo) {
+        synchronized (hostStats) {
+            getStats(hostKey(hostInfo)).openSockets++;
+        }
+    }
+
+    void socketClosed(HostInfo hostInfo) {
+        synchronized (hostStats) {
+            getStats(hostKey(hostInfo)).openSockets--;
+        }
+    }
+
+    /**
+     * Prints the state of the shared resources: worker threads, pooled HTTP connections and per
+     * host counters
+     * @param writer Writer to print to
+     */
+    public void dump(PrintWriter writer) {
+        writer.println("Worker threads: " + executor.getPoolSize() + " live, " +
+                       executor.getActiveCount() + " active, " + executor.getLargestPoolSize() +
+                       " max (limit " + MAX_WORKER_THREADS + "). Queued tasks: " +
+                       executor.getQueue().size());
+        writer.println("HTTP connections: " + connectionPool.getConnectionCount() + " pooled, " +
+                       connectionPool.getIdleConnectionCount() + " idle. HTTP clients: " +
+                       httpClients.size());
+        synchronized (hostStats) {
+            for (Map.Entry<String, HostStats> entry : hostStats.entrySet()) {
+                HostStats stats = entry.getValue();
+                writer.println("  " + entry.getKey() + ": " + stats.runningTasks + " running, " +
+                               stats.queuedTasks + " queued, " + stats.executedTasks +
+                               " executed tasks. " + stats.openSockets + " open TCP sockets");
+            }
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(WorkerThreadFactory.NAME_PREFIX) ||
+                thread.getName().startsWith(HostConnection.TCP_LISTENER_THREAD_NAME_PREFIX)) {
+                writer.println("  Thread " + thread.getName() + ": " + thread.getState());
+            }
+        }
+    }
+
+    /**
+     * Returns the output of {@link #dump(PrintWriter)}
+     */
+    public String getDebugInfo() {
+        StringWriter stringWriter = new StringWriter();
+        dump(new PrintWriter(stringWriter));
+        return stringWriter.toString();
+    }
+
+    private HostStats getStats(String hostKey) {
+        HostStats stats = hostStats.get(hostKey);
+        if (stats == null) {
+            stats = new HostStats();
+            hostStats.put(hostKey, stats);
+            // Drop the least recently used idle hosts, like the ones of a network scan
+            Iterator<HostStats> iterator = hostStats.values().iterator();
+            while ((hostStats.size() > MAX_HOST_STATS) && iterator.hasNext()) {
+                HostStats candidate = iterator.next();
+                if ((candidate != stats) && candidate.isIdle())
+                    iterator.remove();
+            }
+        }
+        return stats;
+    }
+
+    private void taskQueued(String hostKey) {
+        synchronized (hostStats) {
+            getStats(hostKey).queuedTasks++;
+        }
+    }
+
+    private void taskStarted(String hostKey) {
+        synchronized (hostStats) {
+            HostStats stats = getStats(hostKey);
+            stats.queuedTasks--;
+            stats.runningTasks++;
+        }
+    }
+
+    private void taskFinished(String hostKey) {
+        Runnable next;
+        synchronized (hostStats) {
+            HostStats stats = getStats(hostKey);
+            stats.runningTasks--;
+            stats.executedTasks++;
+            // The worker is handed to the next task of the host, if any
+            next = stats.waitingTasks.poll();
+            if (next == null)
+                stats.admittedTasks--;
+        }
+        if (next != null)
+            executor.execute(next);
+    }
+
+    private class TrackedRunnable implements Runnable {
+        private final String hostKey;
+        private final Runnable task;
+
+        TrackedRunnable(String hostKey, Runnable task) {
+            this.hostKey = hostKey;
+            this.task = task;
+            taskQueued(hostKey);
+        }
+
+        @Override
+        public void run() {
+            taskStarted(hostKey);
+            try {
+                task.run();
+            } finally {
+                taskFinished(hostKey);
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        static final String NAME_PREFIX = "HostTransport-";
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, NAME_PREFIX + threadCount.incrementAndGet());
+            LogUtils.LOGD(TAG, "Starting worker thread " + thread.getName());
+            return thread;
+        }
+    }
+}
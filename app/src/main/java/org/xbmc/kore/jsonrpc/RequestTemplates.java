@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.jsonrpc;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes {@link ApiMethod} requests to a stream as UTF-8 json.
+ * <p>
+ * Requests are streamed from their json tree, without building a string. Requests sent
+ * again with the same method and parameters, like the ones used by the remote or to poll the
+ * player, are written from a pre-serialized template instead, with only the id filled in.
+ * A request gets a template the second time it's seen, so that one-off requests don't take
+ * the place of the repeated ones on the cache. Only the hash of a request seen once is kept.
+ * Requests with big parameters, like the library pages, are rarely repeated, so they're
+ * streamed without being hashed.
+ */
+class RequestTemplates {
+    /**
+     * Maximum number of templates, and of requests remembered as seen once
+     */
+    static final int MAX_TEMPLATES = 64;
+
+    /**
+     * Maximum number of nodes on the parameters of a request for it to get a template
+     */
+    static final int MAX_TEMPLATE_NODES = 32;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static RequestTemplates instance = null;
+
+    static synchronized RequestTemplates getInstance() {
+        if (instance == null) {
+            instance = new RequestTemplates(ApiMethod.objectMapper);
+        }
+        return instance;
+    }
+
+    private final ObjectMapper objectMapper;
+
+    // Access ordered, so the least recently sent requests are the ones dropped
+    private final LinkedHashMap<Key, Template> templates =
+            new LinkedHashMap<Key, Template>(MAX_TEMPLATES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Template> eldest) {
+                    return size() > MAX_TEMPLATES;
+                }
+            };
+    // Hashes of the requests seen once, used as a ring
+    private final int[] seenOnce = new int[MAX_TEMPLATES];
+    private int seenOnceCount = 0, seenOnceNext = 0;
+    // Reused to look up templates, and to hash, while holding the lock on templates
+    private final Key lookupKey = new Key(null, null, 0);
+    private int nodeBudget;
+
+    RequestTemplates(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Writes a request
+     * @param method Method to write
+     * @param out Stream to write to. It isn't flushed nor closed
+     * @return Number of bytes written
+     */
+    int write(ApiMethod<?> method, OutputStream out) throws IOException {
+        ObjectNode request = method.toJsonObject();
+        if (method.getId() < 0) {
+            return stream(request, out);
+        }
+
+        String methodName = method.getMethodName();
+        JsonNode params = request.get(ApiMethod.PARAMS_NODE);
+        Template template;
+        synchronized (templates) {
+            nodeBudget = MAX_TEMPLATE_NODES;
+            int paramsHash = (params == null) ? 0 : hash(params);
+            if (nodeBudget < 0) {
+                template = null;
+            } else {
+                int hash = 31 * methodName.hashCode() + paramsHash;
+                lookupKey.set(methodName, params, hash);
+                template = templates.get(lookupKey);
+                lookupKey.set(null, null, 0);
+                if ((template == null) && wasSeenOnce(hash)) {
+                    // Second time, worth a template
+                    Key key = new Key(methodName, (params == null) ? null : params.deepCopy(), hash);
+                    template = new Template(key);
+                    templates.put(key, template);
+                } else if (template == null) {
+                    rememberSeenOnce(hash);
+                }
+            }
+        }
+
+        return (template != null) ? template.write(method.getId(), out) : stream(request, out);
+    }
+
+    /**
+     * Returns the number of templates. For testing
+     */
+    int getTemplateCount() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    /**
+     * Hashes a json tree consistently with {@link JsonNode#equals(Object)}, counting its
+     * nodes on {@link #nodeBudget}. Stops once the budget runs out, leaving it negative
+     */
+    private int hash(JsonNode node) {
+        if (--nodeBudget < 0)
+            return 0;
+        if (node.isObject()) {
+            // Fields can be in any order, like on equals
+            int hash = 0;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext() && (nodeBudget >= 0)) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                hash += field.getKey().hashCode() ^ hash(field.getValue());
+            }
+            return hash;
+        } else if (node.isArray()) {
+            int hash = 1;
+            for (int i = 0; (i < node.size()) && (nodeBudget >= 0); i++) {
+                hash = 31 * hash + hash(node.get(i));
+            }
+            return hash;
+        }
+        return node.hashCode();
+    }
+
+    /**
+     * Returns whether a request with this hash was seen. Hashes stay after getting a template,
+     * so a request whose template was dropped gets it back as soon as it's sent again
+     */
+    private boolean wasSeenOnce(int hash) {
+        for (int i = 0; i < seenOnceCount; i++) {
+            if (seenOnce[i] == hash)
+                return true;
+        }
+        return false;
+    }
+
+    private void rememberSeenOnce(int hash) {
+        seenOnce[seenOnceNext] = hash;
+        seenOnceNext = (seenOnceNext + 1) % MAX_TEMPLATES;
+        seenOnceCount = Math.min(seenOnceCount + 1, MAX_TEMPLATES);
+    }
+
+    private int stream(ObjectNode request, OutputStream out) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(out);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(counter, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            objectMapper.writeTree(generator, request);
+        } finally {
+            // Flushes and returns the generator buffers
+            generator.close();
+        }
+        return counter.count;
+    }
+
+    /**
+     * Method name and parameters of a request, with their hash
+     */
+    private static class Key {
+        String methodName;
+        JsonNode params;
+        int hash;
+
+        Key(String methodName, JsonNode params, int hash) {
+            set(methodName, params, hash);
+        }
+
+        void set(String methodName, JsonNode params, int hash) {
+            this.methodName = methodName;
+            this.params = params;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return (hash == other.hash) && methodName.equals(other.methodName) &&
+                   ((params == null) ? (other.params == null) : params.equals(other.params));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Request serialized around its id
+     */
+    private class Template {
+        final byte[] prefix, suffix;
+
+        Template(Key key) throws IOException {
+            prefix = ("{\"jsonrpc\":\"2.0\",\"" + ApiMethod.METHOD_NODE + "\":" +
+                      objectMapper.writeValueAsString(key.methodName) +
+                      ",\"" + ApiMethod.ID_NODE + "\":").getBytes(UTF_8);
+            suffix = ((key.params == null) ?
+                      "}" :
+                      ",\"" + ApiMethod.PARAMS_NODE + "\":" +
+                      objectMapper.writeValueAsString(key.params) + "}").getBytes(UTF_8);
+        }
+
+        int write(int id, OutputStream out) throws IOException {
+            out.write(prefix);
+            int digits = writeDigits(id, out);
+            out.write(suffix);
+            return prefix.length + digits + suffix.length;
+        }
+
+        private int writeDigits(int value, OutputStream out) throws IOException {
+            int digits = 1;
+            if (value >= 10) {
+                digits += writeDigits(value / 10, out);
+            }
+            out.write('0' + (value % 10));
+            return digits;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        int count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() {
+            // Leave the target stream open
+        }
+    }
+}
@@ -278,6 +278,21 @@ public class AudioLibrary {
             addParameterToRequest("properties", properties);
         }
 
+        /**
+         * Retrieve all songs with limits and sorted
+         *
+         * @param limits Limits to retrieve. See {@link ListType.Limits}
+         * @param sort Sort order. See {@link ListType.Sort}
+         * @param properties Properties to retrieve. See {@link AudioType.FieldsSong} for a
+         *                   list of accepted values
+         */
+        public GetSongs(ListType.Limits limits, ListType.Sort sort, String... properties) {
+            super();
+            addParameterToRequest("limits", limits);
+            addParameterToRequest("sort", sort);
+            addParameterToRequest("properties", properties);
+        }
+
         @Override
         public String getMethodName() {
             return METHOD_NAME;
@@ -18,14 +18,25 @@ package org.xbmc.kore.jsonrpc.method;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.jsonrpc.ApiException;
+import org.xbmc.kore.jsonrpc.ApiList;
 import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.BatchResult;
+import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.jsonrpc.type.FilesType;
 import org.xbmc.kore.jsonrpc.type.ItemType;
 import org.xbmc.kore.jsonrpc.type.ListType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 /**
  * All JSON RPC methods in Files.*
@@ -56,6 +67,131 @@ public class Files {
         }
     }
 
+    /**
+     * Get details for a specific file
+     */
+    public static final class GetFileDetails extends ApiMethod<ListType.ItemFile> {
+        public final static String METHOD_NAME = "Files.GetFileDetails";
+        public final static String FILEDETAILS_NODE = "filedetails";
+
+        /**
+         * Get details for a specific file
+         * @param file Full path to the file
+         * @param properties Properties to retrieve.
+         *                   See {@link org.xbmc.kore.jsonrpc.type.ListType.FieldsFiles}
+         *                   constants for a list of accepted values
+         */
+        public GetFileDetails(String file, String... properties) {
+            super();
+            addParameterToRequest("file", file);
+            addParameterToRequest("properties", properties);
+        }
+
+        @Override
+        public String getMethodName() { return METHOD_NAME; }
+
+        @Override
+        public ListType.ItemFile resultFromJson(ObjectNode jsonObject) throws ApiException {
+            return new ListType.ItemFile(jsonObject.get(RESULT_NODE).get(FILEDETAILS_NODE));
+        }
+    }
+
+    /**
+     * Resolves the download URLs of files through {@link PrepareDownload}, sending the requests
+     * for several files in a single batch, and caching the resolved URLs per host
+     */
+    public static final class DownloadUrls {
+        private static final int MAX_BATCH_SIZE = 100;
+        private static final int MAX_CACHED_URLS = 1000;
+        private static final long CACHE_TTL = TimeUnit.MINUTES.toMillis(30);
+
+        private static class CachedUrl {
+            final String url;
+            final long timestamp;
+
+            CachedUrl(String url, long timestamp) {
+                this.url = url;
+                this.timestamp = timestamp;
+            }
+        }
+
+        // Keyed by host and path, least recently used first
+        private static final LinkedHashMap<String, CachedUrl> cache =
+                new LinkedHashMap<String, CachedUrl>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedUrl> eldest) {
+                        return size() > MAX_CACHED_URLS;
+                    }
+                };
+
+        private DownloadUrls() { }
+
+        /**
+         * Returns the download URLs of several files. The ones not cached are resolved in a
+         * single batch request, so this blocks and should be called on a background thread
+         * @param hostConnection Connection to the host
+         * @param paths Paths of the files on Kodi
+         * @param timeout Maximum time to wait for the batch, in ms
+         * @return Download URLs, in the same order as the paths. A path whose URL couldn't be
+         * resolved gets its own error, without affecting the others
+         * @throws ApiException If the batch request failed as a whole
+         */
+        public static BatchResult<String> get(HostConnection hostConnection, List<String> paths, long timeout)
+                throws ApiException {
+            HostInfo hostInfo = hostConnection.getHostInfo();
+            String hostKey = hostInfo.getAddress() + ":" + hostInfo.getHttpPort() + "|";
+            long now = System.currentTimeMillis();
+
+            String[] urls = new String[paths.size()];
+            ApiException[] errors = new ApiException[paths.size()];
+            ArrayList<Integer> missing = new ArrayList<>();
+            synchronized (cache) {
+                for (int i = 0; i < paths.size(); i++) {
+                    CachedUrl cachedUrl = cache.get(hostKey + paths.get(i));
+                    if ((cachedUrl != null) && (now - cachedUrl.timestamp < CACHE_TTL)) {
+                        urls[i] = cachedUrl.url;
+                    } else {
+                        missing.add(i);
+                    }
+                }
+            }
+
+            for (int start = 0; start < missing.size(); start += MAX_BATCH_SIZE) {
+                List<Integer> batch = missing.subList(start, Math.min(start + MAX_BATCH_SIZE, missing.size()));
+                ArrayList<PrepareDownload> methods = new ArrayList<>(batch.size());
+                for (int index : batch) {
+                    methods.add(new PrepareDownload(paths.get(index)));
+                }
+
+                BatchResult<FilesType.PrepareDownloadReturnType> results;
+                try {
+                    results = hostConnection.executeBatch(methods).get(timeout, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException e) {
+                    throw (e.getCause() instanceof ApiException) ?
+                          (ApiException) e.getCause() :
+                          new ApiException(ApiException.API_ERROR, e);
+                } catch (TimeoutException e) {
+                    throw new ApiException(ApiException.API_WAITING_ON_RESULT_TIMEDOUT, e);
+                } catch (InterruptedException e) {
+                    throw new ApiException(ApiException.API_WAITING_ON_RESULT_INTERRUPTED, e);
+                }
+
+                synchronized (cache) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        int index = batch.get(i);
+                        if (!results.isSuccess(i)) {
+                            errors[index] = results.getError(i);
+                            continue;
+                        }
+                        urls[index] = hostInfo.getHttpURL() + "/" + results.get(i).path;
+                        cache.put(hostKey + paths.get(index), new CachedUrl(urls[index], now));
+                    }
+                }
+            }
+            return new BatchResult<>(Arrays.asList(urls), Arrays.asList(errors));
+        }
+    }
+
     /**
      * Enums for File.Media
      */
@@ -159,4 +295,63 @@ public class Files {
             return result;
         }
     }
+
+    /**
+     * Files.GetDirectory command, retrieving a page of the directory.
+     * Use this instead of {@link GetDirectory} for directories that may be huge, as only the
+     * requested page is decoded, into lightweight items
+     */
+    public static final class GetDirectoryPage extends ApiMethod<ApiList<ListType.ItemFileSummary>> {
+        public final static String METHOD_NAME = "Files.GetDirectory";
+        public final static String SORT_NODE = "sort";
+        public final static String FILE_NODE = "files";
+
+        private static final Pattern LABEL_MARKUP = Pattern.compile("\\[.*?\\]");
+
+        /**
+         * Get a page of the directories and files in the given directory
+         * @param directory Full path name
+         * @param media Type of media to retrieve.
+         *              See {@link Files.Media} for a list of accepted values
+         * @param sort_params Sorting criteria
+         * @param limits Page to retrieve. See {@link ListType.Limits}
+         * @param properties Properties to retrieve.
+         *                   See {@link org.xbmc.kore.jsonrpc.type.ListType.FieldsFiles}
+         *                   constants for a list of accepted values
+         */
+        public GetDirectoryPage(String directory, String media, ListType.Sort sort_params,
+                                ListType.Limits limits, String... properties) {
+            super();
+            addParameterToRequest("directory", directory);
+            addParameterToRequest("media", media);
+            addParameterToRequest("properties", properties);
+            if (sort_params != null) {
+                addParameterToRequest(SORT_NODE, sort_params.toJsonNode());
+            }
+            addParameterToRequest("limits", limits);
+        }
+
+        @Override
+        public String getMethodName() { return METHOD_NAME; }
+
+        @Override
+        public ApiList<ListType.ItemFileSummary> resultFromJson(ObjectNode jsonObject) throws ApiException {
+            ListType.LimitsReturned limits = new ListType.LimitsReturned(jsonObject);
+
+            JsonNode fileNode = jsonObject.get(RESULT_NODE).get(FILE_NODE);
+            if (fileNode == null || fileNode.isNull()) {
+                return new ApiList<>(new ArrayList<ListType.ItemFileSummary>(0), limits);
+            }
+            ArrayNode items = (ArrayNode) fileNode;
+            ArrayList<ListType.ItemFileSummary> result = new ArrayList<>(items.size());
+            for (JsonNode item : items) {
+                JsonNode label = item.get("label");
+                if ((label != null) && !label.isNull()) {
+                    ((ObjectNode) item).put("label", LABEL_MARKUP.matcher(label.textValue()).replaceAll(""));
+                }
+                result.add(new ListType.ItemFileSummary(item));
+            }
+            return new ApiList<>(result, limits);
+        }
+    }
  }
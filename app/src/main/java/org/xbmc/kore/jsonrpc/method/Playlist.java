@@ -193,4 +193,29 @@ public class Playlist {
             return jsonObject.get(RESULT_NODE).textValue();
         }
     }
+
+    /**
+     * Swap items in the playlist. Does not work for picture playlists (aka slideshows).
+     */
+    public static final class Swap extends ApiMethod<String> {
+        public final static String METHOD_NAME = "Playlist.Swap";
+
+        /**
+         * Swap items in the playlist. Does not work for picture playlists (aka slideshows).
+         */
+        public Swap(int playlistId, int position1, int position2) {
+            super();
+            addParameterToRequest("playlistid", playlistId);
+            addParameterToRequest("position1", position1);
+            addParameterToRequest("position2", position2);
+        }
+
+        @Override
+        public String getMethodName() { return METHOD_NAME; }
+
+        @Override
+        public String resultFromJson(ObjectNode jsonObject) throws ApiException {
+            return jsonObject.get(RESULT_NODE).textValue();
+        }
+    }
 }
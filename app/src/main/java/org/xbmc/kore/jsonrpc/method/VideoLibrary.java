@@ -113,6 +113,21 @@ public class VideoLibrary {
             addParameterToRequest("limits", limits);
         }
 
+        /**
+         * Retrieve all movies, with limits and sorted
+         *
+         * @param limits Limits to retrieve. See {@link ListType.Limits}
+         * @param sort Sort order. See {@link ListType.Sort}
+         * @param properties Properties to retrieve. See {@link VideoType.FieldsMovie} for a list of
+         *                   accepted values
+         */
+        public GetMovies(ListType.Limits limits, ListType.Sort sort, String... properties) {
+            super();
+            addParameterToRequest("properties", properties);
+            addParameterToRequest("limits", limits);
+            addParameterToRequest("sort", sort);
+        }
+
         @Override
         public String getMethodName() {
             return METHOD_NAME;
@@ -232,6 +247,21 @@ public class VideoLibrary {
             addParameterToRequest("limits", limits);
         }
 
+        /**
+         * Retrieve all tv shows, with limits and sorted
+         *
+         * @param limits Limits to retrieve. See {@link ListType.Limits}
+         * @param sort Sort order. See {@link ListType.Sort}
+         * @param properties Properties to retrieve. See {@link VideoType.FieldsTVShow} for a
+         *                   list of accepted values
+         */
+        public GetTVShows(ListType.Limits limits, ListType.Sort sort, String... properties) {
+            super();
+            addParameterToRequest("properties", properties);
+            addParameterToRequest("limits", limits);
+            addParameterToRequest("sort", sort);
+        }
+
         @Override
         public String getMethodName() {
             return METHOD_NAME;
@@ -425,6 +455,37 @@ public class VideoLibrary {
         }
     }
 
+    /**
+     * Retrieve details about a specific tv show episode
+     */
+    public static class GetEpisodeDetails extends ApiMethod<VideoType.DetailsEpisode> {
+        public final static String METHOD_NAME = "VideoLibrary.GetEpisodeDetails";
+
+        /**
+         * Retrieve details about a specific tv show episode
+         *
+         * @param episodeId Episode id
+         * @param properties Properties to retrieve. See {@link VideoType.FieldsEpisode} for a
+         *                   list of accepted values
+         */
+        public GetEpisodeDetails(int episodeId, String... properties) {
+            super();
+            addParameterToRequest("episodeid", episodeId);
+            addParameterToRequest("properties", properties);
+        }
+
+        @Override
+        public String getMethodName() {
+            return METHOD_NAME;
+        }
+
+        @Override
+        public VideoType.DetailsEpisode resultFromJson(ObjectNode jsonObject)
+                throws ApiException {
+            return new VideoType.DetailsEpisode(jsonObject.get(RESULT_NODE).get("episodedetails"));
+        }
+    }
+
     /**
      * Retrieve all music videos
      */
@@ -468,4 +529,35 @@ public class VideoLibrary {
             return result;
         }
     }
+
+    /**
+     * Retrieve details about a specific music video
+     */
+    public static class GetMusicVideoDetails extends ApiMethod<VideoType.DetailsMusicVideo> {
+        public final static String METHOD_NAME = "VideoLibrary.GetMusicVideoDetails";
+
+        /**
+         * Retrieve details about a specific music video
+         *
+         * @param musicVideoId Music video id
+         * @param properties Properties to retrieve. See {@link VideoType.FieldsMusicVideo} for a
+         *                   list of accepted values
+         */
+        public GetMusicVideoDetails(int musicVideoId, String... properties) {
+            super();
+            addParameterToRequest("musicvideoid", musicVideoId);
+            addParameterToRequest("properties", properties);
+        }
+
+        @Override
+        public String getMethodName() {
+            return METHOD_NAME;
+        }
+
+        @Override
+        public VideoType.DetailsMusicVideo resultFromJson(ObjectNode jsonObject)
+                throws ApiException {
+            return new VideoType.DetailsMusicVideo(jsonObject.get(RESULT_NODE).get("musicvideodetails"));
+        }
+    }
 }
\ No newline at end of file
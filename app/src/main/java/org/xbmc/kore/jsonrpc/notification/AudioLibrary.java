@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.jsonrpc.notification;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.xbmc.kore.jsonrpc.ApiNotification;
+import org.xbmc.kore.utils.JsonUtils;
+
+/**
+ * All AudioLibrary.* notifications
+ */
+public class AudioLibrary {
+
+    /**
+     * AudioLibrary.OnUpdate notification
+     * An item was added to the library or updated, e.g. its playcount
+     */
+    public static class OnUpdate extends ApiNotification {
+        public static final String NOTIFICATION_NAME = "AudioLibrary.OnUpdate";
+
+        public final int itemId;
+        public final String itemType;
+
+        public OnUpdate(ObjectNode node) {
+            super(node);
+            JsonNode dataNode = node.get("data");
+            itemId = JsonUtils.intFromJsonNode(dataNode, "id");
+            itemType = JsonUtils.stringFromJsonNode(dataNode, "type");
+        }
+
+        @Override
+        public String getNotificationName() {
+            return NOTIFICATION_NAME;
+        }
+    }
+
+    /**
+     * AudioLibrary.OnRemove notification
+     * An item was removed from the library
+     */
+    public static class OnRemove extends ApiNotification {
+        public static final String NOTIFICATION_NAME = "AudioLibrary.OnRemove";
+
+        public final int itemId;
+        public final String itemType;
+
+        public OnRemove(ObjectNode node) {
+            super(node);
+            JsonNode dataNode = node.get("data");
+            itemId = JsonUtils.intFromJsonNode(dataNode, "id");
+            itemType = JsonUtils.stringFromJsonNode(dataNode, "type");
+        }
+
+        @Override
+        public String getNotificationName() {
+            return NOTIFICATION_NAME;
+        }
+    }
+}
@@ -64,7 +64,7 @@ public class AudioType {
          */
         public DetailsBase(JsonNode node) {
             super(node);
-            genre = JsonUtils.stringListFromJsonNode(node, GENRE);
+            genre = JsonUtils.pooledStringListFromJsonNode(node, GENRE);
         }
     }
 
@@ -95,9 +95,9 @@ public class AudioType {
 
         public DetailsMedia(JsonNode node) {
             super(node);
-            artist = JsonUtils.stringListFromJsonNode(node, ARTIST);
+            artist = JsonUtils.pooledStringListFromJsonNode(node, ARTIST);
             artistid = JsonUtils.integerListFromJsonNode(node, ARTISTID);
-            displayartist = JsonUtils.stringFromJsonNode(node, DISPLAYARTIST);
+            displayartist = JsonUtils.pooledStringFromJsonNode(node, DISPLAYARTIST);
             genreid = JsonUtils.integerListFromJsonNode(node, GENREID);
             musicbrainzalbumartistid = JsonUtils.stringFromJsonNode(node, MUSICBRAINZALBUMARTISTID);
             musicbrainzalbumid = JsonUtils.stringFromJsonNode(node, MUSICBRAINZALBUMID);
@@ -154,10 +154,10 @@ public class AudioType {
             died = JsonUtils.stringFromJsonNode(node, DIED);
             disbanded = JsonUtils.stringFromJsonNode(node, DISBANDED);
             formed = JsonUtils.stringFromJsonNode(node, FORMED);
-            instrument = JsonUtils.stringListFromJsonNode(node, INSTRUMENT);
-            mood = JsonUtils.stringListFromJsonNode(node, MOOD);
+            instrument = JsonUtils.pooledStringListFromJsonNode(node, INSTRUMENT);
+            mood = JsonUtils.pooledStringListFromJsonNode(node, MOOD);
             musicbrainzartistid = JsonUtils.stringFromJsonNode(node, MUSICBRAINZARTISTID);
-            style = JsonUtils.stringListFromJsonNode(node, STYLE);
+            style = JsonUtils.pooledStringListFromJsonNode(node, STYLE);
             yearsactive = JsonUtils.stringListFromJsonNode(node, YEARSACTIVE);
         }
     }
@@ -222,13 +222,13 @@ public class AudioType {
         public DetailsAlbum(JsonNode node) {
             super(node);
             albumid = JsonUtils.intFromJsonNode(node, ALBUMID);
-            albumlabel = JsonUtils.stringFromJsonNode(node, ALBUMLABEL);
+            albumlabel = JsonUtils.pooledStringFromJsonNode(node, ALBUMLABEL);
             description = JsonUtils.stringFromJsonNode(node, DESCRIPTION);
-            mood = JsonUtils.stringListFromJsonNode(node, MOOD);
+            mood = JsonUtils.pooledStringListFromJsonNode(node, MOOD);
             playcount = JsonUtils.intFromJsonNode(node, PLAYCOUNT);
-            style = JsonUtils.stringListFromJsonNode(node, STYLE);
-            theme = JsonUtils.stringListFromJsonNode(node, THEME);
-            type = JsonUtils.stringFromJsonNode(node, TYPE);
+            style = JsonUtils.pooledStringListFromJsonNode(node, STYLE);
+            theme = JsonUtils.pooledStringListFromJsonNode(node, THEME);
+            type = JsonUtils.pooledStringFromJsonNode(node, TYPE);
         }
     }
 
@@ -280,6 +280,7 @@ public class AudioType {
         public static final String ALBUMARTISTID = "albumartistid";
         public static final String ALBUMID = "albumid";
         public static final String COMMENT = "comment";
+        public static final String DATEADDED = "dateadded";
         public static final String DISC = "disc";
         public static final String DURATION = "duration";
         public static final String FILE = "file";
@@ -296,6 +297,7 @@ public class AudioType {
         public final List<Integer> albumartistid;
         public final int albumid;
         public final String comment;
+        public final String dateadded;
         public final int disc;
         public final int duration;
         public final String file;
@@ -313,11 +315,12 @@ public class AudioType {
          */
         public DetailsSong(JsonNode node) {
             super(node);
-            album = JsonUtils.stringFromJsonNode(node, ALBUM);
+            album = JsonUtils.pooledStringFromJsonNode(node, ALBUM);
             albumid = JsonUtils.intFromJsonNode(node, ALBUMID);
-            albumartist = JsonUtils.stringListFromJsonNode(node, ALBUMARTIST);
+            albumartist = JsonUtils.pooledStringListFromJsonNode(node, ALBUMARTIST);
             albumartistid = JsonUtils.integerListFromJsonNode(node, ALBUMARTISTID);
             comment = JsonUtils.stringFromJsonNode(node, COMMENT);
+            dateadded = JsonUtils.stringFromJsonNode(node, DATEADDED);
             disc = JsonUtils.intFromJsonNode(node, DISC);
             duration = JsonUtils.intFromJsonNode(node, DURATION);
             file = JsonUtils.stringFromJsonNode(node, FILE);
@@ -26,6 +26,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import org.xbmc.kore.host.actions.GetPlaylist;
 import org.xbmc.kore.utils.JsonUtils;
+import org.xbmc.kore.utils.StringPool;
 
 import java.util.List;
 
@@ -577,7 +578,7 @@ public class ListType {
         public final String filetype;
         public final String lastmodified;
         public final String mimetype;
-        public final int size;
+        public final long size;
 
         public ItemFile(JsonNode node) {
             super(node);
@@ -585,7 +586,48 @@ public class ListType {
             filetype = JsonUtils.stringFromJsonNode(node, FILETYPE, null);
             lastmodified = JsonUtils.stringFromJsonNode(node, LASTMODIFIED, null);
             mimetype = JsonUtils.stringFromJsonNode(node, MIMETYPE, null);
-            size = JsonUtils.intFromJsonNode(node, SIZE, 0);
+            size = JsonUtils.longFromJsonNode(node, SIZE, 0);
+        }
+    }
+
+    /**
+     * Summary of a List.Item.File, with only the fields needed to show it on a list. Much
+     * lighter than {@link ItemFile}, for directories with lots of files
+     */
+    public static class ItemFileSummary {
+        public final String label;
+        public final String type;
+        public final String file;
+        public final String filetype;
+        public final String title;
+        public final String tagline;
+        public final List<String> artist;
+        public final String displayartist;
+        public final String album;
+        public final int season;
+        public final int episode;
+        public final int runtime;
+        public final int duration;
+        public final long size;
+        public final String thumbnail;
+
+        public ItemFileSummary(JsonNode node) {
+            label = JsonUtils.stringFromJsonNode(node, ItemBase.LABEL, null);
+            type = StringPool.get(JsonUtils.stringFromJsonNode(node, ItemBase.TYPE, ItemBase.TYPE_UNKNOWN));
+            file = JsonUtils.stringFromJsonNode(node, ItemFile.FILE, null);
+            filetype = StringPool.get(JsonUtils.stringFromJsonNode(node, ItemFile.FILETYPE,
+                                                                   ItemFile.FILETYPE_FILE));
+            title = JsonUtils.stringFromJsonNode(node, ItemBase.TITLE, null);
+            tagline = JsonUtils.stringFromJsonNode(node, ItemBase.TAGLINE, null);
+            artist = JsonUtils.stringListFromJsonNode(node, ItemBase.ARTIST);
+            displayartist = JsonUtils.stringFromJsonNode(node, ItemBase.DISPLAYARTIST, null);
+            album = JsonUtils.stringFromJsonNode(node, ItemBase.ALBUM, null);
+            season = JsonUtils.intFromJsonNode(node, ItemBase.SEASON, 0);
+            episode = JsonUtils.intFromJsonNode(node, ItemBase.EPISODE, 0);
+            runtime = JsonUtils.intFromJsonNode(node, ItemBase.RUNTIME, 0);
+            duration = JsonUtils.intFromJsonNode(node, ItemBase.DURATION, 0);
+            size = JsonUtils.longFromJsonNode(node, ItemFile.SIZE, 0);
+            thumbnail = JsonUtils.stringFromJsonNode(node, ItemBase.THUMBNAIL, null);
         }
     }
 
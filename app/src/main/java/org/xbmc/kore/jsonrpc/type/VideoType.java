@@ -44,9 +44,9 @@ public class VideoType {
         public final String thumbnail;
 
         public Cast(JsonNode node) {
-            name = JsonUtils.stringFromJsonNode(node, NAME);
+            name = JsonUtils.pooledStringFromJsonNode(node, NAME);
             order = JsonUtils.intFromJsonNode(node, ORDER, 0);
-            role = JsonUtils.stringFromJsonNode(node, ROLE);
+            role = JsonUtils.pooledStringFromJsonNode(node, ROLE);
             thumbnail = JsonUtils.stringFromJsonNode(node, THUMBNAIL);
         }
 
@@ -126,8 +126,8 @@ public class VideoType {
 
             public Audio(JsonNode node) {
                 channels = JsonUtils.intFromJsonNode(node, CHANNELS, 0);
-                codec = JsonUtils.stringFromJsonNode(node, CODEC);
-                language = JsonUtils.stringFromJsonNode(node, LANGUAGE);
+                codec = JsonUtils.pooledStringFromJsonNode(node, CODEC);
+                language = JsonUtils.pooledStringFromJsonNode(node, LANGUAGE);
             }
         }
 
@@ -137,7 +137,7 @@ public class VideoType {
             public final String language;
 
             public Subtitle(JsonNode node) {
-                language = JsonUtils.stringFromJsonNode(node, LANGUAGE, null);
+                language = JsonUtils.pooledStringFromJsonNode(node, LANGUAGE);
             }
         }
 
@@ -156,7 +156,7 @@ public class VideoType {
 
             public Video(JsonNode node) {
                 aspect = JsonUtils.doubleFromJsonNode(node, ASPECT, 0);
-                codec = JsonUtils.stringFromJsonNode(node, CODEC, null);
+                codec = JsonUtils.pooledStringFromJsonNode(node, CODEC);
                 duration = JsonUtils.intFromJsonNode(node, DURATION, -1);
                 height = JsonUtils.intFromJsonNode(node, HEIGHT, -1);
                 width = JsonUtils.intFromJsonNode(node, WIDTH, -1);
@@ -321,7 +321,7 @@ public class VideoType {
 
         public DetailsFile(JsonNode node) {
             super(node);
-            director = JsonUtils.stringListFromJsonNode(node, DIRECTOR);
+            director = JsonUtils.pooledStringListFromJsonNode(node, DIRECTOR);
             resume = node.has(RESUME) ? new Resume(node.get(RESUME)) : null;
             runtime = JsonUtils.intFromJsonNode(node, RUNTIME, 0);
             streamdetails = node.has(STREAMDETAILS) ? new Streams(node.get(STREAMDETAILS)) : null;
@@ -379,25 +379,25 @@ public class VideoType {
         public DetailsMovie(JsonNode node) {
             super(node);
             cast = Cast.castListFromJsonNode(node, CAST);
-            country = JsonUtils.stringListFromJsonNode(node, COUNTRY);
-            genre = JsonUtils.stringListFromJsonNode(node, GENRE);
+            country = JsonUtils.pooledStringListFromJsonNode(node, COUNTRY);
+            genre = JsonUtils.pooledStringListFromJsonNode(node, GENRE);
             imdbnumber = JsonUtils.stringFromJsonNode(node, IMDBNUMBER);
             movieid = JsonUtils.intFromJsonNode(node, MOVIEID);
-            mpaa = JsonUtils.stringFromJsonNode(node, MPAA);
+            mpaa = JsonUtils.pooledStringFromJsonNode(node, MPAA);
             originaltitle = JsonUtils.stringFromJsonNode(node, ORIGINALTITLE);
             plotoutline = JsonUtils.stringFromJsonNode(node, PLOTOUTLINE);
             rating = JsonUtils.doubleFromJsonNode(node, RATING, 0);
-            set = JsonUtils.stringFromJsonNode(node, SET);
+            set = JsonUtils.pooledStringFromJsonNode(node, SET);
             setid = JsonUtils.intFromJsonNode(node, SETID, -1);
             showlink = JsonUtils.stringListFromJsonNode(node, SHOWLINK);
             sorttitle = JsonUtils.stringFromJsonNode(node, SORTTITLE);
-            studio = JsonUtils.stringListFromJsonNode(node, STUDIO);
-            tag = JsonUtils.stringListFromJsonNode(node, TAG);
+            studio = JsonUtils.pooledStringListFromJsonNode(node, STUDIO);
+            tag = JsonUtils.pooledStringListFromJsonNode(node, TAG);
             tagline = JsonUtils.stringFromJsonNode(node, TAGLINE);
             top250 = JsonUtils.intFromJsonNode(node, TOP250, 0);
             trailer = JsonUtils.stringFromJsonNode(node, TRAILER);
             votes = JsonUtils.stringFromJsonNode(node, VOTES);
-            writer = JsonUtils.stringListFromJsonNode(node, WRITER);
+            writer = JsonUtils.pooledStringListFromJsonNode(node, WRITER);
             year = JsonUtils.intFromJsonNode(node, YEAR, 0);
         }
     }
@@ -484,16 +484,16 @@ public class VideoType {
             cast = Cast.castListFromJsonNode(node, CAST);
             episode = JsonUtils.intFromJsonNode(node, EPISODE, 0);
             episodeguide = JsonUtils.stringFromJsonNode(node, EPISODEGUIDE);
-            genre = JsonUtils.stringListFromJsonNode(node, GENRE);
+            genre = JsonUtils.pooledStringListFromJsonNode(node, GENRE);
             imdbnumber = JsonUtils.stringFromJsonNode(node, IMDBNUMBER);
-            mpaa = JsonUtils.stringFromJsonNode(node, MPAA);
+            mpaa = JsonUtils.pooledStringFromJsonNode(node, MPAA);
             originaltitle = JsonUtils.stringFromJsonNode(node, ORIGINALTITLE);
             premiered = JsonUtils.stringFromJsonNode(node, PREMIERED);
             rating = JsonUtils.doubleFromJsonNode(node, RATING, 0);
             season = JsonUtils.intFromJsonNode(node, SEASON, 0);
             sorttitle = JsonUtils.stringFromJsonNode(node, SORTTITLE);
-            studio = JsonUtils.stringListFromJsonNode(node, STUDIO);
-            tag = JsonUtils.stringListFromJsonNode(node, TAG);
+            studio = JsonUtils.pooledStringListFromJsonNode(node, STUDIO);
+            tag = JsonUtils.pooledStringListFromJsonNode(node, TAG);
             tvshowid = JsonUtils.intFromJsonNode(node, TVSHOWID, 0);
             votes = JsonUtils.stringFromJsonNode(node, VOTES);
             watchedepisodes = JsonUtils.intFromJsonNode(node, WATCHEDEPISODES, 0);
@@ -542,7 +542,7 @@ public class VideoType {
             super(node);
             episode = JsonUtils.intFromJsonNode(node, EPISODE, 0);
             season = JsonUtils.intFromJsonNode(node, SEASON, 0);
-            showtitle = JsonUtils.stringFromJsonNode(node, SHOWTITLE);
+            showtitle = JsonUtils.pooledStringFromJsonNode(node, SHOWTITLE);
             tvshowid = JsonUtils.intFromJsonNode(node, TVSHOWID, -1);
             watchedepisodes = JsonUtils.intFromJsonNode(node, WATCHEDEPISODES, 0);
         }
@@ -627,10 +627,10 @@ public class VideoType {
             productioncode = JsonUtils.stringFromJsonNode(node, PRODUCTIONCODE);
             rating = JsonUtils.doubleFromJsonNode(node, RATING, 0);
             season = JsonUtils.intFromJsonNode(node, SEASON, 0);
-            showtitle = JsonUtils.stringFromJsonNode(node, SHOWTITLE);
+            showtitle = JsonUtils.pooledStringFromJsonNode(node, SHOWTITLE);
             tvshowid = JsonUtils.intFromJsonNode(node, TVSHOWID);
             votes = JsonUtils.stringFromJsonNode(node, VOTES);
-            writer = JsonUtils.stringListFromJsonNode(node, WRITER);
+            writer = JsonUtils.pooledStringListFromJsonNode(node, WRITER);
         }
     }
 
@@ -694,12 +694,12 @@ public class VideoType {
          */
         public DetailsMusicVideo(JsonNode node) {
             super(node);
-            album = JsonUtils.stringFromJsonNode(node, ALBUM);
-            artist = JsonUtils.stringListFromJsonNode(node, ARTIST);
-            genre = JsonUtils.stringListFromJsonNode(node, GENRE);
+            album = JsonUtils.pooledStringFromJsonNode(node, ALBUM);
+            artist = JsonUtils.pooledStringListFromJsonNode(node, ARTIST);
+            genre = JsonUtils.pooledStringListFromJsonNode(node, GENRE);
             musicvideoid = JsonUtils.intFromJsonNode(node, MUSICVIDEOID);
-            studio = JsonUtils.stringListFromJsonNode(node, STUDIO);
-            tag = JsonUtils.stringListFromJsonNode(node, TAG);
+            studio = JsonUtils.pooledStringListFromJsonNode(node, STUDIO);
+            tag = JsonUtils.pooledStringListFromJsonNode(node, TAG);
             track = JsonUtils.intFromJsonNode(node, TRACK, 0);
             year = JsonUtils.intFromJsonNode(node, YEAR, 0);
         }
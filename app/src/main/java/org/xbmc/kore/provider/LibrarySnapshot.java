@@ -0,0 +1,492 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.provider;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import org.xbmc.kore.Settings;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compact, memory mapped, snapshot of the top level lists of the library (movies, tv shows,
+ * albums and artists), so that a list can show its first screen on a cold start without
+ * waiting for the database.
+ * <p>
+ * The snapshot holds the same columns and sort orders the list screen queried the last time
+ * it was shown unfiltered, which are recorded with {@link #recordQuery}. It's rewritten after
+ * the syncs of its type that changed the library, once they stop for {@link #WRITE_DELAY}, and
+ * read with {@link #readFirstScreen} while the real cursor loads.
+ * <p>
+ * Only the first {@link #FIRST_SCREEN_ROWS} rows of each sort order are kept, so the file stays
+ * small however big the library is. File layout, all integers big endian:
+ * <pre>
+ * magic, version
+ * column count, column names
+ * sort order count, for each: sort order, row count, rows (for each column: type and value)
+ * SHA-1 digest of everything before it
+ * </pre>
+ * Strings are stored as their UTF-8 length followed by the bytes.
+ */
+public class LibrarySnapshot {
+    private static final String TAG = LogUtils.makeLogTag(LibrarySnapshot.class);
+
+    private static final int MAGIC = 0x4b534e50;
+    private static final int VERSION = 2;
+
+    private static final byte TYPE_NULL = 0,
+            TYPE_LONG = 1,
+            TYPE_DOUBLE = 2,
+            TYPE_STRING = 3;
+
+    /**
+     * Rows returned by {@link #readFirstScreen}, enough to fill the screen of a tablet
+     */
+    public static final int FIRST_SCREEN_ROWS = 60;
+
+    /**
+     * Strings are truncated to this length, as the lists only show the start of long texts
+     */
+    private static final int MAX_STRING_LENGTH = 300;
+
+    /**
+     * Time to wait for other changes to a list before rewriting its snapshot, in ms
+     */
+    static final long WRITE_DELAY = 2000;
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final int DIGEST_LENGTH = 20;
+
+    private static final String SNAPSHOTS_DIR = "library_snapshots";
+    private static final String QUERY_SEPARATOR = "\n";
+
+    /**
+     * The lists that have a snapshot
+     */
+    public enum Type {
+        MOVIES("movies"),
+        TVSHOWS("tvshows"),
+        ALBUMS("albums"),
+        ARTISTS("artists");
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        Uri buildListUri(int hostId) {
+            switch (this) {
+                case MOVIES: return MediaContract.Movies.buildMoviesListUri(hostId);
+                case TVSHOWS: return MediaContract.TVShows.buildTVShowsListUri(hostId);
+                case ALBUMS: return MediaContract.Albums.buildAlbumsListUri(hostId);
+                default: return MediaContract.Artists.buildArtistsListUri(hostId);
+            }
+        }
+
+        /**
+         * Returns the type whose list is on the given uri, or null if there's no snapshot for it
+         */
+        static Type forListUri(int hostId, Uri uri) {
+            for (Type type : values()) {
+                if (type.buildListUri(hostId).equals(uri))
+                    return type;
+            }
+            return null;
+        }
+    }
+
+    private static HandlerThread snapshotThread;
+    private static Handler snapshotHandler;
+
+    /**
+     * Returns the handler of the background thread of the provider, where the snapshots are
+     * written
+     */
+    static synchronized Handler getSnapshotHandler() {
+        if (snapshotHandler == null) {
+            snapshotThread = new HandlerThread("LibrarySnapshot", Process.THREAD_PRIORITY_BACKGROUND);
+            snapshotThread.start();
+            snapshotHandler = new Handler(snapshotThread.getLooper());
+        }
+        return snapshotHandler;
+    }
+
+    // Snapshot file name -> its pending write
+    private static final HashMap<String, Runnable> pendingWrites = new HashMap<>();
+
+    /**
+     * Records the query of an unfiltered list, so that its snapshot holds the same columns and
+     * sort order. If the snapshot doesn't have them yet, it's rewritten in the background.
+     * Call it from the main thread, when the list finishes loading
+     * @param hostId Host
+     * @param uri Uri of the list
+     * @param projection Columns of the list
+     * @param sortOrder Sort order of the list
+     */
+    public static void recordQuery(Context context, final int hostId, Uri uri,
+                                   String[] projection, String sortOrder) {
+        final Type type = Type.forListUri(hostId, uri);
+        if ((type == null) || (projection == null) || TextUtils.isEmpty(sortOrder))
+            return;
+
+        Context appContext = context.getApplicationContext();
+        boolean changed = saveQuery(appContext, type, projection, sortOrder);
+        if (changed || !getSnapshotFile(appContext, hostId, type).exists()) {
+            scheduleWrite(appContext, hostId, type);
+        }
+    }
+
+    /**
+     * Rewrites the snapshot of a list in the background, after {@link #WRITE_DELAY}. Calls made
+     * meanwhile for the same list postpone it, so that consecutive syncs write it once
+     * @param hostId Host
+     * @param type List to write
+     */
+    public static void scheduleWrite(Context context, final int hostId, final Type type) {
+        final Context appContext = context.getApplicationContext();
+        final String key = getSnapshotFile(appContext, hostId, type).getName();
+        Runnable pendingWrite;
+        synchronized (pendingWrites) {
+            pendingWrite = pendingWrites.get(key);
+            if (pendingWrite == null) {
+                pendingWrite = new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (pendingWrites) {
+                            pendingWrites.remove(key);
+                        }
+                        write(appContext, hostId, type);
+                    }
+                };
+                pendingWrites.put(key, pendingWrite);
+            }
+        }
+        Handler handler = getSnapshotHandler();
+        handler.removeCallbacks(pendingWrite);
+        handler.postDelayed(pendingWrite, WRITE_DELAY);
+    }
+
+    /**
+     * Saves the query of a list, to be used on its next snapshot
+     * @return Whether the snapshot needs to be rewritten to include it
+     */
+    static boolean saveQuery(Context context, Type type, String[] projection, String sortOrder) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String projectionKey = Settings.getLibrarySnapshotProjectionPrefKey(type.name),
+                sortOrdersKey = Settings.getLibrarySnapshotSortOrdersPrefKey(type.name);
+        String joinedProjection = TextUtils.join(QUERY_SEPARATOR, projection);
+        Set<String> sortOrders = new HashSet<>(preferences.getStringSet(sortOrdersKey, new HashSet<String>()));
+
+        boolean changed = false;
+        if (!joinedProjection.equals(preferences.getString(projectionKey, null))) {
+            // Other columns, the old sort orders may not apply anymore
+            sortOrders.clear();
+            changed = true;
+        }
+        if (sortOrders.add(sortOrder))
+            changed = true;
+        if (changed) {
+            preferences.edit()
+                       .putString(projectionKey, joinedProjection)
+                       .putStringSet(sortOrdersKey, sortOrders)
+                       .apply();
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the first screen of a list from its snapshot, or null if there's no snapshot
+     * for that list and sort order. The cursor has the given projection, with nulls on the
+     * columns the snapshot doesn't have
+     * @param hostId Host
+     * @param uri Uri of the list
+     * @param projection Columns of the list
+     * @param sortOrder Sort order of the list
+     */
+    public static Cursor readFirstScreen(Context context, int hostId, Uri uri,
+                                         String[] projection, String sortOrder) {
+        Type type = Type.forListUri(hostId, uri);
+        if ((type == null) || (projection == null) || TextUtils.isEmpty(sortOrder))
+            return null;
+
+        File file = getSnapshotFile(context, hostId, type);
+        if (!file.exists())
+            return null;
+
+        long start = System.currentTimeMillis();
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            MatrixCursor cursor = read(buffer, projection, sortOrder, FIRST_SCREEN_ROWS);
+            LogUtils.LOGD(TAG, "Read " + ((cursor == null) ? 0 : cursor.getCount()) + " rows of the " +
+                               type.name + " snapshot in " + (System.currentTimeMillis() - start) + "ms");
+            return cursor;
+        } catch (IOException | RuntimeException e) {
+            // A damaged snapshot is simply not shown, it'll be rewritten on the next sync
+            LogUtils.LOGW(TAG, "Couldn't read the " + type.name + " snapshot", e);
+            return null;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the snapshot of a list from the database, with the recorded query. Does nothing
+     * if the list was never shown, or if the snapshot would be the same. Don't call it from the
+     * main thread
+     * @param hostId Host
+     * @param type List to write
+     * @return Whether the snapshot file was written
+     */
+    static synchronized boolean write(Context context, int hostId, Type type) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String joinedProjection = preferences.getString(Settings.getLibrarySnapshotProjectionPrefKey(type.name), null);
+        Set<String> sortOrders = preferences.getStringSet(Settings.getLibrarySnapshotSortOrdersPrefKey(type.name), null);
+        if (TextUtils.isEmpty(joinedProjection) || (sortOrders == null) || sortOrders.isEmpty())
+            return false;
+
+        String[] projection = TextUtils.split(joinedProjection, QUERY_SEPARATOR);
+        // Always in the same order, so that an unchanged list gives the same file
+        List<String> sortOrderList = new ArrayList<>(sortOrders);
+        Collections.sort(sortOrderList);
+        long start = System.currentTimeMillis();
+        File file = getSnapshotFile(context, hostId, type);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Uri uri = type.buildListUri(hostId);
+        try {
+            File dir = file.getParentFile();
+            if (!dir.exists() && !dir.mkdirs())
+                throw new IOException("Couldn't create " + dir);
+
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            FileOutputStream fileOut = new FileOutputStream(tmpFile);
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new DigestOutputStream(fileOut, digest)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(projection.length);
+                for (String column : projection) {
+                    writeString(out, column);
+                }
+                out.writeInt(sortOrderList.size());
+                for (String sortOrder : sortOrderList) {
+                    writeString(out, sortOrder);
+                    Cursor cursor = context.getContentResolver()
+                                           .query(uri, projection, null, null, sortOrder);
+                    if (cursor == null)
+                        return false;
+                    try {
+                        int rowCount = Math.min(cursor.getCount(), FIRST_SCREEN_ROWS);
+                        out.writeInt(rowCount);
+                        for (int row = 0; row < rowCount; row++) {
+                            cursor.moveToPosition(row);
+                            for (int column = 0; column < projection.length; column++) {
+                                writeValue(out, cursor, column);
+                            }
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                out.flush();
+                // Written past the digest stream, so it covers everything before it
+                fileOut.write(digest.digest());
+            } finally {
+                out.close();
+            }
+
+            if (hasDigestOf(file, tmpFile)) {
+                LogUtils.LOGD(TAG, "The " + type.name + " snapshot is unchanged, not replacing it");
+                return false;
+            }
+            if (!tmpFile.renameTo(file))
+                throw new IOException("Couldn't rename " + tmpFile);
+            LogUtils.LOGD(TAG, "Wrote " + sortOrderList.size() + " sort orders to the " + type.name + " snapshot in " +
+                               (System.currentTimeMillis() - start) + "ms. Size: " + file.length());
+            return true;
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+            LogUtils.LOGW(TAG, "Couldn't write the " + type.name + " snapshot", e);
+            return false;
+        } finally {
+            // Left behind if the snapshot was unchanged or couldn't be written
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Returns whether a file exists and ends with the same digest as another, that is, whether
+     * both have the same contents
+     */
+    private static boolean hasDigestOf(File file, File other) throws IOException {
+        if (!file.exists() || (file.length() != other.length()))
+            return false;
+        return Arrays.equals(readDigest(file), readDigest(other));
+    }
+
+    private static byte[] readDigest(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] digest = new byte[DIGEST_LENGTH];
+            randomAccessFile.seek(randomAccessFile.length() - DIGEST_LENGTH);
+            randomAccessFile.readFully(digest);
+            return digest;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Deletes the snapshots of a host
+     */
+    public static void delete(Context context, int hostId) {
+        for (Type type : Type.values()) {
+            getSnapshotFile(context, hostId, type).delete();
+        }
+    }
+
+    private static File getSnapshotFile(Context context, int hostId, Type type) {
+        return new File(new File(context.getFilesDir(), SNAPSHOTS_DIR), hostId + "_" + type.name);
+    }
+
+    private static void writeValue(DataOutputStream out, Cursor cursor, int column) throws IOException {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                out.writeByte(TYPE_LONG);
+                out.writeLong(cursor.getLong(column));
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble(cursor.getDouble(column));
+                break;
+            case Cursor.FIELD_TYPE_STRING:
+                String value = cursor.getString(column);
+                if (value.length() > MAX_STRING_LENGTH)
+                    value = value.substring(0, MAX_STRING_LENGTH);
+                out.writeByte(TYPE_STRING);
+                writeString(out, value);
+                break;
+            default:
+                out.writeByte(TYPE_NULL);
+                break;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the first rows of a snapshot in the given sort order
+     * @return Cursor with the rows, or null if the snapshot doesn't have that sort order or is empty
+     */
+    static MatrixCursor read(ByteBuffer buffer, String[] projection, String sortOrder, int maxRows)
+            throws IOException {
+        if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION))
+            return null;
+
+        // Where each snapshot column goes in the projection, or -1 if it isn't there
+        int columnCount = buffer.getInt();
+        int[] projectionIndexes = new int[columnCount];
+        List<String> projectionList = Arrays.asList(projection);
+        for (int i = 0; i < columnCount; i++) {
+            projectionIndexes[i] = projectionList.indexOf(readString(buffer));
+        }
+
+        int orderCount = buffer.getInt();
+        for (int i = 0; i < orderCount; i++) {
+            boolean found = readString(buffer).equals(sortOrder);
+            int rowCount = buffer.getInt();
+            if (!found) {
+                // Rows have no fixed size, skip them value by value
+                for (int value = 0; value < rowCount * columnCount; value++) {
+                    readValue(buffer);
+                }
+                continue;
+            }
+            if (rowCount == 0)
+                return null;
+
+            int count = Math.min(maxRows, rowCount);
+            MatrixCursor cursor = new MatrixCursor(projection, count);
+            for (int row = 0; row < count; row++) {
+                Object[] values = new Object[projection.length];
+                for (int column = 0; column < columnCount; column++) {
+                    Object value = readValue(buffer);
+                    if (projectionIndexes[column] != -1)
+                        values[projectionIndexes[column]] = value;
+                }
+                cursor.addRow(values);
+            }
+            return cursor;
+        }
+        return null;
+    }
+
+    private static Object readValue(ByteBuffer buffer) throws IOException {
+        byte type = buffer.get();
+        switch (type) {
+            case TYPE_LONG: return buffer.getLong();
+            case TYPE_DOUBLE: return buffer.getDouble();
+            case TYPE_STRING: return readString(buffer);
+            case TYPE_NULL: return null;
+            default: throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -50,6 +50,9 @@ public class MediaContract {
     public static final String PATH_ALBUM_ARTISTS = "album_artists";
     public static final String PATH_ALBUM_GENRES = "album_genres";
     public static final String PATH_MUSIC_VIDEOS = "music_videos";
+    public static final String PATH_ADDONS = "addons";
+    public static final String PATH_FAVOURITES = "favourites";
+    public static final String PATH_SYNC_REPORTS = "sync_reports";
 
     /** Last time this entry was updated or synchronized. */
     public interface SyncColumns {
@@ -879,4 +882,116 @@ public class MediaContract {
         };
     }
 
+    /**
+     * Columns for table Addons
+     * For XBMC reference/unique key use HOST_ID + ADDONID
+     */
+    public interface AddonsColumns {
+        String HOST_ID = "host_id";
+        String ADDONID = "addonid";
+
+        String NAME = "name";
+        String TYPE = "type";
+        String VERSION = "version";
+        String SUMMARY = "summary";
+        String DESCRIPTION = "description";
+        String PATH = "path";
+        String AUTHOR = "author";
+        String THUMBNAIL = "thumbnail";
+        String FANART = "fanart";
+        String DISCLAIMER = "disclaimer";
+        String RATING = "rating";
+        String ENABLED = "enabled";
+    }
+
+    public static class Addons implements BaseColumns, SyncColumns, AddonsColumns {
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ADDONS).build();
+
+        public static final String CONTENT_TYPE =
+                "vnd.android.cursor.dir/vnd.org.xbmc." + PATH_ADDONS;
+        public static final String CONTENT_ITEM_TYPE =
+                "vnd.android.cursor.item/vnd.org.xbmc." + PATH_ADDONS;
+
+        /** Build {@link Uri} for addons list. */
+        public static Uri buildAddonsListUri(long hostId) {
+            return Hosts.buildHostUri(hostId).buildUpon()
+                        .appendPath(PATH_ADDONS)
+                        .build();
+        }
+
+        public final static String[] ALL_COLUMNS = {
+                _ID, UPDATED, HOST_ID, ADDONID, NAME, TYPE, VERSION, SUMMARY, DESCRIPTION, PATH,
+                AUTHOR, THUMBNAIL, FANART, DISCLAIMER, RATING, ENABLED
+        };
+    }
+
+    /**
+     * Columns for table Favourites
+     * Kodi doesn't identify favourites, so they are kept in the order they were returned,
+     * using POSITION
+     */
+    public interface FavouritesColumns {
+        String HOST_ID = "host_id";
+        String POSITION = "position";
+
+        String TITLE = "title";
+        String TYPE = "type";
+        String PATH = "path";
+        String THUMBNAIL = "thumbnail";
+        String WINDOW = "window";
+        String WINDOW_PARAMETER = "window_parameter";
+    }
+
+    public static class Favourites implements BaseColumns, SyncColumns, FavouritesColumns {
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_FAVOURITES).build();
+
+        public static final String CONTENT_TYPE =
+                "vnd.android.cursor.dir/vnd.org.xbmc." + PATH_FAVOURITES;
+        public static final String CONTENT_ITEM_TYPE =
+                "vnd.android.cursor.item/vnd.org.xbmc." + PATH_FAVOURITES;
+
+        /** Build {@link Uri} for favourites list. */
+        public static Uri buildFavouritesListUri(long hostId) {
+            return Hosts.buildHostUri(hostId).buildUpon()
+                        .appendPath(PATH_FAVOURITES)
+                        .build();
+        }
+
+        public final static String[] ALL_COLUMNS = {
+                _ID, UPDATED, HOST_ID, POSITION, TITLE, TYPE, PATH, THUMBNAIL, WINDOW,
+                WINDOW_PARAMETER
+        };
+    }
+
+    /**
+     * Columns for table SyncReports
+     * Timings of the last library syncs, used to profile them
+     */
+    public interface SyncReportsColumns {
+        String HOST_ID = "host_id";
+        String STARTED = "started";
+        String DURATION = "duration";
+        String FAILED_ITEMS = "failed_items";
+        String RESPONSE_BYTES = "response_bytes";
+        String REPORT = "report";
+    }
+
+    public static class SyncReports implements BaseColumns, SyncColumns, SyncReportsColumns {
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_REPORTS).build();
+
+        public static final String CONTENT_TYPE =
+                "vnd.android.cursor.dir/vnd.org.xbmc." + PATH_SYNC_REPORTS;
+
+        /**
+         * Number of reports to keep per host
+         */
+        public static final int MAX_REPORTS = 10;
+
+        public final static String[] ALL_COLUMNS = {
+                _ID, UPDATED, HOST_ID, STARTED, DURATION, FAILED_ITEMS, RESPONSE_BYTES, REPORT
+        };
+    }
 }
@@ -18,6 +18,7 @@ package org.xbmc.kore.provider;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.provider.BaseColumns;
 
 import org.xbmc.kore.host.HostInfo;
@@ -39,7 +40,9 @@ public class MediaDatabase extends SQLiteOpenHelper {
             DB_VERSION_PRE_HOST_HTTPS = 9,
             DB_VERSION_PRE_LAST_PLAYED = 10,
             DB_VERSION_PER_HOST_DIRECT_SHARE_TARGET = 11,
-            DB_VERSION = 12;
+            DB_VERSION_PRE_ADDONS_FAVOURITES = 12,
+            DB_VERSION_PRE_SYNC_REPORTS = 13,
+            DB_VERSION = 14;
 
 	/**
 	 * Tables exposed
@@ -60,6 +63,9 @@ public class MediaDatabase extends SQLiteOpenHelper {
         String ALBUM_ARTISTS = "album_artists";
         String ALBUM_GENRES = "album_genres";
         String MUSIC_VIDEOS = "music_videos";
+        String ADDONS = "addons";
+        String FAVOURITES = "favourites";
+        String SYNC_REPORTS = "sync_reports";
 
         /**
          * Join to get Albums for an Artist
@@ -136,8 +142,21 @@ public class MediaDatabase extends SQLiteOpenHelper {
 
     public MediaDatabase(Context context) {
 		super(context, DB_NAME, null, DB_VERSION);
+        // Write-ahead logging lets the lists be queried, on their own connections, while the
+        // library sync is writing
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
 	}
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if ((Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 
@@ -458,6 +477,11 @@ public class MediaDatabase extends SQLiteOpenHelper {
                    "" + MediaContract.MusicVideosColumns.MUSICVIDEOID + ") ON CONFLICT REPLACE)"
         );
 
+        // Addons and favourites
+        createAddonsTable(db);
+        createFavouritesTable(db);
+
+        createSyncReportsTable(db);
 
         // TODO: Indices?
 
@@ -476,6 +500,9 @@ public class MediaDatabase extends SQLiteOpenHelper {
         db.execSQL(buildHostsDeleteTrigger(Tables.SONG_ARTISTS, MediaContract.SongArtistsColumns.HOST_ID));
         db.execSQL(buildHostsDeleteTrigger(Tables.ALBUM_GENRES, MediaContract.AlbumGenresColumns.HOST_ID));
         db.execSQL(buildHostsDeleteTrigger(Tables.MUSIC_VIDEOS, MediaContract.MusicVideosColumns.HOST_ID));
+        db.execSQL(buildHostsDeleteTrigger(Tables.ADDONS, MediaContract.AddonsColumns.HOST_ID));
+        db.execSQL(buildHostsDeleteTrigger(Tables.FAVOURITES, MediaContract.FavouritesColumns.HOST_ID));
+        db.execSQL(buildHostsDeleteTrigger(Tables.SYNC_REPORTS, MediaContract.SyncReportsColumns.HOST_ID));
 
     }
 
@@ -537,6 +564,14 @@ public class MediaDatabase extends SQLiteOpenHelper {
                 db.execSQL("ALTER TABLE " + Tables.HOSTS +
                         " ADD COLUMN " + MediaContract.HostsColumns.DIRECT_SHARE +
                         " INTEGER DEFAULT 1;");
+            case DB_VERSION_PRE_ADDONS_FAVOURITES:
+                createAddonsTable(db);
+                createFavouritesTable(db);
+                db.execSQL(buildHostsDeleteTrigger(Tables.ADDONS, MediaContract.AddonsColumns.HOST_ID));
+                db.execSQL(buildHostsDeleteTrigger(Tables.FAVOURITES, MediaContract.FavouritesColumns.HOST_ID));
+            case DB_VERSION_PRE_SYNC_REPORTS:
+                createSyncReportsTable(db);
+                db.execSQL(buildHostsDeleteTrigger(Tables.SYNC_REPORTS, MediaContract.SyncReportsColumns.HOST_ID));
         }
 	}
 
@@ -595,5 +630,57 @@ public class MediaDatabase extends SQLiteOpenHelper {
                    ") ON CONFLICT REPLACE)"
                   );
     }
-}
 
+    private void createAddonsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Tables.ADDONS + "(" +
+                   BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                   MediaContract.SyncColumns.UPDATED + " INTEGER NOT NULL," +
+                   MediaContract.AddonsColumns.HOST_ID + " INTEGER NOT NULL " + References.HOST_ID + ", " +
+                   MediaContract.AddonsColumns.ADDONID + " TEXT NOT NULL, " +
+                   MediaContract.AddonsColumns.NAME + " TEXT, " +
+                   MediaContract.AddonsColumns.TYPE + " TEXT, " +
+                   MediaContract.AddonsColumns.VERSION + " TEXT, " +
+                   MediaContract.AddonsColumns.SUMMARY + " TEXT, " +
+                   MediaContract.AddonsColumns.DESCRIPTION + " TEXT, " +
+                   MediaContract.AddonsColumns.PATH + " TEXT, " +
+                   MediaContract.AddonsColumns.AUTHOR + " TEXT, " +
+                   MediaContract.AddonsColumns.THUMBNAIL + " TEXT, " +
+                   MediaContract.AddonsColumns.FANART + " TEXT, " +
+                   MediaContract.AddonsColumns.DISCLAIMER + " TEXT, " +
+                   MediaContract.AddonsColumns.RATING + " INTEGER, " +
+                   MediaContract.AddonsColumns.ENABLED + " INTEGER, " +
+                   "UNIQUE (" + MediaContract.AddonsColumns.HOST_ID + ", " +
+                   MediaContract.AddonsColumns.ADDONID + ") ON CONFLICT REPLACE)"
+                  );
+    }
+
+    private void createFavouritesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Tables.FAVOURITES + "(" +
+                   BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                   MediaContract.SyncColumns.UPDATED + " INTEGER NOT NULL," +
+                   MediaContract.FavouritesColumns.HOST_ID + " INTEGER NOT NULL " + References.HOST_ID + ", " +
+                   MediaContract.FavouritesColumns.POSITION + " INTEGER NOT NULL, " +
+                   MediaContract.FavouritesColumns.TITLE + " TEXT, " +
+                   MediaContract.FavouritesColumns.TYPE + " TEXT, " +
+                   MediaContract.FavouritesColumns.PATH + " TEXT, " +
+                   MediaContract.FavouritesColumns.THUMBNAIL + " TEXT, " +
+                   MediaContract.FavouritesColumns.WINDOW + " TEXT, " +
+                   MediaContract.FavouritesColumns.WINDOW_PARAMETER + " TEXT, " +
+                   "UNIQUE (" + MediaContract.FavouritesColumns.HOST_ID + ", " +
+                   MediaContract.FavouritesColumns.POSITION + ") ON CONFLICT REPLACE)"
+                  );
+    }
+
+    private void createSyncReportsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Tables.SYNC_REPORTS + "(" +
+                   BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                   MediaContract.SyncColumns.UPDATED + " INTEGER NOT NULL," +
+                   MediaContract.SyncReportsColumns.HOST_ID + " INTEGER NOT NULL " + References.HOST_ID + ", " +
+                   MediaContract.SyncReportsColumns.STARTED + " INTEGER NOT NULL, " +
+                   MediaContract.SyncReportsColumns.DURATION + " INTEGER, " +
+                   MediaContract.SyncReportsColumns.FAILED_ITEMS + " INTEGER, " +
+                   MediaContract.SyncReportsColumns.RESPONSE_BYTES + " INTEGER, " +
+                   MediaContract.SyncReportsColumns.REPORT + " TEXT)"
+                  );
+    }
+}
@@ -16,8 +16,12 @@
 package org.xbmc.kore.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -26,8 +30,11 @@ import android.provider.BaseColumns;
 
 import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.SelectionBuilder;
+import org.xbmc.kore.utils.StartupTrace;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 
 /**
  * Provider for {@link MediaContract} data.
@@ -98,6 +105,45 @@ public class MediaProvider extends ContentProvider {
     private static final int MUSIC_VIDEOS_LIST = 1101;
     private static final int MUSIC_VIDEOS_ID = 1102;
 
+    private static final int ADDONS_ALL = 1200;
+    private static final int ADDONS_LIST = 1201;
+
+    private static final int FAVOURITES_ALL = 1300;
+    private static final int FAVOURITES_LIST = 1301;
+
+    private static final int SYNC_REPORTS_ALL = 1400;
+
+    /**
+     * Time spent by a thread on bulk inserts, deletes and the change notifications they send.
+     * Lets the library sync tell the database work apart from the rest of its work
+     */
+    public static class WriteTimings {
+        public long insertNanos, deleteNanos, notifyNanos;
+        public long insertedRows;
+    }
+
+    /**
+     * Number of rows inserted by {@link #bulkInsert(Uri, ContentValues[])} in each transaction.
+     * Committing in chunks bounds how long other writers wait on the database, and lets readers
+     * see the rows as they're synced
+     */
+    static final int BULK_INSERT_CHUNK_SIZE = 200;
+
+    private static final ThreadLocal<WriteTimings> writeTimings = new ThreadLocal<WriteTimings>() {
+        @Override
+        protected WriteTimings initialValue() {
+            return new WriteTimings();
+        }
+    };
+
+    /**
+     * Returns the write timings accumulated by the calling thread. They only account for
+     * calls on this process, as those run on the calling thread
+     */
+    public static WriteTimings getWriteTimings() {
+        return writeTimings.get();
+    }
+
     /**
      * Build and return a {@link UriMatcher} that catches all {@link Uri} variations supported by
      * this {@link ContentProvider}.
@@ -221,6 +267,19 @@ public class MediaProvider extends ContentProvider {
         matcher.addURI(authority, MediaContract.PATH_HOSTS + "/*/" +
                                   MediaContract.PATH_MUSIC_VIDEOS + "/*", MUSIC_VIDEOS_ID);
 
+        // Addons
+        matcher.addURI(authority, MediaContract.PATH_ADDONS, ADDONS_ALL);
+        matcher.addURI(authority, MediaContract.PATH_HOSTS + "/*/" +
+                                  MediaContract.PATH_ADDONS, ADDONS_LIST);
+
+        // Favourites
+        matcher.addURI(authority, MediaContract.PATH_FAVOURITES, FAVOURITES_ALL);
+        matcher.addURI(authority, MediaContract.PATH_HOSTS + "/*/" +
+                                  MediaContract.PATH_FAVOURITES, FAVOURITES_LIST);
+
+        // Sync reports
+        matcher.addURI(authority, MediaContract.PATH_SYNC_REPORTS, SYNC_REPORTS_ALL);
+
         return matcher;
     }
 
@@ -234,6 +293,23 @@ public class MediaProvider extends ContentProvider {
             context = getContext();
         }
         mOpenHelper = new MediaDatabase(context);
+        StartupTrace.getInstance().processStarted();
+
+        // Open the database in the background, on the thread that writes the library snapshots,
+        // so that it's ready, or at least under way, by the time the first activity queries it
+        LibrarySnapshot.getSnapshotHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.Span span = StartupTrace.getInstance().begin("Open database");
+                try {
+                    mOpenHelper.getWritableDatabase();
+                } catch (RuntimeException e) {
+                    LogUtils.LOGW(TAG, "Couldn't open the database in advance", e);
+                } finally {
+                    span.end();
+                }
+            }
+        });
         return true;
     }
 
@@ -312,6 +388,14 @@ public class MediaProvider extends ContentProvider {
                 return MediaContract.MusicVideos.CONTENT_TYPE;
             case MUSIC_VIDEOS_ID:
                 return MediaContract.MusicVideos.CONTENT_ITEM_TYPE;
+            case ADDONS_ALL:
+            case ADDONS_LIST:
+                return MediaContract.Addons.CONTENT_TYPE;
+            case FAVOURITES_ALL:
+            case FAVOURITES_LIST:
+                return MediaContract.Favourites.CONTENT_TYPE;
+            case SYNC_REPORTS_ALL:
+                return MediaContract.SyncReports.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -353,6 +437,24 @@ public class MediaProvider extends ContentProvider {
                 insertedUri = MediaContract.Hosts.buildHostUri(hostId);
                 break;
             }
+            case SYNC_REPORTS_ALL: {
+                values.put(MediaContract.SyncColumns.UPDATED, System.currentTimeMillis());
+                long reportId = db.insertOrThrow(MediaDatabase.Tables.SYNC_REPORTS, null, values);
+                insertedUri = ContentUris.withAppendedId(uri, reportId);
+                break;
+            }
+            case ADDONS_ALL: {
+                values.put(MediaContract.SyncColumns.UPDATED, System.currentTimeMillis());
+                long addonId = db.insertOrThrow(MediaDatabase.Tables.ADDONS, null, values);
+                insertedUri = ContentUris.withAppendedId(uri, addonId);
+                break;
+            }
+            case FAVOURITES_ALL: {
+                values.put(MediaContract.SyncColumns.UPDATED, System.currentTimeMillis());
+                long favouriteId = db.insertOrThrow(MediaDatabase.Tables.FAVOURITES, null, values);
+                insertedUri = ContentUris.withAppendedId(uri, favouriteId);
+                break;
+            }
             default: {
                 throw new UnsupportedOperationException("Unsuported uri: " + uri);
             }
@@ -362,10 +464,39 @@ public class MediaProvider extends ContentProvider {
         return insertedUri;
     }
 
+    /**
+     * Applies the operations in a single transaction, so that readers never see only part of
+     * them, like a list deleted and not inserted again yet. If one fails, none is applied
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // The operations notified their changes before they were committed
+        LinkedHashSet<Uri> changedUris = new LinkedHashSet<>();
+        for (ContentProviderOperation operation : operations) {
+            changedUris.add(operation.getUri());
+        }
+        for (Uri changedUri : changedUris) {
+            context.getContentResolver().notifyChange(changedUri, null);
+        }
+        return results;
+    }
+
     /** {@inheritDoc} */
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
         long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         final int match = sUriMatcher.match(uri);
 
         String table;
@@ -426,36 +557,61 @@ public class MediaProvider extends ContentProvider {
                 table = MediaDatabase.Tables.MUSIC_VIDEOS;
                 break;
             }
+            case ADDONS_ALL: {
+                table = MediaDatabase.Tables.ADDONS;
+                break;
+            }
+            case FAVOURITES_ALL: {
+                table = MediaDatabase.Tables.FAVOURITES;
+                break;
+            }
             default: {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
             }
         }
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        db.beginTransaction();
 
         long updateTime = System.currentTimeMillis();
-        try {
-            for (ContentValues value : values) {
-                switch (match) {
-                    case ALBUM_GENRES_ALL:
-                    case ALBUM_ARTISTS_ALL:
-                    case SONG_ARTISTS_ALL:
-                        // Nothing to add to these tables
-                        break;
-                    default:
-                        value.put(MediaContract.SyncColumns.UPDATED, updateTime);
-                        break;
+        // Each chunk is committed on its own, so that other writers, like a revalidation, don't
+        // wait for the whole page. If a chunk fails, the ones before it are kept, and the rest
+        // of the page is left to the next sync
+        for (int chunkStart = 0; chunkStart < values.length; chunkStart += BULK_INSERT_CHUNK_SIZE) {
+            int chunkEnd = Math.min(chunkStart + BULK_INSERT_CHUNK_SIZE, values.length);
+            boolean failed = false;
+            db.beginTransaction();
+            try {
+                for (int i = chunkStart; i < chunkEnd; i++) {
+                    ContentValues value = values[i];
+                    switch (match) {
+                        case ALBUM_GENRES_ALL:
+                        case ALBUM_ARTISTS_ALL:
+                        case SONG_ARTISTS_ALL:
+                            // Nothing to add to these tables
+                            break;
+                        default:
+                            value.put(MediaContract.SyncColumns.UPDATED, updateTime);
+                            break;
+                    }
+                    db.insertOrThrow(table, null, value);
                 }
-                db.insertOrThrow(table, null, value);
-            }
-            db.setTransactionSuccessful();
-        } catch (Exception e) {
-            LogUtils.LOGD(TAG, "Couldn't bulk insert records. Exception: " + e.getMessage());
-        } finally {
-            db.endTransaction();
+                db.setTransactionSuccessful();
+            } catch (Exception e) {
+                LogUtils.LOGD(TAG, "Couldn't bulk insert records. Exception: " + e.getMessage());
+                failed = true;
+            } finally {
+                db.endTransaction();
+            }
+            if (failed)
+                break;
         }
+        long notifyNanos = System.nanoTime();
         context.getContentResolver().notifyChange(uri, null);
 
+        WriteTimings timings = writeTimings.get();
+        timings.insertNanos += notifyNanos - startNanos;
+        timings.notifyNanos += System.nanoTime() - notifyNanos;
+        timings.insertedRows += values.length;
+
         LogUtils.LOGD(TAG, "Bulk insert finished for uri (" + uri +
                 ") in (ms): " + (System.currentTimeMillis() - startTime));
         return values.length;
@@ -498,13 +654,19 @@ public class MediaProvider extends ContentProvider {
     /** {@inheritDoc} */
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long startNanos = System.nanoTime();
         final int match = sUriMatcher.match(uri);
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final SelectionBuilder builder = buildQuerySelection(uri, match);
         int result = builder.where(selection, selectionArgs)
                             .delete(db);
         LogUtils.LOGD(TAG, "delete(uri=" + uri + "). Rows affected: " + result);
+        long notifyNanos = System.nanoTime();
         context.getContentResolver().notifyChange(uri, null);
+
+        WriteTimings timings = writeTimings.get();
+        timings.deleteNanos += notifyNanos - startNanos;
+        timings.notifyNanos += System.nanoTime() - notifyNanos;
         return result;
     }
 
@@ -799,6 +961,25 @@ public class MediaProvider extends ContentProvider {
                               .where(MediaContract.MusicVideos.HOST_ID + "=?", hostId)
                               .where(MediaContract.MusicVideos.MUSICVIDEOID + "=?", musicVideoId);
             }
+            case ADDONS_ALL: {
+                return builder.table(MediaDatabase.Tables.ADDONS);
+            }
+            case ADDONS_LIST: {
+                final String hostId = MediaContract.Hosts.getHostId(uri);
+                return builder.table(MediaDatabase.Tables.ADDONS)
+                              .where(MediaContract.Addons.HOST_ID + "=?", hostId);
+            }
+            case FAVOURITES_ALL: {
+                return builder.table(MediaDatabase.Tables.FAVOURITES);
+            }
+            case FAVOURITES_LIST: {
+                final String hostId = MediaContract.Hosts.getHostId(uri);
+                return builder.table(MediaDatabase.Tables.FAVOURITES)
+                              .where(MediaContract.Favourites.HOST_ID + "=?", hostId);
+            }
+            case SYNC_REPORTS_ALL: {
+                return builder.table(MediaDatabase.Tables.SYNC_REPORTS);
+            }
 
             default: {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -27,11 +27,14 @@ import androidx.core.content.ContextCompat;
 import org.xbmc.kore.Settings;
 import org.xbmc.kore.host.HostConnectionObserver;
 import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.jsonrpc.HostTransport;
 import org.xbmc.kore.jsonrpc.notification.Player;
 import org.xbmc.kore.jsonrpc.type.ListType;
 import org.xbmc.kore.jsonrpc.type.PlayerType;
 import org.xbmc.kore.utils.LogUtils;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -121,6 +124,18 @@ public class ConnectionObserversManagerService extends Service
         return null;
     }
 
+    /**
+     * Prints the state of the shared transport and of the notification, through
+     * {@code adb shell dumpsys activity service ConnectionObserversManagerService}
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (notificationObserver != null) {
+            notificationObserver.dump(writer);
+        }
+        HostTransport.getInstance().dump(writer);
+    }
+
     @Override
     public void onTaskRemoved (Intent rootIntent) {
         // Gracefully stop
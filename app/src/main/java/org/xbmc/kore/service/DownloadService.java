@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service;
+
+import android.annotation.TargetApi;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.media.MediaScannerConnection;
+import android.os.Build;
+import android.os.IBinder;
+import android.text.format.Formatter;
+import android.widget.Toast;
+
+import org.xbmc.kore.R;
+import org.xbmc.kore.utils.DownloadEngine;
+import org.xbmc.kore.utils.LogUtils;
+
+import androidx.core.app.NotificationCompat;
+
+/**
+ * Foreground service that keeps the app alive while {@link DownloadEngine} is downloading,
+ * and shows its progress on a notification
+ */
+public class DownloadService extends Service
+        implements DownloadEngine.Listener {
+    public static final String TAG = LogUtils.makeLogTag(DownloadService.class);
+
+    public static final String ACTION_CANCEL = "cancel_downloads";
+
+    private static final int NOTIFICATION_ID = 2;
+    private static final String NOTIFICATION_CHANNEL = "KORE_DOWNLOADS";
+
+    private DownloadEngine downloadEngine;
+    private NotificationManager notificationManager;
+
+    @Override
+    public void onCreate() {
+        downloadEngine = DownloadEngine.getInstance();
+        notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            buildNotificationChannel();
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        startForeground(NOTIFICATION_ID, buildNotification(downloadEngine.getProgress()));
+
+        downloadEngine.setListener(this);
+        if ((intent != null) && ACTION_CANCEL.equals(intent.getAction())) {
+            LogUtils.LOGD(TAG, "Cancelling downloads");
+            downloadEngine.cancelAll();
+        }
+
+        if (!downloadEngine.isActive()) {
+            stopSelf();
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        downloadEngine.setListener(null);
+        stopForeground(true);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onProgress(DownloadEngine.Progress progress) {
+        if (notificationManager != null)
+            notificationManager.notify(NOTIFICATION_ID, buildNotification(progress));
+    }
+
+    @Override
+    public void onDownloadFinished(DownloadEngine.Download download) {
+        if (download.getStatus() == DownloadEngine.STATUS_COMPLETED) {
+            MediaScannerConnection.scanFile(this, new String[] {download.getDestination().getPath()},
+                                            null, null);
+        }
+    }
+
+    @Override
+    public void onIdle(DownloadEngine.Progress progress) {
+        if (progress.failedFiles > 0) {
+            Toast.makeText(this,
+                           getString(R.string.downloads_failed, progress.failedFiles),
+                           Toast.LENGTH_SHORT)
+                 .show();
+        }
+        stopForeground(true);
+        stopSelf();
+    }
+
+    private Notification buildNotification(DownloadEngine.Progress progress) {
+        Intent cancelIntent = new Intent(this, DownloadService.class);
+        cancelIntent.setAction(ACTION_CANCEL);
+        PendingIntent cancelPendingIntent =
+                PendingIntent.getService(this, 0, cancelIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        int maxProgress = 0, currentProgress = 0;
+        if (progress.totalBytes > 0) {
+            maxProgress = 1000;
+            currentProgress = (int) (progress.downloadedBytes * 1000 / progress.totalBytes);
+        }
+
+        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL)
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setShowWhen(false)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setCategory(NotificationCompat.CATEGORY_PROGRESS)
+                .setContentTitle(getString(R.string.downloading_files,
+                                           Math.min(progress.getFinishedFiles() + 1, progress.totalFiles),
+                                           progress.totalFiles))
+                .setContentText(getString(R.string.download_speed,
+                                          Formatter.formatShortFileSize(this, progress.bytesPerSecond)))
+                .setProgress(maxProgress, currentProgress, maxProgress == 0)
+                .addAction(R.drawable.ic_cancel_white_24dp, getString(R.string.cancel_downloads),
+                           cancelPendingIntent)
+                .build();
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void buildNotificationChannel() {
+        NotificationChannel channel =
+                new NotificationChannel(NOTIFICATION_CHANNEL,
+                                        getString(R.string.downloads),
+                                        NotificationManager.IMPORTANCE_LOW);
+        channel.enableLights(false);
+        channel.enableVibration(false);
+        channel.setShowBadge(false);
+
+        if (notificationManager != null)
+            notificationManager.createNotificationChannel(channel);
+    }
+}
@@ -30,6 +30,7 @@ import java.util.List;
 
 import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.host.HostReachability;
 import org.xbmc.kore.R;
 
 @TargetApi(Build.VERSION_CODES.M)
@@ -41,18 +42,35 @@ public class HostChooserTargetService extends ChooserTargetService {
         HostManager hostManager = HostManager.getInstance(this);
 
         final Icon icon = Icon.createWithResource(this, R.mipmap.ic_launcher);
-        final float score = 0;
         final ComponentName componentName = new ComponentName(getPackageName(), "org.xbmc.kore.ui.sections.remote.RemoteActivity");
 
+        // Rank the hosts by their last known status, without waiting for them to be probed.
+        // The refreshed status is used the next time the chooser is shown
+        HostReachability hostReachability = HostReachability.getInstance();
+        List<HostInfo> shownHosts = new ArrayList<>();
         for (HostInfo host : hostManager.getHosts()) {
             if (!host.getShowAsDirectShareTarget()) {
                 continue;
             }
+            shownHosts.add(host);
             Bundle intentExtras = new Bundle();
             intentExtras.putInt("hostId", host.getId());
-            targets.add(new ChooserTarget(host.getName(), icon, score, componentName, intentExtras));
+            targets.add(new ChooserTarget(host.getName(), icon, getScore(hostReachability.getStatus(host)),
+                                          componentName, intentExtras));
         }
+        hostReachability.refresh(shownHosts, false);
 
         return targets;
     }
+
+    private static float getScore(int status) {
+        switch (status) {
+            case HostReachability.STATUS_AVAILABLE:
+                return 1.0f;
+            case HostReachability.STATUS_UNAVAILABLE:
+                return 0.0f;
+            default:
+                return 0.5f;
+        }
+    }
 }
@@ -27,6 +27,9 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.TaskStackBuilder;
@@ -37,6 +40,7 @@ import org.xbmc.kore.R;
 import org.xbmc.kore.Settings;
 import org.xbmc.kore.host.HostConnectionObserver;
 import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.host.PlaybackClock;
 import org.xbmc.kore.jsonrpc.notification.Player;
 import org.xbmc.kore.jsonrpc.type.ListType;
 import org.xbmc.kore.jsonrpc.type.PlayerType;
@@ -46,6 +50,8 @@ import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.UIUtils;
 import org.xbmc.kore.utils.Utils;
 
+import java.io.PrintWriter;
+
 /**
  * This class mantains a notification on the notification area while something is playing.
  * It is meant to be used in conjunction with {@link ConnectionObserversManagerService},
@@ -64,6 +70,42 @@ public class NotificationObserver
     private Notification nothingPlayingNotification;
     private Notification currentNotification = null;
 
+    /**
+     * Minimum interval between notification rebuilds, in ms. Changes that arrive sooner are
+     * coalesced, and only the last one is shown
+     */
+    private static final long MIN_REBUILD_INTERVAL = 1000;
+    private static final long COUNTERS_WINDOW = 60000;
+
+    /**
+     * Key of what's shown on the current playing notification (title, art, state, ...) and the
+     * base time of its chronometer, to skip rebuilding it when nothing changed
+     */
+    private String currentNotificationKey = null;
+    private long currentChronometerBase = 0;
+    private long lastRebuildTime = 0;
+
+    // Pending rebuild, waiting for the rate limit
+    private PlayerType.GetActivePlayersReturnType pendingActivePlayerResult;
+    private PlayerType.PropertyValue pendingPropertiesResult;
+    private ListType.ItemsAll pendingItemResult;
+    private Handler rebuildHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingRebuild = new Runnable() {
+        @Override
+        public void run() {
+            PlayerType.GetActivePlayersReturnType getActivePlayerResult = pendingActivePlayerResult;
+            PlayerType.PropertyValue getPropertiesResult = pendingPropertiesResult;
+            ListType.ItemsAll getItemResult = pendingItemResult;
+            clearPendingRebuild();
+            notifyPlaying(getActivePlayerResult, getPropertiesResult, getItemResult);
+        }
+    };
+
+    // Counters of notification rebuilds
+    private long countersWindowStart = 0;
+    private int rebuildCount = 0, skippedCount = 0;
+    private int lastWindowRebuildCount = 0, lastWindowSkippedCount = 0;
+
     public NotificationObserver(Service service) {
         this.service = service;
 
@@ -161,6 +203,76 @@ public class NotificationObserver
                 .build();
     }
 
+    /**
+     * Returns the number of times the notification was rebuilt in the last full minute
+     */
+    public int getRebuildsPerMinute() {
+        updateCounters();
+        return lastWindowRebuildCount;
+    }
+
+    /**
+     * Returns the number of notification updates skipped in the last full minute, either
+     * because nothing changed or because they were coalesced with a later one
+     */
+    public int getSkippedRebuildsPerMinute() {
+        updateCounters();
+        return lastWindowSkippedCount;
+    }
+
+    /**
+     * Rebuilds counted so far in the current window. For testing
+     */
+    int getCurrentRebuildCount() {
+        updateCounters();
+        return rebuildCount;
+    }
+
+    /**
+     * Skipped rebuilds counted so far in the current window. For testing
+     */
+    int getCurrentSkippedCount() {
+        updateCounters();
+        return skippedCount;
+    }
+
+    /**
+     * Prints the rebuild counters of the notification
+     * @param writer Writer to print to
+     */
+    public void dump(PrintWriter writer) {
+        writer.println("Notification rebuilds in the last minute: " + getRebuildsPerMinute() +
+                       ", skipped: " + getSkippedRebuildsPerMinute());
+    }
+
+    private void updateCounters() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - countersWindowStart < COUNTERS_WINDOW)
+            return;
+
+        if (countersWindowStart != 0) {
+            LogUtils.LOGD(TAG, "Notification rebuilds in the last minute: " + rebuildCount +
+                               ", skipped: " + skippedCount);
+        }
+        // If more than a window went by without any update, the last one was empty
+        boolean lastWindow = now - countersWindowStart < 2 * COUNTERS_WINDOW;
+        lastWindowRebuildCount = lastWindow ? rebuildCount : 0;
+        lastWindowSkippedCount = lastWindow ? skippedCount : 0;
+        rebuildCount = 0;
+        skippedCount = 0;
+        countersWindowStart = now;
+    }
+
+    private void countRebuild() {
+        updateCounters();
+        rebuildCount++;
+    }
+
+    private void countSkipped() {
+        updateCounters();
+        skippedCount++;
+    }
+
     public Notification getCurrentNotification() {
         if (currentNotification == null) {
             if (nothingPlayingNotification == null) {
@@ -231,12 +343,53 @@ public class NotificationObserver
                 break;
         }
 
-        // Create the actions, depending on the type of media and the user's preference
-        PendingIntent rewindPendingIntent, ffPendingIntent, playPausePendingIntent;
-        playPausePendingIntent = buildActionPendingIntent(getActivePlayerResult.playerid, IntentActionsService.ACTION_PLAY_PAUSE);
         boolean useSeekJump = PreferenceManager
                 .getDefaultSharedPreferences(this.service)
                 .getBoolean(Settings.KEY_PREF_NOTIFICATION_SEEK_JUMP, Settings.DEFAULT_PREF_NOTIFICATION_SEEK_JUMP);
+
+        // While playing at normal speed, show the elapsed time read from the playback clock.
+        // The chronometer keeps running by itself, so the notification needn't be rebuilt
+        HostConnectionObserver hostConnectionObserver =
+                HostManager.getInstance(service).getHostConnectionObserver();
+        PlaybackClock playbackClock = (hostConnectionObserver != null) ?
+                                      hostConnectionObserver.getPlaybackClock() : null;
+        boolean showChronometer = (playbackClock != null) && (playbackClock.getSpeed() == 1);
+        long chronometerBase = showChronometer ?
+                               System.currentTimeMillis() - playbackClock.getPositionMillis() : 0;
+
+        // Only rebuild the notification if what it shows changed, chronometer included
+        String notificationKey = getActivePlayerResult.playerid + "|" + getItemResult.type + "|" +
+                                 title + "|" + underTitle + "|" + poster + "|" +
+                                 getPropertiesResult.speed + "|" + useSeekJump;
+        if (notificationKey.equals(currentNotificationKey) &&
+            (Math.abs(chronometerBase - currentChronometerBase) < PlaybackClock.DRIFT_THRESHOLD)) {
+            // A pending change was reverted before being shown
+            if (pendingItemResult != null) countSkipped();
+            clearPendingRebuild();
+            countSkipped();
+            return;
+        }
+
+        // Rate limit the rebuilds, keeping only the last change
+        rebuildHandler.removeCallbacks(pendingRebuild);
+        long sinceLastRebuild = SystemClock.elapsedRealtime() - lastRebuildTime;
+        if (sinceLastRebuild < MIN_REBUILD_INTERVAL) {
+            if (pendingItemResult != null) countSkipped();
+            pendingActivePlayerResult = getActivePlayerResult;
+            pendingPropertiesResult = getPropertiesResult;
+            pendingItemResult = getItemResult;
+            rebuildHandler.postDelayed(pendingRebuild, MIN_REBUILD_INTERVAL - sinceLastRebuild);
+            return;
+        }
+        clearPendingRebuild();
+        lastRebuildTime = SystemClock.elapsedRealtime();
+        currentNotificationKey = notificationKey;
+        currentChronometerBase = chronometerBase;
+        countRebuild();
+
+        // Create the actions, depending on the type of media and the user's preference
+        PendingIntent rewindPendingIntent, ffPendingIntent, playPausePendingIntent;
+        playPausePendingIntent = buildActionPendingIntent(getActivePlayerResult.playerid, IntentActionsService.ACTION_PLAY_PAUSE);
         if (getItemResult.type.equals(ListType.ItemsAll.TYPE_SONG)) {
             rewindPendingIntent = buildActionPendingIntent(getActivePlayerResult.playerid, IntentActionsService.ACTION_PREVIOUS);
             rewindIcon = R.drawable.ic_skip_previous_white_24dp;
@@ -269,6 +422,12 @@ public class NotificationObserver
                 .setContentTitle(title)
                 .setContentText(underTitle);
 
+        if (showChronometer) {
+            builder.setShowWhen(true)
+                   .setUsesChronometer(true)
+                   .setWhen(chronometerBase);
+        }
+
         // This is a convoluted way of loading the image and showing the
         // notification, but it's what works with Picasso and is efficient.
         // Here's what's going on:
@@ -280,56 +439,70 @@ public class NotificationObserver
         //
         // 2. The target needs to be static, because Picasso only keeps a weak
         // reference to it, so we need to keed a strong reference and reset it
-        // to null when we're done. We also need to check if it is not null in
-        // case a previous request hasn't finished yet.
+        // to null when we're done. If a newer notification is built before a
+        // previous request finishes, the previous target is replaced and its
+        // result ignored.
         //
         // 3. We can only show the notification after the bitmap is loaded into
         // the target, so it is done in the callback
         //
-        // 4. We specifically resize the image to the same dimensions used in
-        // the remote, so that Picasso reuses it in the remote and here from the cache
+        // 4. We specifically resize and crop the image as the poster of the
+        // remote, so that the bitmap is shared with it through the memory cache
+        // of HostManager, which also keeps it for changes of state (play/pause)
         Resources resources = service.getResources();
         final int posterWidth = resources.getDimensionPixelOffset(R.dimen.now_playing_poster_width);
         final int posterHeight = isVideo?
                 resources.getDimensionPixelOffset(R.dimen.now_playing_poster_height):
                 posterWidth;
-        if (picassoTarget == null ) {
-            picassoTarget = new Target() {
-                @Override
-                public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
-                    showNotification(bitmap);
-                }
 
-                @Override
-                public void onBitmapFailed(Drawable errorDrawable) {
-                    CharacterDrawable avatarDrawable = UIUtils.getCharacterAvatar(service, title);
-                    showNotification(Utils.drawableToBitmap(avatarDrawable, posterWidth, posterHeight));
+        picassoTarget = new Target() {
+            @Override
+            public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
+                if (picassoTarget == this) {
+                    picassoTarget = null;
+                    showNotification(builder, bitmap);
                 }
+            }
 
-                @Override
-                public void onPrepareLoad(Drawable placeHolderDrawable) { }
-
-                private void showNotification(Bitmap bitmap) {
-                    builder.setLargeIcon(bitmap);
-                    NotificationManager notificationManager =
-                            (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
-                    if (notificationManager != null) {
-                        currentNotification = builder.build();
-                        notificationManager.notify(NOTIFICATION_ID, currentNotification);
-                    }
+            @Override
+            public void onBitmapFailed(Drawable errorDrawable) {
+                if (picassoTarget == this) {
                     picassoTarget = null;
+                    CharacterDrawable avatarDrawable = UIUtils.getCharacterAvatar(service, title);
+                    showNotification(builder, Utils.drawableToBitmap(avatarDrawable, posterWidth, posterHeight));
                 }
-            };
-
-            // Load the image
-            HostManager hostManager = HostManager.getInstance(service);
-            hostManager.getPicasso()
-                    .load(hostManager.getHostInfo().getImageUrl(poster))
-                    .resize(posterWidth, posterHeight)
-                    .into(picassoTarget);
+            }
+
+            @Override
+            public void onPrepareLoad(Drawable placeHolderDrawable) { }
+        };
+
+        // Load the image
+        HostManager hostManager = HostManager.getInstance(service);
+        hostManager.getPicasso()
+                .load(hostManager.getHostInfo().getImageUrl(poster))
+                .resize(posterWidth, posterHeight)
+                .centerCrop()
+                .into(picassoTarget);
+    }
+
+    private void showNotification(NotificationCompat.Builder builder, Bitmap largeIcon) {
+        builder.setLargeIcon(largeIcon);
+        NotificationManager notificationManager =
+                (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            currentNotification = builder.build();
+            notificationManager.notify(NOTIFICATION_ID, currentNotification);
         }
     }
 
+    private void clearPendingRebuild() {
+        rebuildHandler.removeCallbacks(pendingRebuild);
+        pendingActivePlayerResult = null;
+        pendingPropertiesResult = null;
+        pendingItemResult = null;
+    }
+
     private PendingIntent buildActionPendingIntent(int playerId, String action) {
         Intent intent = new Intent(service, IntentActionsService.class)
                 .setAction(action)
@@ -339,6 +512,9 @@ public class NotificationObserver
     }
 
     private void removeNotification() {
+        clearPendingRebuild();
+        picassoTarget = null;
+        currentNotificationKey = null;
         NotificationManager notificationManager =
                 (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
         if (notificationManager != null) {
@@ -348,6 +524,15 @@ public class NotificationObserver
     }
 
     private void notifyNothingPlaying() {
+        clearPendingRebuild();
+        picassoTarget = null;
+        currentNotificationKey = null;
+        if (currentNotification == nothingPlayingNotification) {
+            countSkipped();
+            return;
+        }
+
+        countRebuild();
         NotificationManager notificationManager =
             (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
         if (notificationManager != null) {
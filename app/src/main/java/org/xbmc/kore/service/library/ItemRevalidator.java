@@ -0,0 +1,458 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.VideoLibrary;
+import org.xbmc.kore.jsonrpc.type.VideoType;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Keeps the item being shown up to date, without a full sync.
+ * <p>
+ * Screens show what's in the local database right away, and ask for the item to be revalidated.
+ * Kodi has no modification timestamp, so a small set of properties (title, playcount, file,
+ * art...) is used as the fingerprint of the item: only that is requested, and compared with the
+ * local row. If it's different, the full details are requested and only the columns that
+ * changed are updated, after which the listener is notified so the screen can reload.
+ * <p>
+ * Each item is revalidated at most once per {@link #REVALIDATION_INTERVAL}
+ */
+public class ItemRevalidator {
+    public static final String TAG = LogUtils.makeLogTag(ItemRevalidator.class);
+
+    /**
+     * Minimum time between revalidations of the same item, in ms
+     */
+    public static final long REVALIDATION_INTERVAL = 60 * 1000;
+
+    private static final String[] MOVIE_FINGERPRINT = {
+            MediaContract.Movies.TITLE, MediaContract.Movies.PLAYCOUNT,
+            MediaContract.Movies.RATING, MediaContract.Movies.FILE,
+            MediaContract.Movies.THUMBNAIL, MediaContract.Movies.FANART
+    };
+    private static final String[] EPISODE_FINGERPRINT = {
+            MediaContract.Episodes.TITLE, MediaContract.Episodes.PLAYCOUNT,
+            MediaContract.Episodes.RATING, MediaContract.Episodes.FILE,
+            MediaContract.Episodes.THUMBNAIL, MediaContract.Episodes.FANART
+    };
+    private static final String[] MUSIC_VIDEO_FINGERPRINT = {
+            MediaContract.MusicVideos.TITLE, MediaContract.MusicVideos.PLAYCOUNT,
+            MediaContract.MusicVideos.FILE,
+            MediaContract.MusicVideos.THUMBNAIL, MediaContract.MusicVideos.FANART
+    };
+
+    private static ItemRevalidator instance = null;
+
+    /**
+     * Returns the singleton
+     */
+    public static synchronized ItemRevalidator getInstance() {
+        if (instance == null) {
+            instance = new ItemRevalidator();
+        }
+        return instance;
+    }
+
+    /**
+     * Listener notified when the local row was changed by a revalidation
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread after the local row was updated
+         */
+        void onItemChanged();
+    }
+
+    /**
+     * An item of the library that can be revalidated
+     * @param <T> Type returned by Kodi for the item
+     */
+    public static abstract class Item<T> {
+        final int hostId;
+        final Uri uri;
+        final String[] fingerprintColumns;
+
+        Item(int hostId, Uri uri, String[] fingerprintColumns) {
+            this.hostId = hostId;
+            this.uri = uri;
+            this.fingerprintColumns = fingerprintColumns;
+        }
+
+        /**
+         * Method that returns only the fingerprint properties of the item
+         */
+        abstract ApiMethod<T> fingerprintMethod();
+
+        /**
+         * Fingerprint columns from the fingerprint returned by Kodi
+         */
+        abstract ContentValues fingerprintValues(T fingerprint);
+
+        /**
+         * Method that returns all the properties that are synced for the item
+         */
+        abstract ApiMethod<T> detailsMethod();
+
+        /**
+         * Local row values from the details returned by Kodi
+         */
+        abstract ContentValues contentValues(T details);
+
+        /**
+         * Updates the rows that depend on the item, after it changed
+         */
+        void updateChildren(ContentResolver contentResolver, T details) { }
+
+        String getKey() {
+            return uri.toString();
+        }
+    }
+
+    /**
+     * Returns a movie to revalidate
+     * @param hostId Host id
+     * @param movieId Movie id
+     */
+    public static Item<VideoType.DetailsMovie> movie(final int hostId, final int movieId) {
+        return new Item<VideoType.DetailsMovie>(hostId, MediaContract.Movies.buildMovieUri(hostId, movieId),
+                                                MOVIE_FINGERPRINT) {
+            @Override
+            ApiMethod<VideoType.DetailsMovie> fingerprintMethod() {
+                return new VideoLibrary.GetMovieDetails(
+                        movieId, VideoType.FieldsMovie.TITLE, VideoType.FieldsMovie.PLAYCOUNT,
+                        VideoType.FieldsMovie.RATING, VideoType.FieldsMovie.FILE,
+                        VideoType.FieldsMovie.THUMBNAIL, VideoType.FieldsMovie.FANART);
+            }
+
+            @Override
+            ContentValues fingerprintValues(VideoType.DetailsMovie fingerprint) {
+                ContentValues values = new ContentValues();
+                values.put(MediaContract.Movies.TITLE, fingerprint.title);
+                values.put(MediaContract.Movies.PLAYCOUNT, fingerprint.playcount);
+                values.put(MediaContract.Movies.RATING, fingerprint.rating);
+                values.put(MediaContract.Movies.FILE, fingerprint.file);
+                values.put(MediaContract.Movies.THUMBNAIL, fingerprint.thumbnail);
+                values.put(MediaContract.Movies.FANART, fingerprint.fanart);
+                return values;
+            }
+
+            @Override
+            ApiMethod<VideoType.DetailsMovie> detailsMethod() {
+                return new VideoLibrary.GetMovieDetails(movieId, SyncMovies.movieProperties);
+            }
+
+            @Override
+            ContentValues contentValues(VideoType.DetailsMovie details) {
+                return SyncUtils.contentValuesFromMovie(hostId, details);
+            }
+
+            @Override
+            void updateChildren(ContentResolver contentResolver, VideoType.DetailsMovie details) {
+                // The cast is small, replace it if it isn't the same
+                Uri castUri = MediaContract.MovieCast.buildMovieCastListUri(hostId, movieId);
+                List<VideoType.Cast> cast = details.cast;
+                HashSet<String> remoteCast = new HashSet<>();
+                for (VideoType.Cast member : cast) {
+                    remoteCast.add(member.name + "|" + member.role + "|" + member.thumbnail);
+                }
+                HashSet<String> localCast = new HashSet<>();
+                Cursor cursor = contentResolver.query(castUri, new String[] {
+                        MediaContract.MovieCast.NAME, MediaContract.MovieCast.ROLE,
+                        MediaContract.MovieCast.THUMBNAIL}, null, null, null);
+                if (cursor != null) {
+                    while (cursor.moveToNext()) {
+                        localCast.add(cursor.getString(0) + "|" + cursor.getString(1) + "|" +
+                                      cursor.getString(2));
+                    }
+                    cursor.close();
+                }
+                if (remoteCast.equals(localCast))
+                    return;
+
+                contentResolver.delete(castUri, null, null);
+                ContentValues[] castValues = new ContentValues[cast.size()];
+                for (int i = 0; i < castValues.length; i++) {
+                    castValues[i] = SyncUtils.contentValuesFromCast(hostId, cast.get(i));
+                    castValues[i].put(MediaContract.MovieCastColumns.MOVIEID, movieId);
+                }
+                contentResolver.bulkInsert(MediaContract.MovieCast.CONTENT_URI, castValues);
+            }
+        };
+    }
+
+    /**
+     * Returns a tv show episode to revalidate
+     * @param hostId Host id
+     * @param tvshowId Tv show id
+     * @param episodeId Episode id
+     */
+    public static Item<VideoType.DetailsEpisode> episode(final int hostId, int tvshowId,
+                                                         final int episodeId) {
+        return new Item<VideoType.DetailsEpisode>(hostId,
+                                                  MediaContract.Episodes.buildTVShowEpisodeUri(hostId, tvshowId, episodeId),
+                                                  EPISODE_FINGERPRINT) {
+            @Override
+            ApiMethod<VideoType.DetailsEpisode> fingerprintMethod() {
+                return new VideoLibrary.GetEpisodeDetails(
+                        episodeId, VideoType.FieldsEpisode.TITLE, VideoType.FieldsEpisode.PLAYCOUNT,
+                        VideoType.FieldsEpisode.RATING, VideoType.FieldsEpisode.FILE,
+                        VideoType.FieldsEpisode.THUMBNAIL, VideoType.FieldsEpisode.FANART);
+            }
+
+            @Override
+            ContentValues fingerprintValues(VideoType.DetailsEpisode fingerprint) {
+                ContentValues values = new ContentValues();
+                values.put(MediaContract.Episodes.TITLE, fingerprint.title);
+                values.put(MediaContract.Episodes.PLAYCOUNT, fingerprint.playcount);
+                values.put(MediaContract.Episodes.RATING, fingerprint.rating);
+                values.put(MediaContract.Episodes.FILE, fingerprint.file);
+                values.put(MediaContract.Episodes.THUMBNAIL, fingerprint.thumbnail);
+                values.put(MediaContract.Episodes.FANART, fingerprint.fanart);
+                return values;
+            }
+
+            @Override
+            ApiMethod<VideoType.DetailsEpisode> detailsMethod() {
+                return new VideoLibrary.GetEpisodeDetails(episodeId, SyncTVShows.getEpisodesProperties);
+            }
+
+            @Override
+            ContentValues contentValues(VideoType.DetailsEpisode details) {
+                return SyncUtils.contentValuesFromEpisode(hostId, details);
+            }
+        };
+    }
+
+    /**
+     * Returns a music video to revalidate
+     * @param hostId Host id
+     * @param musicVideoId Music video id
+     */
+    public static Item<VideoType.DetailsMusicVideo> musicVideo(final int hostId, final int musicVideoId) {
+        return new Item<VideoType.DetailsMusicVideo>(hostId,
+                                                     MediaContract.MusicVideos.buildMusicVideoUri(hostId, musicVideoId),
+                                                     MUSIC_VIDEO_FINGERPRINT) {
+            @Override
+            ApiMethod<VideoType.DetailsMusicVideo> fingerprintMethod() {
+                return new VideoLibrary.GetMusicVideoDetails(
+                        musicVideoId, VideoType.FieldsMusicVideo.TITLE,
+                        VideoType.FieldsMusicVideo.PLAYCOUNT, VideoType.FieldsMusicVideo.FILE,
+                        VideoType.FieldsMusicVideo.THUMBNAIL, VideoType.FieldsMusicVideo.FANART);
+            }
+
+            @Override
+            ContentValues fingerprintValues(VideoType.DetailsMusicVideo fingerprint) {
+                ContentValues values = new ContentValues();
+                values.put(MediaContract.MusicVideos.TITLE, fingerprint.title);
+                values.put(MediaContract.MusicVideos.PLAYCOUNT, fingerprint.playcount);
+                values.put(MediaContract.MusicVideos.FILE, fingerprint.file);
+                values.put(MediaContract.MusicVideos.THUMBNAIL, fingerprint.thumbnail);
+                values.put(MediaContract.MusicVideos.FANART, fingerprint.fanart);
+                return values;
+            }
+
+            @Override
+            ApiMethod<VideoType.DetailsMusicVideo> detailsMethod() {
+                return new VideoLibrary.GetMusicVideoDetails(musicVideoId,
+                                                             SyncMusicVideos.musicVideoProperties);
+            }
+
+            @Override
+            ContentValues contentValues(VideoType.DetailsMusicVideo details) {
+                return SyncUtils.contentValuesFromMusicVideo(hostId, details);
+            }
+        };
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Runs the callbacks, which access the database, off the connection's threads
+    private final Handler backgroundHandler;
+    // Item key -> when it was last revalidated
+    private final HashMap<String, Long> lastRevalidations = new HashMap<>();
+
+    private ItemRevalidator() {
+        HandlerThread handlerThread = new HandlerThread("ItemRevalidator", Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        backgroundHandler = new Handler(handlerThread.getLooper());
+    }
+
+    /**
+     * Revalidates an item, if it wasn't revalidated recently. Everything but the listener runs
+     * off the main thread
+     * @param hostConnection Connection to the host of the item
+     * @param contentResolver Content resolver
+     * @param item Item to revalidate
+     * @param listener Listener to notify if the item changed, can be null
+     */
+    public <T> void revalidate(final HostConnection hostConnection,
+                               final ContentResolver contentResolver,
+                               final Item<T> item,
+                               final Listener listener) {
+        if (item == null || hostConnection == null)
+            return;
+
+        synchronized (lastRevalidations) {
+            long now = System.currentTimeMillis();
+            Long last = lastRevalidations.get(item.getKey());
+            if ((last != null) && (now - last < REVALIDATION_INTERVAL))
+                return;
+            lastRevalidations.put(item.getKey(), now);
+        }
+
+        // The callbacks run on the background thread, so that the database accesses don't hold
+        // up the connection, like the TCP listener thread and the answers it reads
+        item.fingerprintMethod().execute(hostConnection, new ApiCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                if (matchesLocalRow(contentResolver, item.uri, item.fingerprintValues(result))) {
+                    LogUtils.LOGD(TAG, "Item unchanged: " + item.uri);
+                    return;
+                }
+                LogUtils.LOGD(TAG, "Item changed, getting its details: " + item.uri);
+                fetchDetails(hostConnection, contentResolver, item, listener);
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                // Keep showing what we have, and try again next time
+                forget(item);
+                LogUtils.LOGD(TAG, "Couldn't revalidate " + item.uri + ": " + description);
+            }
+        }, backgroundHandler);
+    }
+
+    private <T> void fetchDetails(HostConnection hostConnection,
+                                  final ContentResolver contentResolver,
+                                  final Item<T> item,
+                                  final Listener listener) {
+        item.detailsMethod().execute(hostConnection, new ApiCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                ContentValues changed = changedValues(contentResolver, item.uri,
+                                                      item.contentValues(result));
+                // The row may have been removed by a sync meanwhile. Leave it to the next sync
+                // to add it back, with the rows that depend on it
+                if ((changed.size() > 0) &&
+                    (contentResolver.update(item.uri, changed, null, null) == 0)) {
+                    LogUtils.LOGD(TAG, "No local row, skipping " + item.uri);
+                    return;
+                }
+                item.updateChildren(contentResolver, result);
+                LogUtils.LOGD(TAG, "Updated " + changed.size() + " columns of " + item.uri);
+
+                if (listener != null) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onItemChanged();
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                forget(item);
+                LogUtils.LOGD(TAG, "Couldn't get details of " + item.uri + ": " + description);
+            }
+        }, backgroundHandler);
+    }
+
+    private void forget(Item<?> item) {
+        synchronized (lastRevalidations) {
+            lastRevalidations.remove(item.getKey());
+        }
+    }
+
+    /**
+     * Returns whether the local row has the given values. A missing row never matches
+     */
+    static boolean matchesLocalRow(ContentResolver contentResolver, Uri uri, ContentValues values) {
+        return changedValues(contentResolver, uri, values).size() == 0;
+    }
+
+    /**
+     * Returns the values that are different from the ones on the local row. If there's no local
+     * row, all the values are returned
+     */
+    static ContentValues changedValues(ContentResolver contentResolver, Uri uri, ContentValues values) {
+        String[] columns = values.keySet().toArray(new String[values.size()]);
+        Cursor cursor = contentResolver.query(uri, columns, null, null, null);
+        if (cursor == null)
+            return new ContentValues(values);
+
+        ContentValues changed = new ContentValues();
+        try {
+            if (!cursor.moveToFirst())
+                return new ContentValues(values);
+            for (int i = 0; i < columns.length; i++) {
+                if (!sameValue(cursor, i, values.get(columns[i]))) {
+                    copyValue(changed, columns[i], values.get(columns[i]));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return changed;
+    }
+
+    private static boolean sameValue(Cursor cursor, int column, Object value) {
+        if (cursor.isNull(column))
+            return value == null;
+        if (value == null)
+            return false;
+        if (value instanceof Number)
+            return cursor.getDouble(column) == ((Number) value).doubleValue();
+        if (value instanceof Boolean)
+            return (cursor.getInt(column) != 0) == (Boolean) value;
+        return value.toString().equals(cursor.getString(column));
+    }
+
+    private static void copyValue(ContentValues values, String column, Object value) {
+        if (value == null) {
+            values.putNull(column);
+        } else if (value instanceof Integer) {
+            values.put(column, (Integer) value);
+        } else if (value instanceof Long) {
+            values.put(column, (Long) value);
+        } else if (value instanceof Double) {
+            values.put(column, (Double) value);
+        } else if (value instanceof Float) {
+            values.put(column, (Float) value);
+        } else if (value instanceof Boolean) {
+            values.put(column, (Boolean) value);
+        } else {
+            values.put(column, value.toString());
+        }
+    }
+}
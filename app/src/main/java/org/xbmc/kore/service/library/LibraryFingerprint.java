@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.preference.PreferenceManager;
+import android.provider.BaseColumns;
+
+import org.xbmc.kore.Settings;
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiList;
+import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.AudioLibrary;
+import org.xbmc.kore.jsonrpc.method.VideoLibrary;
+import org.xbmc.kore.jsonrpc.type.AudioType;
+import org.xbmc.kore.jsonrpc.type.ListType;
+import org.xbmc.kore.jsonrpc.type.VideoType;
+import org.xbmc.kore.provider.MediaContract;
+
+/**
+ * Cheap fingerprint of a media type of the Kodi library, used to know if it changed since the
+ * last sync without getting it all.
+ * <p>
+ * Kodi has no library revision, so the fingerprint is made of the number of items, the most
+ * recently added item and when it was added, and when the last item was played. These are got
+ * with two requests limited to one item, sorted by date added and by last played. Updates that
+ * don't change any of these (e.g. a rescraped plot) aren't detected, and are left to
+ * {@link ItemRevalidator} and the library notifications.
+ * <p>
+ * Music leaves out the last played song, as Kodi updates it on every play and only the whole
+ * music library can be synced.
+ */
+public abstract class LibraryFingerprint<T> {
+
+    /**
+     * Returns the fingerprint for a sync type
+     * @param syncType One of the SYNC_ALL constants of {@link LibrarySyncService}
+     * @return Fingerprint, or null if the sync type doesn't support it
+     */
+    public static LibraryFingerprint<?> forSyncType(String syncType) {
+        switch (syncType) {
+            case LibrarySyncService.SYNC_ALL_MOVIES:
+                return MOVIES;
+            case LibrarySyncService.SYNC_ALL_TVSHOWS:
+                return TVSHOWS;
+            case LibrarySyncService.SYNC_ALL_MUSIC:
+                return MUSIC;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Callback to get a fingerprint
+     */
+    public interface Callback {
+        void onFingerprint(String fingerprint);
+        void onError(int errorCode, String description);
+    }
+
+    private static final LibraryFingerprint<VideoType.DetailsMovie> MOVIES =
+            new LibraryFingerprint<VideoType.DetailsMovie>(LibrarySyncService.SYNC_ALL_MOVIES) {
+                @Override
+                ApiMethod<ApiList<VideoType.DetailsMovie>> newestMethod(ListType.Limits limits, ListType.Sort sort) {
+                    return new VideoLibrary.GetMovies(limits, sort, VideoType.FieldsMovie.DATEADDED);
+                }
+
+                @Override
+                ApiMethod<ApiList<VideoType.DetailsMovie>> lastPlayedMethod(ListType.Limits limits, ListType.Sort sort) {
+                    return new VideoLibrary.GetMovies(limits, sort, VideoType.FieldsMovie.LASTPLAYED);
+                }
+
+                @Override
+                String newestEntry(VideoType.DetailsMovie item) {
+                    return item.movieid + "@" + item.dateadded;
+                }
+
+                @Override
+                String lastPlayed(VideoType.DetailsMovie item) {
+                    return item.lastplayed;
+                }
+
+                @Override
+                Uri localListUri(int hostId) {
+                    return MediaContract.Movies.buildMoviesListUri(hostId);
+                }
+            };
+
+    private static final LibraryFingerprint<VideoType.DetailsTVShow> TVSHOWS =
+            new LibraryFingerprint<VideoType.DetailsTVShow>(LibrarySyncService.SYNC_ALL_TVSHOWS) {
+                // The date added of a tv show is the one of its last episode
+                @Override
+                ApiMethod<ApiList<VideoType.DetailsTVShow>> newestMethod(ListType.Limits limits, ListType.Sort sort) {
+                    return new VideoLibrary.GetTVShows(limits, sort, VideoType.FieldsTVShow.DATEADDED);
+                }
+
+                @Override
+                ApiMethod<ApiList<VideoType.DetailsTVShow>> lastPlayedMethod(ListType.Limits limits, ListType.Sort sort) {
+                    return new VideoLibrary.GetTVShows(limits, sort, VideoType.FieldsTVShow.LASTPLAYED);
+                }
+
+                @Override
+                String newestEntry(VideoType.DetailsTVShow item) {
+                    return item.tvshowid + "@" + item.dateadded;
+                }
+
+                @Override
+                String lastPlayed(VideoType.DetailsTVShow item) {
+                    return item.lastplayed;
+                }
+
+                @Override
+                Uri localListUri(int hostId) {
+                    return MediaContract.TVShows.buildTVShowsListUri(hostId);
+                }
+            };
+
+    private static final LibraryFingerprint<AudioType.DetailsSong> MUSIC =
+            new LibraryFingerprint<AudioType.DetailsSong>(LibrarySyncService.SYNC_ALL_MUSIC) {
+                // New albums come with new songs, so the newest song covers both
+                @Override
+                ApiMethod<ApiList<AudioType.DetailsSong>> newestMethod(ListType.Limits limits, ListType.Sort sort) {
+                    return new AudioLibrary.GetSongs(limits, sort, AudioType.DetailsSong.DATEADDED);
+                }
+
+                @Override
+                String newestEntry(AudioType.DetailsSong item) {
+                    return item.songid + "@" + item.dateadded;
+                }
+
+                @Override
+                Uri localListUri(int hostId) {
+                    return MediaContract.Albums.buildAlbumsListUri(hostId);
+                }
+            };
+
+    private final String syncType;
+
+    LibraryFingerprint(String syncType) {
+        this.syncType = syncType;
+    }
+
+    abstract ApiMethod<ApiList<T>> newestMethod(ListType.Limits limits, ListType.Sort sort);
+    abstract String newestEntry(T item);
+
+    /**
+     * Method that returns the last played item, or null if plays aren't part of the fingerprint
+     */
+    ApiMethod<ApiList<T>> lastPlayedMethod(ListType.Limits limits, ListType.Sort sort) {
+        return null;
+    }
+
+    String lastPlayed(T item) {
+        return null;
+    }
+
+    /**
+     * Uri of the local items, used to check that there is something synced
+     */
+    abstract Uri localListUri(int hostId);
+
+    public String getSyncType() {
+        return syncType;
+    }
+
+    /**
+     * Gets the current fingerprint from Kodi
+     * @param hostConnection Host connection
+     * @param callbackHandler Handler on which to call the callback
+     * @param callback Callback
+     */
+    public void fetch(final HostConnection hostConnection, final Handler callbackHandler,
+                      final Callback callback) {
+        final ListType.Limits limits = new ListType.Limits(0, 1);
+        ListType.Sort byDateAdded = new ListType.Sort(ListType.Sort.SORT_METHOD_DATEADDED, false, false);
+        newestMethod(limits, byDateAdded).execute(hostConnection, new ApiCallback<ApiList<T>>() {
+            @Override
+            public void onSuccess(ApiList<T> result) {
+                final String newest = result.limits.total + "|" +
+                                      (result.items.isEmpty() ? "" : newestEntry(result.items.get(0)));
+
+                ListType.Sort byLastPlayed = new ListType.Sort(ListType.Sort.SORT_METHOD_LASTPLAYED, false, false);
+                ApiMethod<ApiList<T>> lastPlayedMethod = lastPlayedMethod(limits, byLastPlayed);
+                if (lastPlayedMethod == null) {
+                    callback.onFingerprint(newest);
+                    return;
+                }
+                lastPlayedMethod.execute(hostConnection, new ApiCallback<ApiList<T>>() {
+                    @Override
+                    public void onSuccess(ApiList<T> result) {
+                        callback.onFingerprint(newest + "|" +
+                                               (result.items.isEmpty() ? "" : lastPlayed(result.items.get(0))));
+                    }
+
+                    @Override
+                    public void onError(int errorCode, String description) {
+                        callback.onError(errorCode, description);
+                    }
+                }, callbackHandler);
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                callback.onError(errorCode, description);
+            }
+        }, callbackHandler);
+    }
+
+    /**
+     * Returns the fingerprint stored on the last sync of the host, or null if there is none or
+     * the local database has nothing for this type
+     * @param context Context
+     * @param contentResolver Content resolver
+     * @param hostId Host id
+     */
+    public String getStored(Context context, ContentResolver contentResolver, int hostId) {
+        String fingerprint = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(Settings.getLibraryFingerprintPrefKey(hostId, syncType), null);
+        if (fingerprint == null)
+            return null;
+
+        // The local database may have been cleared since
+        Cursor cursor = contentResolver.query(localListUri(hostId), new String[] {BaseColumns._ID},
+                                              null, null, null);
+        if (cursor == null)
+            return null;
+        try {
+            return (cursor.getCount() > 0) ? fingerprint : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stores the fingerprint for the host, after it was synced
+     * @param context Context
+     * @param hostId Host id
+     * @param fingerprint Fingerprint
+     */
+    public void store(Context context, int hostId, String fingerprint) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putString(Settings.getLibraryFingerprintPrefKey(hostId, syncType), fingerprint)
+                .apply();
+    }
+
+    /**
+     * Forgets the stored fingerprint, so that the next sync for the host isn't skipped
+     * @param context Context
+     * @param hostId Host id
+     */
+    public void invalidate(Context context, int hostId) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .remove(Settings.getLibraryFingerprintPrefKey(hostId, syncType))
+                .apply();
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.notification.AudioLibrary;
+import org.xbmc.kore.jsonrpc.notification.VideoLibrary;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.HashSet;
+
+/**
+ * Keeps the local library up to date with the VideoLibrary and AudioLibrary notifications sent by
+ * Kodi, which are only received through TCP.
+ * <p>
+ * Notifications are gathered for {@link #COALESCE_DELAY} so that a library scan doesn't
+ * start a sync per item, and then:
+ * <ul>
+ *     <li>Updated movies and tv shows are synced on their own, or the whole media type is
+ *     synced if there are too many of them</li>
+ *     <li>Removed movies are deleted locally, and tv shows with removed episodes resynced</li>
+ *     <li>Music videos are synced whole, as they can't be synced one by one</li>
+ *     <li>Music can only be synced whole, and Kodi updates songs on every play, so its
+ *     {@link LibraryFingerprint} is only invalidated, to be synced next time the music
+ *     library is opened</li>
+ * </ul>
+ */
+public class LibraryNotificationsHandler implements HostConnection.LibraryNotificationsObserver {
+    public static final String TAG = LogUtils.makeLogTag(LibraryNotificationsHandler.class);
+
+    /**
+     * Time to wait for more notifications before acting on them, in ms
+     */
+    static final long COALESCE_DELAY = 3000;
+
+    /**
+     * Above this number of items of a media type, the whole type is synced
+     */
+    static final int MAX_SINGLE_SYNCS = 10;
+
+    private final Context context;
+    private final HostInfo hostInfo;
+    private final HandlerThread handlerThread;
+    private final Handler handler;
+
+    // Pending changes, only accessed on the handler thread
+    private final HashSet<Integer> updatedMovies = new HashSet<>();
+    private final HashSet<Integer> removedMovies = new HashSet<>();
+    private final HashSet<Integer> updatedTVShows = new HashSet<>();
+    private final HashSet<Integer> changedEpisodes = new HashSet<>();
+    private boolean removedTVShows = false;
+    private boolean changedMusicVideos = false;
+    private boolean changedMusic = false;
+
+    private final Runnable applyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingChanges();
+        }
+    };
+
+    /**
+     * Constructor
+     * @param context Context
+     * @param hostInfo Host whose notifications are handled
+     */
+    public LibraryNotificationsHandler(Context context, HostInfo hostInfo) {
+        this(context, hostInfo, newHandlerThread());
+    }
+
+    /**
+     * For testing: handles the notifications on the given looper
+     */
+    LibraryNotificationsHandler(Context context, HostInfo hostInfo, Looper looper) {
+        this(context, hostInfo, null, looper);
+    }
+
+    private LibraryNotificationsHandler(Context context, HostInfo hostInfo, HandlerThread handlerThread) {
+        this(context, hostInfo, handlerThread, handlerThread.getLooper());
+    }
+
+    private LibraryNotificationsHandler(Context context, HostInfo hostInfo,
+                                        HandlerThread handlerThread, Looper looper) {
+        this.context = context.getApplicationContext();
+        this.hostInfo = hostInfo;
+        this.handlerThread = handlerThread;
+        handler = new Handler(looper);
+    }
+
+    private static HandlerThread newHandlerThread() {
+        HandlerThread handlerThread = new HandlerThread("LibraryNotifications",
+                                                        Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        return handlerThread;
+    }
+
+    /**
+     * Starts handling the notifications of the connection
+     * @param hostConnection Connection to the host
+     */
+    public void register(HostConnection hostConnection) {
+        hostConnection.registerLibraryNotificationsObserver(this, handler);
+    }
+
+    /**
+     * Stops handling the notifications of the connection, dropping the pending changes
+     * @param hostConnection Connection to the host
+     */
+    public void unregister(HostConnection hostConnection) {
+        hostConnection.unregisterLibraryNotificationsObserver(this);
+        handler.removeCallbacks(applyRunnable);
+        if (handlerThread != null) {
+            handlerThread.quit();
+        }
+    }
+
+    @Override
+    public void onVideoLibraryUpdate(VideoLibrary.OnUpdate notification) {
+        switch (notification.itemType) {
+            case VideoLibrary.TYPE_MOVIE:
+                updatedMovies.add(notification.itemId);
+                removedMovies.remove(notification.itemId);
+                break;
+            case VideoLibrary.TYPE_TVSHOW:
+                updatedTVShows.add(notification.itemId);
+                break;
+            case VideoLibrary.TYPE_EPISODE:
+                changedEpisodes.add(notification.itemId);
+                break;
+            case VideoLibrary.TYPE_MUSIC_VIDEO:
+                changedMusicVideos = true;
+                break;
+            default:
+                return;
+        }
+        scheduleApply();
+    }
+
+    @Override
+    public void onVideoLibraryRemove(VideoLibrary.OnRemove notification) {
+        switch (notification.itemType) {
+            case VideoLibrary.TYPE_MOVIE:
+                removedMovies.add(notification.itemId);
+                updatedMovies.remove(notification.itemId);
+                break;
+            case VideoLibrary.TYPE_TVSHOW:
+                removedTVShows = true;
+                break;
+            case VideoLibrary.TYPE_EPISODE:
+                changedEpisodes.add(notification.itemId);
+                break;
+            case VideoLibrary.TYPE_MUSIC_VIDEO:
+                changedMusicVideos = true;
+                break;
+            default:
+                return;
+        }
+        scheduleApply();
+    }
+
+    @Override
+    public void onAudioLibraryUpdate(AudioLibrary.OnUpdate notification) {
+        changedMusic = true;
+        scheduleApply();
+    }
+
+    @Override
+    public void onAudioLibraryRemove(AudioLibrary.OnRemove notification) {
+        changedMusic = true;
+        scheduleApply();
+    }
+
+    private void scheduleApply() {
+        handler.removeCallbacks(applyRunnable);
+        handler.postDelayed(applyRunnable, COALESCE_DELAY);
+    }
+
+    private void applyPendingChanges() {
+        ContentResolver contentResolver = context.getContentResolver();
+        int hostId = hostInfo.getId();
+
+        for (int movieId : removedMovies) {
+            LogUtils.LOGD(TAG, "Movie " + movieId + " removed on host " + hostId);
+            contentResolver.delete(MediaContract.MovieCast.buildMovieCastListUri(hostId, movieId), null, null);
+            contentResolver.delete(MediaContract.Movies.buildMovieUri(hostId, movieId), null, null);
+        }
+        removedMovies.clear();
+
+        if (updatedMovies.size() > MAX_SINGLE_SYNCS) {
+            syncAll(LibrarySyncService.SYNC_ALL_MOVIES);
+        } else {
+            for (int movieId : updatedMovies) {
+                startSync(LibrarySyncService.SYNC_SINGLE_MOVIE, LibrarySyncService.SYNC_MOVIEID, movieId);
+            }
+        }
+        updatedMovies.clear();
+
+        // Episodes are synced through their tv show, new ones aren't known locally yet
+        boolean syncAllTVShows = removedTVShows;
+        for (int episodeId : changedEpisodes) {
+            int tvshowId = localTVShowOfEpisode(contentResolver, hostId, episodeId);
+            if (tvshowId == -1) {
+                syncAllTVShows = true;
+                break;
+            }
+            updatedTVShows.add(tvshowId);
+        }
+        if (syncAllTVShows || (updatedTVShows.size() > MAX_SINGLE_SYNCS)) {
+            syncAll(LibrarySyncService.SYNC_ALL_TVSHOWS);
+        } else {
+            for (int tvshowId : updatedTVShows) {
+                startSync(LibrarySyncService.SYNC_SINGLE_TVSHOW, LibrarySyncService.SYNC_TVSHOWID, tvshowId);
+            }
+        }
+        changedEpisodes.clear();
+        updatedTVShows.clear();
+        removedTVShows = false;
+
+        if (changedMusicVideos) {
+            startSync(LibrarySyncService.SYNC_ALL_MUSIC_VIDEOS, null, -1);
+            changedMusicVideos = false;
+        }
+
+        if (changedMusic) {
+            LibraryFingerprint.forSyncType(LibrarySyncService.SYNC_ALL_MUSIC).invalidate(context, hostId);
+            changedMusic = false;
+        }
+    }
+
+    private int localTVShowOfEpisode(ContentResolver contentResolver, int hostId, int episodeId) {
+        Cursor cursor = contentResolver.query(
+                MediaContract.Episodes.CONTENT_URI, new String[] {MediaContract.Episodes.TVSHOWID},
+                MediaContract.Episodes.HOST_ID + "=? AND " + MediaContract.Episodes.EPISODEID + "=?",
+                new String[] {String.valueOf(hostId), String.valueOf(episodeId)}, null);
+        if (cursor == null)
+            return -1;
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Syncs a whole media type. Its fingerprint is invalidated first, as it may not reflect
+     * the changes notified
+     */
+    private void syncAll(String syncType) {
+        LibraryFingerprint.forSyncType(syncType).invalidate(context, hostInfo.getId());
+        startSync(syncType, null, -1);
+    }
+
+    private void startSync(String syncType, String idExtra, int itemId) {
+        Intent syncIntent = new Intent(context, LibrarySyncService.class);
+        syncIntent.putExtra(syncType, true);
+        if (idExtra != null) {
+            syncIntent.putExtra(idExtra, itemId);
+        }
+        Bundle syncExtras = new Bundle();
+        syncExtras.putBoolean(LibrarySyncService.SILENT_SYNC, true);
+        syncIntent.putExtra(LibrarySyncService.SYNC_EXTRAS, syncExtras);
+
+        try {
+            context.startService(syncIntent);
+        } catch (IllegalStateException e) {
+            // Not allowed while the app is in the background, it'll be synced when opened
+            LogUtils.LOGD(TAG, "Couldn't start the sync of " + syncType + ": " + e.getMessage());
+        }
+    }
+}
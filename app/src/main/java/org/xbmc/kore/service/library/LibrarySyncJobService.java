@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.utils.LogUtils;
+
+/**
+ * Job that syncs the library of the current host in the background, scheduled by
+ * {@link SyncScheduler} to run while charging on an unmetered network.
+ * <p>
+ * The sync runs here instead of on {@link LibrarySyncService}, as services can't be started
+ * while the app is in the background.
+ */
+@TargetApi(21)
+public class LibrarySyncJobService extends JobService {
+    public static final String TAG = LogUtils.makeLogTag(LibrarySyncJobService.class);
+
+    private HandlerThread handlerThread;
+    private Handler callbackHandler;
+    private volatile SyncOrchestrator syncOrchestrator;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        handlerThread = new HandlerThread("LibrarySyncJobService", Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        callbackHandler = new Handler(handlerThread.getLooper());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        HostInfo hostInfo = HostManager.getInstance(this).getHostInfo();
+        if (hostInfo == null)
+            return false;
+
+        Intent syncIntent = SyncScheduler.getInstance(this).takeBackgroundSync(hostInfo);
+        if (syncIntent == null)
+            return false;
+
+        LogUtils.LOGD(TAG, "Starting background sync of " + hostInfo.getName());
+        syncOrchestrator = new SyncOrchestrator(this, -1, hostInfo, callbackHandler, getContentResolver());
+        syncOrchestrator.setListener(new SyncOrchestrator.OnSyncListener() {
+            @Override
+            public void onSyncFinished(SyncOrchestrator finishedOrchestrator) {
+                syncOrchestrator = null;
+                jobFinished(params, false);
+            }
+        });
+        LibrarySyncService.addSyncItems(this, syncOrchestrator, syncIntent);
+        syncOrchestrator.startSync();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints are no longer met. What was synced is kept, the rest is synced next time
+        LogUtils.LOGD(TAG, "Background sync stopped");
+        SyncOrchestrator running = syncOrchestrator;
+        if (running != null) {
+            running.cancel();
+            syncOrchestrator = null;
+        }
+        return false;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        handlerThread.quitSafely();
+    }
+}
@@ -17,6 +17,7 @@ package org.xbmc.kore.service.library;
 
 import android.annotation.SuppressLint;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Bundle;
@@ -48,15 +49,28 @@ public class LibrarySyncService extends Service {
     public static final String SYNC_SINGLE_TVSHOW = "sync_single_tvshow";
     public static final String SYNC_ALL_MUSIC = "sync_all_music";
     public static final String SYNC_ALL_MUSIC_VIDEOS = "sync_all_music_videos";
+    public static final String SYNC_ALL_ADDONS = "sync_all_addons";
+    public static final String SYNC_ALL_FAVOURITES = "sync_all_favourites";
 
     public static final String SYNC_MOVIEID = "sync_movieid";
     public static final String SYNC_TVSHOWID = "sync_tvshowid";
 
+    /**
+     * Only sync if the items on Kodi differ from the cached ones. Supported by addons and
+     * favourites, and by movies, tv shows and music through their {@link LibraryFingerprint}
+     */
+    public static final String SYNC_ONLY_IF_CHANGED = "sync_only_if_changed";
+
     /**
      * Extra used to pass parameters that will be sent back to the caller
      */
     public static final String SYNC_EXTRAS = "sync_extras";
 
+    /**
+     * Scheduling decisions that led to this sync, added to its report. See {@link SyncScheduler}
+     */
+    public static final String SYNC_SCHEDULING_NOTES = "sync_scheduling_notes";
+
     /**
      * Constant for UI to use to signal a silent sync (pass these in SYNC_EXTRAS)
      */
@@ -104,13 +118,40 @@ public class LibrarySyncService extends Service {
 
         syncOrchestrators.add(syncOrchestrator);
 
+        addSyncItems(this, syncOrchestrator, intent);
+
+        // Start syncing
+        syncOrchestrator.startSync();
+
+        // If we get killed, after returning from here, don't restart
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Adds the syncs asked for on the intent to the orchestrator
+     * @param context Context
+     * @param orchestrator Orchestrator, of the host to sync
+     * @param intent Intent with the syncs to run
+     */
+    static void addSyncItems(Context context, SyncOrchestrator orchestrator, Intent intent) {
+        int hostId = orchestrator.getHostInfo().getId();
+
+        ArrayList<String> schedulingNotes = intent.getStringArrayListExtra(SYNC_SCHEDULING_NOTES);
+        if (schedulingNotes != null) {
+            for (String note : schedulingNotes) {
+                orchestrator.addNote(note);
+            }
+        }
+
         // Get the request parameters that we should pass when calling back the caller
         Bundle syncExtras = intent.getBundleExtra(SYNC_EXTRAS);
+        boolean syncOnlyIfChanged = intent.getBooleanExtra(SYNC_ONLY_IF_CHANGED, false);
 
         // Sync all movies
         boolean syncAllMovies = intent.getBooleanExtra(SYNC_ALL_MOVIES, false);
         if (syncAllMovies) {
-            syncOrchestrator.addSyncItem(new SyncMovies(hostInfo.getId(), syncExtras));
+            orchestrator.addSyncItem(syncIfLibraryChanged(context, new SyncMovies(hostId, syncExtras),
+                                                          syncOnlyIfChanged));
         }
 
         // Sync a single movie
@@ -118,14 +159,15 @@ public class LibrarySyncService extends Service {
         if (syncSingleMovie) {
             int movieId = intent.getIntExtra(SYNC_MOVIEID, -1);
             if (movieId != -1) {
-                syncOrchestrator.addSyncItem(new SyncMovies(hostInfo.getId(), movieId, syncExtras));
+                orchestrator.addSyncItem(new SyncMovies(hostId, movieId, syncExtras));
             }
         }
 
         // Sync all tvshows
         boolean syncAllTVShows = intent.getBooleanExtra(SYNC_ALL_TVSHOWS, false);
         if (syncAllTVShows) {
-            syncOrchestrator.addSyncItem(new SyncTVShows(hostInfo.getId(), syncExtras));
+            orchestrator.addSyncItem(syncIfLibraryChanged(context, new SyncTVShows(hostId, syncExtras),
+                                                          syncOnlyIfChanged));
         }
 
         // Sync a single tvshow
@@ -133,27 +175,43 @@ public class LibrarySyncService extends Service {
         if (syncSingleTVShow) {
             int tvshowId = intent.getIntExtra(SYNC_TVSHOWID, -1);
             if (tvshowId != -1) {
-                syncOrchestrator.addSyncItem(new SyncTVShows(hostInfo.getId(), tvshowId, syncExtras));
+                orchestrator.addSyncItem(new SyncTVShows(hostId, tvshowId, syncExtras));
             }
         }
 
         // Sync all music
         boolean syncAllMusic = intent.getBooleanExtra(SYNC_ALL_MUSIC, false);
         if (syncAllMusic) {
-            syncOrchestrator.addSyncItem(new SyncMusic(syncExtras));
+            orchestrator.addSyncItem(syncIfLibraryChanged(context, new SyncMusic(syncExtras),
+                                                          syncOnlyIfChanged));
         }
 
         // Sync all music videos
         boolean syncAllMusicVideos = intent.getBooleanExtra(SYNC_ALL_MUSIC_VIDEOS, false);
         if (syncAllMusicVideos) {
-            syncOrchestrator.addSyncItem(new SyncMusicVideos(hostInfo.getId(), syncExtras));
+            orchestrator.addSyncItem(new SyncMusicVideos(hostId, syncExtras));
         }
 
-        // Start syncing
-        syncOrchestrator.startSync();
+        // Sync all addons
+        boolean syncAllAddons = intent.getBooleanExtra(SYNC_ALL_ADDONS, false);
+        if (syncAllAddons) {
+            orchestrator.addSyncItem(new SyncAddons(hostId, syncOnlyIfChanged, syncExtras));
+        }
 
-        // If we get killed, after returning from here, don't restart
-        return START_NOT_STICKY;
+        // Sync all favourites
+        boolean syncAllFavourites = intent.getBooleanExtra(SYNC_ALL_FAVOURITES, false);
+        if (syncAllFavourites) {
+            orchestrator.addSyncItem(new SyncFavourites(hostId, syncOnlyIfChanged, syncExtras));
+        }
+    }
+
+    /**
+     * Wraps the sync of a whole media type so that its library fingerprint is checked first
+     */
+    private static SyncItem syncIfLibraryChanged(Context context, SyncItem syncItem, boolean onlyIfChanged) {
+        return new SyncIfLibraryChanged(context, syncItem,
+                                        LibraryFingerprint.forSyncType(syncItem.getSyncType()),
+                                        onlyIfChanged);
     }
 
     @Override
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Handler;
+
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.Addons;
+import org.xbmc.kore.jsonrpc.type.AddonType;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Syncs the addons installed on Kodi to the local database.
+ * <p>
+ * If requested, the full addon details are only retrieved when the cheap fingerprint of the
+ * installed addons (id, version and enabled state) differs from the one of the cached addons.
+ */
+public class SyncAddons extends SyncItem {
+    public static final String TAG = LogUtils.makeLogTag(SyncAddons.class);
+
+    private static final String[] FULL_PROPERTIES = {
+            AddonType.Fields.NAME, AddonType.Fields.VERSION, AddonType.Fields.SUMMARY,
+            AddonType.Fields.DESCRIPTION, AddonType.Fields.PATH, AddonType.Fields.AUTHOR,
+            AddonType.Fields.THUMBNAIL, AddonType.Fields.DISCLAIMER, AddonType.Fields.FANART,
+            //AddonType.Fields.DEPENDENCIES, AddonType.Fields.BROKEN, AddonType.Fields.EXTRAINFO,
+            AddonType.Fields.RATING, AddonType.Fields.ENABLED
+    };
+
+    private static final String[] FINGERPRINT_PROPERTIES = {
+            AddonType.Fields.VERSION, AddonType.Fields.ENABLED
+    };
+
+    private final int hostId;
+    private final boolean onlyIfChanged;
+    private final Bundle syncExtras;
+
+    /**
+     * Syncs all the addons on Kodi, to the local database
+     * @param hostId Kodi host id
+     * @param onlyIfChanged Only get the full addon details if the addons' fingerprint changed
+     * @param syncExtras Extras to pass back to the caller
+     */
+    public SyncAddons(final int hostId, boolean onlyIfChanged, Bundle syncExtras) {
+        this.hostId = hostId;
+        this.onlyIfChanged = onlyIfChanged;
+        this.syncExtras = syncExtras;
+    }
+
+    /** {@inheritDoc} */
+    public String getDescription() {
+        return "Sync addons for host: " + hostId;
+    }
+
+    /** {@inheritDoc} */
+    public String getSyncType() {
+        return LibrarySyncService.SYNC_ALL_ADDONS;
+    }
+
+    /** {@inheritDoc} */
+    public Bundle getSyncExtras() {
+        return syncExtras;
+    }
+
+    /** {@inheritDoc} */
+    public void sync(final SyncOrchestrator orchestrator,
+                     final HostConnection hostConnection,
+                     final Handler callbackHandler,
+                     final ContentResolver contentResolver) {
+        if (!onlyIfChanged) {
+            syncAllAddons(orchestrator, hostConnection, callbackHandler, contentResolver);
+            return;
+        }
+
+        Addons.GetAddons action = new Addons.GetAddons(FINGERPRINT_PROPERTIES);
+        action.execute(hostConnection, new ApiCallback<List<AddonType.Details>>() {
+            @Override
+            public void onSuccess(List<AddonType.Details> result) {
+                List<String> remoteFingerprint = new ArrayList<>(result.size());
+                for (AddonType.Details addon : result) {
+                    remoteFingerprint.add(fingerprintEntry(addon.addonid, addon.version, addon.enabled));
+                }
+
+                if (fingerprint(remoteFingerprint).equals(cachedFingerprint(contentResolver))) {
+                    LogUtils.LOGD(TAG, "Addons unchanged on host " + hostId + ", skipping sync");
+                    orchestrator.syncItemFinished();
+                } else {
+                    syncAllAddons(orchestrator, hostConnection, callbackHandler, contentResolver);
+                }
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                orchestrator.syncItemFailed(errorCode, description);
+            }
+        }, callbackHandler);
+    }
+
+    private void syncAllAddons(final SyncOrchestrator orchestrator,
+                               final HostConnection hostConnection,
+                               final Handler callbackHandler,
+                               final ContentResolver contentResolver) {
+        Addons.GetAddons action = new Addons.GetAddons(FULL_PROPERTIES);
+        action.execute(hostConnection, new ApiCallback<List<AddonType.Details>>() {
+            @Override
+            public void onSuccess(List<AddonType.Details> result) {
+                replaceAddons(result, contentResolver);
+                orchestrator.syncItemFinished();
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                // Ok, something bad happend, just quit
+                orchestrator.syncItemFailed(errorCode, description);
+            }
+        }, callbackHandler);
+    }
+
+    private String cachedFingerprint(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(MediaContract.Addons.buildAddonsListUri(hostId),
+                                              FingerprintQuery.PROJECTION, null, null, null);
+        if (cursor == null) return null;
+
+        List<String> entries = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                entries.add(fingerprintEntry(cursor.getString(FingerprintQuery.ADDONID),
+                                             cursor.getString(FingerprintQuery.VERSION),
+                                             cursor.getInt(FingerprintQuery.ENABLED) != 0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return fingerprint(entries);
+    }
+
+    private static String fingerprintEntry(String addonId, String version, Boolean enabled) {
+        return addonId + "|" + version + "|" + ((enabled != null) && enabled);
+    }
+
+    /**
+     * Returns the fingerprint of a list of addons, which doesn't depend on their order
+     * @param entries Fingerprint entries of each addon
+     * @return Fingerprint
+     */
+    static String fingerprint(List<String> entries) {
+        Collections.sort(entries);
+        StringBuilder sb = new StringBuilder();
+        sb.append(entries.size());
+        for (String entry : entries) {
+            sb.append('\n').append(entry);
+        }
+        return sb.toString();
+    }
+
+    private void replaceAddons(List<AddonType.Details> addons, ContentResolver contentResolver) {
+        SyncUtils.replaceHostRows(contentResolver, MediaContract.Addons.CONTENT_URI,
+                                  MediaContract.AddonsColumns.HOST_ID, hostId,
+                                  addonsValues(addons));
+    }
+
+    public void insertAddons(List<AddonType.Details> addons, ContentResolver contentResolver) {
+        contentResolver.bulkInsert(MediaContract.Addons.CONTENT_URI, addonsValues(addons));
+    }
+
+    private ContentValues[] addonsValues(List<AddonType.Details> addons) {
+        ContentValues addonsValuesBatch[] = new ContentValues[addons.size()];
+
+        for (int i = 0; i < addons.size(); i++) {
+            addonsValuesBatch[i] = SyncUtils.contentValuesFromAddon(hostId, addons.get(i));
+        }
+        return addonsValuesBatch;
+    }
+
+    /**
+     * Cached addons fingerprint query parameters.
+     */
+    private interface FingerprintQuery {
+        String[] PROJECTION = {
+                MediaContract.Addons.ADDONID,
+                MediaContract.Addons.VERSION,
+                MediaContract.Addons.ENABLED,
+        };
+
+        int ADDONID = 0;
+        int VERSION = 1;
+        int ENABLED = 2;
+    }
+}
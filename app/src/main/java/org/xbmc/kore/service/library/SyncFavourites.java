@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Handler;
+
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiList;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.Favourites;
+import org.xbmc.kore.jsonrpc.type.FavouriteType;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.List;
+
+/**
+ * Syncs the favourites on Kodi to the local database.
+ * <p>
+ * Kodi has no cheaper call than Favourites.GetFavourites, and the favourites list is small, so
+ * it is always retrieved. If requested, the local database is only rewritten when the list
+ * differs from the cached one.
+ */
+public class SyncFavourites extends SyncItem {
+    public static final String TAG = LogUtils.makeLogTag(SyncFavourites.class);
+
+    private final int hostId;
+    private final boolean onlyIfChanged;
+    private final Bundle syncExtras;
+
+    /**
+     * Syncs all the favourites on Kodi, to the local database
+     * @param hostId Kodi host id
+     * @param onlyIfChanged Only rewrite the local favourites if they changed
+     * @param syncExtras Extras to pass back to the caller
+     */
+    public SyncFavourites(final int hostId, boolean onlyIfChanged, Bundle syncExtras) {
+        this.hostId = hostId;
+        this.onlyIfChanged = onlyIfChanged;
+        this.syncExtras = syncExtras;
+    }
+
+    /** {@inheritDoc} */
+    public String getDescription() {
+        return "Sync favourites for host: " + hostId;
+    }
+
+    /** {@inheritDoc} */
+    public String getSyncType() {
+        return LibrarySyncService.SYNC_ALL_FAVOURITES;
+    }
+
+    /** {@inheritDoc} */
+    public Bundle getSyncExtras() {
+        return syncExtras;
+    }
+
+    /** {@inheritDoc} */
+    public void sync(final SyncOrchestrator orchestrator,
+                     final HostConnection hostConnection,
+                     final Handler callbackHandler,
+                     final ContentResolver contentResolver) {
+        Favourites.GetFavourites action = new Favourites.GetFavourites();
+        action.execute(hostConnection, new ApiCallback<ApiList<FavouriteType.DetailsFavourite>>() {
+            @Override
+            public void onSuccess(ApiList<FavouriteType.DetailsFavourite> result) {
+                if (onlyIfChanged &&
+                    fingerprint(result.items).equals(cachedFingerprint(contentResolver))) {
+                    LogUtils.LOGD(TAG, "Favourites unchanged on host " + hostId + ", skipping sync");
+                } else {
+                    replaceFavourites(result.items, contentResolver);
+                }
+                orchestrator.syncItemFinished();
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                // Ok, something bad happend, just quit
+                orchestrator.syncItemFailed(errorCode, description);
+            }
+        }, callbackHandler);
+    }
+
+    private String fingerprint(List<FavouriteType.DetailsFavourite> favourites) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(favourites.size());
+        for (FavouriteType.DetailsFavourite favourite : favourites) {
+            appendEntry(sb, favourite.title, favourite.type, favourite.path, favourite.thumbnail,
+                        favourite.window, favourite.windowParameter);
+        }
+        return sb.toString();
+    }
+
+    private String cachedFingerprint(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(MediaContract.Favourites.buildFavouritesListUri(hostId),
+                                              FingerprintQuery.PROJECTION, null, null,
+                                              FingerprintQuery.SORT);
+        if (cursor == null) return null;
+
+        StringBuilder sb = new StringBuilder();
+        try {
+            sb.append(cursor.getCount());
+            while (cursor.moveToNext()) {
+                appendEntry(sb, cursor.getString(FingerprintQuery.TITLE),
+                            cursor.getString(FingerprintQuery.TYPE),
+                            cursor.getString(FingerprintQuery.PATH),
+                            cursor.getString(FingerprintQuery.THUMBNAIL),
+                            cursor.getString(FingerprintQuery.WINDOW),
+                            cursor.getString(FingerprintQuery.WINDOW_PARAMETER));
+            }
+        } finally {
+            cursor.close();
+        }
+        return sb.toString();
+    }
+
+    private static void appendEntry(StringBuilder sb, String... fields) {
+        sb.append('\n');
+        for (String field : fields) {
+            sb.append(field).append('|');
+        }
+    }
+
+    private void replaceFavourites(List<FavouriteType.DetailsFavourite> favourites,
+                                   ContentResolver contentResolver) {
+        ContentValues favouritesValuesBatch[] = new ContentValues[favourites.size()];
+
+        for (int i = 0; i < favourites.size(); i++) {
+            favouritesValuesBatch[i] = SyncUtils.contentValuesFromFavourite(hostId, i, favourites.get(i));
+        }
+
+        SyncUtils.replaceHostRows(contentResolver, MediaContract.Favourites.CONTENT_URI,
+                                  MediaContract.FavouritesColumns.HOST_ID, hostId,
+                                  favouritesValuesBatch);
+    }
+
+    /**
+     * Cached favourites fingerprint query parameters.
+     */
+    private interface FingerprintQuery {
+        String[] PROJECTION = {
+                MediaContract.Favourites.TITLE,
+                MediaContract.Favourites.TYPE,
+                MediaContract.Favourites.PATH,
+                MediaContract.Favourites.THUMBNAIL,
+                MediaContract.Favourites.WINDOW,
+                MediaContract.Favourites.WINDOW_PARAMETER,
+        };
+
+        String SORT = MediaContract.Favourites.POSITION + " ASC";
+
+        int TITLE = 0;
+        int TYPE = 1;
+        int PATH = 2;
+        int THUMBNAIL = 3;
+        int WINDOW = 4;
+        int WINDOW_PARAMETER = 5;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.utils.LogUtils;
+
+/**
+ * Syncs a media type only if its {@link LibraryFingerprint} changed since its last sync.
+ * <p>
+ * Wraps the sync item of the media type. When not asked to skip, the item is always synced,
+ * but the fingerprint is still taken so that later checks have something to compare with.
+ */
+public class SyncIfLibraryChanged extends SyncItem {
+    public static final String TAG = LogUtils.makeLogTag(SyncIfLibraryChanged.class);
+
+    private final Context context;
+    private final SyncItem syncItem;
+    private final LibraryFingerprint<?> libraryFingerprint;
+    private final boolean onlyIfChanged;
+
+    private int hostId;
+    private String currentFingerprint = null;
+    private boolean skipped = false;
+
+    /**
+     * Constructor
+     * @param context Context, to store the fingerprints
+     * @param syncItem Item that syncs the whole media type
+     * @param libraryFingerprint Fingerprint of the media type
+     * @param onlyIfChanged Skip the sync if the fingerprint didn't change
+     */
+    public SyncIfLibraryChanged(Context context, SyncItem syncItem,
+                                LibraryFingerprint<?> libraryFingerprint, boolean onlyIfChanged) {
+        this.context = context;
+        this.syncItem = syncItem;
+        this.libraryFingerprint = libraryFingerprint;
+        this.onlyIfChanged = onlyIfChanged;
+    }
+
+    /** {@inheritDoc} */
+    public String getDescription() {
+        return syncItem.getDescription();
+    }
+
+    /** {@inheritDoc} */
+    public String getSyncType() {
+        return syncItem.getSyncType();
+    }
+
+    /** {@inheritDoc} */
+    public Bundle getSyncExtras() {
+        return syncItem.getSyncExtras();
+    }
+
+    /** {@inheritDoc} */
+    public void sync(final SyncOrchestrator orchestrator,
+                     final HostConnection hostConnection,
+                     final Handler callbackHandler,
+                     final ContentResolver contentResolver) {
+        hostId = orchestrator.getHostInfo().getId();
+        libraryFingerprint.fetch(hostConnection, callbackHandler, new LibraryFingerprint.Callback() {
+            @Override
+            public void onFingerprint(String fingerprint) {
+                if (onlyIfChanged &&
+                    fingerprint.equals(libraryFingerprint.getStored(context, contentResolver, hostId))) {
+                    LogUtils.LOGD(TAG, getSyncType() + " unchanged on host " + hostId + ", skipping sync");
+                    orchestrator.addNote(getSyncType() + " unchanged, sync skipped");
+                    skipped = true;
+                    orchestrator.syncItemFinished();
+                    return;
+                }
+                currentFingerprint = fingerprint;
+                syncItem.sync(orchestrator, hostConnection, callbackHandler, contentResolver);
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                // Older versions of Kodi may not sort these, just sync
+                LogUtils.LOGD(TAG, "Couldn't get the fingerprint of " + getSyncType() + ": " + description);
+                syncItem.sync(orchestrator, hostConnection, callbackHandler, contentResolver);
+            }
+        });
+    }
+
+    @Override
+    void syncSucceeded() {
+        // Taken before syncing, so changes made meanwhile are picked up next time
+        if (currentFingerprint != null) {
+            libraryFingerprint.store(context, hostId, currentFingerprint);
+        }
+    }
+
+    @Override
+    boolean changedLocalLibrary() {
+        return !skipped;
+    }
+}
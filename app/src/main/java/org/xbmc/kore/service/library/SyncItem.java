@@ -56,4 +56,17 @@ public abstract class SyncItem {
      * @return Sync extras passed during construction
      */
     abstract public Bundle getSyncExtras();
+
+    /**
+     * Called by the orchestrator once this item finished syncing successfully
+     */
+    void syncSucceeded() { }
+
+    /**
+     * Returns whether the last sync of this item may have changed the local database.
+     * Items that skip their sync when the library is unchanged return false then
+     */
+    boolean changedLocalLibrary() {
+        return true;
+    }
 }
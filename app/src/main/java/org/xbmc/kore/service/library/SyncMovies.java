@@ -38,6 +38,31 @@ public class SyncMovies extends SyncItem {
 
     private static final int LIMIT_SYNC_MOVIES = 300;
 
+    /**
+     * Properties requested when syncing, also used to revalidate a single item
+     */
+    final static String[] movieProperties = {
+            VideoType.FieldsMovie.TITLE, VideoType.FieldsMovie.GENRE,
+            VideoType.FieldsMovie.YEAR, VideoType.FieldsMovie.RATING,
+            VideoType.FieldsMovie.DIRECTOR, VideoType.FieldsMovie.TRAILER,
+            VideoType.FieldsMovie.TAGLINE, VideoType.FieldsMovie.PLOT,
+            // VideoType.FieldsMovie.PLOTOUTLINE, VideoType.FieldsMovie.ORIGINALTITLE,
+            // VideoType.FieldsMovie.LASTPLAYED,
+            VideoType.FieldsMovie.PLAYCOUNT, VideoType.FieldsMovie.DATEADDED,
+            VideoType.FieldsMovie.WRITER, VideoType.FieldsMovie.STUDIO,
+            VideoType.FieldsMovie.MPAA, VideoType.FieldsMovie.CAST,
+            VideoType.FieldsMovie.COUNTRY, VideoType.FieldsMovie.IMDBNUMBER,
+            VideoType.FieldsMovie.RUNTIME, VideoType.FieldsMovie.SET,
+            // VideoType.FieldsMovie.SHOWLINK,
+            VideoType.FieldsMovie.STREAMDETAILS, VideoType.FieldsMovie.TOP250,
+            VideoType.FieldsMovie.VOTES, VideoType.FieldsMovie.FANART,
+            VideoType.FieldsMovie.THUMBNAIL, VideoType.FieldsMovie.FILE,
+            // VideoType.FieldsMovie.SORTTITLE, VideoType.FieldsMovie.RESUME,
+            VideoType.FieldsMovie.SETID,
+            // VideoType.FieldsMovie.DATEADDED, VideoType.FieldsMovie.TAG,
+            // VideoType.FieldsMovie.ART
+    };
+
     private final int hostId;
     private final int movieId;
     private final Bundle syncExtras;
@@ -85,34 +110,13 @@ public class SyncMovies extends SyncItem {
                      final HostConnection hostConnection,
                      final Handler callbackHandler,
                      final ContentResolver contentResolver) {
-        String properties[] = {
-                VideoType.FieldsMovie.TITLE, VideoType.FieldsMovie.GENRE,
-                VideoType.FieldsMovie.YEAR, VideoType.FieldsMovie.RATING,
-                VideoType.FieldsMovie.DIRECTOR, VideoType.FieldsMovie.TRAILER,
-                VideoType.FieldsMovie.TAGLINE, VideoType.FieldsMovie.PLOT,
-                // VideoType.FieldsMovie.PLOTOUTLINE, VideoType.FieldsMovie.ORIGINALTITLE,
-                // VideoType.FieldsMovie.LASTPLAYED,
-                VideoType.FieldsMovie.PLAYCOUNT, VideoType.FieldsMovie.DATEADDED,
-                VideoType.FieldsMovie.WRITER, VideoType.FieldsMovie.STUDIO,
-                VideoType.FieldsMovie.MPAA, VideoType.FieldsMovie.CAST,
-                VideoType.FieldsMovie.COUNTRY, VideoType.FieldsMovie.IMDBNUMBER,
-                VideoType.FieldsMovie.RUNTIME, VideoType.FieldsMovie.SET,
-                // VideoType.FieldsMovie.SHOWLINK,
-                VideoType.FieldsMovie.STREAMDETAILS, VideoType.FieldsMovie.TOP250,
-                VideoType.FieldsMovie.VOTES, VideoType.FieldsMovie.FANART,
-                VideoType.FieldsMovie.THUMBNAIL, VideoType.FieldsMovie.FILE,
-                // VideoType.FieldsMovie.SORTTITLE, VideoType.FieldsMovie.RESUME,
-                VideoType.FieldsMovie.SETID,
-                // VideoType.FieldsMovie.DATEADDED, VideoType.FieldsMovie.TAG,
-                // VideoType.FieldsMovie.ART
-        };
 
         if (movieId == -1) {
-            syncAllMovies(orchestrator, hostConnection, callbackHandler, contentResolver, properties, 0);
+            syncAllMovies(orchestrator, hostConnection, callbackHandler, contentResolver, movieProperties, 0);
         } else {
             // Sync a specific movie
             VideoLibrary.GetMovieDetails action =
-                    new VideoLibrary.GetMovieDetails(movieId, properties);
+                    new VideoLibrary.GetMovieDetails(movieId, movieProperties);
             action.execute(hostConnection, new ApiCallback<VideoType.DetailsMovie>() {
                 @Override
                 public void onSuccess(VideoType.DetailsMovie result) {
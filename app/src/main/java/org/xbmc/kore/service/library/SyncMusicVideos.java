@@ -33,6 +33,24 @@ import java.util.List;
 public class SyncMusicVideos extends SyncItem {
     public static final String TAG = LogUtils.makeLogTag(SyncMusicVideos.class);
 
+    /**
+     * Properties requested when syncing, also used to revalidate a single item
+     */
+    final static String[] musicVideoProperties = {
+            VideoType.FieldsMusicVideo.TITLE, VideoType.FieldsMusicVideo.PLAYCOUNT,
+            VideoType.FieldsMusicVideo.RUNTIME, VideoType.FieldsMusicVideo.DIRECTOR,
+            VideoType.FieldsMusicVideo.STUDIO, VideoType.FieldsMusicVideo.YEAR,
+            VideoType.FieldsMusicVideo.PLOT, VideoType.FieldsMusicVideo.ALBUM,
+            VideoType.FieldsMusicVideo.ARTIST, VideoType.FieldsMusicVideo.GENRE,
+            VideoType.FieldsMusicVideo.TRACK, VideoType.FieldsMusicVideo.STREAMDETAILS,
+            //VideoType.FieldsMusicVideo.LASTPLAYED,
+            VideoType.FieldsMusicVideo.FANART,
+            VideoType.FieldsMusicVideo.THUMBNAIL, VideoType.FieldsMusicVideo.FILE,
+            // VideoType.FieldsMusicVideo.RESUME, VideoType.FieldsMusicVideo.DATEADDED,
+            VideoType.FieldsMusicVideo.TAG,
+            //VideoType.FieldsMusicVideo.ART
+    };
+
     private final int hostId;
     private final Bundle syncExtras;
 
@@ -65,23 +83,9 @@ public class SyncMusicVideos extends SyncItem {
                      final HostConnection hostConnection,
                      final Handler callbackHandler,
                      final ContentResolver contentResolver) {
-        String properties[] = {
-                VideoType.FieldsMusicVideo.TITLE, VideoType.FieldsMusicVideo.PLAYCOUNT,
-                VideoType.FieldsMusicVideo.RUNTIME, VideoType.FieldsMusicVideo.DIRECTOR,
-                VideoType.FieldsMusicVideo.STUDIO, VideoType.FieldsMusicVideo.YEAR,
-                VideoType.FieldsMusicVideo.PLOT, VideoType.FieldsMusicVideo.ALBUM,
-                VideoType.FieldsMusicVideo.ARTIST, VideoType.FieldsMusicVideo.GENRE,
-                VideoType.FieldsMusicVideo.TRACK, VideoType.FieldsMusicVideo.STREAMDETAILS,
-                //VideoType.FieldsMusicVideo.LASTPLAYED,
-                VideoType.FieldsMusicVideo.FANART,
-                VideoType.FieldsMusicVideo.THUMBNAIL, VideoType.FieldsMusicVideo.FILE,
-                // VideoType.FieldsMusicVideo.RESUME, VideoType.FieldsMusicVideo.DATEADDED,
-                VideoType.FieldsMusicVideo.TAG,
-                //VideoType.FieldsMusicVideo.ART
-        };
 
         // Delete and sync all music videos
-        VideoLibrary.GetMusicVideos action = new VideoLibrary.GetMusicVideos(properties);
+        VideoLibrary.GetMusicVideos action = new VideoLibrary.GetMusicVideos(musicVideoProperties);
         action.execute(hostConnection, new ApiCallback<List<VideoType.DetailsMusicVideo>>() {
             @Override
             public void onSuccess(List<VideoType.DetailsMusicVideo> result) {
@@ -23,9 +23,12 @@ import android.os.Handler;
 import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.jsonrpc.event.MediaSyncEvent;
+import org.xbmc.kore.provider.LibrarySnapshot;
 import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.StringPool;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
 
 import de.greenrobot.event.EventBus;
@@ -42,8 +45,13 @@ public class SyncOrchestrator {
     private final ContentResolver contentResolver;
 
     private SyncItem currentSyncItem;
+    private SyncTracer syncTracer;
+    private final ArrayList<String> notes = new ArrayList<>();
 
     private Iterator<SyncItem> syncItemIterator;
+    // Only accessed on the callback handler's thread
+    private boolean finished = false;
+    private boolean cancelled = false;
 
     public interface OnSyncListener {
         void onSyncFinished(SyncOrchestrator syncOrchestrator);
@@ -54,7 +62,8 @@ public class SyncOrchestrator {
     /**
      * Constructor
      * @param syncService Service on which to call {@link LibrarySyncService#stopSelf()} when finished
-     * @param startId Service startid to use when calling {@link LibrarySyncService#stopSelf()}
+     * @param startId Service startid to use when calling {@link LibrarySyncService#stopSelf()},
+     *                or -1 if the service wasn't started and must not be stopped
      * @param hostInfo Host from which to sync
      * @param callbackHandler Handler on which to post callbacks
      * @param contentResolver Content resolver
@@ -91,6 +100,18 @@ public class SyncOrchestrator {
         return syncItems;
     }
 
+    /**
+     * Adds a note to the sync report, such as why the sync was started
+     * @param note Note
+     */
+    public void addNote(String note) {
+        if (syncTracer != null) {
+            syncTracer.addNote(note);
+        } else {
+            notes.add(note);
+        }
+    }
+
     private long startTime = -1;
     private long partialStartTime;
 
@@ -99,8 +120,16 @@ public class SyncOrchestrator {
      */
     public void startSync() {
         startTime = System.currentTimeMillis();
+        // Deduplicate repeated strings while decoding and converting the library
+        StringPool.open();
         hostConnection = new HostConnection(hostInfo);
         hostConnection.setProtocol(HostConnection.PROTOCOL_HTTP);
+        syncTracer = new SyncTracer(hostInfo);
+        for (String note : notes) {
+            syncTracer.addNote(note);
+        }
+        notes.clear();
+        hostConnection.setTraceListener(syncTracer);
         syncItemIterator = syncItems.iterator();
         nextSync();
     }
@@ -109,29 +138,108 @@ public class SyncOrchestrator {
      * Processes the next item on the sync list, or cleans up if it is finished.
      */
     private void nextSync() {
-        if (syncItemIterator.hasNext()) {
+        while (syncItemIterator.hasNext()) {
+            SyncItem syncItem = syncItemIterator.next();
+            if (!startSyncing(syncItem)) {
+                // The other sync posts the result, and its listeners will see it
+                LogUtils.LOGD(TAG, "Skipping " + syncItem.getDescription() + ", it's already being synced");
+                syncTracer.addNote(syncItem.getSyncType() + " skipped: already being synced");
+                continue;
+            }
             partialStartTime = System.currentTimeMillis();
-            currentSyncItem = syncItemIterator.next();
+            currentSyncItem = syncItem;
+            syncTracer.startItem(currentSyncItem.getDescription());
             currentSyncItem.sync(this, hostConnection, callbackHandler, contentResolver);
-        } else {
-            LogUtils.LOGD(TAG, "Sync finished for all items. Total time: " +
-                               (System.currentTimeMillis() - startTime));
-            // No more syncs, cleanup.
-            // No need to disconnect, as this is HTTP
-            //hostConnection.disconnect();
-            if (listener != null) {
-                listener.onSyncFinished(this);
+            return;
+        }
+
+        finished = true;
+        LogUtils.LOGD(TAG, "Sync finished for all items. Total time: " +
+                           (System.currentTimeMillis() - startTime));
+        // No more syncs, cleanup.
+        // No need to disconnect, as this is HTTP
+        //hostConnection.disconnect();
+        StringPool.close();
+        syncTracer.finish();
+        // The last page is traced once its callback, which got us here, returns
+        callbackHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                LogUtils.LOGD(TAG, "Sync report:\n" + syncTracer.getReport());
+                syncTracer.saveReport(contentResolver);
+                if (listener != null) {
+                    listener.onSyncFinished(SyncOrchestrator.this);
+                }
+                if (serviceStartId != -1) {
+                    syncService.stopSelf(serviceStartId);
+                }
             }
-            syncService.stopSelf(serviceStartId);
+        });
+    }
+
+    /**
+     * Claims the sync of a whole media type, so that the background job and the sync service
+     * don't sync it at the same time. Syncs of a single item aren't claimed
+     * @param syncItem Sync item about to start
+     * @return Whether the item can be synced
+     */
+    private boolean startSyncing(SyncItem syncItem) {
+        return !isWholeMediaTypeSync(syncItem) ||
+               SyncScheduler.startSyncing(hostInfo.getId(), syncItem.getSyncType());
+    }
+
+    private void syncingFinished(SyncItem syncItem) {
+        if (isWholeMediaTypeSync(syncItem)) {
+            SyncScheduler.syncingFinished(hostInfo.getId(), syncItem.getSyncType());
         }
     }
 
+    private static boolean isWholeMediaTypeSync(SyncItem syncItem) {
+        String syncType = syncItem.getSyncType();
+        return !LibrarySyncService.SYNC_SINGLE_MOVIE.equals(syncType) &&
+               !LibrarySyncService.SYNC_SINGLE_TVSHOW.equals(syncType);
+    }
+
+    /**
+     * Stops the sync. What was synced so far is kept, the rest of the current item is dropped
+     * and the remaining items aren't synced. The listener isn't notified.
+     * <p>
+     * The callbacks of the requests already sent may still run, so the callback handler should
+     * be quit after calling this
+     */
+    public void cancel() {
+        callbackHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (finished || cancelled || (syncItemIterator == null))
+                    return;
+                cancelled = true;
+                LogUtils.LOGD(TAG, "Sync cancelled while syncing " + currentSyncItem.getDescription());
+                syncTracer.addNote("Cancelled while syncing " + currentSyncItem.getDescription());
+                syncTracer.finishItem(true);
+                syncingFinished(currentSyncItem);
+                StringPool.close();
+                syncTracer.finish();
+                syncTracer.saveReport(contentResolver);
+            }
+        });
+    }
+
     /**
      * One of the syync items finish syncing
      */
     public void syncItemFinished() {
+        if (cancelled)
+            return;
         LogUtils.LOGD(TAG, "Sync finished for item: " + currentSyncItem.getDescription() +
                            ". Total time: " + (System.currentTimeMillis() - partialStartTime));
+        syncTracer.finishItem(false);
+        syncingFinished(currentSyncItem);
+        currentSyncItem.syncSucceeded();
+        SyncScheduler.markSynced(syncService, hostInfo.getId(), currentSyncItem.getSyncType());
+        if (currentSyncItem.changedLocalLibrary()) {
+            updateLibrarySnapshots(currentSyncItem.getSyncType());
+        }
 
         EventBus.getDefault()
                 .post(new MediaSyncEvent(currentSyncItem.getSyncType(),
@@ -143,15 +251,42 @@ public class SyncOrchestrator {
         nextSync();
     }
 
+    /**
+     * Schedules the rewrite of the snapshots of the lists changed by a sync, so that they show
+     * the synced library on the next cold start
+     * @param syncType Sync type that finished
+     */
+    private void updateLibrarySnapshots(String syncType) {
+        int hostId = hostInfo.getId();
+        switch (syncType) {
+            case LibrarySyncService.SYNC_ALL_MOVIES:
+            case LibrarySyncService.SYNC_SINGLE_MOVIE:
+                LibrarySnapshot.scheduleWrite(syncService, hostId, LibrarySnapshot.Type.MOVIES);
+                break;
+            case LibrarySyncService.SYNC_ALL_TVSHOWS:
+            case LibrarySyncService.SYNC_SINGLE_TVSHOW:
+                LibrarySnapshot.scheduleWrite(syncService, hostId, LibrarySnapshot.Type.TVSHOWS);
+                break;
+            case LibrarySyncService.SYNC_ALL_MUSIC:
+                LibrarySnapshot.scheduleWrite(syncService, hostId, LibrarySnapshot.Type.ALBUMS);
+                LibrarySnapshot.scheduleWrite(syncService, hostId, LibrarySnapshot.Type.ARTISTS);
+                break;
+        }
+    }
+
     /**
      * One of the sync items failed, stop and clean up
      * @param errorCode Error code
      * @param description Description
      */
     public void syncItemFailed(int errorCode, String description) {
+        if (cancelled)
+            return;
         LogUtils.LOGD(TAG, "A Sync item has got an error. Sync item: " +
                            currentSyncItem.getDescription() +
                            ". Error description: " + description);
+        syncTracer.finishItem(true);
+        syncingFinished(currentSyncItem);
         // No need to disconnect, as this is HTTP
         //hostConnection.disconnect();
         EventBus.getDefault()
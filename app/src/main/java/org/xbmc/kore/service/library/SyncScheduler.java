@@ -0,0 +1,293 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import org.xbmc.kore.Settings;
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+/**
+ * Decides when the library is synced without the user asking for it.
+ * <p>
+ * Screens ask for a sync of their media type through {@link #requestSync(String)}. Requests
+ * made within {@link #COALESCE_DELAY} of each other are started as a single run of
+ * {@link LibrarySyncService}, and a media type synced less than {@link #MIN_SYNC_INTERVAL} ago
+ * on the current host isn't synced again.
+ * <p>
+ * On Lollipop and later, a periodic job also syncs the library while the device is charging on
+ * an unmetered network, so that it's already fresh when the app is opened.
+ * <p>
+ * The decisions taken are added to the report of the next sync, see {@link SyncTracer}.
+ * <p>
+ * The job and {@link LibrarySyncService} run separate {@link SyncOrchestrator}s, which claim
+ * each media type through {@link #startSyncing(int, String)} so that a host's media type is
+ * never synced by both at the same time.
+ */
+public class SyncScheduler {
+    public static final String TAG = LogUtils.makeLogTag(SyncScheduler.class);
+
+    /**
+     * Minimum time between syncs of the same media type on a host
+     */
+    public static final long MIN_SYNC_INTERVAL = 15 * 60 * 1000;
+
+    /**
+     * Time to wait for other requests before starting a sync
+     */
+    static final long COALESCE_DELAY = 2000;
+
+    /**
+     * Interval of the background sync job. Android may run it later, when its constraints are met
+     */
+    static final long BACKGROUND_SYNC_PERIOD = 6 * 60 * 60 * 1000;
+    static final int BACKGROUND_SYNC_JOB_ID = 1;
+
+    /**
+     * Media types synced by the background job. Those with a {@link LibraryFingerprint} are only
+     * synced if they changed
+     */
+    static final String[] BACKGROUND_SYNC_TYPES = {
+            LibrarySyncService.SYNC_ALL_MOVIES,
+            LibrarySyncService.SYNC_ALL_TVSHOWS,
+            LibrarySyncService.SYNC_ALL_MUSIC,
+            LibrarySyncService.SYNC_ALL_MUSIC_VIDEOS
+    };
+
+    /**
+     * Maximum decisions kept until the next sync reports them
+     */
+    private static final int MAX_PENDING_NOTES = 20;
+
+    private static SyncScheduler instance = null;
+
+    /**
+     * Host and sync type pairs being synced, across all orchestrators
+     */
+    private static final HashSet<String> syncsInProgress = new HashSet<>();
+
+    public static synchronized SyncScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new SyncScheduler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final LinkedHashSet<String> pendingSyncTypes = new LinkedHashSet<>();
+    private final ArrayList<String> pendingNotes = new ArrayList<>();
+
+    private final Runnable startPendingSyncs = new Runnable() {
+        @Override
+        public void run() {
+            startPendingSyncs();
+        }
+    };
+
+    SyncScheduler(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Asks for a sync of a media type on the current host, which only updates the local
+     * database if the library changed. The sync is skipped if the media type was synced
+     * recently, and joined with other requests made meanwhile otherwise
+     * @param syncType One of the sync types of {@link LibrarySyncService}
+     */
+    public synchronized void requestSync(String syncType) {
+        HostInfo hostInfo = HostManager.getInstance(context).getHostInfo();
+        if (hostInfo == null)
+            return;
+
+        long sinceLastSync = getTimeSinceLastSync(hostInfo.getId(), syncType);
+        if (sinceLastSync < MIN_SYNC_INTERVAL) {
+            LogUtils.LOGD(TAG, "Not syncing " + syncType + ", synced " + sinceLastSync + " ms ago");
+            addNote(String.format(Locale.US, "%s requested, skipped: synced %d s ago",
+                                  syncType, sinceLastSync / 1000));
+            return;
+        }
+
+        if (pendingSyncTypes.add(syncType)) {
+            addNote(syncType + " requested");
+        } else {
+            addNote(syncType + " requested, already pending");
+        }
+        handler.removeCallbacks(startPendingSyncs);
+        handler.postDelayed(startPendingSyncs, COALESCE_DELAY);
+    }
+
+    /**
+     * Records that a media type was synced on a host
+     * @param context Context
+     * @param hostId Host id
+     * @param syncType Sync type
+     */
+    public static void markSynced(Context context, int hostId, String syncType) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                         .edit()
+                         .putLong(Settings.getLastLibrarySyncPrefKey(hostId, syncType),
+                                  System.currentTimeMillis())
+                         .apply();
+    }
+
+    /**
+     * Claims a sync of a media type on a host
+     * @param hostId Host id
+     * @param syncType Sync type
+     * @return Whether the sync can start, false if another sync of it is running
+     */
+    public static synchronized boolean startSyncing(int hostId, String syncType) {
+        return syncsInProgress.add(hostId + "/" + syncType);
+    }
+
+    /**
+     * Releases a sync claimed with {@link #startSyncing(int, String)}, when it finishes, fails
+     * or is cancelled
+     * @param hostId Host id
+     * @param syncType Sync type
+     */
+    public static synchronized void syncingFinished(int hostId, String syncType) {
+        syncsInProgress.remove(hostId + "/" + syncType);
+    }
+
+    /**
+     * Schedules the background sync job, or cancels it if it's disabled on the settings.
+     * The job is kept across reboots. Call it when the app starts and whenever the setting
+     * changes
+     */
+    @TargetApi(21)
+    public void updateBackgroundSync() {
+        if (!Utils.isLollipopOrLater())
+            return;
+
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null)
+            return;
+
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!preferences.getBoolean(Settings.KEY_PREF_BACKGROUND_SYNC, Settings.DEFAULT_PREF_BACKGROUND_SYNC)) {
+            LogUtils.LOGD(TAG, "Background sync disabled, cancelling its job");
+            jobScheduler.cancel(BACKGROUND_SYNC_JOB_ID);
+            return;
+        }
+
+        // Jobs scheduled by older versions weren't persisted, replace them
+        for (JobInfo jobInfo : jobScheduler.getAllPendingJobs()) {
+            if ((jobInfo.getId() == BACKGROUND_SYNC_JOB_ID) && jobInfo.isPersisted())
+                return;
+        }
+
+        LogUtils.LOGD(TAG, "Scheduling the background sync job");
+        JobInfo jobInfo = new JobInfo.Builder(BACKGROUND_SYNC_JOB_ID,
+                                              new ComponentName(context, LibrarySyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(BACKGROUND_SYNC_PERIOD)
+                .setPersisted(true)
+                .build();
+        jobScheduler.schedule(jobInfo);
+    }
+
+    /**
+     * Takes the syncs due for the background job, along with any pending requests
+     * @param hostInfo Host to sync
+     * @return Intent with the syncs to run, as it would be sent to {@link LibrarySyncService},
+     * or null if everything was synced recently
+     */
+    synchronized Intent takeBackgroundSync(HostInfo hostInfo) {
+        addNote("Background sync, unmetered network and charging");
+        for (String syncType : BACKGROUND_SYNC_TYPES) {
+            long sinceLastSync = getTimeSinceLastSync(hostInfo.getId(), syncType);
+            if (sinceLastSync < MIN_SYNC_INTERVAL) {
+                addNote(String.format(Locale.US, "%s skipped: synced %d s ago",
+                                      syncType, sinceLastSync / 1000));
+            } else {
+                pendingSyncTypes.add(syncType);
+            }
+        }
+
+        handler.removeCallbacks(startPendingSyncs);
+        if (pendingSyncTypes.isEmpty()) {
+            LogUtils.LOGD(TAG, "Background sync: everything was synced recently");
+            return null;
+        }
+        return takePendingSyncs();
+    }
+
+    private synchronized void startPendingSyncs() {
+        if (pendingSyncTypes.isEmpty())
+            return;
+
+        try {
+            context.startService(takePendingSyncs());
+        } catch (IllegalStateException e) {
+            // Not allowed to start services in the background, the next request will try again
+            LogUtils.LOGW(TAG, "Couldn't start the sync", e);
+        }
+    }
+
+    private Intent takePendingSyncs() {
+        LogUtils.LOGD(TAG, "Syncing " + pendingSyncTypes);
+        Intent syncIntent = new Intent(context, LibrarySyncService.class);
+        for (String syncType : pendingSyncTypes) {
+            syncIntent.putExtra(syncType, true);
+        }
+        syncIntent.putExtra(LibrarySyncService.SYNC_ONLY_IF_CHANGED, true);
+        syncIntent.putStringArrayListExtra(LibrarySyncService.SYNC_SCHEDULING_NOTES,
+                                           new ArrayList<>(pendingNotes));
+
+        Bundle syncExtras = new Bundle();
+        syncExtras.putBoolean(LibrarySyncService.SILENT_SYNC, true);
+        syncIntent.putExtra(LibrarySyncService.SYNC_EXTRAS, syncExtras);
+
+        pendingSyncTypes.clear();
+        pendingNotes.clear();
+        return syncIntent;
+    }
+
+    private long getTimeSinceLastSync(int hostId, String syncType) {
+        long lastSync = PreferenceManager.getDefaultSharedPreferences(context)
+                                         .getLong(Settings.getLastLibrarySyncPrefKey(hostId, syncType), 0);
+        return System.currentTimeMillis() - lastSync;
+    }
+
+    private void addNote(String note) {
+        if (pendingNotes.size() >= MAX_PENDING_NOTES) {
+            pendingNotes.remove(0);
+        }
+        pendingNotes.add(note);
+    }
+}
@@ -263,7 +263,7 @@ public class SyncTVShows extends SyncItem {
         }
     }
 
-    private final static String[] getEpisodesProperties = {
+    final static String[] getEpisodesProperties = {
             VideoType.FieldsEpisode.TITLE, VideoType.FieldsEpisode.PLOT,
             //VideoType.FieldsEpisode.VOTES,
             VideoType.FieldsEpisode.RATING,
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.ConnectionMetrics;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.provider.MediaProvider;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Traces where the time of a library sync goes, per {@link SyncItem} and per page of results.
+ * <p>
+ * The network and decode times come from the {@link org.xbmc.kore.jsonrpc.HostConnection} traces, and the database
+ * times from {@link MediaProvider#getWriteTimings()}. Everything else done on the callbacks,
+ * mostly converting the results with {@link SyncUtils}, is accounted as conversion.
+ * Set it as the trace listener of the sync connection.
+ */
+public class SyncTracer implements ConnectionMetrics.TraceListener {
+    public static final String TAG = LogUtils.makeLogTag(SyncTracer.class);
+
+    public static final int PHASE_NETWORK = 0,
+            PHASE_DECODE = 1,
+            PHASE_CONVERT = 2,
+            PHASE_DELETE = 3,
+            PHASE_INSERT = 4,
+            PHASE_NOTIFY = 5;
+    private static final int PHASE_COUNT = 6;
+    private static final String[] PHASE_NAMES = {"network", "decode", "convert", "delete", "insert", "notify"};
+
+    /**
+     * Write timings of the calling thread when the last page was traced on it, so that each page
+     * only gets the writes made on its callback, even if several syncs share the thread
+     */
+    private static final ThreadLocal<long[]> lastWriteTimings = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            MediaProvider.WriteTimings timings = MediaProvider.getWriteTimings();
+            return new long[] {timings.deleteNanos, timings.insertNanos, timings.notifyNanos,
+                               timings.insertedRows};
+        }
+    };
+
+    /**
+     * A request of a sync item and the processing of its response
+     */
+    public static class Page {
+        public final String methodName;
+        public final boolean failed;
+        public int responseBytes;
+        public long insertedRows;
+        public final long[] phaseNanos = new long[PHASE_COUNT];
+
+        Page(String methodName, boolean failed) {
+            this.methodName = methodName;
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * Trace of a sync item
+     */
+    public static class ItemTrace {
+        public final String description;
+        final long startedAt;
+        long finishedAt = -1;
+        boolean failed = false;
+        public final List<Page> pages = new ArrayList<>();
+
+        ItemTrace(String description, long startedAt) {
+            this.description = description;
+            this.startedAt = startedAt;
+        }
+
+        public long getPhaseNanos(int phase) {
+            long nanos = 0;
+            for (Page page : pages) {
+                nanos += page.phaseNanos[phase];
+            }
+            return nanos;
+        }
+    }
+
+    private final HostInfo hostInfo;
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final long startedAt = System.nanoTime();
+    private long finishedAt = -1;
+    private final List<ItemTrace> items = new ArrayList<>();
+    private final List<String> notes = new ArrayList<>();
+
+    public SyncTracer(HostInfo hostInfo) {
+        this.hostInfo = hostInfo;
+    }
+
+    /**
+     * Adds a note to the report, such as a scheduling decision
+     * @param note Note
+     */
+    public synchronized void addNote(String note) {
+        notes.add(note);
+    }
+
+    /**
+     * A sync item is starting
+     * @param description Description of the item
+     */
+    public synchronized void startItem(String description) {
+        items.add(new ItemTrace(description, System.nanoTime()));
+    }
+
+    /**
+     * The current sync item is done
+     * @param failed Whether it failed
+     */
+    public synchronized void finishItem(boolean failed) {
+        if (items.isEmpty())
+            return;
+        ItemTrace item = items.get(items.size() - 1);
+        item.finishedAt = System.nanoTime();
+        item.failed = failed;
+    }
+
+    /**
+     * The sync is done
+     */
+    public synchronized void finish() {
+        finishedAt = System.nanoTime();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onTraceFinished(ConnectionMetrics.Trace trace, int errorCode) {
+        Page page = new Page(trace.getMethodName(), errorCode >= 0);
+        page.responseBytes = Math.max(trace.getResponseBytes(), 0);
+        page.phaseNanos[PHASE_NETWORK] = Math.max(trace.getPhaseNanos(ConnectionMetrics.PHASE_NETWORK), 0);
+        page.phaseNanos[PHASE_DECODE] = Math.max(trace.getPhaseNanos(ConnectionMetrics.PHASE_DECODE), 0);
+
+        // Writes made on this thread since the last page are from this page's callback
+        MediaProvider.WriteTimings timings = MediaProvider.getWriteTimings();
+        long[] last = lastWriteTimings.get();
+        page.phaseNanos[PHASE_DELETE] = timings.deleteNanos - last[0];
+        page.phaseNanos[PHASE_INSERT] = timings.insertNanos - last[1];
+        page.phaseNanos[PHASE_NOTIFY] = timings.notifyNanos - last[2];
+        page.insertedRows = timings.insertedRows - last[3];
+        last[0] = timings.deleteNanos;
+        last[1] = timings.insertNanos;
+        last[2] = timings.notifyNanos;
+        last[3] = timings.insertedRows;
+
+        long callbackNanos = Math.max(trace.getPhaseNanos(ConnectionMetrics.PHASE_CALLBACK), 0);
+        page.phaseNanos[PHASE_CONVERT] = Math.max(callbackNanos - page.phaseNanos[PHASE_DELETE] -
+                                                  page.phaseNanos[PHASE_INSERT] -
+                                                  page.phaseNanos[PHASE_NOTIFY], 0);
+
+        synchronized (this) {
+            // The last page of an item finishes after the next item starts, as its callback
+            // starts the next item, so look for the item that made the request
+            for (int i = items.size() - 1; i >= 0; i--) {
+                if (items.get(i).startedAt <= trace.getCreatedAt()) {
+                    items.get(i).pages.add(page);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a human readable report of the sync
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%s, %s: %d ms, %d failed items\n",
+                                    hostInfo.getName(),
+                                    DateFormat.getDateTimeInstance().format(new Date(startedAtMillis)),
+                                    getDurationMillis(), getFailedItems()));
+        for (String note : notes) {
+            report.append("Scheduling: ").append(note).append('\n');
+        }
+        for (ItemTrace item : items) {
+            long rows = 0, bytes = 0;
+            for (Page page : item.pages) {
+                rows += page.insertedRows;
+                bytes += page.responseBytes;
+            }
+            long duration = (item.finishedAt < 0) ? -1 : (item.finishedAt - item.startedAt) / 1000000;
+            report.append(String.format(Locale.US, "%s%s: %d ms, %d pages, %d rows, %d B\n",
+                                        item.description, item.failed ? " (failed)" : "",
+                                        duration, item.pages.size(), rows, bytes));
+            report.append("  total").append(formatPhases(item, null)).append('\n');
+            for (Page page : item.pages) {
+                report.append("  ").append(page.methodName)
+                      .append(page.failed ? " (failed)" : "")
+                      .append(String.format(Locale.US, ": %d rows, %d B,", page.insertedRows, page.responseBytes))
+                      .append(formatPhases(null, page)).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Saves the report on the database, keeping only the last
+     * {@link MediaContract.SyncReports#MAX_REPORTS} of the host
+     * @param contentResolver Content resolver
+     */
+    public void saveReport(ContentResolver contentResolver) {
+        long responseBytes = 0;
+        synchronized (this) {
+            for (ItemTrace item : items) {
+                for (Page page : item.pages) {
+                    responseBytes += page.responseBytes;
+                }
+            }
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(MediaContract.SyncReports.HOST_ID, hostInfo.getId());
+        values.put(MediaContract.SyncReports.STARTED, startedAtMillis);
+        values.put(MediaContract.SyncReports.DURATION, getDurationMillis());
+        values.put(MediaContract.SyncReports.FAILED_ITEMS, getFailedItems());
+        values.put(MediaContract.SyncReports.RESPONSE_BYTES, responseBytes);
+        values.put(MediaContract.SyncReports.REPORT, getReport());
+        contentResolver.insert(MediaContract.SyncReports.CONTENT_URI, values);
+
+        String hostId = String.valueOf(hostInfo.getId());
+        Cursor cursor = contentResolver.query(MediaContract.SyncReports.CONTENT_URI,
+                                              new String[] {BaseColumns._ID},
+                                              MediaContract.SyncReports.HOST_ID + "=?",
+                                              new String[] {hostId},
+                                              BaseColumns._ID + " DESC");
+        if (cursor == null)
+            return;
+        try {
+            if (cursor.moveToPosition(MediaContract.SyncReports.MAX_REPORTS - 1)) {
+                contentResolver.delete(MediaContract.SyncReports.CONTENT_URI,
+                                       MediaContract.SyncReports.HOST_ID + "=? AND " + BaseColumns._ID + "<?",
+                                       new String[] {hostId, String.valueOf(cursor.getLong(0))});
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private synchronized long getDurationMillis() {
+        return (((finishedAt < 0) ? System.nanoTime() : finishedAt) - startedAt) / 1000000;
+    }
+
+    private synchronized int getFailedItems() {
+        int failed = 0;
+        for (ItemTrace item : items) {
+            if (item.failed) failed++;
+        }
+        return failed;
+    }
+
+    private static String formatPhases(ItemTrace item, Page page) {
+        StringBuilder phases = new StringBuilder();
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            long nanos = (item != null) ? item.getPhaseNanos(phase) : page.phaseNanos[phase];
+            phases.append(String.format(Locale.US, " %s %d", PHASE_NAMES[phase], nanos / 1000000));
+        }
+        return phases.append(" ms").toString();
+    }
+}
@@ -16,19 +16,27 @@
 package org.xbmc.kore.service.library;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.ServiceConnection;
+import android.net.Uri;
 import android.os.IBinder;
+import android.os.RemoteException;
 
 import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.type.AddonType;
+import org.xbmc.kore.jsonrpc.type.FavouriteType;
 import org.xbmc.kore.jsonrpc.type.ListType;
 import org.xbmc.kore.jsonrpc.type.VideoType;
 import org.xbmc.kore.jsonrpc.type.AudioType;
 import org.xbmc.kore.jsonrpc.type.LibraryType;
 import org.xbmc.kore.provider.MediaContract;
-import org.xbmc.kore.utils.Utils;
+import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.StringPool;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,6 +45,7 @@ import java.util.List;
  * Util functions for the Library Sync Service
  */
 public class SyncUtils {
+    private static final String TAG = LogUtils.makeLogTag(SyncUtils.class);
 
     public interface OnServiceListener {
         void onServiceConnected(LibrarySyncService librarySyncService);
@@ -62,7 +71,7 @@ public class SyncUtils {
         movieValues.put(MediaContract.MoviesColumns.TITLE, movie.title);
         movieValues.put(MediaContract.MoviesColumns.FILE, movie.file);
         movieValues.put(MediaContract.MoviesColumns.PLOT, movie.plot);
-        movieValues.put(MediaContract.MoviesColumns.DIRECTOR, Utils.listStringConcat(movie.director, LIST_DELIMITER));
+        movieValues.put(MediaContract.MoviesColumns.DIRECTOR, StringPool.concat(movie.director, LIST_DELIMITER));
         movieValues.put(MediaContract.MoviesColumns.RUNTIME, movie.runtime);
         if (movie.streamdetails != null) {
             if (movie.streamdetails.audio.size() > 0) {
@@ -79,7 +88,7 @@ public class SyncUtils {
                 movieValues.put(MediaContract.MoviesColumns.AUDIO_CHANNELS, selectedStream.channels);
                 movieValues.put(MediaContract.MoviesColumns.AUDIO_CODEC, selectedStream.codec);
                 movieValues.put(MediaContract.MoviesColumns.AUDIO_LANGUAGE,
-                        Utils.listStringConcat(languages, LIST_DELIMITER));
+                        StringPool.concat(languages, LIST_DELIMITER));
             }
             if (movie.streamdetails.subtitle.size() > 0) {
                 // Concat all subtitle languages
@@ -88,7 +97,7 @@ public class SyncUtils {
                     subtitles.add(movie.streamdetails.subtitle.get(j).language);
                 }
                 movieValues.put(MediaContract.MoviesColumns.SUBTITLES_LANGUAGES,
-                        Utils.listStringConcat(subtitles, LIST_DELIMITER));
+                        StringPool.concat(subtitles, LIST_DELIMITER));
             }
             if (movie.streamdetails.video.size() > 0) {
                 // We're only getting the first video channel...
@@ -103,22 +112,22 @@ public class SyncUtils {
             }
         }
         movieValues.put(MediaContract.MoviesColumns.COUNTRIES,
-                Utils.listStringConcat(movie.country, LIST_DELIMITER));
+                StringPool.concat(movie.country, LIST_DELIMITER));
         movieValues.put(MediaContract.MoviesColumns.GENRES,
-                Utils.listStringConcat(movie.genre, LIST_DELIMITER));
+                StringPool.concat(movie.genre, LIST_DELIMITER));
         movieValues.put(MediaContract.MoviesColumns.IMDBNUMBER, movie.imdbnumber);
         movieValues.put(MediaContract.MoviesColumns.MPAA, movie.mpaa);
         movieValues.put(MediaContract.MoviesColumns.RATING, movie.rating);
         movieValues.put(MediaContract.MoviesColumns.SET, movie.set);
         movieValues.put(MediaContract.MoviesColumns.SETID, movie.setid);
         movieValues.put(MediaContract.MoviesColumns.STUDIOS,
-                Utils.listStringConcat(movie.studio, LIST_DELIMITER));
+                StringPool.concat(movie.studio, LIST_DELIMITER));
         movieValues.put(MediaContract.MoviesColumns.TAGLINE, movie.tagline);
         movieValues.put(MediaContract.MoviesColumns.TOP250, movie.top250);
         movieValues.put(MediaContract.MoviesColumns.TRAILER, movie.trailer);
         movieValues.put(MediaContract.MoviesColumns.VOTES, movie.votes);
         movieValues.put(MediaContract.MoviesColumns.WRITERS,
-                Utils.listStringConcat(movie.writer, LIST_DELIMITER));
+                StringPool.concat(movie.writer, LIST_DELIMITER));
         movieValues.put(MediaContract.MoviesColumns.YEAR, movie.year);
 
         return movieValues;
@@ -166,10 +175,10 @@ public class SyncUtils {
         tvshowValues.put(MediaContract.TVShowsColumns.PREMIERED, tvshow.premiered);
         tvshowValues.put(MediaContract.TVShowsColumns.RATING, tvshow.rating);
         tvshowValues.put(MediaContract.TVShowsColumns.STUDIO,
-                Utils.listStringConcat(tvshow.studio, LIST_DELIMITER));
+                StringPool.concat(tvshow.studio, LIST_DELIMITER));
         tvshowValues.put(MediaContract.TVShowsColumns.WATCHEDEPISODES, tvshow.watchedepisodes);
         tvshowValues.put(MediaContract.TVShowsColumns.GENRES,
-                Utils.listStringConcat(tvshow.genre, LIST_DELIMITER));
+                StringPool.concat(tvshow.genre, LIST_DELIMITER));
 
         return tvshowValues;
     }
@@ -217,12 +226,12 @@ public class SyncUtils {
         episodeValues.put(MediaContract.EpisodesColumns.TITLE, episode.title);
         episodeValues.put(MediaContract.EpisodesColumns.FILE, episode.file);
         episodeValues.put(MediaContract.EpisodesColumns.PLOT, episode.plot);
-        episodeValues.put(MediaContract.EpisodesColumns.DIRECTOR, Utils.listStringConcat(episode.director, LIST_DELIMITER));
+        episodeValues.put(MediaContract.EpisodesColumns.DIRECTOR, StringPool.concat(episode.director, LIST_DELIMITER));
         episodeValues.put(MediaContract.EpisodesColumns.RUNTIME, episode.runtime);
         episodeValues.put(MediaContract.EpisodesColumns.FIRSTAIRED, episode.firstaired);
         episodeValues.put(MediaContract.EpisodesColumns.RATING, episode.rating);
         episodeValues.put(MediaContract.EpisodesColumns.SHOWTITLE, episode.showtitle);
-        episodeValues.put(MediaContract.EpisodesColumns.WRITER, Utils.listStringConcat(episode.writer, LIST_DELIMITER));
+        episodeValues.put(MediaContract.EpisodesColumns.WRITER, StringPool.concat(episode.writer, LIST_DELIMITER));
 
         if (episode.streamdetails.audio.size() > 0) {
             // Get the stream with the most channels and concat all the languages
@@ -237,7 +246,7 @@ public class SyncUtils {
             }
             episodeValues.put(MediaContract.EpisodesColumns.AUDIO_CHANNELS, selectedStream.channels);
             episodeValues.put(MediaContract.EpisodesColumns.AUDIO_CODEC, selectedStream.codec);
-            episodeValues.put(MediaContract.EpisodesColumns.AUDIO_LANGUAGE, Utils.listStringConcat(languages, LIST_DELIMITER));
+            episodeValues.put(MediaContract.EpisodesColumns.AUDIO_LANGUAGE, StringPool.concat(languages, LIST_DELIMITER));
         }
         if (episode.streamdetails.subtitle.size() > 0) {
             // Concat all subtitle languages
@@ -245,7 +254,7 @@ public class SyncUtils {
             for (int j = 0; j < episode.streamdetails.subtitle.size(); j++) {
                 subtitles.add(episode.streamdetails.subtitle.get(j).language);
             }
-            episodeValues.put(MediaContract.EpisodesColumns.SUBTITLES_LANGUAGES, Utils.listStringConcat(subtitles, LIST_DELIMITER));
+            episodeValues.put(MediaContract.EpisodesColumns.SUBTITLES_LANGUAGES, StringPool.concat(subtitles, LIST_DELIMITER));
         }
         if (episode.streamdetails.video.size() > 0) {
             // We're only getting the first video channel...
@@ -275,7 +284,7 @@ public class SyncUtils {
         castValues.put(MediaContract.ArtistsColumns.ARTIST, artist.artist);
         castValues.put(MediaContract.ArtistsColumns.DESCRIPTION, artist.description);
         castValues.put(MediaContract.ArtistsColumns.GENRE,
-                Utils.listStringConcat(artist.genre, LIST_DELIMITER));
+                StringPool.concat(artist.genre, LIST_DELIMITER));
         castValues.put(MediaContract.ArtistsColumns.FANART, artist.fanart);
         castValues.put(MediaContract.ArtistsColumns.THUMBNAIL, artist.thumbnail);
 
@@ -317,7 +326,7 @@ public class SyncUtils {
         castValues.put(MediaContract.Albums.ALBUMLABEL, album.albumlabel);
         castValues.put(MediaContract.Albums.DESCRIPTION, album.description);
         castValues.put(MediaContract.Albums.PLAYCOUNT, album.playcount);
-        castValues.put(MediaContract.Albums.GENRE, Utils.listStringConcat(album.genre, LIST_DELIMITER));
+        castValues.put(MediaContract.Albums.GENRE, StringPool.concat(album.genre, LIST_DELIMITER));
 
         return castValues;
     }
@@ -361,7 +370,7 @@ public class SyncUtils {
         musicVideoValues.put(MediaContract.MusicVideosColumns.TITLE, musicVideo.title);
         musicVideoValues.put(MediaContract.MusicVideosColumns.FILE, musicVideo.file);
         musicVideoValues.put(MediaContract.MusicVideosColumns.PLOT, musicVideo.plot);
-        musicVideoValues.put(MediaContract.MusicVideosColumns.DIRECTOR, Utils.listStringConcat(musicVideo.director, LIST_DELIMITER));
+        musicVideoValues.put(MediaContract.MusicVideosColumns.DIRECTOR, StringPool.concat(musicVideo.director, LIST_DELIMITER));
         musicVideoValues.put(MediaContract.MusicVideosColumns.RUNTIME, musicVideo.runtime);
         if (musicVideo.streamdetails != null) {
             if (musicVideo.streamdetails.audio.size() > 0) {
@@ -378,7 +387,7 @@ public class SyncUtils {
                 musicVideoValues.put(MediaContract.MusicVideosColumns.AUDIO_CHANNELS, selectedStream.channels);
                 musicVideoValues.put(MediaContract.MusicVideosColumns.AUDIO_CODEC, selectedStream.codec);
                 musicVideoValues.put(MediaContract.MusicVideosColumns.AUDIO_LANGUAGE,
-                        Utils.listStringConcat(languages, LIST_DELIMITER));
+                        StringPool.concat(languages, LIST_DELIMITER));
             }
             if (musicVideo.streamdetails.subtitle.size() > 0) {
                 // Concat all subtitle languages
@@ -387,7 +396,7 @@ public class SyncUtils {
                     subtitles.add(musicVideo.streamdetails.subtitle.get(j).language);
                 }
                 musicVideoValues.put(MediaContract.MusicVideosColumns.SUBTITLES_LANGUAGES,
-                        Utils.listStringConcat(subtitles, LIST_DELIMITER));
+                        StringPool.concat(subtitles, LIST_DELIMITER));
             }
             if (musicVideo.streamdetails.video.size() > 0) {
                 // We're only getting the first video channel...
@@ -403,19 +412,109 @@ public class SyncUtils {
         }
         musicVideoValues.put(MediaContract.MusicVideosColumns.ALBUM, musicVideo.album);
         musicVideoValues.put(MediaContract.MusicVideosColumns.ARTIST,
-                Utils.listStringConcat(musicVideo.artist, LIST_DELIMITER));
+                StringPool.concat(musicVideo.artist, LIST_DELIMITER));
         musicVideoValues.put(MediaContract.MusicVideosColumns.GENRES,
-                Utils.listStringConcat(musicVideo.genre, LIST_DELIMITER));
+                StringPool.concat(musicVideo.genre, LIST_DELIMITER));
         musicVideoValues.put(MediaContract.MusicVideosColumns.STUDIOS,
-                Utils.listStringConcat(musicVideo.studio, LIST_DELIMITER));
+                StringPool.concat(musicVideo.studio, LIST_DELIMITER));
         musicVideoValues.put(MediaContract.MusicVideosColumns.TAG,
-                Utils.listStringConcat(musicVideo.tag, LIST_DELIMITER));
+                StringPool.concat(musicVideo.tag, LIST_DELIMITER));
         musicVideoValues.put(MediaContract.MusicVideosColumns.TRACK, musicVideo.track);
         musicVideoValues.put(MediaContract.MusicVideosColumns.YEAR, musicVideo.year);
 
         return musicVideoValues;
     }
 
+    /**
+     * Kodi formatting tags (e.g. [COLOR red]...[/COLOR]) that are stripped from addon texts
+     */
+    private static final String ADDON_MARKUP_REGEX = "\\[.*?\\]";
+
+    /**
+     * Returns {@link android.content.ContentValues} from a {@link AddonType.Details} addon.
+     * Kodi formatting tags are removed from the addon's texts
+     * @param hostId Host id for this addon
+     * @param addon {@link AddonType.Details}
+     * @return {@link android.content.ContentValues} with the addon values
+     */
+    public static ContentValues contentValuesFromAddon(int hostId, AddonType.Details addon) {
+        ContentValues addonValues = new ContentValues();
+        addonValues.put(MediaContract.AddonsColumns.HOST_ID, hostId);
+        addonValues.put(MediaContract.AddonsColumns.ADDONID, addon.addonid);
+        addonValues.put(MediaContract.AddonsColumns.NAME, stripAddonMarkup(addon.name));
+        addonValues.put(MediaContract.AddonsColumns.TYPE, addon.type);
+        addonValues.put(MediaContract.AddonsColumns.VERSION, addon.version);
+        addonValues.put(MediaContract.AddonsColumns.SUMMARY, stripAddonMarkup(addon.summary));
+        addonValues.put(MediaContract.AddonsColumns.DESCRIPTION, stripAddonMarkup(addon.description));
+        addonValues.put(MediaContract.AddonsColumns.PATH, addon.path);
+        addonValues.put(MediaContract.AddonsColumns.AUTHOR, stripAddonMarkup(addon.author));
+        addonValues.put(MediaContract.AddonsColumns.THUMBNAIL, addon.thumbnail);
+        addonValues.put(MediaContract.AddonsColumns.FANART, addon.fanart);
+        addonValues.put(MediaContract.AddonsColumns.DISCLAIMER, addon.disclaimer);
+        addonValues.put(MediaContract.AddonsColumns.RATING, addon.rating);
+        addonValues.put(MediaContract.AddonsColumns.ENABLED, addon.enabled);
+
+        return addonValues;
+    }
+
+    private static String stripAddonMarkup(String text) {
+        return (text == null) ? null : text.replaceAll(ADDON_MARKUP_REGEX, "");
+    }
+
+    /**
+     * Returns {@link android.content.ContentValues} from a {@link FavouriteType.DetailsFavourite}
+     * @param hostId Host id for this favourite
+     * @param position Position of the favourite in the list returned by Kodi
+     * @param favourite {@link FavouriteType.DetailsFavourite}
+     * @return {@link android.content.ContentValues} with the favourite values
+     */
+    public static ContentValues contentValuesFromFavourite(int hostId, int position,
+                                                           FavouriteType.DetailsFavourite favourite) {
+        ContentValues favouriteValues = new ContentValues();
+        favouriteValues.put(MediaContract.FavouritesColumns.HOST_ID, hostId);
+        favouriteValues.put(MediaContract.FavouritesColumns.POSITION, position);
+        favouriteValues.put(MediaContract.FavouritesColumns.TITLE, favourite.title);
+        favouriteValues.put(MediaContract.FavouritesColumns.TYPE, favourite.type);
+        favouriteValues.put(MediaContract.FavouritesColumns.PATH, favourite.path);
+        favouriteValues.put(MediaContract.FavouritesColumns.THUMBNAIL, favourite.thumbnail);
+        favouriteValues.put(MediaContract.FavouritesColumns.WINDOW, favourite.window);
+        favouriteValues.put(MediaContract.FavouritesColumns.WINDOW_PARAMETER, favourite.windowParameter);
+
+        return favouriteValues;
+    }
+
+    /**
+     * Replaces the rows of a host in a table by the given ones, in a single transaction, so that
+     * the lists showing them never see the table empty or half filled
+     * @param contentResolver {@link ContentResolver}
+     * @param uri Table uri
+     * @param hostIdColumn Host id column of the table
+     * @param hostId Host whose rows are replaced
+     * @param values Rows to insert
+     * @return true if the rows were replaced, false if the table was left untouched
+     */
+    public static boolean replaceHostRows(ContentResolver contentResolver, Uri uri,
+                                          String hostIdColumn, int hostId, ContentValues[] values) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(values.length + 1);
+        operations.add(ContentProviderOperation.newDelete(uri)
+                                               .withSelection(hostIdColumn + "=?",
+                                                              new String[]{String.valueOf(hostId)})
+                                               .build());
+        for (ContentValues value : values) {
+            operations.add(ContentProviderOperation.newInsert(uri)
+                                                   .withValues(value)
+                                                   .build());
+        }
+
+        try {
+            contentResolver.applyBatch(MediaContract.CONTENT_AUTHORITY, operations);
+            return true;
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            LogUtils.LOGW(TAG, "Couldn't replace the rows of " + uri + ". Exception: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Binds to {@link LibrarySyncService} and calls {@link OnServiceListener#onServiceConnected(LibrarySyncService)} when connected
      * @param context {@link Context}
@@ -46,7 +46,9 @@ import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.jsonrpc.ApiException;
 import org.xbmc.kore.jsonrpc.event.MediaSyncEvent;
+import org.xbmc.kore.provider.LibrarySnapshot;
 import org.xbmc.kore.service.library.LibrarySyncService;
+import org.xbmc.kore.service.library.SyncScheduler;
 import org.xbmc.kore.service.library.SyncItem;
 import org.xbmc.kore.service.library.SyncUtils;
 import org.xbmc.kore.ui.viewgroups.RecyclerViewEmptyViewSupport;
@@ -78,11 +80,20 @@ public abstract class AbstractCursorListFragment extends AbstractListFragment
 
 	private SearchView searchView;
 	private boolean isPaused;
+	private PrefetchScheduler<?> prefetchScheduler;
 
 	abstract protected void onListItemClicked(View view);
 	abstract protected CursorLoader createCursorLoader();
 	abstract protected RecyclerViewCursorAdapter createCursorAdapter();
 
+	/**
+	 * Override to warm the cache of the info screens of the items around the visible ones
+	 * @return Prefetch scheduler for the list, or null to not prefetch
+	 */
+	protected PrefetchScheduler<?> createPrefetchScheduler() {
+		return null;
+	}
+
 	@TargetApi(16)
 	@Nullable
 	@Override
@@ -103,6 +114,20 @@ public abstract class AbstractCursorListFragment extends AbstractListFragment
 	public void onActivityCreated (Bundle savedInstanceState) {
 		super.onActivityCreated(savedInstanceState);
 		getLoaderManager().initLoader(LOADER, null, this);
+
+		prefetchScheduler = createPrefetchScheduler();
+		if (prefetchScheduler != null) {
+			prefetchScheduler.attach(recyclerView);
+		}
+	}
+
+	@Override
+	public void onDestroyView() {
+		if (prefetchScheduler != null) {
+			prefetchScheduler.detach();
+			prefetchScheduler = null;
+		}
+		super.onDestroyView();
 	}
 
 	@Override
@@ -276,6 +301,15 @@ public abstract class AbstractCursorListFragment extends AbstractListFragment
         getActivity().startService(syncIntent);
     }
 
+	/**
+	 * Asks for a silent sync that only updates the local database if the items on the host
+	 * differ from the cached ones. See {@link LibrarySyncService#SYNC_ONLY_IF_CHANGED}.
+	 * The sync is skipped if the list was synced recently, see {@link SyncScheduler}
+	 */
+	protected void refreshIfChanged() {
+		SyncScheduler.getInstance(getActivity()).requestSync(getListSyncType());
+	}
+
     /**
      * Search view callbacks
      */
@@ -319,13 +353,25 @@ public abstract class AbstractCursorListFragment extends AbstractListFragment
 	@Override
 	public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
 		loaderLoading = true;
-		return createCursorLoader();
+		CursorLoader cursorLoader = createCursorLoader();
+		if (getAdapter().getItemCount() == 0) {
+			// Cold start, show the snapshot of the list while the database is queried
+			Cursor snapshot = readLibrarySnapshot(cursorLoader);
+			if (snapshot != null) {
+				((RecyclerViewCursorAdapter) getAdapter()).swapCursor(snapshot);
+			}
+		}
+		return cursorLoader;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public void onLoadFinished(Loader<Cursor> cursorLoader, Cursor cursor) {
 		((RecyclerViewCursorAdapter) getAdapter()).swapCursor(cursor);
+		if (prefetchScheduler != null) {
+			prefetchScheduler.schedule();
+		}
+		recordLibrarySnapshotQuery((CursorLoader) cursorLoader);
 		if (TextUtils.isEmpty(searchFilter)) {
 			// To prevent the empty text from appearing on the first load, set it now
 			emptyView.setText(getString(R.string.swipe_down_to_refresh));
@@ -333,6 +379,29 @@ public abstract class AbstractCursorListFragment extends AbstractListFragment
 		loaderLoading = false;
 	}
 
+	/**
+	 * Returns the first screen of the list from its {@link LibrarySnapshot}, or null if the
+	 * list is filtered or has no snapshot
+	 */
+	private Cursor readLibrarySnapshot(CursorLoader cursorLoader) {
+		HostInfo hostInfo = HostManager.getInstance(getActivity()).getHostInfo();
+		if ((hostInfo == null) || !TextUtils.isEmpty(cursorLoader.getSelection()))
+			return null;
+		return LibrarySnapshot.readFirstScreen(getActivity(), hostInfo.getId(), cursorLoader.getUri(),
+											   cursorLoader.getProjection(), cursorLoader.getSortOrder());
+	}
+
+	/**
+	 * Keeps the {@link LibrarySnapshot} of the list with the same columns and sort order
+	 */
+	private void recordLibrarySnapshotQuery(CursorLoader cursorLoader) {
+		HostInfo hostInfo = HostManager.getInstance(getActivity()).getHostInfo();
+		if ((hostInfo == null) || !TextUtils.isEmpty(cursorLoader.getSelection()))
+			return;
+		LibrarySnapshot.recordQuery(getActivity(), hostInfo.getId(), cursorLoader.getUri(),
+									cursorLoader.getProjection(), cursorLoader.getSortOrder());
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void onLoaderReset(Loader<Cursor> cursorLoader) {
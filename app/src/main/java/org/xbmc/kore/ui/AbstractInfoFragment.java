@@ -38,7 +38,6 @@ import androidx.fragment.app.FragmentManager;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import android.text.TextUtils;
-import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -58,6 +57,7 @@ import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.jsonrpc.ApiCallback;
 import org.xbmc.kore.jsonrpc.method.Player;
 import org.xbmc.kore.jsonrpc.type.PlaylistType;
+import org.xbmc.kore.service.library.ItemRevalidator;
 import org.xbmc.kore.service.library.LibrarySyncService;
 import org.xbmc.kore.service.library.SyncItem;
 import org.xbmc.kore.service.library.SyncUtils;
@@ -232,6 +232,7 @@ abstract public class AbstractInfoFragment extends AbstractFragment
             refreshItem.register();
         }
         super.onResume();
+        revalidateItem();
     }
 
     @Override
@@ -409,25 +410,11 @@ abstract public class AbstractInfoFragment extends AbstractFragment
         }
 
         // Images
-        DisplayMetrics displayMetrics = new DisplayMetrics();
-        getActivity().getWindowManager().getDefaultDisplay().getMetrics(displayMetrics);
-
-        Resources resources = getActivity().getResources();
-
         if (dataHolder.getPosterUrl() != null) {
-            int posterWidth;
-            int posterHeight;
-            if (dataHolder.getSquarePoster()) {
-                posterWidth = resources.getDimensionPixelOffset(R.dimen.detail_poster_width_square);
-                posterHeight = resources.getDimensionPixelOffset(R.dimen.detail_poster_height_square);
-            } else {
-                posterWidth = resources.getDimensionPixelOffset(R.dimen.detail_poster_width_nonsquare);
-                posterHeight = resources.getDimensionPixelOffset(R.dimen.detail_poster_height_nonsquare);
-            }
-
+            int[] posterSize = UIUtils.getInfoPosterSize(getActivity(), dataHolder.getSquarePoster());
             UIUtils.loadImageWithCharacterAvatar(getActivity(), hostManager,
                                                  dataHolder.getPosterUrl(), dataHolder.getTitle(),
-                                                 posterImageView, posterWidth, posterHeight);
+                                                 posterImageView, posterSize[0], posterSize[1]);
         } else {
             posterImageView.setVisibility(GONE);
             int padding = getActivity().getResources().getDimensionPixelSize(R.dimen.default_padding);
@@ -435,13 +422,11 @@ abstract public class AbstractInfoFragment extends AbstractFragment
             underTitleTextView.setPadding(padding, padding, 0, 0);
         }
 
-        int artHeight = resources.getDimensionPixelOffset(R.dimen.detail_art_height);
-        int artWidth = displayMetrics.widthPixels;
-
+        int[] artSize = UIUtils.getInfoArtSize(getActivity());
         UIUtils.loadImageIntoImageview(hostManager,
                                        TextUtils.isEmpty(dataHolder.getFanArtUrl()) ?
                                        dataHolder.getPosterUrl() : dataHolder.getFanArtUrl(),
-                                       artImageView, artWidth, artHeight);
+                                       artImageView, artSize[0], artSize[1]);
 
         if (dataHolder.getRating() > 0) {
             ratingTextView.setText(String.format(Locale.getDefault(), "%01.01f", dataHolder.getRating()));
@@ -604,6 +589,43 @@ abstract public class AbstractInfoFragment extends AbstractFragment
         };
     }
 
+    /**
+     * Checks in the background if the item shown changed on Kodi, and if so updates the
+     * local database and calls {@link #onItemRevalidated()}
+     */
+    private void revalidateItem() {
+        ItemRevalidator.Item<?> item = createRevalidationItem();
+        if (item == null)
+            return;
+
+        ItemRevalidator.getInstance().revalidate(
+                hostManager.getConnection(), getActivity().getContentResolver(), item,
+                new ItemRevalidator.Listener() {
+                    @Override
+                    public void onItemChanged() {
+                        if (isAdded()) {
+                            onItemRevalidated();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns the item shown, to be revalidated against Kodi each time the fragment is resumed.
+     * Screens that show items from the local database should override this, so that they
+     * show up to date details without a full sync
+     * @return Item to revalidate, or null to not revalidate
+     */
+    protected ItemRevalidator.Item<?> createRevalidationItem() {
+        return null;
+    }
+
+    /**
+     * Called when the item returned by {@link #createRevalidationItem()} changed on Kodi and
+     * the local database was updated. Override to reload it
+     */
+    protected void onItemRevalidated() { }
+
     abstract protected AbstractAdditionalInfoFragment getAdditionalInfoFragment();
 
     /**
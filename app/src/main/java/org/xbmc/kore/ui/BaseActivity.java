@@ -22,6 +22,7 @@ import android.preference.PreferenceManager;
 import androidx.appcompat.app.AppCompatActivity;
 
 import org.xbmc.kore.Settings;
+import org.xbmc.kore.utils.StartupTrace;
 import org.xbmc.kore.utils.UIUtils;
 import org.xbmc.kore.utils.Utils;
 
@@ -38,6 +39,7 @@ public abstract class BaseActivity extends AppCompatActivity {
 
         Utils.setPreferredLocale(this);
         super.onCreate(savedInstanceState);
+        StartupTrace.getInstance().activityCreated();
     }
 
     //    @Override
@@ -44,6 +44,7 @@ import org.xbmc.kore.host.HostConnectionObserver;
 import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.jsonrpc.ApiCallback;
 import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.CommandCoalescer;
 import org.xbmc.kore.jsonrpc.method.Application;
 import org.xbmc.kore.jsonrpc.method.Player;
 import org.xbmc.kore.jsonrpc.type.ListType;
@@ -345,7 +346,10 @@ public abstract class BaseMediaActivity extends BaseActivity
     public void onProgressChanged(int progress) {
         PlayerType.PositionTime positionTime = new PlayerType.PositionTime(progress);
         Player.Seek seekAction = new Player.Seek(currentActivePlayerId, positionTime);
-        seekAction.execute(HostManager.getInstance(this).getConnection(), new ApiCallback<PlayerType.SeekReturnType>() {
+        CommandCoalescer commandCoalescer = hostManager.getCommandCoalescer();
+        if (commandCoalescer == null)
+            return;
+        commandCoalescer.execute(CommandCoalescer.TARGET_SEEK, seekAction, new ApiCallback<PlayerType.SeekReturnType>() {
             @Override
             public void onSuccess(PlayerType.SeekReturnType result) {
                 // Ignore
@@ -355,7 +359,7 @@ public abstract class BaseMediaActivity extends BaseActivity
             public void onError(int errorCode, String description) {
                 LogUtils.LOGE(TAG, "Got an error calling Player.Seek. Error code: " + errorCode + ", description: " + description);
             }
-        }, new Handler());
+        });
     }
 
     @Override
@@ -436,8 +440,11 @@ public abstract class BaseMediaActivity extends BaseActivity
         nowPlayingPanel.setOnVolumeChangeListener(new VolumeLevelIndicator.OnVolumeChangeListener() {
             @Override
             public void onVolumeChanged(int volume) {
-                new Application.SetVolume(volume)
-                        .execute(hostManager.getConnection(), defaultIntActionCallback, new Handler());
+                CommandCoalescer commandCoalescer = hostManager.getCommandCoalescer();
+                if (commandCoalescer != null) {
+                    commandCoalescer.execute(CommandCoalescer.TARGET_VOLUME, new Application.SetVolume(volume),
+                                             defaultIntActionCallback);
+                }
             }
         });
 
@@ -448,6 +455,7 @@ public abstract class BaseMediaActivity extends BaseActivity
         if (hostConnectionObserver == null)
             return;
 
+        nowPlayingPanel.getMediaProgress().setPlaybackClock(hostConnectionObserver.getPlaybackClock());
         hostConnectionObserver.registerApplicationObserver(this);
         hostConnectionObserver.registerPlayerObserver(this);
 
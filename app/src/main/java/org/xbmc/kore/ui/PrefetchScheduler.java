@@ -0,0 +1,332 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.ui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.squareup.picasso.Picasso;
+
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.utils.LogUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms the image cache with the images shown by the info screens of the items around the
+ * visible range of a list, so that they open with everything already local.
+ * <p>
+ * Once the list is idle for {@link #IDLE_DELAY}, the items after and before the visible range
+ * are visited, nearest first, and their images are fetched at the size the info screen loads
+ * them, so that they're found on Picasso's memory cache. Prefetching is bounded by
+ * {@link #MAX_ITEMS} and {@link #MAX_BYTES}, and cancelled as soon as the list scrolls.
+ *
+ * @param <T> Data of an item needed to get its images
+ */
+public class PrefetchScheduler<T> extends RecyclerView.OnScrollListener {
+    private static final String TAG = LogUtils.makeLogTag(PrefetchScheduler.class);
+
+    static final long IDLE_DELAY = 500;
+
+    /**
+     * Maximum items prefetched each time the list becomes idle
+     */
+    static final int MAX_ITEMS = 8;
+
+    /**
+     * Maximum size of the prefetched images once decoded, so that they don't evict the ones on
+     * screen from the memory cache
+     */
+    static final long MAX_BYTES = Math.min(8 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16);
+
+    /**
+     * An image to prefetch, with the size it's loaded at
+     */
+    public static class Image {
+        public final String url;
+        public final int width, height;
+
+        public Image(String url, int width, int height) {
+            this.url = url;
+            this.width = width;
+            this.height = height;
+        }
+
+        long getBytes() {
+            // Decoded as ARGB_8888
+            return 4L * width * height;
+        }
+    }
+
+    /**
+     * Source of the items of the list
+     * @param <T> Data of an item needed to get its images
+     */
+    public interface Source<T> {
+        /**
+         * Returns the data of the item at the given position, read from the adapter.
+         * Called on the main thread
+         * @param position Position on the adapter
+         * @return Item data, or null to skip it
+         */
+        T getItem(int position);
+
+        /**
+         * Adds the images shown by the info screen of the item. Called on a background thread,
+         * so it can query the local database
+         * @param item Item data, as returned by {@link #getItem(int)}
+         * @param images List on which to add the images
+         */
+        void addImages(T item, List<Image> images);
+    }
+
+    /**
+     * Fetches the images into the cache
+     */
+    interface Fetcher {
+        void fetch(List<Image> images, Object tag);
+        void cancel(Object tag);
+    }
+
+    private static HandlerThread prefetchThread;
+    private static Handler prefetchHandler;
+
+    private static synchronized Handler getPrefetchHandler() {
+        if (prefetchHandler == null) {
+            prefetchThread = new HandlerThread("PrefetchScheduler", Process.THREAD_PRIORITY_BACKGROUND);
+            prefetchThread.start();
+            prefetchHandler = new Handler(prefetchThread.getLooper());
+        }
+        return prefetchHandler;
+    }
+
+    private final Context context;
+    private final Source<T> source;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Handler backgroundHandler;
+    private final Fetcher fetcher;
+
+    // Incremented on each cancel, so that stale prefetches stop
+    private final AtomicInteger generation = new AtomicInteger();
+    private RecyclerView recyclerView;
+    private boolean fetched = false;
+
+    private final Runnable startPrefetch = new Runnable() {
+        @Override
+        public void run() {
+            prefetch();
+        }
+    };
+
+    /**
+     * Constructor
+     * @param context Context
+     * @param source Source of the items
+     */
+    public PrefetchScheduler(Context context, Source<T> source) {
+        this(context, source, getPrefetchHandler(), null);
+    }
+
+    /**
+     * For testing: gets the images on the given handler and fetches them with the given fetcher
+     */
+    PrefetchScheduler(Context context, Source<T> source, Handler backgroundHandler, Fetcher fetcher) {
+        this.context = context.getApplicationContext();
+        this.source = source;
+        this.backgroundHandler = backgroundHandler;
+        this.fetcher = (fetcher != null) ? fetcher : new PicassoFetcher(this.context);
+    }
+
+    /**
+     * Starts prefetching for the list
+     * @param recyclerView List
+     */
+    public void attach(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        recyclerView.addOnScrollListener(this);
+        schedule();
+    }
+
+    /**
+     * Stops prefetching for the list, cancelling pending fetches
+     */
+    public void detach() {
+        cancel();
+        if (recyclerView != null) {
+            recyclerView.removeOnScrollListener(this);
+            recyclerView = null;
+        }
+    }
+
+    /**
+     * Prefetches once the list is idle. Call it when the content of the list changes
+     */
+    public void schedule() {
+        cancel();
+        if ((recyclerView != null) && (recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE)) {
+            mainHandler.postDelayed(startPrefetch, IDLE_DELAY);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            schedule();
+        } else {
+            cancel();
+        }
+    }
+
+    private void cancel() {
+        generation.incrementAndGet();
+        mainHandler.removeCallbacks(startPrefetch);
+        if (fetched) {
+            fetcher.cancel(this);
+            fetched = false;
+        }
+    }
+
+    private void prefetch() {
+        if ((recyclerView == null) || (recyclerView.getAdapter() == null) ||
+            !(recyclerView.getLayoutManager() instanceof LinearLayoutManager))
+            return;
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if ((first == RecyclerView.NO_POSITION) || (last == RecyclerView.NO_POSITION))
+            return;
+        prefetch(first, last, recyclerView.getAdapter().getItemCount());
+    }
+
+    /**
+     * Prefetches the images of the items around a visible range
+     * @param first First visible position
+     * @param last Last visible position
+     * @param itemCount Number of items of the list
+     */
+    void prefetch(int first, int last, int itemCount) {
+        // Lists are mostly browsed forward, so look twice as far ahead as behind
+        final List<T> items = new ArrayList<>();
+        int after = last + 1, before = first - 1;
+        while ((items.size() < MAX_ITEMS) && ((after < itemCount) || (before >= 0))) {
+            for (int i = 0; (i < 2) && (after < itemCount) && (items.size() < MAX_ITEMS); i++) {
+                addItem(items, after++);
+            }
+            if ((before >= 0) && (items.size() < MAX_ITEMS)) {
+                addItem(items, before--);
+            }
+        }
+        if (items.isEmpty())
+            return;
+
+        final int prefetchGeneration = generation.get();
+        backgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final List<Image> images = new ArrayList<>();
+                long bytes = 0;
+                for (T item : items) {
+                    if (generation.get() != prefetchGeneration)
+                        return;
+                    List<Image> itemImages = new ArrayList<>();
+                    source.addImages(item, itemImages);
+                    for (Image image : itemImages) {
+                        if (TextUtils.isEmpty(image.url))
+                            continue;
+                        bytes += image.getBytes();
+                        if (bytes > MAX_BYTES)
+                            break;
+                        images.add(image);
+                    }
+                    if (bytes > MAX_BYTES)
+                        break;
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        fetch(images, prefetchGeneration);
+                    }
+                });
+            }
+        });
+    }
+
+    private void addItem(List<T> items, int position) {
+        T item = source.getItem(position);
+        if (item != null) {
+            items.add(item);
+        }
+    }
+
+    private void fetch(List<Image> images, int prefetchGeneration) {
+        if (generation.get() != prefetchGeneration)
+            return;
+
+        LogUtils.LOGD(TAG, "Prefetching " + images.size() + " images");
+        fetcher.fetch(images, this);
+        fetched = true;
+    }
+
+    /**
+     * Fetches the images into Picasso's cache, for the current host
+     */
+    private static class PicassoFetcher implements Fetcher {
+        private final Context context;
+
+        PicassoFetcher(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void fetch(List<Image> images, Object tag) {
+            HostManager hostManager = HostManager.getInstance(context);
+            HostInfo hostInfo = hostManager.getHostInfo();
+            if (hostInfo == null)
+                return;
+
+            Picasso picasso = hostManager.getPicasso();
+            for (Image image : images) {
+                picasso.load(hostInfo.getImageUrl(image.url))
+                       .resize(image.width, image.height)
+                       .centerCrop()
+                       .priority(Picasso.Priority.LOW)
+                       .tag(tag)
+                       .fetch();
+            }
+        }
+
+        @Override
+        public void cancel(Object tag) {
+            Picasso picasso = HostManager.getInstance(context).getPicasso();
+            if (picasso != null) {
+                picasso.cancelTag(tag);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.xbmc.kore.ui;
 
 import android.database.Cursor;
+import android.text.TextUtils;
 import android.view.View;
 
 import androidx.recyclerview.widget.RecyclerView;
@@ -69,6 +70,17 @@ abstract public class RecyclerViewCursorAdapter
         return cursor.getLong(rowIDColumn);
     }
 
+    /**
+     * Returns the cursor moved to the given position, or null if there's no valid item there
+     * @param position Position on the adapter
+     */
+    public Cursor getCursor(int position) {
+        if (!dataValid || !cursor.moveToPosition(position)) {
+            return null;
+        }
+        return cursor;
+    }
+
     public String getSectionName(int position) {
         if (!dataValid) {
             throw new IllegalStateException("Cursor is in an invalid state.");
@@ -88,7 +100,10 @@ abstract public class RecyclerViewCursorAdapter
                 sectionName = dateStr.substring(2, 4);
             }
         } else {
-            sectionName = cursor.getString(sectionColumnIdx).substring(0, 1).toUpperCase();
+            String value = cursor.getString(sectionColumnIdx);
+            if (!TextUtils.isEmpty(value)) {
+                sectionName = value.substring(0, 1).toUpperCase();
+            }
         }
 
         return sectionName;
@@ -47,6 +47,7 @@ import org.xbmc.kore.R;
 import org.xbmc.kore.Settings;
 import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.host.HostReachability;
 import org.xbmc.kore.ui.sections.addon.AddonsActivity;
 import org.xbmc.kore.ui.sections.audio.MusicActivity;
 import org.xbmc.kore.ui.sections.favourites.FavouritesActivity;
@@ -95,6 +96,8 @@ public class NavigationDrawerFragment extends Fragment {
     // The current selected item id (based on the activity)
     private static int selectedItemId = -1;
 
+    private DrawerItemAdapter drawerItemAdapter;
+
     // Delay to close the drawer (ms)
     private static final int CLOSE_DELAY = 250;
 
@@ -211,10 +214,11 @@ public class NavigationDrawerFragment extends Fragment {
                                  styledAttributes.getResourceId(styledAttributes.getIndex(ACTIVITY_SETTINGS), 0)));
 
         styledAttributes.recycle();
-        mDrawerListView.setAdapter(new DrawerItemAdapter(
+        drawerItemAdapter = new DrawerItemAdapter(
                 getActivity(),
                 R.layout.list_item_navigation_drawer,
-                items.toArray(new DrawerItem[items.size()])));
+                items.toArray(new DrawerItem[items.size()]));
+        mDrawerListView.setAdapter(drawerItemAdapter);
 
         return mDrawerListView;
     }
@@ -223,8 +227,32 @@ public class NavigationDrawerFragment extends Fragment {
     public void onResume() {
         super.onResume();
         selectedItemId = getItemIdFromActivity();
+
+        // Show the last known status of the host, and check it if it isn't current
+        HostInfo hostInfo = HostManager.getInstance(getActivity()).getHostInfo();
+        if (hostInfo != null) {
+            HostReachability hostReachability = HostReachability.getInstance();
+            hostReachability.registerListener(hostStatusListener);
+            drawerItemAdapter.setHostStatus(hostReachability.getStatus(hostInfo));
+            hostReachability.refresh(hostInfo, false);
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        HostReachability.getInstance().unregisterListener(hostStatusListener);
     }
 
+    private HostReachability.StatusListener hostStatusListener = new HostReachability.StatusListener() {
+        @Override
+        public void onHostStatusChanged(HostInfo hostInfo, int status) {
+            HostInfo currentHostInfo = HostManager.getInstance(getActivity()).getHostInfo();
+            if ((currentHostInfo != null) && (currentHostInfo.getId() == hostInfo.getId()))
+                drawerItemAdapter.setHostStatus(status);
+        }
+    };
+
     /**
      * Users of this fragment must call this method to set up the navigation drawer interactions.
      *
@@ -477,7 +505,8 @@ public class NavigationDrawerFragment extends Fragment {
 
     public static class DrawerItemAdapter extends ArrayAdapter<DrawerItem> {
 
-        private int selectedItemColor, hostItemColor;
+        private int selectedItemColor, hostItemColor, hostUnavailableColor;
+        private int hostStatus = HostReachability.STATUS_UNKNOWN;
 
         public DrawerItemAdapter(Context context, int layoutId, DrawerItem[] objects) {
             super(context, layoutId, objects);
@@ -490,9 +519,20 @@ public class NavigationDrawerFragment extends Fragment {
             Resources resources = context.getResources();
             selectedItemColor = styledAttributes.getColor(styledAttributes.getIndex(0), resources.getColor(R.color.default_accent));
             hostItemColor = styledAttributes.getColor(styledAttributes.getIndex(1), resources.getColor(R.color.white));
+            hostUnavailableColor = resources.getColor(R.color.host_status_unavailable);
             styledAttributes.recycle();
         }
 
+        /**
+         * Sets the status of the host, shown on the host item
+         * @param hostStatus One of {@link HostReachability} STATUS constants
+         */
+        public void setHostStatus(int hostStatus) {
+            if (this.hostStatus == hostStatus) return;
+            this.hostStatus = hostStatus;
+            notifyDataSetChanged();
+        }
+
         @Override
         public int getViewTypeCount() {
             return 3;
@@ -545,7 +585,8 @@ public class NavigationDrawerFragment extends Fragment {
                         icon.setColorFilter(selectedItemColor);
                         desc.setTextColor(selectedItemColor);
                     } else {
-                        icon.setColorFilter(hostItemColor);
+                        icon.setColorFilter((hostStatus == HostReachability.STATUS_UNAVAILABLE) ?
+                                            hostUnavailableColor : hostItemColor);
                         desc.setTextColor(hostItemColor);
                     }
                     break;
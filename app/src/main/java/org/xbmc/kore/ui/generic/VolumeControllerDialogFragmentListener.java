@@ -21,6 +21,7 @@ import org.xbmc.kore.host.HostConnectionObserver;
 import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.jsonrpc.ApiCallback;
 import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.CommandCoalescer;
 import org.xbmc.kore.jsonrpc.method.Application;
 import org.xbmc.kore.jsonrpc.type.GlobalType;
 import org.xbmc.kore.ui.widgets.HighlightButton;
@@ -153,8 +154,11 @@ public class VolumeControllerDialogFragmentListener extends AppCompatDialogFragm
                     @Override
                     public void onVolumeChanged(int volume) {
                         cancelDismissDialog();
-                        new Application.SetVolume(volume).execute(hostManager.getConnection(),
-                                defaultIntActionCallback, callbackHandler);
+                        CommandCoalescer commandCoalescer = hostManager.getCommandCoalescer();
+                        if (commandCoalescer != null) {
+                            commandCoalescer.execute(CommandCoalescer.TARGET_VOLUME, new Application.SetVolume(volume),
+                                                     defaultIntActionCallback);
+                        }
                     }
                 });
         volumeLevelIndicator.setVolumeBarTouchTrackerListener(this);
@@ -19,9 +19,11 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
 import android.preference.PreferenceManager;
+import android.provider.BaseColumns;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -30,32 +32,29 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
-import android.widget.Toast;
 
-import androidx.recyclerview.widget.RecyclerView;
+import androidx.loader.content.CursorLoader;
 
 import org.xbmc.kore.R;
 import org.xbmc.kore.Settings;
+import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
-import org.xbmc.kore.jsonrpc.ApiCallback;
-import org.xbmc.kore.jsonrpc.method.Addons;
 import org.xbmc.kore.jsonrpc.type.AddonType;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.service.library.LibrarySyncService;
+import org.xbmc.kore.ui.AbstractCursorListFragment;
 import org.xbmc.kore.ui.AbstractInfoFragment;
-import org.xbmc.kore.ui.AbstractListFragment;
-import org.xbmc.kore.ui.viewgroups.RecyclerViewEmptyViewSupport;
+import org.xbmc.kore.ui.RecyclerViewCursorAdapter;
 import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.UIUtils;
 import org.xbmc.kore.utils.Utils;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-
 /**
- * Fragment that presents the movie list
+ * Fragment that presents the addons list.
+ * Addons are shown from the local database, and refreshed in the background if they changed on
+ * the host
  */
-public class AddonListFragment extends AbstractListFragment {
+public class AddonListFragment extends AbstractCursorListFragment {
     private static final String TAG = LogUtils.makeLogTag(AddonListFragment.class);
 
     public interface OnAddonSelectedListener {
@@ -65,38 +64,66 @@ public class AddonListFragment extends AbstractListFragment {
     // Activity listener
     private OnAddonSelectedListener listenerActivity;
 
+    private static boolean hideDisabledAddons;
+
     /**
-     * Handler on which to post RPC callbacks
+     * Addon types that can be opened from the list
      */
-    private Handler callbackHandler = new Handler();
+    private static final String[] SUPPORTED_TYPES = {
+            AddonType.Types.UNKNOWN,
+            AddonType.Types.XBMC_PYTHON_PLUGINSOURCE,
+            AddonType.Types.XBMC_PYTHON_SCRIPT,
+            AddonType.Types.XBMC_ADDON_AUDIO,
+            AddonType.Types.XBMC_ADDON_EXECUTABLE,
+            AddonType.Types.XBMC_ADDON_VIDEO,
+            AddonType.Types.XBMC_ADDON_IMAGE
+    };
 
-    private static boolean hideDisabledAddons;
+    @Override
+    protected String getListSyncType() { return LibrarySyncService.SYNC_ALL_ADDONS; }
 
     @Override
-    protected RecyclerViewEmptyViewSupport.OnItemClickListener createOnItemClickListener() {
-        return new RecyclerViewEmptyViewSupport.OnItemClickListener() {
-            @Override
-            public void onItemClick(View view, int position) {
-                // Get the movie id from the tag
-                ViewHolder tag = (ViewHolder) view.getTag();
-                // Notify the activity
-                listenerActivity.onAddonSelected(tag);
-            }
-        };
+    protected void onListItemClicked(View view) {
+        // Get the addon from the tag
+        ViewHolder tag = (ViewHolder) view.getTag();
+        // Notify the activity
+        listenerActivity.onAddonSelected(tag);
     }
 
     @Override
-    protected RecyclerView.Adapter createAdapter() {
+    protected RecyclerViewCursorAdapter createCursorAdapter() {
         return new AddonsAdapter(getActivity());
     }
 
+    @Override
+    protected CursorLoader createCursorLoader() {
+        HostInfo hostInfo = HostManager.getInstance(getActivity()).getHostInfo();
+        Uri uri = MediaContract.Addons.buildAddonsListUri(hostInfo != null ? hostInfo.getId() : -1);
+
+        StringBuilder selection = new StringBuilder();
+        selection.append(MediaContract.Addons.TYPE).append(" IN (");
+        for (int i = 0; i < SUPPORTED_TYPES.length; i++) {
+            selection.append((i == 0) ? "?" : ", ?");
+        }
+        selection.append(")");
+        if (hideDisabledAddons) {
+            selection.append(" AND ").append(MediaContract.Addons.ENABLED).append("=1");
+        }
+
+        return new CursorLoader(getActivity(), uri,
+                AddonsListQuery.PROJECTION, selection.toString(), SUPPORTED_TYPES, AddonsListQuery.SORT);
+    }
+
     @Override
     public void onActivityCreated (Bundle savedInstanceState) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getActivity());
+        hideDisabledAddons = preferences.getBoolean(Settings.KEY_PREF_ADDONS_FILTER_HIDE_DISABLED, Settings.DEFAULT_PREF_ADDONS_FILTER_HIDE_DISABLED);
+
         super.onActivityCreated(savedInstanceState);
         setHasOptionsMenu(true);
 
-        if (getAdapter().getItemCount() == 0)
-            callGetAddonsAndSetup();
+        // Cached addons are shown right away, check if they changed on the host
+        refreshIfChanged();
     }
 
     @Override
@@ -115,27 +142,12 @@ public class AddonListFragment extends AbstractListFragment {
         listenerActivity = null;
     }
 
-    @Override
-    public void onRefresh () {
-        if (HostManager.getInstance(getActivity()).getHostInfo() != null) {
-            callGetAddonsAndSetup();
-        } else {
-            hideRefreshAnimation();
-            Toast.makeText(getActivity(), R.string.no_xbmc_configured, Toast.LENGTH_SHORT)
-                 .show();
-        }
-    }
-
-
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         inflater.inflate(R.menu.addon_list, menu);
 
         // Setup filters
         MenuItem hideDisabled = menu.findItem(R.id.action_hide_disabled);
-
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        hideDisabledAddons = preferences.getBoolean(Settings.KEY_PREF_ADDONS_FILTER_HIDE_DISABLED, Settings.DEFAULT_PREF_ADDONS_FILTER_HIDE_DISABLED);
         hideDisabled.setChecked(hideDisabledAddons);
 
         super.onCreateOptionsMenu(menu, inflater);
@@ -151,7 +163,7 @@ public class AddonListFragment extends AbstractListFragment {
                         .putBoolean(Settings.KEY_PREF_ADDONS_FILTER_HIDE_DISABLED, item.isChecked())
                         .apply();
                 hideDisabledAddons = item.isChecked();
-                callGetAddonsAndSetup();
+                refreshList();
                 break;
             default:
                 break;
@@ -160,90 +172,45 @@ public class AddonListFragment extends AbstractListFragment {
         return super.onOptionsItemSelected(item);
     }
 
-    public class AddonNameComparator implements Comparator<AddonType.Details>
-    {
-        public int compare(AddonType.Details left, AddonType.Details right) {
-            return left.name.toLowerCase().compareTo(right.name.toLowerCase());
-        }
-    }
     /**
-     * Get the addons list and setup the gridview
+     * Addons list query parameters.
      */
-    private void callGetAddonsAndSetup() {
-        final AddonsAdapter adapter = (AddonsAdapter) getAdapter();
-
-        UIUtils.showRefreshAnimation(swipeRefreshLayout);
-
-        // Get the addon list, this is done asyhnchronously
-        String[] properties = new String[] {
-                AddonType.Fields.NAME, AddonType.Fields.VERSION, AddonType.Fields.SUMMARY,
-                AddonType.Fields.DESCRIPTION,  AddonType.Fields.PATH, AddonType.Fields.AUTHOR,
-                AddonType.Fields.THUMBNAIL, AddonType.Fields.DISCLAIMER, AddonType.Fields.FANART,
-                //AddonType.Fields.DEPENDENCIES, AddonType.Fields.BROKEN, AddonType.Fields.EXTRAINFO,
-                AddonType.Fields.RATING, AddonType.Fields.ENABLED
+    private interface AddonsListQuery {
+        String[] PROJECTION = {
+                BaseColumns._ID,
+                MediaContract.Addons.ADDONID,
+                MediaContract.Addons.NAME,
+                MediaContract.Addons.TYPE,
+                MediaContract.Addons.VERSION,
+                MediaContract.Addons.SUMMARY,
+                MediaContract.Addons.DESCRIPTION,
+                MediaContract.Addons.AUTHOR,
+                MediaContract.Addons.THUMBNAIL,
+                MediaContract.Addons.FANART,
+                MediaContract.Addons.ENABLED,
         };
-        Addons.GetAddons action = new Addons.GetAddons(properties);
-        action.execute(HostManager.getInstance(getActivity()).getConnection(),
-            new ApiCallback<List<AddonType.Details>>() {
-                @Override
-                public void onSuccess(List<AddonType.Details> result) {
-                    if (!isAdded()) return;
-
-                    for (AddonType.Details addon : result) {
-                        String regex = "\\[.*?\\]";
-                        addon.name = addon.name.replaceAll(regex, "");
-                        addon.description = addon.description.replaceAll(regex, "");
-                        addon.summary = addon.summary.replaceAll(regex, "");
-                        addon.author = addon.author.replaceAll(regex, "");
-                    }
-                    Collections.sort(result, new AddonNameComparator());
-
-                    adapter.clear();
-                    for (AddonType.Details addon : result) {
-                        if (isAddonSupported(addon) && (!hideDisabledAddons || addon.enabled)) {
-                            adapter.add(addon);
-                        }
-                    }
-
-                    adapter.notifyDataSetChanged();
-                    hideRefreshAnimation();
-
-                    if (adapter.getItemCount() == 0) {
-                        getEmptyView().setText(R.string.no_addons_found_refresh);
-                    }
-                }
-
-                @Override
-                public void onError(int errorCode, String description) {
-                    if (!isAdded()) return;
-
-                    Toast.makeText(getActivity(),
-                        String.format(getString(R.string.error_getting_addon_info), description),
-                        Toast.LENGTH_SHORT).show();
-                    hideRefreshAnimation();
-                }
-            },
-            callbackHandler);
-    }
 
-    private boolean isAddonSupported(AddonType.Details addon) {
-        return (addon.type.equals(AddonType.Types.UNKNOWN) ||
-                addon.type.equals(AddonType.Types.XBMC_PYTHON_PLUGINSOURCE) ||
-                addon.type.equals(AddonType.Types.XBMC_PYTHON_SCRIPT) ||
-                addon.type.equals(AddonType.Types.XBMC_ADDON_AUDIO) ||
-                addon.type.equals(AddonType.Types.XBMC_ADDON_EXECUTABLE) ||
-                addon.type.equals(AddonType.Types.XBMC_ADDON_VIDEO) ||
-                addon.type.equals(AddonType.Types.XBMC_ADDON_IMAGE));
+        String SORT = MediaContract.Addons.NAME + " COLLATE NOCASE ASC";
+
+        int ID = 0;
+        int ADDONID = 1;
+        int NAME = 2;
+        int TYPE = 3;
+        int VERSION = 4;
+        int SUMMARY = 5;
+        int DESCRIPTION = 6;
+        int AUTHOR = 7;
+        int THUMBNAIL = 8;
+        int FANART = 9;
+        int ENABLED = 10;
     }
 
-    private static class AddonsAdapter extends RecyclerView.Adapter {
+    private static class AddonsAdapter extends RecyclerViewCursorAdapter {
 
         private HostManager hostManager;
         private int artWidth, artHeight;
         private Context context;
 
-        private ArrayList<AddonType.Details> items = new ArrayList<>();
-
         public AddonsAdapter(Context context) {
             this.context = context;
             this.hostManager = HostManager.getInstance(context);
@@ -257,41 +224,20 @@ public class AddonListFragment extends AbstractListFragment {
         }
 
         @Override
-        public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        public CursorViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
             View view = LayoutInflater.from(context)
-                                        .inflate(R.layout.grid_item_addon, parent, false);
+                                      .inflate(R.layout.grid_item_addon, parent, false);
 
             return new ViewHolder(view, context, hostManager, artWidth, artHeight);
         }
 
-        @Override
-        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
-            AddonType.Details addonDetails = this.getItem(position);
-            ((ViewHolder) holder).onBind(addonDetails);
-        }
-
-        @Override
-        public int getItemCount() {
-            return items.size();
-        }
-
-        public void clear() {
-            items.clear();
-        }
-
-        public void add(AddonType.Details item) {
-            items.add(item);
-        }
-
-        public AddonType.Details getItem(int position) {
-            return items.get(position);
-        }
+        protected int getSectionColumnIdx() { return AddonsListQuery.NAME; }
     }
 
     /**
      * View holder pattern
      */
-    public static class ViewHolder extends RecyclerView.ViewHolder {
+    public static class ViewHolder extends RecyclerViewCursorAdapter.CursorViewHolder {
         TextView titleView;
         TextView detailsView;
         ImageView artView;
@@ -320,32 +266,35 @@ public class AddonListFragment extends AbstractListFragment {
             detailsView = itemView.findViewById(R.id.details);
             artView = itemView.findViewById(R.id.art);
             disabledView = itemView.findViewById(R.id.disabled);
-
-            itemView.setTag(this);
         }
 
-        public void onBind(AddonType.Details addonDetails) {
-            dataHolder.setTitle(addonDetails.name);
-            dataHolder.setDescription(addonDetails.description);
-            dataHolder.setUndertitle(addonDetails.summary);
-            dataHolder.setFanArtUrl(addonDetails.fanart);
-            dataHolder.setPosterUrl(addonDetails.thumbnail);
-            dataHolder.setDetails(author + " " + addonDetails.author + "\n" +
-                                  version + " " +addonDetails.version);
-            dataHolder.getBundle().putString(AddonInfoFragment.BUNDLE_KEY_ADDONID, addonDetails.addonid);
+        @Override
+        public void bindView(Cursor cursor) {
+            String addonId = cursor.getString(AddonsListQuery.ADDONID);
+            String summary = cursor.getString(AddonsListQuery.SUMMARY);
+            String thumbnail = cursor.getString(AddonsListQuery.THUMBNAIL);
+
+            dataHolder.setTitle(cursor.getString(AddonsListQuery.NAME));
+            dataHolder.setDescription(cursor.getString(AddonsListQuery.DESCRIPTION));
+            dataHolder.setUndertitle(summary);
+            dataHolder.setFanArtUrl(cursor.getString(AddonsListQuery.FANART));
+            dataHolder.setPosterUrl(thumbnail);
+            dataHolder.setDetails(author + " " + cursor.getString(AddonsListQuery.AUTHOR) + "\n" +
+                                  version + " " + cursor.getString(AddonsListQuery.VERSION));
+            dataHolder.getBundle().putString(AddonInfoFragment.BUNDLE_KEY_ADDONID, addonId);
             dataHolder.getBundle().putBoolean(AddonInfoFragment.BUNDLE_KEY_BROWSABLE,
-                                              AddonType.Types.XBMC_PYTHON_PLUGINSOURCE.equals(addonDetails.type));
+                                              AddonType.Types.XBMC_PYTHON_PLUGINSOURCE.equals(cursor.getString(AddonsListQuery.TYPE)));
 
             titleView.setText(dataHolder.getTitle());
-            detailsView.setText(addonDetails.summary);
-            disabledView.setVisibility(addonDetails.enabled ? View.INVISIBLE : View.VISIBLE);
+            detailsView.setText(summary);
+            disabledView.setVisibility(cursor.getInt(AddonsListQuery.ENABLED) != 0 ? View.INVISIBLE : View.VISIBLE);
 
             UIUtils.loadImageWithCharacterAvatar(context, hostManager,
-                                                 addonDetails.thumbnail, dataHolder.getTitle(),
+                                                 thumbnail, dataHolder.getTitle(),
                                                  artView, artWidth, artHeight);
 
             if(Utils.isLollipopOrLater()) {
-                artView.setTransitionName("a"+addonDetails.addonid);
+                artView.setTransitionName("a"+addonId);
             }
         }
     }
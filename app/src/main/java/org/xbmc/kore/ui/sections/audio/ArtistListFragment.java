@@ -19,6 +19,7 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
@@ -93,6 +94,13 @@ public class ArtistListFragment extends AbstractCursorListFragment {
                 ArtistListQuery.PROJECTION, selection, selectionArgs, ArtistListQuery.SORT);
     }
 
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // The cached library is shown right away, check if it changed on the host
+        refreshIfChanged();
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -36,6 +36,7 @@ import org.xbmc.kore.jsonrpc.event.MediaSyncEvent;
 import org.xbmc.kore.jsonrpc.method.Playlist;
 import org.xbmc.kore.jsonrpc.type.PlaylistType;
 import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.service.library.ItemRevalidator;
 import org.xbmc.kore.service.library.LibrarySyncService;
 import org.xbmc.kore.ui.AbstractAdditionalInfoFragment;
 import org.xbmc.kore.ui.AbstractInfoFragment;
@@ -88,6 +89,16 @@ public class MusicVideoInfoFragment extends AbstractInfoFragment
         return refreshItem;
     }
 
+    @Override
+    protected ItemRevalidator.Item<?> createRevalidationItem() {
+        return ItemRevalidator.musicVideo(getHostInfo().getId(), getDataHolder().getId());
+    }
+
+    @Override
+    protected void onItemRevalidated() {
+        getLoaderManager().restartLoader(LOADER_MUSIC_VIDEO, null, this);
+    }
+
     @Override
     protected boolean setupMediaActionBar() {
         setOnAddToPlaylistListener(new View.OnClickListener() {
@@ -17,8 +17,11 @@ package org.xbmc.kore.ui.sections.favourites;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.provider.BaseColumns;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -30,124 +33,122 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
-import androidx.recyclerview.widget.RecyclerView;
-import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
+import androidx.loader.content.CursorLoader;
 
 import org.xbmc.kore.R;
+import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.jsonrpc.ApiCallback;
-import org.xbmc.kore.jsonrpc.ApiList;
-import org.xbmc.kore.jsonrpc.method.Favourites;
 import org.xbmc.kore.jsonrpc.method.GUI;
 import org.xbmc.kore.jsonrpc.type.FavouriteType;
 import org.xbmc.kore.jsonrpc.type.PlaylistType;
-import org.xbmc.kore.ui.AbstractListFragment;
-import org.xbmc.kore.ui.viewgroups.RecyclerViewEmptyViewSupport;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.service.library.LibrarySyncService;
+import org.xbmc.kore.ui.AbstractCursorListFragment;
+import org.xbmc.kore.ui.RecyclerViewCursorAdapter;
 import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.MediaPlayerUtils;
 import org.xbmc.kore.utils.UIUtils;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class FavouritesListFragment extends AbstractListFragment implements SwipeRefreshLayout.OnRefreshListener {
-    private static final String TAG = "FavouritesListFragment";
+/**
+ * Fragment that presents the favourites list.
+ * Favourites are shown from the local database, and refreshed in the background if they changed
+ * on the host
+ */
+public class FavouritesListFragment extends AbstractCursorListFragment {
+    private static final String TAG = LogUtils.makeLogTag(FavouritesListFragment.class);
 
     private Handler callbackHandler = new Handler();
 
+    private final ApiCallback<String> genericApiCallback = new ApiCallback<String>() {
+        @Override
+        public void onSuccess(String result) {
+            // Do Nothing
+        }
+
+        @Override
+        public void onError(int errorCode, String description) {
+            if (!isAdded()) return;
+            Toast.makeText(getActivity(), description, Toast.LENGTH_SHORT).show();
+        }
+    };
+
     @Override
     public void onActivityCreated(@Nullable Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
-        getFavourites();
+
+        // Cached favourites are shown right away, check if they changed on the host
+        refreshIfChanged();
     }
 
     @Override
-    protected RecyclerViewEmptyViewSupport.OnItemClickListener createOnItemClickListener() {
-        final ApiCallback<String> genericApiCallback = new ApiCallback<String>() {
-            @Override
-            public void onSuccess(String result) {
-                // Do Nothing
-            }
+    protected String getListSyncType() { return LibrarySyncService.SYNC_ALL_FAVOURITES; }
 
-            @Override
-            public void onError(int errorCode, String description) {
-                Toast.makeText(getActivity(), description, Toast.LENGTH_SHORT).show();
-            }
-        };
-        return new RecyclerViewEmptyViewSupport.OnItemClickListener() {
-            @Override
-            public void onItemClick(View view, int position) {
-                final FavouritesAdapter favouritesAdapter = (FavouritesAdapter) getAdapter();
-                final HostManager hostManager = HostManager.getInstance(getActivity());
-
-                final FavouriteType.DetailsFavourite detailsFavourite =
-                        favouritesAdapter.getItem(position);
-                if (detailsFavourite == null) {
-                    return;
-                }
-                if (detailsFavourite.type.equals(FavouriteType.FavouriteTypeEnum.WINDOW)
-                        && !TextUtils.isEmpty(detailsFavourite.window)) {
-                    GUI.ActivateWindow activateWindow = new GUI.ActivateWindow(detailsFavourite.window,
-                            detailsFavourite.windowParameter);
-                    hostManager.getConnection().execute(activateWindow, genericApiCallback, callbackHandler);
-                } else if (detailsFavourite.type.equals(FavouriteType.FavouriteTypeEnum.MEDIA)
-                        && !TextUtils.isEmpty(detailsFavourite.path)) {
-                    final PlaylistType.Item playlistItem = new PlaylistType.Item();
-                    playlistItem.file = detailsFavourite.path;
-                    MediaPlayerUtils.play(FavouritesListFragment.this, playlistItem);
-                } else {
-                    Toast.makeText(getActivity(), R.string.unable_to_play_favourite_item,
-                            Toast.LENGTH_SHORT).show();
-                }
-            }
-        };
+    @Override
+    protected void onListItemClicked(View view) {
+        final ViewHolder tag = (ViewHolder) view.getTag();
+        final HostManager hostManager = HostManager.getInstance(getActivity());
+
+        if (FavouriteType.FavouriteTypeEnum.WINDOW.equals(tag.type)
+                && !TextUtils.isEmpty(tag.window)) {
+            GUI.ActivateWindow activateWindow = new GUI.ActivateWindow(tag.window,
+                    tag.windowParameter);
+            hostManager.getConnection().execute(activateWindow, genericApiCallback, callbackHandler);
+        } else if (FavouriteType.FavouriteTypeEnum.MEDIA.equals(tag.type)
+                && !TextUtils.isEmpty(tag.path)) {
+            final PlaylistType.Item playlistItem = new PlaylistType.Item();
+            playlistItem.file = tag.path;
+            MediaPlayerUtils.play(FavouritesListFragment.this, playlistItem);
+        } else {
+            Toast.makeText(getActivity(), R.string.unable_to_play_favourite_item,
+                    Toast.LENGTH_SHORT).show();
+        }
     }
 
     @Override
-    protected RecyclerView.Adapter createAdapter() {
+    protected RecyclerViewCursorAdapter createCursorAdapter() {
         return new FavouritesAdapter(getActivity(), HostManager.getInstance(getActivity()));
     }
 
     @Override
-    public void onRefresh() {
-        getFavourites();
+    protected CursorLoader createCursorLoader() {
+        HostInfo hostInfo = HostManager.getInstance(getActivity()).getHostInfo();
+        Uri uri = MediaContract.Favourites.buildFavouritesListUri(hostInfo != null ? hostInfo.getId() : -1);
+
+        return new CursorLoader(getActivity(), uri,
+                FavouritesListQuery.PROJECTION, null, null, FavouritesListQuery.SORT);
     }
 
-    private void getFavourites() {
-        final HostManager hostManager = HostManager.getInstance(getActivity());
-        final Favourites.GetFavourites action = new Favourites.GetFavourites();
-
-        hostManager.getConnection().execute(action, new ApiCallback<ApiList<FavouriteType.DetailsFavourite>>() {
-            @Override
-            public void onSuccess(ApiList<FavouriteType.DetailsFavourite> result) {
-                if (!isAdded()) return;
-                LogUtils.LOGD(TAG, "Got Favourites");
-
-                // To prevent the empty text from appearing on the first load, set it now
-                getEmptyView().setText(getString(R.string.no_channels_found_refresh));
-                ((FavouritesAdapter) getAdapter()).setFavouriteItems(result.items);
-                hideRefreshAnimation();
-            }
+    /**
+     * Favourites list query parameters.
+     */
+    private interface FavouritesListQuery {
+        String[] PROJECTION = {
+                BaseColumns._ID,
+                MediaContract.Favourites.TITLE,
+                MediaContract.Favourites.TYPE,
+                MediaContract.Favourites.PATH,
+                MediaContract.Favourites.THUMBNAIL,
+                MediaContract.Favourites.WINDOW,
+                MediaContract.Favourites.WINDOW_PARAMETER,
+        };
 
-            @Override
-            public void onError(int errorCode, String description) {
-                if (!isAdded()) return;
-                LogUtils.LOGD(TAG, "Error getting favourites: " + description);
+        String SORT = MediaContract.Favourites.POSITION + " ASC";
 
-                getEmptyView().setText(getString(R.string.error_favourites, description));
-                Toast.makeText(getActivity(), getString(R.string.error_favourites, description),
-                        Toast.LENGTH_SHORT).show();
-                hideRefreshAnimation();
-            }
-        }, callbackHandler);
+        int ID = 0;
+        int TITLE = 1;
+        int TYPE = 2;
+        int PATH = 3;
+        int THUMBNAIL = 4;
+        int WINDOW = 5;
+        int WINDOW_PARAMETER = 6;
     }
 
-    private static class FavouritesAdapter extends RecyclerView.Adapter {
+    private static class FavouritesAdapter extends RecyclerViewCursorAdapter {
 
         private final HostManager hostManager;
         private final int artWidth, artHeight;
         private Context context;
-        private ArrayList<FavouriteType.DetailsFavourite> favouriteItems = new ArrayList<>();
 
         FavouritesAdapter(@NonNull Context context, HostManager hostManager) {
             this.context = context;
@@ -159,35 +160,17 @@ public class FavouritesListFragment extends AbstractListFragment implements Swip
                     UIUtils.IMAGE_RESIZE_FACTOR);
         }
 
-        public void setFavouriteItems(List<FavouriteType.DetailsFavourite> favouriteItems) {
-            this.favouriteItems.clear();
-            this.favouriteItems.addAll(favouriteItems);
-            notifyDataSetChanged();
-        }
-
-        public FavouriteType.DetailsFavourite getItem(int position) {
-            return favouriteItems.get(position);
-        }
-
         @Override
-        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        public CursorViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
             View view = LayoutInflater.from(context).inflate(R.layout.grid_item_channel,
                                                                     parent, false);
             return new ViewHolder(view, context, hostManager, artWidth, artHeight);
         }
 
-        @Override
-        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
-            ((ViewHolder) holder).bindView(favouriteItems.get(position));
-        }
-
-        @Override
-        public int getItemCount() {
-            return favouriteItems.size();
-        }
+        protected int getSectionColumnIdx() { return FavouritesListQuery.TITLE; }
     }
 
-    private static class ViewHolder extends RecyclerView.ViewHolder {
+    private static class ViewHolder extends RecyclerViewCursorAdapter.CursorViewHolder {
         final ImageView artView;
         final TextView titleView;
         final TextView detailView;
@@ -196,6 +179,11 @@ public class FavouritesListFragment extends AbstractListFragment implements Swip
         int artHeight;
         Context context;
 
+        String type;
+        String path;
+        String window;
+        String windowParameter;
+
         ViewHolder(View itemView, Context context, HostManager hostManager, int artWidth, int artHeight) {
             super(itemView);
             this.context = context;
@@ -210,11 +198,18 @@ public class FavouritesListFragment extends AbstractListFragment implements Swip
             contextMenu.setVisibility(View.GONE);
         }
 
-        void bindView(FavouriteType.DetailsFavourite favouriteDetail) {
-            titleView.setText(UIUtils.applyMarkup(context, favouriteDetail.title));
+        @Override
+        public void bindView(Cursor cursor) {
+            String title = cursor.getString(FavouritesListQuery.TITLE);
+            type = cursor.getString(FavouritesListQuery.TYPE);
+            path = cursor.getString(FavouritesListQuery.PATH);
+            window = cursor.getString(FavouritesListQuery.WINDOW);
+            windowParameter = cursor.getString(FavouritesListQuery.WINDOW_PARAMETER);
+
+            titleView.setText(UIUtils.applyMarkup(context, title));
 
             @StringRes final int typeRes;
-            switch (favouriteDetail.type) {
+            switch (type != null ? type : FavouriteType.FavouriteTypeEnum.UNKNOWN) {
                 case FavouriteType.FavouriteTypeEnum.MEDIA:
                     typeRes = R.string.media;
                     break;
@@ -230,7 +225,7 @@ public class FavouritesListFragment extends AbstractListFragment implements Swip
             detailView.setText(typeRes);
 
             UIUtils.loadImageWithCharacterAvatar(context, hostManager,
-                                                 favouriteDetail.thumbnail, favouriteDetail.title,
+                                                 cursor.getString(FavouritesListQuery.THUMBNAIL), title,
                                                  artView, artWidth, artHeight);
         }
     }
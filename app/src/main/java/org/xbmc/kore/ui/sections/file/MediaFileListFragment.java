@@ -37,6 +37,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.xbmc.kore.R;
 import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiList;
 import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.jsonrpc.method.Files;
 import org.xbmc.kore.jsonrpc.method.Player;
@@ -71,8 +72,28 @@ public class MediaFileListFragment extends AbstractListFragment {
     public static final String ROOT_VISITED = "rootVisited";
     public static final String ROOT_PATH = "rootPath";
     public static final String DELAY_LOAD = "delayLoad";
+    public static final String CURRENT_DIRECTORY = "currentDirectory";
+    public static final String DIRECTORY_LOADED_ITEMS = "directoryLoadedItems";
+    public static final String DIRECTORY_TOTAL_ITEMS = "directoryTotalItems";
     private static final String ADDON_SOURCE = "addons:";
 
+    /**
+     * Directories are loaded in pages of this size, as the user scrolls through them
+     */
+    private static final int DIRECTORY_PAGE_SIZE = 200;
+
+    /**
+     * Properties to get for each file, only the ones shown on the list
+     */
+    private static final String[] DIRECTORY_PROPERTIES = new String[] {
+            ListType.FieldsFiles.TITLE, ListType.FieldsFiles.ARTIST,
+            ListType.FieldsFiles.ALBUM, ListType.FieldsFiles.DURATION,
+            ListType.FieldsFiles.TAGLINE, ListType.FieldsFiles.RUNTIME,
+            ListType.FieldsFiles.SEASON, ListType.FieldsFiles.EPISODE,
+            ListType.FieldsFiles.THUMBNAIL, ListType.FieldsFiles.FILE,
+            ListType.FieldsFiles.DISPLAYARTIST, ListType.FieldsFiles.SIZE
+    };
+
     private HostManager hostManager;
     /**
      * Handler on which to post RPC callbacks
@@ -90,6 +111,17 @@ public class MediaFileListFragment extends AbstractListFragment {
     ArrayList<FileLocation> rootFileLocation = new ArrayList<>();
     Queue<FileLocation> mediaQueueFileLocation = new LinkedList<>();
 
+    // Directory being shown, and how many of its items are loaded out of its total
+    FileLocation currentDirectory = null;
+    int directoryLoadedItems = 0;
+    int directoryTotalItems = 0;
+    boolean loadingDirectoryPage = false;
+
+    // Directory whose items not yet loaded are still to be queued by "Play from here", and the
+    // position of the first of them
+    FileLocation queueDirectory = null;
+    int queueDirectoryOffset = 0;
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -103,6 +135,9 @@ public class MediaFileListFragment extends AbstractListFragment {
         }
         outState.putParcelableArrayList(ROOT_PATH_CONTENTS, rootFileLocation);
         outState.putBoolean(ROOT_VISITED, browseRootAlready);
+        outState.putParcelable(CURRENT_DIRECTORY, currentDirectory);
+        outState.putInt(DIRECTORY_LOADED_ITEMS, directoryLoadedItems);
+        outState.putInt(DIRECTORY_TOTAL_ITEMS, directoryTotalItems);
     }
 
     @Override
@@ -158,6 +193,9 @@ public class MediaFileListFragment extends AbstractListFragment {
             ArrayList<FileLocation> list = savedInstanceState.getParcelableArrayList(PATH_CONTENTS);
             rootFileLocation = savedInstanceState.getParcelableArrayList(ROOT_PATH_CONTENTS);
             browseRootAlready = savedInstanceState.getBoolean(ROOT_VISITED);
+            currentDirectory = savedInstanceState.getParcelable(CURRENT_DIRECTORY);
+            directoryLoadedItems = savedInstanceState.getInt(DIRECTORY_LOADED_ITEMS);
+            directoryTotalItems = savedInstanceState.getInt(DIRECTORY_TOTAL_ITEMS);
             ((MediaFileListAdapter) getAdapter()).setFilelistItems(list);
         }
         else if (rootPath != null) {
@@ -241,6 +279,7 @@ public class MediaFileListFragment extends AbstractListFragment {
                 }
 
                 browseRootAlready = true;
+                currentDirectory = null;
                 getEmptyView().setText(getString(R.string.source_empty));
                 ((MediaFileListAdapter) getAdapter()).setFilelistItems(rootFileLocation);
             }
@@ -284,76 +323,79 @@ public class MediaFileListFragment extends AbstractListFragment {
             }
         }
 
-        String[] properties = new String[] {
-                ListType.FieldsFiles.TITLE, ListType.FieldsFiles.ARTIST,
-                //ListType.FieldsFiles.ALBUMARTIST, ListType.FieldsFiles.GENRE,
-                //ListType.FieldsFiles.YEAR, ListType.FieldsFiles.RATING,
-                ListType.FieldsFiles.ALBUM, ListType.FieldsFiles.TRACK, ListType.FieldsFiles.DURATION,
-                //ListType.FieldsFiles.COMMENT,
-                //ListType.FieldsFiles.LYRICS, ListType.FieldsFiles.MUSICBRAINZTRACKID,
-                //ListType.FieldsFiles.MUSICBRAINZARTISTID, ListType.FieldsFiles.MUSICBRAINZALBUMID,
-                //ListType.FieldsFiles.MUSICBRAINZALBUMARTISTID, ListType.FieldsFiles.PLAYCOUNT,
-                //ListType.FieldsFiles.FANART,
-                //ListType.FieldsFiles.DIRECTOR, ListType.FieldsFiles.TRAILER,
-                ListType.FieldsFiles.TAGLINE,
-                //ListType.FieldsFiles.PLOT, ListType.FieldsFiles.PLOTOUTLINE, ListType.FieldsFiles.ORIGINALTITLE,
-                //ListType.FieldsFiles.LASTPLAYED, ListType.FieldsFiles.WRITER, ListType.FieldsFiles.STUDIO,
-                //ListType.FieldsFiles.MPAA, ListType.FieldsFiles.CAST, ListType.FieldsFiles.COUNTRY,
-                //ListType.FieldsFiles.IMDBNUMBER, ListType.FieldsFiles.PREMIERED,
-                //ListType.FieldsFiles.PRODUCTIONCODE,
-                ListType.FieldsFiles.RUNTIME,
-                //ListType.FieldsFiles.SET,
-                //ListType.FieldsFiles.SHOWLINK, ListType.FieldsFiles.STREAMDETAILS,
-                //ListType.FieldsFiles.TOP250, ListType.FieldsFiles.VOTES,
-                //ListType.FieldsFiles.FIRSTAIRED,
-                ListType.FieldsFiles.SEASON, ListType.FieldsFiles.EPISODE,
-                ListType.FieldsFiles.SHOWTITLE, ListType.FieldsFiles.THUMBNAIL, ListType.FieldsFiles.FILE,
-                //ListType.FieldsFiles.RESUME, ListType.FieldsFiles.ARTISTID, ListType.FieldsFiles.ALBUMID,
-                //ListType.FieldsFiles.TVSHOWID, ListType.FieldsFiles.SETID, ListType.FieldsFiles.WATCHEDEPISODES,
-                //ListType.FieldsFiles.DISC, ListType.FieldsFiles.TAG, ListType.FieldsFiles.ART,
-                //ListType.FieldsFiles.GENREID,
-                ListType.FieldsFiles.DISPLAYARTIST,
-                //ListType.FieldsFiles.ALBUMARTISTID, ListType.FieldsFiles.DESCRIPTION, ListType.FieldsFiles.THEME,
-                //ListType.FieldsFiles.MOOD, ListType.FieldsFiles.STYLE, ListType.FieldsFiles.ALBUMLABEL,
-                //ListType.FieldsFiles.SORTTITLE, ListType.FieldsFiles.EPISODEGUIDE,
-                //ListType.FieldsFiles.UNIQUEID, ListType.FieldsFiles.DATEADDED,
-                ListType.FieldsFiles.SIZE, ListType.FieldsFiles.LASTMODIFIED, ListType.FieldsFiles.MIMETYPE
-        };
+        currentDirectory = dir;
+        directoryLoadedItems = 0;
+        directoryTotalItems = 0;
+        loadingDirectoryPage = false;
+        loadDirectoryPage();
+    }
 
-        Files.GetDirectory action = new Files.GetDirectory(dir.file,
-                                                           mediaType,
-                                                           sortMethod,
-                                                           properties);
-        action.execute(hostManager.getConnection(), new ApiCallback<List<ListType.ItemFile>>() {
-            @Override
-            public void onSuccess(List<ListType.ItemFile> result) {
-                if (!isAdded()) return;
+    /**
+     * Returns whether the current directory has items not yet loaded
+     */
+    private boolean hasMoreDirectoryItems() {
+        return (currentDirectory != null) && (directoryLoadedItems < directoryTotalItems);
+    }
 
-                ArrayList<FileLocation> flList = new ArrayList<>();
+    /**
+     * Gets the next page of files of the current directory and adds them to the list
+     */
+    private void loadDirectoryPage() {
+        if (loadingDirectoryPage || (currentDirectory == null))
+            return;
+
+        final FileLocation dir = currentDirectory;
+        final boolean firstPage = (directoryLoadedItems == 0);
+        loadingDirectoryPage = true;
+
+        Files.GetDirectoryPage action = new Files.GetDirectoryPage(
+                dir.file, mediaType, sortMethod,
+                new ListType.Limits(directoryLoadedItems, directoryLoadedItems + DIRECTORY_PAGE_SIZE),
+                DIRECTORY_PROPERTIES);
+        action.execute(hostManager.getConnection(), new ApiCallback<ApiList<ListType.ItemFileSummary>>() {
+            @Override
+            public void onSuccess(ApiList<ListType.ItemFileSummary> result) {
+                // Ignore pages of a directory we already left
+                if (!isAdded() || (dir != currentDirectory)) return;
+                loadingDirectoryPage = false;
 
-                if (dir.hasParent) {
+                ArrayList<FileLocation> flList = new ArrayList<>(result.items.size() + 1);
+                if (firstPage && dir.hasParent) {
                     // insert the parent directory as the first item in the list
                     FileLocation fl = new FileLocation("..", parentDirectory, true);
                     fl.setRootDir(dir.isRootDir());
-                    flList.add(0, fl);
+                    flList.add(fl);
                 }
-                for (ListType.ItemFile i : result) {
+                for (ListType.ItemFileSummary i : result.items) {
                     flList.add(FileLocation.newInstanceFromItemFile(getActivity(), i));
                 }
-                ((MediaFileListAdapter) getAdapter()).setFilelistItems(flList);
-                browseRootAlready = false;
+
+                directoryLoadedItems += result.items.size();
+                // Without a total or a full page there's nothing more to load
+                directoryTotalItems = ((result.limits.total >= 0) && !result.items.isEmpty()) ?
+                                      result.limits.total : directoryLoadedItems;
+
+                MediaFileListAdapter adapter = (MediaFileListAdapter) getAdapter();
+                if (firstPage) {
+                    adapter.setFilelistItems(flList);
+                    browseRootAlready = false;
+                } else {
+                    adapter.addFilelistItems(flList);
+                }
             }
 
             @Override
             public void onError(int errorCode, String description) {
-                if (!isAdded()) return;
+                if (!isAdded() || (dir != currentDirectory)) return;
+                loadingDirectoryPage = false;
+                // Don't retry while scrolling
+                directoryTotalItems = directoryLoadedItems;
 
                 Toast.makeText(getActivity(),
                                String.format(getString(R.string.error_getting_source_info), description),
                                Toast.LENGTH_SHORT).show();
             }
         }, callbackHandler);
-
     }
 
     /**
@@ -385,7 +427,9 @@ public class MediaFileListFragment extends AbstractListFragment {
     private Runnable queueMediaQueueFileLocations = new Runnable() {
         @Override
         public void run() {
-            if (!mediaQueueFileLocation.isEmpty()) {
+            if (mediaQueueFileLocation.isEmpty() && (queueDirectory != null)) {
+                queueNextDirectoryPage();
+            } else if (!mediaQueueFileLocation.isEmpty()) {
                 final HostConnection connection = hostManager.getConnection();
                 PlaylistType.Item item = new PlaylistType.Item();
                 item.file = mediaQueueFileLocation.poll().file;
@@ -409,6 +453,46 @@ public class MediaFileListFragment extends AbstractListFragment {
         }
     };
 
+    /**
+     * Gets the next page of the files to queue for "Play from here", that weren't loaded on the
+     * list, and continues queueing with them
+     */
+    private void queueNextDirectoryPage() {
+        final FileLocation dir = queueDirectory;
+        Files.GetDirectoryPage action = new Files.GetDirectoryPage(
+                dir.file, mediaType, sortMethod,
+                new ListType.Limits(queueDirectoryOffset, queueDirectoryOffset + DIRECTORY_PAGE_SIZE),
+                ListType.FieldsFiles.FILE);
+        action.execute(hostManager.getConnection(), new ApiCallback<ApiList<ListType.ItemFileSummary>>() {
+            @Override
+            public void onSuccess(ApiList<ListType.ItemFileSummary> result) {
+                // Another "Play from here" replaced this one
+                if (dir != queueDirectory) return;
+
+                queueDirectoryOffset += result.items.size();
+                if (result.items.isEmpty() || (queueDirectoryOffset >= result.limits.total)) {
+                    queueDirectory = null;
+                }
+                for (ListType.ItemFileSummary item : result.items) {
+                    if (!ListType.ItemFile.FILETYPE_DIRECTORY.equals(item.filetype)) {
+                        mediaQueueFileLocation.add(new FileLocation(item.label, item.file, false));
+                    }
+                }
+                callbackHandler.post(queueMediaQueueFileLocations);
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                if (dir != queueDirectory) return;
+                queueDirectory = null;
+                if (!isAdded()) return;
+                Toast.makeText(getActivity(),
+                               String.format(getString(R.string.error_queue_media_file), description),
+                               Toast.LENGTH_SHORT).show();
+            }
+        }, callbackHandler);
+    }
+
     /**
      * Starts playing the given media file on the local device
      * @param filename Filename to start playing
@@ -580,6 +664,13 @@ public class MediaFileListFragment extends AbstractListFragment {
                                         return true;
                                     case R.id.action_play_from_this_item:
                                         mediaQueueFileLocation.clear();
+                                        // Files not loaded yet are queued after these ones
+                                        if (hasMoreDirectoryItems()) {
+                                            queueDirectory = currentDirectory;
+                                            queueDirectoryOffset = directoryLoadedItems;
+                                        } else {
+                                            queueDirectory = null;
+                                        }
                                         FileLocation fl;
                                         // start playing the selected one, then queue the rest
                                         for (int i = position + 1; i < fileLocationItems.size(); i++) {
@@ -626,6 +717,22 @@ public class MediaFileListFragment extends AbstractListFragment {
             notifyDataSetChanged();
         }
 
+        /**
+         * Adds items at the end of the list, for the next page of a directory
+         * Calls notifyItemRangeInserted()
+         *
+         * @param items list of files/directories
+         */
+        public void addFilelistItems(List<FileLocation> items) {
+            if (fileLocationItems == null) {
+                setFilelistItems(items);
+                return;
+            }
+            int start = fileLocationItems.size();
+            fileLocationItems.addAll(items);
+            notifyItemRangeInserted(start, items.size());
+        }
+
         public List<FileLocation> getFileItemList() {
             if (fileLocationItems == null)
                 return new ArrayList<>();
@@ -651,6 +758,11 @@ public class MediaFileListFragment extends AbstractListFragment {
         public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
             FileLocation fileLocation = this.getItem(position);
             ((ViewHolder) holder).bindView(fileLocation, position);
+
+            // Load the next page before the user gets to the end
+            if ((position >= getItemCount() - DIRECTORY_PAGE_SIZE / 4) && hasMoreDirectoryItems()) {
+                loadDirectoryPage();
+            }
         }
 
         @Override
@@ -749,7 +861,7 @@ public class MediaFileListFragment extends AbstractListFragment {
             this.artUrl = artUrl;
         }
 
-        public static FileLocation newInstanceFromItemFile(Context context, ListType.ItemFile itemFile) {
+        public static FileLocation newInstanceFromItemFile(Context context, ListType.ItemFileSummary itemFile) {
             String title, details, sizeDuration, artUrl;
 
             switch (itemFile.type) {
@@ -19,9 +19,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.wifi.WifiManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.text.Html;
 import android.text.method.LinkMovementMethod;
 import android.view.LayoutInflater;
@@ -34,21 +32,16 @@ import android.widget.GridView;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import androidx.fragment.app.Fragment;
 
 import org.xbmc.kore.R;
+import org.xbmc.kore.host.HostDiscovery;
 import org.xbmc.kore.host.HostInfo;
-import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.utils.LogUtils;
-import org.xbmc.kore.utils.NetUtils;
 
-import java.io.IOException;
-import java.net.InetAddress;
-
-import javax.jmdns.JmDNS;
-import javax.jmdns.ServiceInfo;
+import java.util.ArrayList;
+import java.util.List;
 
 import butterknife.ButterKnife;
 import butterknife.BindView;
@@ -60,14 +53,6 @@ import butterknife.Unbinder;
 public class AddHostFragmentZeroconf extends Fragment {
     private static final String TAG = LogUtils.makeLogTag(AddHostFragmentZeroconf.class);
 
-    // See http://sourceforge.net/p/xbmc/mailman/message/28667703/
-    // _xbmc-jsonrpc-http._tcp
-    // _xbmc-jsonrpc-h._tcp
-    // _xbmc-jsonrpc-tcp._tcp
-    // _xbmc-jsonrpc._tcp
-    private static final String MDNS_XBMC_SERVICENAME = "_xbmc-jsonrpc-h._tcp.local.";
-    private static final int DISCOVERY_TIMEOUT = 5000;
-
     /**
      * Callback interface to communicate with the enclosing activity
      */
@@ -118,12 +103,15 @@ public class AddHostFragmentZeroconf extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        if (hostDiscovery != null)
+            hostDiscovery.stop();
         unbinder.unbind();
     }
 
-    // Whether the user cancelled the search
-    private boolean searchCancelled = false;
-    private final Object lock = new Object();
+    // Single discovery, listening for hosts while the wizard is open
+    private HostDiscovery hostDiscovery;
+    private final List<HostInfo> hosts = new ArrayList<>();
+    private HostListAdapter adapter;
 
     /**
      * Starts the service discovery, setting up the UI accordingly
@@ -135,56 +123,6 @@ public class AddHostFragmentZeroconf extends Fragment {
         }
 
         LogUtils.LOGD(TAG, "Starting service discovery...");
-        searchCancelled = false;
-        final Handler handler = new Handler();
-        final Thread searchThread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                WifiManager wifiManager = (WifiManager)getActivity().getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-
-                WifiManager.MulticastLock multicastLock = null;
-                try {
-                    // Get wifi ip address
-                    int wifiIpAddress = wifiManager.getConnectionInfo().getIpAddress();
-                    InetAddress wifiInetAddress = NetUtils.intToInetAddress(wifiIpAddress);
-
-                    // Acquire multicast lock
-                    multicastLock = wifiManager.createMulticastLock("kore2.multicastlock");
-                    multicastLock.setReferenceCounted(false);
-                    multicastLock.acquire();
-
-                    JmDNS jmDns = (wifiInetAddress != null)?
-                                  JmDNS.create(wifiInetAddress) :
-                                  JmDNS.create();
-
-                    // Get the json rpc service list
-                    final ServiceInfo[] serviceInfos =
-                            jmDns.list(MDNS_XBMC_SERVICENAME, DISCOVERY_TIMEOUT);
-
-                    synchronized (lock) {
-                        // If the user didn't cancel the search, and we are sill in the activity
-                        if (!searchCancelled && isAdded()) {
-                            handler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    if ((serviceInfos == null) || (serviceInfos.length == 0)) {
-                                        noHostFound();
-                                    } else {
-                                        foundHosts(serviceInfos);
-                                    }
-                                }
-                            });
-                        }
-                    }
-                } catch (IOException e) {
-                    LogUtils.LOGD(TAG, "Got an IO Exception", e);
-                } finally {
-                    if (multicastLock != null)
-                        multicastLock.release();
-                }
-            }
-        });
-
         titleTextView.setText(R.string.searching);
         messageTextView.setText(Html.fromHtml(getString(R.string.wizard_search_message)));
         messageTextView.setMovementMethod(LinkMovementMethod.getInstance());
@@ -192,6 +130,16 @@ public class AddHostFragmentZeroconf extends Fragment {
         progressBar.setVisibility(View.VISIBLE);
         hostListGridView.setVisibility(View.GONE);
 
+        hosts.clear();
+        adapter = new HostListAdapter(getActivity(), R.layout.grid_item_host, hosts);
+        hostListGridView.setAdapter(adapter);
+        hostListGridView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long itemId) {
+                listener.onAddHostZeroconfFoundHost(hosts.get(position));
+            }
+        });
+
         // Setup buttons
         nextButton.setVisibility(View.INVISIBLE);
         previousButton.setVisibility(View.VISIBLE);
@@ -199,14 +147,48 @@ public class AddHostFragmentZeroconf extends Fragment {
         previousButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                synchronized (lock) {
-                    searchCancelled = true;
+                hostDiscovery.stop();
+                if (hosts.isEmpty()) {
                     noHostFound();
+                } else {
+                    progressBar.setVisibility(View.GONE);
                 }
             }
         });
 
-        searchThread.start();
+        if (hostDiscovery == null)
+            hostDiscovery = new HostDiscovery(getActivity());
+        hostDiscovery.start(new HostDiscovery.Listener() {
+            @Override
+            public void onHostFound(HostInfo hostInfo) {
+                if (!isAdded()) return;
+
+                // Replace a host with the same name, if its address changed
+                for (int i = 0; i < hosts.size(); i++) {
+                    if (hosts.get(i).getName().equals(hostInfo.getName())) {
+                        hosts.remove(i);
+                        break;
+                    }
+                }
+                hosts.add(hostInfo);
+                adapter.notifyDataSetChanged();
+                foundHosts();
+            }
+
+            @Override
+            public void onSavedHostUpdated(HostInfo hostInfo) { }
+
+            @Override
+            public void onDiscoveryFinished(int hostsFound) {
+                if (!isAdded()) return;
+
+                // Keep listening for hosts, but stop showing that we're searching
+                progressBar.setVisibility(View.GONE);
+                if (hosts.isEmpty()) {
+                    noHostFound();
+                }
+            }
+        }, true);
     }
 
     /**
@@ -242,13 +224,12 @@ public class AddHostFragmentZeroconf extends Fragment {
     }
 
     /**
-     * Found hosts, present them
-     * @param serviceInfos Service infos found
+     * Found hosts, present them. The list keeps being updated while the discovery runs
      */
-    public void foundHosts(final ServiceInfo[] serviceInfos) {
+    public void foundHosts() {
         if (!isAdded()) return;
 
-        LogUtils.LOGD(TAG, "Found hosts: " + serviceInfos.length);
+        LogUtils.LOGD(TAG, "Found hosts: " + hosts.size());
         titleTextView.setText(R.string.xbmc_found);
         messageTextView.setText(Html.fromHtml(getString(R.string.wizard_search_host_found)));
         messageTextView.setMovementMethod(LinkMovementMethod.getInstance());
@@ -271,33 +252,7 @@ public class AddHostFragmentZeroconf extends Fragment {
             }
         });
 
-        progressBar.setVisibility(View.GONE);
         hostListGridView.setVisibility(View.VISIBLE);
-
-        HostListAdapter adapter = new HostListAdapter(getActivity(), R.layout.grid_item_host, serviceInfos);
-        hostListGridView.setAdapter(adapter);
-        hostListGridView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long itemId) {
-                ServiceInfo selectedServiceInfo = serviceInfos[position];
-
-                String[] addresses = selectedServiceInfo.getHostAddresses();
-                if (addresses.length == 0) {
-                    // Couldn't get any address
-                    Toast.makeText(getActivity(), R.string.wizard_zeroconf_cant_connect_no_host_address, Toast.LENGTH_LONG)
-                            .show();
-                    return;
-                }
-                String hostName = selectedServiceInfo.getName();
-                String hostAddress = addresses[0];
-                int hostHttpPort = selectedServiceInfo.getPort();
-                HostInfo selectedHostInfo = new HostInfo(hostName, hostAddress, HostConnection.PROTOCOL_TCP,
-                        hostHttpPort, HostInfo.DEFAULT_TCP_PORT, null, null, true, HostInfo.DEFAULT_EVENT_SERVER_PORT, false, true);
-
-                listener.onAddHostZeroconfFoundHost(selectedHostInfo);
-            }
-        });
-
     }
 
     private void noNetworkConnection() {
@@ -331,8 +286,8 @@ public class AddHostFragmentZeroconf extends Fragment {
     /**
      * Adapter used to show the hosts in the {@link GridView}
      */
-    private class HostListAdapter extends ArrayAdapter<ServiceInfo> {
-        public HostListAdapter(Context context, int resource, ServiceInfo[] objects) {
+    private class HostListAdapter extends ArrayAdapter<HostInfo> {
+        public HostListAdapter(Context context, int resource, List<HostInfo> objects) {
             super(context, resource, objects);
         }
 
@@ -343,15 +298,9 @@ public class AddHostFragmentZeroconf extends Fragment {
                                             .inflate(R.layout.grid_item_host, parent, false);
             }
 
-            final ServiceInfo item = this.getItem(position);
+            final HostInfo item = this.getItem(position);
             ((TextView)convertView.findViewById(R.id.host_name)).setText(item.getName());
-            String[] addresses = item.getHostAddresses();
-            String hostAddress;
-            if (addresses.length > 0) {
-                hostAddress = addresses[0] + ":" + item.getPort();
-            } else {
-                hostAddress = getString(R.string.wizard_zeroconf_no_host_address);
-            }
+            String hostAddress = item.getAddress() + ":" + item.getHttpPort();
             ((TextView) convertView.findViewById(R.id.host_address)).setText(hostAddress);
 
             ImageView statusIndicator = (ImageView)convertView.findViewById(R.id.status_indicator);
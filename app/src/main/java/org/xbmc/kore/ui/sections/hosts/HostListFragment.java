@@ -20,7 +20,6 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Handler;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -41,11 +40,10 @@ import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.Fragment;
 
 import org.xbmc.kore.R;
+import org.xbmc.kore.host.HostDiscovery;
 import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
-import org.xbmc.kore.jsonrpc.ApiCallback;
-import org.xbmc.kore.jsonrpc.HostConnection;
-import org.xbmc.kore.jsonrpc.method.JSONRPC;
+import org.xbmc.kore.host.HostReachability;
 import org.xbmc.kore.ui.sections.remote.RemoteActivity;
 import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.UIUtils;
@@ -68,7 +66,13 @@ public class HostListFragment extends Fragment {
     private HostListAdapter adapter = null;
     private Context context;
     private Unbinder unbinder;
-    private Handler callbackHandler = new Handler();
+
+    /**
+     * Discovery used to find the new address of unreachable hosts
+     */
+    private HostDiscovery hostDiscovery;
+
+    private HostReachability hostReachability = HostReachability.getInstance();
 
     @BindView(R.id.list) GridView hostGridView;
     @BindView(R.id.action_add_host) Button addHostButton;
@@ -95,7 +99,9 @@ public class HostListFragment extends Fragment {
             if ((currentHost != null) && (hosts.get(i).getId() == currentHost.getId())) {
                 currentHostPosition = i;
             }
-            hostInfoRows.add(new HostInfoRow(hosts.get(i), HostInfoRow.HOST_STATUS_CONNECTING));
+            // Start with the last known status, so that the list doesn't flicker
+            hostInfoRows.add(new HostInfoRow(hosts.get(i),
+                                             toRowStatus(hostReachability.getStatus(hosts.get(i)))));
         }
 
         // Setup the adapter
@@ -151,15 +157,28 @@ public class HostListFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        // Launch check on each host
-        for (HostInfoRow hostInfoRow : hostInfoRows ) {
-            updateHostStatus(hostInfoRow);
+        // Launch check on the hosts whose status isn't current
+        hostReachability.registerListener(hostStatusListener);
+        ArrayList<HostInfo> hosts = new ArrayList<>(hostInfoRows.size());
+        boolean someUnavailable = false;
+        for (HostInfoRow hostInfoRow : hostInfoRows) {
+            hostInfoRow.status = toRowStatus(hostReachability.getStatus(hostInfoRow.hostInfo));
+            someUnavailable |= (hostInfoRow.status == HostInfoRow.HOST_STATUS_UNAVAILABLE);
+            hosts.add(hostInfoRow.hostInfo);
         }
+        if (adapter != null)
+            adapter.notifyDataSetChanged();
+        hostReachability.refresh(hosts, false);
+        if (someUnavailable)
+            resolveHostAddresses();
     }
 
     @Override
     public void onPause() {
         super.onPause();
+        hostReachability.unregisterListener(hostStatusListener);
+        if (hostDiscovery != null)
+            hostDiscovery.stop();
     }
 
     @Override
@@ -168,34 +187,77 @@ public class HostListFragment extends Fragment {
         unbinder.unbind();
     }
 
+    private HostReachability.StatusListener hostStatusListener = new HostReachability.StatusListener() {
+        @Override
+        public void onHostStatusChanged(HostInfo hostInfo, int status) {
+            for (int i = 0; i < hostInfoRows.size(); i++) {
+                HostInfoRow hostInfoRow = hostInfoRows.get(i);
+                if (hostInfoRow.hostInfo.getId() == hostInfo.getId()) {
+                    hostInfoRow.status = toRowStatus(status);
+                    updateRow(i);
+                }
+            }
+            if (status == HostReachability.STATUS_UNAVAILABLE)
+                resolveHostAddresses();
+        }
+    };
+
+    private static int toRowStatus(int reachabilityStatus) {
+        switch (reachabilityStatus) {
+            case HostReachability.STATUS_AVAILABLE:
+                return HostInfoRow.HOST_STATUS_AVAILABLE;
+            case HostReachability.STATUS_UNAVAILABLE:
+                return HostInfoRow.HOST_STATUS_UNAVAILABLE;
+            default:
+                return HostInfoRow.HOST_STATUS_CONNECTING;
+        }
+    }
+
     /**
-     * Pings the host to checks it status.
-     * <br/>
-     * Depending on whether it gets a response or not, updates {@link HostInfoRow} status, and
-     * notifies the adapter of the change
-     *
-     * @param hostInfoRow Host to check
+     * Rebinds the view of a row, if it is visible, instead of rebinding the whole grid
+     * @param position Position of the row
      */
-    private void updateHostStatus(final HostInfoRow hostInfoRow) {
-        final HostConnection hostConnection = new HostConnection(hostInfoRow.hostInfo);
-        JSONRPC.Ping ping = new JSONRPC.Ping();
-        ping.execute(hostConnection, new ApiCallback<String>() {
+    private void updateRow(int position) {
+        if ((adapter == null) || (hostGridView == null))
+            return;
+        View view = hostGridView.getChildAt(position - hostGridView.getFirstVisiblePosition());
+        if (view != null)
+            adapter.getView(position, view, hostGridView);
+    }
+
+    /**
+     * Listens for hosts through mDNS, to check if the unreachable hosts changed their address.
+     * {@link HostDiscovery} updates their address on the database, and we check them again
+     */
+    private void resolveHostAddresses() {
+        if (!isResumed())
+            return;
+
+        if (hostDiscovery == null)
+            hostDiscovery = new HostDiscovery(context);
+        else if (hostDiscovery.isRunning())
+            return;
+
+        hostDiscovery.start(new HostDiscovery.Listener() {
             @Override
-            public void onSuccess(String result) {
-                hostInfoRow.status = HostInfoRow.HOST_STATUS_AVAILABLE;
-                hostConnection.disconnect();
-                if (adapter != null)
-                    adapter.notifyDataSetChanged();
-            }
+            public void onHostFound(HostInfo hostInfo) { }
 
             @Override
-            public void onError(int errorCode, String description) {
-                hostInfoRow.status = HostInfoRow.HOST_STATUS_UNAVAILABLE;
-                hostConnection.disconnect();
-                if (adapter != null)
-                    adapter.notifyDataSetChanged();
+            public void onSavedHostUpdated(HostInfo hostInfo) {
+                for (int i = 0; i < hostInfoRows.size(); i++) {
+                    HostInfoRow hostInfoRow = hostInfoRows.get(i);
+                    if (hostInfoRow.hostInfo.getId() == hostInfo.getId()) {
+                        hostInfoRow.hostInfo = hostInfo;
+                        hostInfoRow.status = HostInfoRow.HOST_STATUS_CONNECTING;
+                        updateRow(i);
+                        hostReachability.refresh(hostInfo, true);
+                    }
+                }
             }
-        }, callbackHandler);
+
+            @Override
+            public void onDiscoveryFinished(int hostsFound) { }
+        }, false);
     }
 
     @Override
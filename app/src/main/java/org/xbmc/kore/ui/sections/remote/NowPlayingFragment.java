@@ -43,6 +43,7 @@ import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.jsonrpc.ApiCallback;
 import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.CommandCoalescer;
 import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.jsonrpc.method.Addons;
 import org.xbmc.kore.jsonrpc.method.Application;
@@ -195,8 +196,11 @@ public class NowPlayingFragment extends Fragment
         volumeLevelIndicator.setOnVolumeChangeListener(new VolumeLevelIndicator.OnVolumeChangeListener() {
             @Override
             public void onVolumeChanged(int volume) {
-                new Application.SetVolume(volume)
-                        .execute(hostManager.getConnection(), defaultIntActionCallback, callbackHandler);
+                CommandCoalescer commandCoalescer = hostManager.getCommandCoalescer();
+                if (commandCoalescer != null) {
+                    commandCoalescer.execute(CommandCoalescer.TARGET_VOLUME, new Application.SetVolume(volume),
+                                             defaultIntActionCallback);
+                }
             }
         });
 
@@ -205,8 +209,11 @@ public class NowPlayingFragment extends Fragment
         volumeLevelIndicator.setOnVolumeChangeListener(new VolumeLevelIndicator.OnVolumeChangeListener() {
             @Override
             public void onVolumeChanged(int volume) {
-                new Application.SetVolume(volume).execute(hostManager.getConnection(),
-                                                          defaultIntActionCallback, callbackHandler);
+                CommandCoalescer commandCoalescer = hostManager.getCommandCoalescer();
+                if (commandCoalescer != null) {
+                    commandCoalescer.execute(CommandCoalescer.TARGET_VOLUME, new Application.SetVolume(volume),
+                                             defaultIntActionCallback);
+                }
             }
         });
 
@@ -233,6 +240,7 @@ public class NowPlayingFragment extends Fragment
     @Override
     public void onResume() {
         super.onResume();
+        mediaProgressIndicator.setPlaybackClock(hostConnectionObserver.getPlaybackClock());
         hostConnectionObserver.registerPlayerObserver(this);
         hostConnectionObserver.registerApplicationObserver(this);
     }
@@ -631,7 +639,10 @@ public class NowPlayingFragment extends Fragment
     public void onProgressChanged(int progress) {
         PlayerType.PositionTime positionTime = new PlayerType.PositionTime(progress);
         Player.Seek seekAction = new Player.Seek(currentActivePlayerId, positionTime);
-        seekAction.execute(HostManager.getInstance(getContext()).getConnection(), new ApiCallback<PlayerType.SeekReturnType>() {
+        CommandCoalescer commandCoalescer = hostManager.getCommandCoalescer();
+        if (commandCoalescer == null)
+            return;
+        commandCoalescer.execute(CommandCoalescer.TARGET_SEEK, seekAction, new ApiCallback<PlayerType.SeekReturnType>() {
             @Override
             public void onSuccess(PlayerType.SeekReturnType result) {
                 // Ignore
@@ -641,7 +652,7 @@ public class NowPlayingFragment extends Fragment
             public void onError(int errorCode, String description) {
                 LogUtils.LOGD("MediaSeekBar", "Got an error calling Player.Seek. Error code: " + errorCode + ", description: " + description);
             }
-        }, callbackHandler);
+        });
 
 
     }
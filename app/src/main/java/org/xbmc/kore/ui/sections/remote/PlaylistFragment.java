@@ -43,6 +43,7 @@ import org.xbmc.kore.host.HostConnectionObserver.PlayerEventsObserver;
 import org.xbmc.kore.host.HostConnectionObserver.PlaylistEventsObserver;
 import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.host.PlaylistEditor;
 import org.xbmc.kore.host.actions.GetPlaylist;
 import org.xbmc.kore.jsonrpc.ApiCallback;
 import org.xbmc.kore.jsonrpc.ApiMethod;
@@ -89,6 +90,11 @@ public class PlaylistFragment extends Fragment
      */
     private Handler callbackHandler = new Handler();
 
+    /**
+     * Queues the playlist edits and sends them to Kodi in batches
+     */
+    private PlaylistEditor playlistEditor;
+
     /**
      * Playlist adapter
      */
@@ -130,6 +136,8 @@ public class PlaylistFragment extends Fragment
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         hostManager = HostManager.getInstance(getActivity());
+        playlistEditor = new PlaylistEditor(hostManager, callbackHandler);
+        playlistEditor.setListener(playlistEditorListener);
         hostConnectionObserver = hostManager.getHostConnectionObserver();
     }
 
@@ -252,6 +260,20 @@ public class PlaylistFragment extends Fragment
                 }, callbackHandler);
     }
 
+    private PlaylistEditor.Listener playlistEditorListener = new PlaylistEditor.Listener() {
+        @Override
+        public void onEditsApplied() { }
+
+        @Override
+        public void onEditsFailed(int errorCode, String description) {
+            if (!isAdded()) return;
+            Toast.makeText(getActivity(), R.string.unable_to_move_item, Toast.LENGTH_SHORT)
+                 .show();
+            // Reload the playlists, as the local ones no longer match Kodi's
+            refreshPlaylist(new GetPlaylist(hostManager.getConnection()));
+        }
+    };
+
     /**
      * Default callback for methods that don't return anything
      */
@@ -515,8 +537,8 @@ public class PlaylistFragment extends Fragment
                             case R.id.action_remove_playlist_item:
                                 // Remove this item from the playlist
                                 int playlistId = playlists.get(playlistsBar.getSelectedPlaylistType()).getPlaylistId();
-                                Playlist.Remove action = new Playlist.Remove(playlistId, position);
-                                action.execute(hostManager.getConnection(), defaultStringActionCallback, callbackHandler);
+                                playlistEditor.remove(playlistId, position);
+                                playlistEditor.commit();
                                 return true;
                         }
                         return false;
@@ -606,50 +628,14 @@ public class PlaylistFragment extends Fragment
 
         @Override
         public void onSwapFinished(final int originalPosition, final int finalPosition) {
-            final HostConnection hostConnection = hostManager.getConnection();
-
-            if (playlistItems.get(finalPosition).id == lastGetItemResult.id) {
-                Toast.makeText(getActivity(), R.string.cannot_move_playing_item, Toast.LENGTH_SHORT)
-                     .show();
-                rollbackSwappedItems(originalPosition, finalPosition);
-                notifyDataSetChanged();
-                return;
-            }
-
             final int playlistId = playlists.get(playlistsBar.getSelectedPlaylistType()).getPlaylistId();
-            Playlist.Remove remove = new Playlist.Remove(playlistId, originalPosition);
-            remove.execute(hostConnection, new ApiCallback<String>() {
-                @Override
-                public void onSuccess(String result) {
-                    Playlist.Insert insert = new Playlist.Insert(playlistId, finalPosition, createPlaylistTypeItem(playlistItems.get(finalPosition)));
-                    insert.execute(hostConnection, new ApiCallback<String>() {
-                        @Override
-                        public void onSuccess(String result) {
-                        }
+            ListType.ItemsAll movedItem = playlistItems.get(finalPosition);
 
-                        @Override
-                        public void onError(int errorCode, String description) {
-                            //Remove succeeded but insert failed, so we need to remove item from playlist at final position
-                            playlistItems.remove(finalPosition);
-                            notifyDataSetChanged();
-                            if (!isAdded()) return;
-                            // Got an error, show toast
-                            Toast.makeText(getActivity(), R.string.unable_to_move_item, Toast.LENGTH_SHORT)
-                                 .show();
-                        }
-                    }, callbackHandler);
-                }
-
-                @Override
-                public void onError(int errorCode, String description) {
-                    rollbackSwappedItems(originalPosition, finalPosition);
-                    notifyDataSetChanged();
-                    if (!isAdded()) return;
-                    // Got an error, show toast
-                    Toast.makeText(getActivity(), R.string.unable_to_move_item, Toast.LENGTH_SHORT)
-                         .show();
-                }
-            }, callbackHandler);
+            // The playing item can't be removed and inserted back, so let the editor swap it
+            boolean isPlaying = (lastGetItemResult != null) && (movedItem.id == lastGetItemResult.id);
+            playlistEditor.move(playlistId, originalPosition, finalPosition,
+                                isPlaying ? null : createPlaylistTypeItem(movedItem));
+            playlistEditor.commit();
         }
 
         @Override
@@ -770,25 +756,14 @@ public class PlaylistFragment extends Fragment
                     playlistItem.musicvideoid = item.id;
                     break;
                 default:
-                    LogUtils.LOGE(TAG, "createPlaylistTypeItem, failed to create item for "+item.type);
-                    break;
+                    // Not a library item, can only be moved through swaps
+                    LogUtils.LOGD(TAG, "createPlaylistTypeItem, can't create item for " + item.type);
+                    return null;
             }
 
             return playlistItem;
         }
 
-        private void rollbackSwappedItems(int originalPosition, int newPosition) {
-            if (originalPosition > newPosition) {
-                for (int i = newPosition; i < originalPosition; i++) {
-                    onSwapItems(i, i + 1);
-                }
-            } else if (originalPosition < newPosition) {
-                for (int i = newPosition; i > originalPosition; i--) {
-                    onSwapItems(i, i - 1);
-                }
-            }
-        }
-
         private class ViewHolder {
             ImageView art;
             TextView title;
@@ -53,6 +53,7 @@ import org.xbmc.kore.jsonrpc.type.ListType;
 import org.xbmc.kore.jsonrpc.type.PlayerType;
 import org.xbmc.kore.jsonrpc.type.PlaylistType;
 import org.xbmc.kore.service.ConnectionObserversManagerService;
+import org.xbmc.kore.service.library.SyncScheduler;
 import org.xbmc.kore.ui.BaseActivity;
 import org.xbmc.kore.ui.generic.NavigationDrawerFragment;
 import org.xbmc.kore.ui.generic.SendTextDialogFragment;
@@ -61,6 +62,7 @@ import org.xbmc.kore.ui.sections.hosts.AddHostActivity;
 import org.xbmc.kore.ui.sections.localfile.HttpApp;
 import org.xbmc.kore.ui.views.CirclePageIndicator;
 import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.StartupTrace;
 import org.xbmc.kore.utils.TabsAdapter;
 import org.xbmc.kore.utils.UIUtils;
 import org.xbmc.kore.utils.Utils;
@@ -117,11 +119,16 @@ public class RemoteActivity extends BaseActivity
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        StartupTrace startupTrace = StartupTrace.getInstance();
+        StartupTrace.Span span = startupTrace.begin("Set default preferences");
         // Set default values for the preferences
         PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
+        span.end();
 
+        span = startupTrace.begin("Inflate remote layout");
         setContentView(R.layout.activity_remote);
         ButterKnife.bind(this);
+        span.end();
 
         hostManager = HostManager.getInstance(this);
 
@@ -155,8 +162,22 @@ public class RemoteActivity extends BaseActivity
 
         setupActionBar();
 
-        // Periodic Check of Kodi version
-        hostManager.checkAndUpdateKodiVersion();
+        // Whatever isn't needed to show the remote waits until it's shown
+        startupTrace.runAfterFirstFrame(this, new Runnable() {
+            @Override
+            public void run() {
+                if (isFinishing())
+                    return;
+                StartupTrace.Span span = StartupTrace.getInstance().begin("Schedule background sync");
+                SyncScheduler.getInstance(RemoteActivity.this).updateBackgroundSync();
+                span.end();
+
+                // Periodic Check of Kodi version
+                span = StartupTrace.getInstance().begin("Check Kodi version");
+                hostManager.checkAndUpdateKodiVersion();
+                span.end();
+            }
+        });
 
         // If we should start playing something
 
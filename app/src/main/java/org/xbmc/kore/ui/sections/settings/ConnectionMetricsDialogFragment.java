@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.ui.sections.settings;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
+import androidx.fragment.app.DialogFragment;
+
+import org.xbmc.kore.R;
+import org.xbmc.kore.jsonrpc.ConnectionMetrics;
+import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.StartupTrace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Debug dialog that shows the {@link StartupTrace} and {@link ConnectionMetrics} reports, and
+ * allows exporting them to a file
+ */
+public class ConnectionMetricsDialogFragment
+        extends DialogFragment {
+    private static final String TAG = LogUtils.makeLogTag(ConnectionMetricsDialogFragment.class);
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        final Activity activity = getActivity();
+        final ConnectionMetrics metrics = ConnectionMetrics.getInstance();
+        final String report = StartupTrace.getInstance().getReport() + "\n" + metrics.getReport();
+
+        int padding = getResources().getDimensionPixelSize(R.dimen.default_padding);
+        TextView reportView = new TextView(activity);
+        reportView.setTypeface(Typeface.MONOSPACE);
+        reportView.setTextIsSelectable(true);
+        reportView.setPadding(padding, padding, padding, padding);
+        reportView.setText(report);
+        ScrollView mainView = new ScrollView(activity);
+        mainView.addView(reportView);
+
+        return new AlertDialog.Builder(activity)
+                .setTitle(R.string.connection_metrics)
+                .setView(mainView)
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton(R.string.export, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        exportReport(activity, report);
+                    }
+                })
+                .setNegativeButton(R.string.reset, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        metrics.reset();
+                    }
+                })
+                .create();
+    }
+
+    private static void exportReport(Activity activity, String report) {
+        File directory = activity.getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(activity, R.string.connection_metrics_export_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "connection-metrics-" + timestamp + ".txt");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(report.getBytes("UTF-8"));
+            Toast.makeText(activity, activity.getString(R.string.connection_metrics_exported, file.getPath()),
+                           Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            LogUtils.LOGW(TAG, "Couldn't export connection metrics", e);
+            Toast.makeText(activity, R.string.connection_metrics_export_failed, Toast.LENGTH_SHORT).show();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) { }
+            }
+        }
+    }
+}
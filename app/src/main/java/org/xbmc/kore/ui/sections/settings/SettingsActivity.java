@@ -28,6 +28,7 @@ import androidx.fragment.app.FragmentManager;
 import org.xbmc.kore.R;
 import org.xbmc.kore.Settings;
 import org.xbmc.kore.utils.LogUtils;
+import org.xbmc.kore.utils.StartupTrace;
 import org.xbmc.kore.utils.UIUtils;
 import org.xbmc.kore.utils.Utils;
 
@@ -46,6 +47,7 @@ public class SettingsActivity extends AppCompatActivity {
         Utils.setPreferredLocale(this);
 
         super.onCreate(savedInstanceState);
+        StartupTrace.getInstance().activityCreated();
 
         setContentView(R.layout.activity_settings);
 
@@ -40,6 +40,7 @@ import org.xbmc.kore.R;
 import org.xbmc.kore.Settings;
 import org.xbmc.kore.host.HostManager;
 import org.xbmc.kore.service.ConnectionObserversManagerService;
+import org.xbmc.kore.service.library.SyncScheduler;
 import org.xbmc.kore.ui.sections.remote.RemoteActivity;
 import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.UIUtils;
@@ -171,6 +172,10 @@ public class SettingsFragment extends PreferenceFragmentCompat
             }
         }
 
+        if (key.equals(Settings.KEY_PREF_BACKGROUND_SYNC)) {
+            SyncScheduler.getInstance(getActivity()).updateBackgroundSync();
+        }
+
         // If one of the settings that use the observer service are modified, restart it
         if (key.equals(Settings.KEY_PREF_SHOW_NOTIFICATION) || key.equals(Settings.KEY_PREF_PAUSE_DURING_CALLS)) {
             LogUtils.LOGD(TAG, "Stoping connection observer service");
@@ -236,6 +241,26 @@ public class SettingsFragment extends PreferenceFragmentCompat
                 return true;
             }
         });
+
+        // Connection metrics
+        findPreference(Settings.KEY_PREF_CONNECTION_METRICS)
+                .setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                    @Override
+                    public boolean onPreferenceClick(Preference preference) {
+                        new ConnectionMetricsDialogFragment().show(getFragmentManager(), null);
+                        return true;
+                    }
+                });
+
+        // Library sync reports
+        findPreference(Settings.KEY_PREF_SYNC_REPORTS)
+                .setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                    @Override
+                    public boolean onPreferenceClick(Preference preference) {
+                        new SyncReportsDialogFragment().show(getFragmentManager(), null);
+                        return true;
+                    }
+                });
     }
 
     private void setupLanguagePreference(final ListPreference languagePref) {
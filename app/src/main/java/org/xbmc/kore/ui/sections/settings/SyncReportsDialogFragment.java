@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.ui.sections.settings;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.database.Cursor;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.provider.BaseColumns;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
+import androidx.fragment.app.DialogFragment;
+
+import org.xbmc.kore.R;
+import org.xbmc.kore.provider.MediaContract;
+
+/**
+ * Debug dialog that shows the reports of the last library syncs, saved by
+ * {@link org.xbmc.kore.service.library.SyncTracer}
+ */
+public class SyncReportsDialogFragment
+        extends DialogFragment {
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        Activity activity = getActivity();
+
+        StringBuilder reports = new StringBuilder();
+        Cursor cursor = activity.getContentResolver()
+                                .query(MediaContract.SyncReports.CONTENT_URI,
+                                       new String[] {MediaContract.SyncReports.REPORT},
+                                       null, null, BaseColumns._ID + " DESC");
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                reports.append(cursor.getString(0)).append('\n');
+            }
+            cursor.close();
+        }
+
+        int padding = getResources().getDimensionPixelSize(R.dimen.default_padding);
+        TextView reportView = new TextView(activity);
+        reportView.setTypeface(Typeface.MONOSPACE);
+        reportView.setTextIsSelectable(true);
+        reportView.setPadding(padding, padding, padding, padding);
+        reportView.setText((reports.length() > 0) ? reports : getString(R.string.no_sync_reports));
+        ScrollView mainView = new ScrollView(activity);
+        mainView.addView(reportView);
+
+        return new AlertDialog.Builder(activity)
+                .setTitle(R.string.sync_reports)
+                .setView(mainView)
+                .setPositiveButton(android.R.string.ok, null)
+                .create();
+    }
+}
@@ -32,13 +32,13 @@ import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 
 import org.xbmc.kore.R;
-import org.xbmc.kore.Settings;
 import org.xbmc.kore.jsonrpc.ApiCallback;
 import org.xbmc.kore.jsonrpc.event.MediaSyncEvent;
 import org.xbmc.kore.jsonrpc.method.Playlist;
 import org.xbmc.kore.jsonrpc.method.VideoLibrary;
 import org.xbmc.kore.jsonrpc.type.PlaylistType;
 import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.service.library.ItemRevalidator;
 import org.xbmc.kore.service.library.LibrarySyncService;
 import org.xbmc.kore.ui.AbstractAdditionalInfoFragment;
 import org.xbmc.kore.ui.AbstractInfoFragment;
@@ -67,9 +67,6 @@ public class MovieInfoFragment extends AbstractInfoFragment
      */
     private Handler callbackHandler = new Handler();
 
-    // Controls whether a automatic sync refresh has been issued for this show
-    private static boolean hasIssuedOutdatedRefresh = false;
-
     private Cursor cursor;
     private FileDownloadHelper.MovieInfo movieDownloadInfo;
 
@@ -90,6 +87,16 @@ public class MovieInfoFragment extends AbstractInfoFragment
         return refreshItem;
     }
 
+    @Override
+    protected ItemRevalidator.Item<?> createRevalidationItem() {
+        return ItemRevalidator.movie(getHostInfo().getId(), getDataHolder().getId());
+    }
+
+    @Override
+    protected void onItemRevalidated() {
+        getLoaderManager().restartLoader(LOADER_MOVIE, null, this);
+    }
+
     @Override
     protected boolean setupMediaActionBar() {
         setOnDownloadListener(new View.OnClickListener() {
@@ -264,8 +271,6 @@ public class MovieInfoFragment extends AbstractInfoFragment
     public void onActivityCreated (Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
 
-        hasIssuedOutdatedRefresh = false;
-
         // Start the loaders
         getLoaderManager().initLoader(LOADER_MOVIE, null, this);
     }
@@ -329,7 +334,6 @@ public class MovieInfoFragment extends AbstractInfoFragment
                     setDownloadButtonState(movieDownloadInfo.downloadDirectoryExists());
                     setSeenButtonState(cursor.getInt(MovieDetailsQuery.PLAYCOUNT) > 0);
                     updateView(dataHolder);
-                    checkOutdatedMovieDetails(cursor);
                     break;
             }
         }
@@ -351,26 +355,6 @@ public class MovieInfoFragment extends AbstractInfoFragment
         return castFragment;
     }
 
-    /**
-     * Checks wether we should refresh the movie details with the info on XBMC
-     * The details will be updated if the last update is older than what is configured in the
-     * settings
-     *
-     * @param cursor Cursor with the data
-     */
-    private void checkOutdatedMovieDetails(Cursor cursor) {
-        if (hasIssuedOutdatedRefresh)
-            return;
-
-        long lastUpdated = cursor.getLong(MovieDetailsQuery.UPDATED);
-
-        if (System.currentTimeMillis() > lastUpdated + Settings.DB_UPDATE_INTERVAL) {
-            // Trigger a silent refresh
-            hasIssuedOutdatedRefresh = true;
-            getRefreshItem().startSync(true);
-        }
-    }
-
     /**
      * Movie details query parameters.
      */
@@ -15,6 +15,7 @@
  */
 package org.xbmc.kore.ui.sections.video;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
@@ -22,6 +23,7 @@ import android.content.res.TypedArray;
 import android.database.Cursor;
 import android.graphics.PorterDuff;
 import android.net.Uri;
+import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
@@ -45,13 +47,16 @@ import org.xbmc.kore.provider.MediaDatabase;
 import org.xbmc.kore.service.library.LibrarySyncService;
 import org.xbmc.kore.ui.AbstractCursorListFragment;
 import org.xbmc.kore.ui.AbstractFragment;
+import org.xbmc.kore.ui.PrefetchScheduler;
 import org.xbmc.kore.ui.RecyclerViewCursorAdapter;
+import org.xbmc.kore.ui.generic.CastFragment;
 import org.xbmc.kore.ui.views.RatingBar;
 import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.UIUtils;
 import org.xbmc.kore.utils.Utils;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Fragment that presents the movie list
@@ -134,6 +139,69 @@ public class MovieListFragment extends AbstractCursorListFragment {
                                 MovieListQuery.PROJECTION, selection.toString(), selectionArgs, sortOrderStr);
     }
 
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // The cached library is shown right away, check if it changed on the host
+        refreshIfChanged();
+    }
+
+    @Override
+    protected PrefetchScheduler<?> createPrefetchScheduler() {
+        HostInfo hostInfo = HostManager.getInstance(getActivity()).getHostInfo();
+        if (hostInfo == null)
+            return null;
+
+        final int hostId = hostInfo.getId();
+        final ContentResolver contentResolver = getActivity().getContentResolver();
+        final int[] posterSize = UIUtils.getInfoPosterSize(getActivity(), false);
+        final int[] artSize = UIUtils.getInfoArtSize(getActivity());
+        Resources resources = getResources();
+        int castColumns = resources.getInteger(R.integer.cast_grid_view_columns);
+        final int maxCastPictures = castColumns * resources.getInteger(R.integer.cast_grid_view_rows);
+        final int[] castSize = UIUtils.getCastImageSize(getActivity(), castColumns);
+
+        return new PrefetchScheduler<>(getActivity(), new PrefetchScheduler.Source<Integer>() {
+            @Override
+            public Integer getItem(int position) {
+                Cursor cursor = ((RecyclerViewCursorAdapter) getAdapter()).getCursor(position);
+                return (cursor == null) ? null : cursor.getInt(MovieListQuery.MOVIEID);
+            }
+
+            @Override
+            public void addImages(Integer movieId, List<PrefetchScheduler.Image> images) {
+                Cursor cursor = contentResolver.query(MediaContract.Movies.buildMovieUri(hostId, movieId),
+                                                      MoviePrefetchQuery.PROJECTION, null, null, null);
+                if (cursor == null)
+                    return;
+                try {
+                    if (!cursor.moveToFirst())
+                        return;
+                    String poster = cursor.getString(MoviePrefetchQuery.THUMBNAIL);
+                    String fanart = cursor.getString(MoviePrefetchQuery.FANART);
+                    images.add(new PrefetchScheduler.Image(poster, posterSize[0], posterSize[1]));
+                    images.add(new PrefetchScheduler.Image(TextUtils.isEmpty(fanart) ? poster : fanart,
+                                                           artSize[0], artSize[1]));
+                } finally {
+                    cursor.close();
+                }
+
+                cursor = contentResolver.query(MediaContract.MovieCast.buildMovieCastListUri(hostId, movieId),
+                                               new String[] {MediaContract.MovieCast.THUMBNAIL},
+                                               null, null, CastFragment.MovieCastListQuery.SORT);
+                if (cursor == null)
+                    return;
+                try {
+                    while (cursor.moveToNext() && (cursor.getPosition() < maxCastPictures)) {
+                        images.add(new PrefetchScheduler.Image(cursor.getString(0), castSize[0], castSize[1]));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
     @Override
     public void onAttach(Context ctx) {
         super.onAttach(ctx);
@@ -325,6 +393,21 @@ public class MovieListFragment extends AbstractCursorListFragment {
         int PLAYCOUNT = 9;
     }
 
+    /**
+     * Movie details prefetched for the info screen
+     */
+    private interface MoviePrefetchQuery {
+        String[] PROJECTION = {
+                BaseColumns._ID,
+                MediaContract.Movies.THUMBNAIL,
+                MediaContract.Movies.FANART,
+                };
+
+        int ID = 0;
+        int THUMBNAIL = 1;
+        int FANART = 2;
+    }
+
     private class MoviesAdapter extends RecyclerViewCursorAdapter {
 
         private HostManager hostManager;
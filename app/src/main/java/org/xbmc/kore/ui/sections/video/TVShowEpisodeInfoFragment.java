@@ -36,6 +36,7 @@ import org.xbmc.kore.jsonrpc.event.MediaSyncEvent;
 import org.xbmc.kore.jsonrpc.method.VideoLibrary;
 import org.xbmc.kore.jsonrpc.type.PlaylistType;
 import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.service.library.ItemRevalidator;
 import org.xbmc.kore.service.library.LibrarySyncService;
 import org.xbmc.kore.ui.AbstractAdditionalInfoFragment;
 import org.xbmc.kore.ui.AbstractInfoFragment;
@@ -92,6 +93,16 @@ public class TVShowEpisodeInfoFragment extends AbstractInfoFragment
         return refreshItem;
     }
 
+    @Override
+    protected ItemRevalidator.Item<?> createRevalidationItem() {
+        return ItemRevalidator.episode(getHostInfo().getId(), tvshowId, getDataHolder().getId());
+    }
+
+    @Override
+    protected void onItemRevalidated() {
+        getLoaderManager().restartLoader(LOADER_EPISODE, null, this);
+    }
+
     @Override
     protected boolean setupMediaActionBar() {
         setOnDownloadListener(new View.OnClickListener() {
@@ -47,11 +47,14 @@ import org.xbmc.kore.provider.MediaContract;
 import org.xbmc.kore.service.library.LibrarySyncService;
 import org.xbmc.kore.ui.AbstractCursorListFragment;
 import org.xbmc.kore.ui.AbstractFragment;
+import org.xbmc.kore.ui.PrefetchScheduler;
 import org.xbmc.kore.ui.RecyclerViewCursorAdapter;
 import org.xbmc.kore.utils.LogUtils;
 import org.xbmc.kore.utils.MediaPlayerUtils;
 import org.xbmc.kore.utils.UIUtils;
 
+import java.util.List;
+
 /**
  * Presents a list of episodes for a TV show season
  */
@@ -139,6 +142,27 @@ public class TVShowEpisodeListFragment extends AbstractCursorListFragment {
                                 EpisodesListQuery.PROJECTION, selection.toString(), null, EpisodesListQuery.SORT);
     }
 
+    @Override
+    protected PrefetchScheduler<?> createPrefetchScheduler() {
+        final int[] posterSize = UIUtils.getInfoPosterSize(getActivity(), false);
+        final int[] artSize = UIUtils.getInfoArtSize(getActivity());
+
+        return new PrefetchScheduler<>(getActivity(), new PrefetchScheduler.Source<String>() {
+            @Override
+            public String getItem(int position) {
+                Cursor cursor = ((RecyclerViewCursorAdapter) getAdapter()).getCursor(position);
+                return (cursor == null) ? null : cursor.getString(EpisodesListQuery.THUMBNAIL);
+            }
+
+            @Override
+            public void addImages(String thumbnail, List<PrefetchScheduler.Image> images) {
+                // Episodes have no fanart, the info screen shows the thumbnail on both
+                images.add(new PrefetchScheduler.Image(thumbnail, posterSize[0], posterSize[1]));
+                images.add(new PrefetchScheduler.Image(thumbnail, artSize[0], artSize[1]));
+            }
+        });
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -22,6 +22,7 @@ import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
@@ -132,6 +133,13 @@ public class TVShowListFragment extends AbstractCursorListFragment {
                                 selectionArgs, sortOrderStr);
     }
 
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // The cached library is shown right away, check if it changed on the host
+        refreshIfChanged();
+    }
+
     @Override
     public void onAttach(Context ctx) {
         super.onAttach(ctx);
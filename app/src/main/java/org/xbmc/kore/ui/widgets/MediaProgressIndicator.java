@@ -28,6 +28,7 @@ import android.widget.SeekBar;
 import android.widget.TextView;
 
 import org.xbmc.kore.R;
+import org.xbmc.kore.host.PlaybackClock;
 import org.xbmc.kore.utils.UIUtils;
 
 import butterknife.ButterKnife;
@@ -46,6 +47,7 @@ public class MediaProgressIndicator extends LinearLayout {
     private int progress;
     private static final int SEEK_BAR_UPDATE_INTERVAL = 1000; // ms
     private int progressIncrement;
+    private PlaybackClock playbackClock;
 
     private OnProgressChangeListener onProgressChangeListener;
 
@@ -95,6 +97,10 @@ public class MediaProgressIndicator extends LinearLayout {
                 if (onProgressChangeListener != null)
                     onProgressChangeListener.onProgressChanged(seekBar.getProgress());
 
+                // Move the clock right away, we won't get notified of the seek through HTTP
+                if ((playbackClock != null) && playbackClock.isActive())
+                    playbackClock.seekToSeconds(seekBar.getProgress());
+
                 if (speed > 0)
                     seekBar.postDelayed(seekBarUpdater, SEEK_BAR_UPDATE_INTERVAL);
             }
@@ -141,7 +147,11 @@ public class MediaProgressIndicator extends LinearLayout {
                 return;
             }
 
-            progress += progressIncrement;
+            if ((playbackClock != null) && playbackClock.isRunning()) {
+                progress = playbackClock.getPosition();
+            } else {
+                progress += progressIncrement;
+            }
             setProgress(progress);
 
             seekBar.postDelayed(this, SEEK_BAR_UPDATE_INTERVAL);
@@ -152,6 +162,16 @@ public class MediaProgressIndicator extends LinearLayout {
         this.onProgressChangeListener = onProgressChangeListener;
     }
 
+    /**
+     * Sets the playback clock from which the progress is read while playing. If not set, the
+     * progress is extrapolated locally from the last progress set and the speed
+     * @param playbackClock Playback clock, usually the one from
+     *                      {@link org.xbmc.kore.host.HostConnectionObserver#getPlaybackClock()}
+     */
+    public void setPlaybackClock(PlaybackClock playbackClock) {
+        this.playbackClock = playbackClock;
+    }
+
     public void setProgress(int progress) {
         this.progress = progress;
         seekBar.setProgress(progress);
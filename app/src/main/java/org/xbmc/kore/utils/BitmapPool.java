@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.utils;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Pool of bitmaps to decode images into, so that decoding doesn't allocate a new bitmap each
+ * time, which on the remote screens causes GC pauses.
+ * <p>
+ * Only bitmaps that aren't referenced anywhere else can be put on the pool, such as the ones
+ * decoded before being resized. Bitmaps are only reused from KitKat on, where any mutable bitmap
+ * large enough can be decoded into.
+ */
+public class BitmapPool {
+    private static final String TAG = LogUtils.makeLogTag(BitmapPool.class);
+
+    private final long maxBytes;
+    private long bytes = 0;
+    // Least recently added first
+    private final LinkedList<Bitmap> bitmaps = new LinkedList<>();
+
+    /**
+     * Constructor
+     * @param maxBytes Maximum size of the bitmaps kept
+     */
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Whether bitmaps can be reused on this device
+     */
+    public static boolean isSupported() {
+        return Utils.isKitKatOrLater();
+    }
+
+    /**
+     * Takes the smallest bitmap on the pool that can hold an image of the given size
+     * @param width Width of the image
+     * @param height Height of the image
+     * @param config Config of the image
+     * @return Bitmap to decode into, or null if there's none suitable
+     */
+    @TargetApi(19)
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        if (!isSupported())
+            return null;
+
+        long requiredBytes = (long) width * height * getBytesPerPixel(config);
+        Bitmap best = null;
+        for (Bitmap bitmap : bitmaps) {
+            if ((bitmap.getConfig() == config) &&
+                (bitmap.getAllocationByteCount() >= requiredBytes) &&
+                ((best == null) || (bitmap.getAllocationByteCount() < best.getAllocationByteCount()))) {
+                best = bitmap;
+            }
+        }
+        if (best != null) {
+            bitmaps.remove(best);
+            bytes -= best.getAllocationByteCount();
+        }
+        return best;
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must not use it afterwards
+     * @param bitmap Bitmap
+     */
+    @TargetApi(19)
+    public synchronized void put(Bitmap bitmap) {
+        if (!isSupported() || !bitmap.isMutable() || bitmap.isRecycled() ||
+            (bitmap.getAllocationByteCount() > maxBytes)) {
+            bitmap.recycle();
+            return;
+        }
+
+        bitmaps.add(bitmap);
+        bytes += bitmap.getAllocationByteCount();
+        Iterator<Bitmap> iterator = bitmaps.iterator();
+        while ((bytes > maxBytes) && iterator.hasNext()) {
+            Bitmap evicted = iterator.next();
+            iterator.remove();
+            bytes -= evicted.getAllocationByteCount();
+            evicted.recycle();
+        }
+    }
+
+    /**
+     * Empties the pool
+     */
+    public synchronized void clear() {
+        LogUtils.LOGD(TAG, "Clearing " + bitmaps.size() + " bitmaps");
+        for (Bitmap bitmap : bitmaps) {
+            bitmap.recycle();
+        }
+        bitmaps.clear();
+        bytes = 0;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if ((config == Bitmap.Config.RGB_565) || (config == Bitmap.Config.ARGB_4444)) {
+            return 2;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,743 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.ApiException;
+import org.xbmc.kore.jsonrpc.BatchResult;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.HostTransport;
+import org.xbmc.kore.jsonrpc.method.Files;
+import org.xbmc.kore.jsonrpc.type.ListType;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads files from Kodi hosts.
+ * <p>
+ * Downloads are queued per host, and at most {@link #MAX_PARALLEL_DOWNLOADS_PER_HOST} run at
+ * the same time on each one, so that downloading a whole artist doesn't saturate Kodi's web
+ * server, and at most {@link #MAX_DOWNLOAD_THREADS} on all of them. Each file is written to a partial file next to its destination, and if the transfer
+ * is interrupted it is resumed with an HTTP range request, on a retry or when the same file is
+ * requested again. The download URLs of the files queued on a host are resolved together,
+ * when the first of them starts.
+ * <p>
+ * Files that are already present on their destination with the same size are not downloaded
+ * again, unless they are to be overwritten. Their sizes on Kodi are checked together, before
+ * resolving any URL, so that they're skipped without a request each. A file that is already
+ * queued isn't queued twice.
+ * <p>
+ * Cancelled downloads stop before each step (size check, URL resolution, transfer and retry),
+ * not only while reading. Aggregate progress and throughput of all the downloads since the engine was last idle
+ * is reported to the {@link Listener}.
+ */
+public class DownloadEngine {
+    private static final String TAG = LogUtils.makeLogTag(DownloadEngine.class);
+
+    public static final int MAX_PARALLEL_DOWNLOADS_PER_HOST = 2;
+    /**
+     * Maximum number of downloads running at the same time, on all the hosts
+     */
+    static final int MAX_DOWNLOAD_THREADS = 4;
+    /**
+     * Time after which an idle download thread is stopped, in seconds
+     */
+    private static final long THREAD_KEEP_ALIVE = 30;
+
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_DELAY = 2000; // ms, multiplied by the attempt number
+    private static final int CONNECT_TIMEOUT = 10000; // ms
+    private static final long RESOLVE_TIMEOUT = 30000; // ms
+    private static final int MAX_URLS_PER_RESOLVE = 100;
+    private static final long PROGRESS_INTERVAL = 1000; // ms
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final String PARTIAL_FILE_SUFFIX = ".part";
+
+    public static final int STATUS_QUEUED = 0,
+            STATUS_RUNNING = 1,
+            STATUS_COMPLETED = 2,
+            STATUS_SKIPPED = 3,
+            STATUS_FAILED = 4,
+            STATUS_CANCELLED = 5;
+
+    /**
+     * Resolves the URLs from which to download files
+     */
+    public interface UrlResolver {
+        /**
+         * Returns the URLs from which to download the files. Called on a background thread with
+         * the download about to start, followed by others queued on the same host, so that
+         * their URLs can be resolved at once
+         * @param downloads Downloads, all from the same host
+         * @return URLs, in the same order as the downloads, null for the files whose URL can't
+         * be obtained
+         * @throws IOException If the URLs can't be obtained at all
+         */
+        List<String> getUrls(List<Download> downloads) throws IOException;
+
+        /**
+         * Returns the sizes of the files on the host. Called on a background thread, before
+         * resolving the URLs, with the downloads whose destination already exists, to skip the
+         * ones already downloaded
+         * @param downloads Downloads, all from the same host
+         * @return Sizes in bytes, in the same order as the downloads, -1 if unknown
+         * @throws IOException If the sizes can't be obtained
+         */
+        List<Long> getSizes(List<Download> downloads) throws IOException;
+    }
+
+    /**
+     * Resolves the URLs asking Kodi through a batch of Files.PrepareDownload
+     */
+    public static final UrlResolver PREPARE_DOWNLOAD_RESOLVER = new UrlResolver() {
+        @Override
+        public List<String> getUrls(List<Download> downloads) throws IOException {
+            HostConnection hostConnection = new HostConnection(downloads.get(0).hostInfo);
+            ArrayList<String> paths = new ArrayList<>(downloads.size());
+            for (Download download : downloads) {
+                paths.add(download.sourcePath);
+            }
+            BatchResult<String> urls;
+            try {
+                urls = Files.DownloadUrls.get(hostConnection, paths, RESOLVE_TIMEOUT);
+            } catch (ApiException e) {
+                throw new IOException("Couldn't prepare download of " + paths.get(0), e);
+            }
+            ArrayList<String> result = new ArrayList<>(urls.size());
+            for (int i = 0; i < urls.size(); i++) {
+                if (!urls.isSuccess(i)) {
+                    LogUtils.LOGW(TAG, "Couldn't prepare download of " + paths.get(i), urls.getError(i));
+                }
+                result.add(urls.getResult(i));
+            }
+            return result;
+        }
+
+        @Override
+        public List<Long> getSizes(List<Download> downloads) throws IOException {
+            HostConnection hostConnection = new HostConnection(downloads.get(0).hostInfo);
+            ArrayList<Files.GetFileDetails> methods = new ArrayList<>(downloads.size());
+            for (Download download : downloads) {
+                methods.add(new Files.GetFileDetails(download.sourcePath, ListType.FieldsFiles.SIZE));
+            }
+            BatchResult<ListType.ItemFile> details;
+            try {
+                details = hostConnection.executeBatch(methods).get(RESOLVE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new IOException("Couldn't get the size of " + downloads.get(0).sourcePath, e);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted getting file sizes");
+            }
+            ArrayList<Long> sizes = new ArrayList<>(details.size());
+            for (int i = 0; i < details.size(); i++) {
+                ListType.ItemFile itemFile = details.getResult(i);
+                sizes.add(((itemFile != null) && (itemFile.size > 0)) ? itemFile.size : -1);
+            }
+            return sizes;
+        }
+    };
+
+    /**
+     * Interface to be notified of the downloads progress. Called on the handler given on
+     * the constructor
+     */
+    public interface Listener {
+        /**
+         * Periodic report of the progress, while downloading
+         * @param progress Aggregate progress
+         */
+        void onProgress(Progress progress);
+
+        /**
+         * A download finished, successfully or not
+         * @param download Download, with its final status
+         */
+        void onDownloadFinished(Download download);
+
+        /**
+         * All the downloads finished
+         * @param progress Final aggregate progress
+         */
+        void onIdle(Progress progress);
+    }
+
+    /**
+     * A file to download
+     */
+    public static class Download {
+        public final HostInfo hostInfo;
+        /** Path of the file on Kodi */
+        public final String sourcePath;
+        public final String title;
+        public final boolean overwrite;
+
+        volatile File destination;
+        volatile int status = STATUS_QUEUED;
+        volatile long totalBytes = -1;
+        volatile long downloadedBytes = 0;
+        volatile boolean cancelled = false;
+        volatile String url;
+        // Whether Kodi refused to provide its URL
+        volatile boolean unresolvable = false;
+        // Whether the size of an existing destination was compared with the file on Kodi
+        volatile boolean sizeChecked = false;
+        volatile boolean alreadyPresent = false;
+
+        /**
+         * Creates a download
+         * @param hostInfo Host to download from
+         * @param sourcePath Path of the file on Kodi
+         * @param destination Local file to save it to
+         * @param title Title to show
+         * @param overwrite Whether to overwrite the destination if it exists. Otherwise, if it
+         *                  exists with a different size, the file is saved with a new name
+         */
+        public Download(HostInfo hostInfo, String sourcePath, File destination, String title,
+                        boolean overwrite) {
+            this.hostInfo = hostInfo;
+            this.sourcePath = sourcePath;
+            this.destination = destination;
+            this.title = title;
+            this.overwrite = overwrite;
+        }
+
+        /** Local file the download was (or will be) saved to */
+        public File getDestination() {
+            return destination;
+        }
+
+        /** One of the STATUS constants */
+        public int getStatus() {
+            return status;
+        }
+
+        File getPartialFile() {
+            return new File(destination.getPath() + PARTIAL_FILE_SUFFIX);
+        }
+    }
+
+    /**
+     * Aggregate progress of the downloads
+     */
+    public static class Progress {
+        public int totalFiles, completedFiles, skippedFiles, failedFiles;
+        /** Bytes of the files whose size is known, and bytes downloaded */
+        public long totalBytes, downloadedBytes;
+        public long bytesPerSecond;
+
+        public int getFinishedFiles() {
+            return completedFiles + skippedFiles + failedFiles;
+        }
+    }
+
+    private static class HostQueue {
+        final ArrayDeque<Download> pending = new ArrayDeque<>();
+        int running = 0;
+    }
+
+    private static DownloadEngine instance = null;
+
+    private final UrlResolver urlResolver;
+    private final Handler callbackHandler;
+    private final ThreadPoolExecutor executor;
+    private Listener listener;
+
+    private final HashMap<String, HostQueue> hostQueues = new HashMap<>();
+    // Downloads since the engine was last idle
+    private final List<Download> downloads = new ArrayList<>();
+
+    private long lastProgressReport = 0;
+    private long lastSampleTime = 0, lastSampleBytes = 0, bytesPerSecond = 0;
+
+    /**
+     * Returns the singleton, that resolves URLs through Files.PrepareDownload and reports to
+     * the main thread
+     */
+    public static synchronized DownloadEngine getInstance() {
+        if (instance == null) {
+            instance = new DownloadEngine(PREPARE_DOWNLOAD_RESOLVER,
+                                          new Handler(Looper.getMainLooper()));
+        }
+        return instance;
+    }
+
+    /**
+     * Creates an engine
+     * @param urlResolver Resolver of the download URLs
+     * @param callbackHandler Handler on which to call the listener. If null, it is called on
+     *                        the download threads
+     */
+    public DownloadEngine(UrlResolver urlResolver, Handler callbackHandler) {
+        this.urlResolver = urlResolver;
+        this.callbackHandler = callbackHandler;
+        this.executor = new ThreadPoolExecutor(
+                MAX_DOWNLOAD_THREADS, MAX_DOWNLOAD_THREADS, THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "DownloadEngine-" + threadCount.incrementAndGet());
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a download
+     * @param download Download
+     * @return Whether it was queued, false if the same destination is already queued
+     */
+    public synchronized boolean enqueue(Download download) {
+        for (Download d : downloads) {
+            if (((d.status == STATUS_QUEUED) || (d.status == STATUS_RUNNING)) &&
+                d.destination.getPath().equals(download.destination.getPath())) {
+                LogUtils.LOGD(TAG, "Already downloading " + download.destination.getPath());
+                return false;
+            }
+        }
+
+        downloads.add(download);
+        String hostKey = download.hostInfo.getAddress() + ":" + download.hostInfo.getHttpPort();
+        HostQueue hostQueue = hostQueues.get(hostKey);
+        if (hostQueue == null) {
+            hostQueue = new HostQueue();
+            hostQueues.put(hostKey, hostQueue);
+        }
+        hostQueue.pending.add(download);
+        schedule(hostQueue);
+        return true;
+    }
+
+    /**
+     * Cancels all the downloads. The partial files are kept, so that they are resumed if
+     * they're requested again
+     */
+    public synchronized void cancelAll() {
+        for (HostQueue hostQueue : hostQueues.values()) {
+            for (Download download : hostQueue.pending) {
+                download.status = STATUS_CANCELLED;
+            }
+            hostQueue.pending.clear();
+        }
+        for (Download download : downloads) {
+            synchronized (download) {
+                download.cancelled = true;
+                // Wake it up if it's waiting to retry
+                download.notifyAll();
+            }
+        }
+        checkIdle();
+    }
+
+    /**
+     * Returns whether there are downloads queued or running
+     */
+    public synchronized boolean isActive() {
+        for (HostQueue hostQueue : hostQueues.values()) {
+            if ((hostQueue.running > 0) || !hostQueue.pending.isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the aggregate progress of the downloads since the engine was last idle
+     */
+    public synchronized Progress getProgress() {
+        Progress progress = new Progress();
+        for (Download download : downloads) {
+            progress.totalFiles++;
+            switch (download.status) {
+                case STATUS_COMPLETED:
+                    progress.completedFiles++;
+                    break;
+                case STATUS_SKIPPED:
+                    progress.skippedFiles++;
+                    break;
+                case STATUS_FAILED:
+                case STATUS_CANCELLED:
+                    progress.failedFiles++;
+                    break;
+            }
+            if (download.totalBytes > 0) {
+                progress.totalBytes += download.totalBytes;
+                progress.downloadedBytes += download.downloadedBytes;
+            }
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastSampleTime >= PROGRESS_INTERVAL) {
+            if (lastSampleTime > 0) {
+                bytesPerSecond = Math.max(0, (progress.downloadedBytes - lastSampleBytes) * 1000 /
+                                             (now - lastSampleTime));
+            }
+            lastSampleTime = now;
+            lastSampleBytes = progress.downloadedBytes;
+        }
+        progress.bytesPerSecond = bytesPerSecond;
+        return progress;
+    }
+
+    private void schedule(HostQueue hostQueue) {
+        while ((hostQueue.running < MAX_PARALLEL_DOWNLOADS_PER_HOST) && !hostQueue.pending.isEmpty()) {
+            final Download download = hostQueue.pending.poll();
+            final HostQueue queue = hostQueue;
+            hostQueue.running++;
+            download.status = STATUS_RUNNING;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runDownload(queue, download);
+                    finished(queue, download);
+                }
+            });
+        }
+    }
+
+    private void runDownload(HostQueue hostQueue, Download download) {
+        int attempt = 0;
+        while (true) {
+            try {
+                checkCancelled(download);
+                if (!download.sizeChecked && !download.overwrite && download.destination.exists()) {
+                    checkPresentFiles(hostQueue, download);
+                }
+                if (download.alreadyPresent) {
+                    LogUtils.LOGD(TAG, "Already downloaded " + download.destination.getPath());
+                    download.getPartialFile().delete();
+                    download.downloadedBytes = download.totalBytes;
+                    download.status = STATUS_SKIPPED;
+                    return;
+                }
+                checkCancelled(download);
+                if ((download.url == null) && !download.unresolvable) {
+                    resolveUrls(hostQueue, download);
+                }
+                if (download.unresolvable) {
+                    // Retrying won't help, and it doesn't affect the other files
+                    LogUtils.LOGW(TAG, "Couldn't get the URL of " + download.sourcePath);
+                    download.status = STATUS_FAILED;
+                    return;
+                }
+                checkCancelled(download);
+                download.status = transfer(download);
+                return;
+            } catch (IOException e) {
+                if (download.cancelled) {
+                    download.status = STATUS_CANCELLED;
+                    return;
+                }
+                if (++attempt > MAX_RETRIES) {
+                    LogUtils.LOGW(TAG, "Failed to download " + download.sourcePath, e);
+                    download.status = STATUS_FAILED;
+                    return;
+                }
+                LogUtils.LOGD(TAG, "Download of " + download.sourcePath + " interrupted (" +
+                                   e.getMessage() + "). Retrying");
+                try {
+                    synchronized (download) {
+                        if (!download.cancelled) {
+                            download.wait(RETRY_DELAY * attempt);
+                        }
+                    }
+                } catch (InterruptedException ie) {
+                    download.status = STATUS_CANCELLED;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void checkCancelled(Download download) throws InterruptedIOException {
+        if (download.cancelled) {
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+
+    /**
+     * Compares the size of the files on Kodi with their existing destinations, for a download
+     * and the ones queued on the same host, marking the ones already downloaded. If the sizes
+     * can't be obtained, the files are compared when transferred
+     */
+    private void checkPresentFiles(HostQueue hostQueue, Download download) {
+        List<Download> toCheck = new ArrayList<>();
+        toCheck.add(download);
+        synchronized (this) {
+            for (Download pending : hostQueue.pending) {
+                if (toCheck.size() >= MAX_URLS_PER_RESOLVE)
+                    break;
+                if (!pending.sizeChecked && !pending.overwrite && pending.destination.exists())
+                    toCheck.add(pending);
+            }
+            for (Download d : toCheck) {
+                d.sizeChecked = true;
+            }
+        }
+
+        List<Long> sizes;
+        try {
+            sizes = urlResolver.getSizes(toCheck);
+        } catch (IOException e) {
+            LogUtils.LOGD(TAG, "Couldn't get the size of " + toCheck.size() + " files", e);
+            return;
+        }
+        for (int i = 0; i < toCheck.size(); i++) {
+            Download d = toCheck.get(i);
+            long size = sizes.get(i);
+            if ((size >= 0) && (d.destination.length() == size)) {
+                d.totalBytes = size;
+                d.alreadyPresent = true;
+            }
+        }
+    }
+
+    /**
+     * Resolves the URL of a download, along with the ones of the downloads queued on the same
+     * host, so that they can start right away
+     */
+    private void resolveUrls(HostQueue hostQueue, Download download) throws IOException {
+        List<Download> toResolve = new ArrayList<>();
+        toResolve.add(download);
+        synchronized (this) {
+            for (Download pending : hostQueue.pending) {
+                if (toResolve.size() >= MAX_URLS_PER_RESOLVE)
+                    break;
+                if ((pending.url == null) && !pending.unresolvable && !pending.alreadyPresent &&
+                    !pending.cancelled)
+                    toResolve.add(pending);
+            }
+        }
+
+        // If the request fails as a whole it's retried with the same files, as the failure is
+        // not specific to any of them
+        List<String> urls = urlResolver.getUrls(toResolve);
+        for (int i = 0; i < toResolve.size(); i++) {
+            String url = urls.get(i);
+            if (url != null) {
+                toResolve.get(i).url = url;
+            } else {
+                toResolve.get(i).unresolvable = true;
+            }
+        }
+    }
+
+    /**
+     * Transfers a file, resuming it if there's a partial file
+     * @return Final status
+     * @throws IOException If the transfer is interrupted
+     */
+    private int transfer(Download download) throws IOException {
+        File partialFile = download.getPartialFile();
+        long offset = partialFile.exists() ? partialFile.length() : 0;
+        Request.Builder builder = new Request.Builder().url(download.url);
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-");
+        }
+
+        OkHttpClient httpClient = HostTransport.getInstance()
+                                               .getOkHttpClient(download.hostInfo, CONNECT_TIMEOUT);
+        Response response = httpClient.newCall(builder.build()).execute();
+        ResponseBody body = response.body();
+        try {
+            boolean append;
+            long contentLength = body.contentLength();
+            switch (response.code()) {
+                case 206:
+                    LogUtils.LOGD(TAG, "Resuming " + download.sourcePath + " from " + offset);
+                    append = true;
+                    download.totalBytes = (contentLength >= 0) ? offset + contentLength : -1;
+                    break;
+                case 200:
+                    append = false;
+                    offset = 0;
+                    download.totalBytes = contentLength;
+                    break;
+                case 416:
+                    // The partial file doesn't match the file anymore, start over
+                    partialFile.delete();
+                    throw new IOException("Range not satisfiable");
+                default:
+                    throw new IOException("Server returned " + response.code());
+            }
+
+            if (!download.overwrite && download.destination.exists()) {
+                if (download.destination.length() == download.totalBytes) {
+                    LogUtils.LOGD(TAG, "Already downloaded " + download.destination.getPath());
+                    partialFile.delete();
+                    download.downloadedBytes = download.totalBytes;
+                    return STATUS_SKIPPED;
+                }
+                File newDestination = getUniqueFile(download.destination);
+                if (partialFile.exists() && !partialFile.renameTo(new File(newDestination.getPath() + PARTIAL_FILE_SUFFIX))) {
+                    throw new IOException("Couldn't rename " + partialFile.getPath());
+                }
+                download.destination = newDestination;
+                partialFile = download.getPartialFile();
+            }
+
+            File directory = partialFile.getParentFile();
+            if ((directory != null) && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Couldn't create directory " + directory.getPath());
+            }
+
+            download.downloadedBytes = offset;
+            InputStream in = body.byteStream();
+            OutputStream out = new FileOutputStream(partialFile, append);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (download.cancelled) {
+                        throw new InterruptedIOException("Cancelled");
+                    }
+                    out.write(buffer, 0, read);
+                    download.downloadedBytes += read;
+                    maybeReportProgress();
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            body.close();
+        }
+
+        if ((download.totalBytes >= 0) && (partialFile.length() != download.totalBytes)) {
+            throw new IOException("Incomplete download: " + partialFile.length() + " of " +
+                                  download.totalBytes + " bytes");
+        }
+        if (download.destination.exists() && !download.destination.delete()) {
+            throw new IOException("Couldn't overwrite " + download.destination.getPath());
+        }
+        if (!partialFile.renameTo(download.destination)) {
+            throw new IOException("Couldn't rename " + partialFile.getPath());
+        }
+        return STATUS_COMPLETED;
+    }
+
+    /**
+     * Returns a file with the same name, followed by a number, that doesn't exist
+     */
+    static File getUniqueFile(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String base = (dot > 0) ? name.substring(0, dot) : name;
+        String extension = (dot > 0) ? name.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            File candidate = new File(file.getParentFile(), base + " (" + i + ")" + extension);
+            if (!candidate.exists())
+                return candidate;
+        }
+    }
+
+    private void finished(HostQueue hostQueue, final Download download) {
+        final Listener currentListener;
+        synchronized (this) {
+            hostQueue.running--;
+            schedule(hostQueue);
+            currentListener = listener;
+        }
+        if (currentListener != null) {
+            postOrRunNow(new Runnable() {
+                @Override
+                public void run() {
+                    currentListener.onDownloadFinished(download);
+                }
+            });
+        }
+        synchronized (this) {
+            checkIdle();
+        }
+    }
+
+    private void checkIdle() {
+        if (isActive())
+            return;
+
+        final Progress progress = getProgress();
+        final Listener currentListener = listener;
+        downloads.clear();
+        lastSampleTime = 0;
+        bytesPerSecond = 0;
+        LogUtils.LOGD(TAG, "Downloads finished. " + progress.completedFiles + " completed, " +
+                           progress.skippedFiles + " skipped, " + progress.failedFiles + " failed");
+        if (currentListener != null) {
+            postOrRunNow(new Runnable() {
+                @Override
+                public void run() {
+                    currentListener.onIdle(progress);
+                }
+            });
+        }
+    }
+
+    private void maybeReportProgress() {
+        final Progress progress;
+        final Listener currentListener;
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if ((listener == null) || (now - lastProgressReport < PROGRESS_INTERVAL))
+                return;
+            lastProgressReport = now;
+            progress = getProgress();
+            currentListener = listener;
+        }
+        postOrRunNow(new Runnable() {
+            @Override
+            public void run() {
+                currentListener.onProgress(progress);
+            }
+        });
+    }
+
+    private void postOrRunNow(Runnable runnable) {
+        if (callbackHandler != null) {
+            callbackHandler.post(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+}
@@ -17,11 +17,13 @@ package org.xbmc.kore.utils;
 
 import android.app.DownloadManager;
 import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Environment;
 import android.os.Handler;
 import android.text.TextUtils;
-import android.util.Base64;
 import android.widget.Toast;
 
 import org.xbmc.kore.R;
@@ -29,11 +31,11 @@ import org.xbmc.kore.Settings;
 import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.jsonrpc.ApiCallback;
 import org.xbmc.kore.jsonrpc.HostConnection;
-import org.xbmc.kore.jsonrpc.method.Files;
 import org.xbmc.kore.jsonrpc.method.JSONRPC;
-import org.xbmc.kore.jsonrpc.type.FilesType;
+import org.xbmc.kore.service.DownloadService;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -292,30 +294,8 @@ public class FileDownloadHelper {
         if (mediaInfo == null)
             return;
 
-        if (!checkDownloadDir(context, mediaInfo.getAbsoluteDirectoryPath()))
-            return;
-
-        // Check if we are connected to the host
-        final HostConnection httpHostConnection = new HostConnection(hostInfo);
-        httpHostConnection.setProtocol(HostConnection.PROTOCOL_HTTP);
-
-        JSONRPC.Ping action = new JSONRPC.Ping();
-        action.execute(httpHostConnection, new ApiCallback<String>() {
-            @Override
-            public void onSuccess(String result) {
-                // Ok, continue, iterate through the song list and launch a download for each
-                final DownloadManager downloadManager = (DownloadManager)context.getSystemService(Context.DOWNLOAD_SERVICE);
-
-                downloadSingleFile(context, httpHostConnection, hostInfo,
-                        mediaInfo, fileHandlingMode, downloadManager, callbackHandler);
-            }
-
-            @Override
-            public void onError(int errorCode, String description) {
-                Toast.makeText(context, R.string.unable_to_connect_to_xbmc, Toast.LENGTH_SHORT)
-                     .show();
-            }
-        }, callbackHandler);
+        downloadFiles(context, hostInfo, Collections.singletonList(mediaInfo),
+                      fileHandlingMode, callbackHandler);
     }
 
     public static void downloadFiles(final Context context, final HostInfo hostInfo,
@@ -328,6 +308,12 @@ public class FileDownloadHelper {
         if (!checkDownloadDir(context, mediaInfoList.get(0).getAbsoluteDirectoryPath()))
             return;
 
+        if (!isDownloadAllowedOnCurrentNetwork(context)) {
+            Toast.makeText(context, R.string.download_network_not_allowed, Toast.LENGTH_SHORT)
+                 .show();
+            return;
+        }
+
         // Check if we are connected to the host
         final HostConnection httpHostConnection = new HostConnection(hostInfo);
         httpHostConnection.setProtocol(HostConnection.PROTOCOL_HTTP);
@@ -336,13 +322,14 @@ public class FileDownloadHelper {
         action.execute(httpHostConnection, new ApiCallback<String>() {
             @Override
             public void onSuccess(String result) {
-                // Ok, continue, iterate through the song list and launch a download for each
-                final DownloadManager downloadManager = (DownloadManager)context.getSystemService(Context.DOWNLOAD_SERVICE);
-
+                // Ok, continue, queue the files and let the service show the progress
+                DownloadEngine downloadEngine = DownloadEngine.getInstance();
                 for (final MediaInfo mediaInfo : mediaInfoList) {
-                    downloadSingleFile(context, httpHostConnection, hostInfo,
-                            mediaInfo, fileHandlingMode, downloadManager, callbackHandler);
+                    downloadEngine.enqueue(new DownloadEngine.Download(
+                            hostInfo, mediaInfo.fileName, new File(mediaInfo.getAbsoluteFilePath()),
+                            mediaInfo.getDownloadTitle(context), fileHandlingMode == OVERWRITE_FILES));
                 }
+                context.startService(new Intent(context, DownloadService.class));
             }
 
             @Override
@@ -353,6 +340,22 @@ public class FileDownloadHelper {
         }, callbackHandler);
     }
 
+    /**
+     * Checks whether the user allows downloads over the network we're currently on
+     */
+    private static boolean isDownloadAllowedOnCurrentNetwork(Context context) {
+        int allowedTypes = Settings.allowedDownloadNetworkTypes(context);
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = (connectivityManager != null) ?
+                                  connectivityManager.getActiveNetworkInfo() : null;
+        if (networkInfo == null)
+            return true;
+        int requiredType = (networkInfo.getType() == ConnectivityManager.TYPE_MOBILE) ?
+                           DownloadManager.Request.NETWORK_MOBILE : DownloadManager.Request.NETWORK_WIFI;
+        return (allowedTypes & requiredType) != 0;
+    }
+
     private static boolean checkDownloadDir(Context context, String downloadDirPath) {
         File downloadDir = new File(downloadDirPath);
         if ((downloadDir.exists() && !downloadDir.isDirectory())) {
@@ -371,55 +374,4 @@ public class FileDownloadHelper {
         }
         return true;
     }
-
-    private static void downloadSingleFile(final Context context,
-                                           final HostConnection httpHostConnection,
-                                           final HostInfo hostInfo,
-                                           final MediaInfo mediaInfo,
-                                           final int fileHandlingMode,
-                                           final DownloadManager downloadManager,
-                                           final Handler callbackHandler) {
-        Files.PrepareDownload action = new Files.PrepareDownload(mediaInfo.fileName);
-        action.execute(httpHostConnection, new ApiCallback<FilesType.PrepareDownloadReturnType>() {
-            @Override
-            public void onSuccess(FilesType.PrepareDownloadReturnType result) {
-                // If the file exists and it's to be overwritten, delete it,
-                // as the DownloadManager always creates a new name
-                if (fileHandlingMode == OVERWRITE_FILES) {
-                    File file = new File(mediaInfo.getAbsoluteFilePath());
-                    if (file.exists()) {
-                        file.delete();
-                    }
-                }
-
-                // Ok, we got the path, invoke downloader
-                Uri uri = Uri.parse(hostInfo.getHttpURL() + "/" + result.path);
-                DownloadManager.Request request = new DownloadManager.Request(uri);
-                // http basic authorization
-                if ((hostInfo.getUsername() != null) && !hostInfo.getUsername().isEmpty() &&
-                    (hostInfo.getPassword() != null) && !hostInfo.getPassword().isEmpty()) {
-                    final String token = Base64.encodeToString((hostInfo.getUsername() + ":" +
-                                                                hostInfo.getPassword()).getBytes(), Base64.DEFAULT);
-                    request.addRequestHeader("Authorization", "Basic " + token);
-                }
-                request.allowScanningByMediaScanner();
-                request.setAllowedNetworkTypes(Settings.allowedDownloadNetworkTypes(context));
-                request.setTitle(mediaInfo.getDownloadTitle(context));
-                request.setDescription(mediaInfo.getDownloadDescrition(context));
-
-                request.setDestinationInExternalPublicDir(mediaInfo.getExternalPublicDirType(),
-                        mediaInfo.getRelativeFilePath());
-                downloadManager.enqueue(request);
-            }
-
-            @Override
-            public void onError(int errorCode, String description) {
-                Toast.makeText(context,
-                        String.format(context.getString(R.string.error_getting_file_information),
-                                mediaInfo.getDownloadTitle(context)),
-                        Toast.LENGTH_SHORT)
-                     .show();
-            }
-        }, callbackHandler);
-    }
 }
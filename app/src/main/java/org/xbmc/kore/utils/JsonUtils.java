@@ -41,6 +41,14 @@ public class JsonUtils {
         return value.textValue();
     }
 
+    /**
+     * Same as {@link #stringFromJsonNode(JsonNode, String)}, but returns the {@link StringPool}
+     * canonical instance. Use for small, frequently repeated values (genres, codecs, etc.)
+     */
+    public static String pooledStringFromJsonNode(JsonNode node, String key) {
+        return StringPool.get(stringFromJsonNode(node, key));
+    }
+
     public static double doubleFromJsonNode(JsonNode node, String key) {
         return doubleFromJsonNode(node, key, 0);
     }
@@ -67,6 +75,13 @@ public class JsonUtils {
         return value.asInt();
     }
 
+    public static long longFromJsonNode(JsonNode node, String key, long defaultValue) {
+        if (node == null) return defaultValue;
+        JsonNode value = node.get(key);
+        if (value == null) return defaultValue;
+        return value.asLong();
+    }
+
     public static boolean booleanFromJsonNode(JsonNode node, String key) {
         return booleanFromJsonNode(node, key, false);
     }
@@ -98,6 +113,14 @@ public class JsonUtils {
         return result;
     }
 
+    /**
+     * Same as {@link #stringListFromJsonNode(JsonNode, String)}, but with each element replaced
+     * by its {@link StringPool} canonical instance
+     */
+    public static List<String> pooledStringListFromJsonNode(JsonNode node, String key) {
+        return StringPool.get(stringListFromJsonNode(node, key));
+    }
+
     public static List<Integer> integerListFromJsonNode(JsonNode node, String key) {
         if (node == null) return new ArrayList<Integer>(0);
         JsonNode value = node.get(key);
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.NetworkRetryingRequestHandler;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Picasso request handler for images on the network that decodes them into bitmaps taken
+ * from a {@link BitmapPool}.
+ * <p>
+ * Images are decoded subsampled, as Picasso does, and then resized to the requested size
+ * here, so that the decoded bitmap can be returned to the pool right away. The resize is the
+ * same Picasso does, which then finds nothing left to do.
+ * Requests without a size are decoded without the pool.
+ * <p>
+ * Images with a size are read whole before decoding, as they're decoded more than once:
+ * for their bounds, and again without the pooled bitmap if it doesn't fit.
+ * Retries and where the image was loaded from are the same as Picasso's network handler.
+ */
+public class PooledNetworkRequestHandler extends NetworkRetryingRequestHandler {
+    private static final String TAG = LogUtils.makeLogTag(PooledNetworkRequestHandler.class);
+
+    private static final String SCHEME_HTTP = "http";
+    private static final String SCHEME_HTTPS = "https";
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final Downloader downloader;
+    private final BitmapPool bitmapPool;
+
+    /**
+     * Constructor
+     * @param downloader Downloader, the same Picasso uses
+     * @param bitmapPool Pool of bitmaps to decode into
+     */
+    public PooledNetworkRequestHandler(Downloader downloader, BitmapPool bitmapPool) {
+        this.downloader = downloader;
+        this.bitmapPool = bitmapPool;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean canHandleRequest(Request data) {
+        String scheme = data.uri.getScheme();
+        return SCHEME_HTTP.equals(scheme) || SCHEME_HTTPS.equals(scheme);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Result load(Request request, int networkPolicy) throws IOException {
+        Downloader.Response response = downloader.load(request.uri, networkPolicy);
+        if (response == null)
+            return null;
+
+        Picasso.LoadedFrom loadedFrom = getLoadedFrom(response);
+        Bitmap bitmap = response.getBitmap();
+        if (bitmap != null)
+            return new Result(bitmap, loadedFrom);
+
+        InputStream inputStream = response.getInputStream();
+        if (inputStream == null)
+            return null;
+        try {
+            if (!request.hasSize()) {
+                return new Result(decode(request, inputStream), loadedFrom);
+            }
+            return new Result(decode(request, readFully(inputStream, response.getContentLength())),
+                              loadedFrom);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException ignored) { }
+        }
+    }
+
+    private static BitmapFactory.Options newOptions(Request request) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = (request.config != null) ? request.config : Bitmap.Config.ARGB_8888;
+        return options;
+    }
+
+    private static Bitmap decode(Request request, InputStream stream) throws IOException {
+        return checkDecoded(BitmapFactory.decodeStream(stream, null, newOptions(request)));
+    }
+
+    private Bitmap decode(Request request, byte[] data) throws IOException {
+        BitmapFactory.Options options = newOptions(request);
+        Bitmap.Config config = options.inPreferredConfig;
+
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, request);
+
+        Bitmap decoded = null;
+        if (BitmapPool.isSupported() && (options.outWidth > 0) && (options.outHeight > 0)) {
+            options.inMutable = true;
+            options.inBitmap = bitmapPool.get(divideRoundingUp(options.outWidth, options.inSampleSize),
+                                              divideRoundingUp(options.outHeight, options.inSampleSize),
+                                              config);
+            if (options.inBitmap != null) {
+                try {
+                    decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                } catch (IllegalArgumentException e) {
+                    // The pooled bitmap can't hold this image after all
+                    LogUtils.LOGD(TAG, "Couldn't decode into a pooled bitmap: " + e.getMessage());
+                }
+                if (decoded == null) {
+                    bitmapPool.put(options.inBitmap);
+                    options.inBitmap = null;
+                }
+            }
+        }
+        if (decoded == null) {
+            decoded = checkDecoded(BitmapFactory.decodeByteArray(data, 0, data.length, options));
+        }
+
+        Bitmap resized = resize(decoded, request);
+        if (resized != decoded) {
+            bitmapPool.put(decoded);
+        }
+        return resized;
+    }
+
+    private static Bitmap checkDecoded(Bitmap bitmap) throws IOException {
+        if (bitmap == null)
+            throw new IOException("Failed to decode image");
+        return bitmap;
+    }
+
+    private static int divideRoundingUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static byte[] readFully(InputStream inputStream, long contentLength) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                ((contentLength > 0) && (contentLength < Integer.MAX_VALUE)) ? (int) contentLength : READ_BUFFER_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Same subsampling as Picasso's, rounded down to a power of two as the decoders do, so that
+     * the size of the pooled bitmap matches the decoded one
+     */
+    static int calculateInSampleSize(int width, int height, Request request) {
+        int reqWidth = request.targetWidth, reqHeight = request.targetHeight;
+        int sampleSize = 1;
+        if ((height > reqHeight) || (width > reqWidth)) {
+            if (reqHeight == 0) {
+                sampleSize = (int) Math.floor((float) width / (float) reqWidth);
+            } else if (reqWidth == 0) {
+                sampleSize = (int) Math.floor((float) height / (float) reqHeight);
+            } else {
+                int heightRatio = (int) Math.floor((float) height / (float) reqHeight);
+                int widthRatio = (int) Math.floor((float) width / (float) reqWidth);
+                sampleSize = request.centerInside ? Math.max(heightRatio, widthRatio)
+                                                  : Math.min(heightRatio, widthRatio);
+            }
+        }
+        return Integer.highestOneBit(Math.max(sampleSize, 1));
+    }
+
+    /**
+     * Same resize as Picasso's, returning an immutable bitmap so that Picasso doesn't copy it.
+     * Mutable, pooled, bitmaps are always copied
+     */
+    private static Bitmap resize(Bitmap source, Request request) {
+        int inWidth = source.getWidth(), inHeight = source.getHeight();
+        int targetWidth = request.targetWidth, targetHeight = request.targetHeight;
+        int drawX = 0, drawY = 0, drawWidth = inWidth, drawHeight = inHeight;
+
+        Matrix matrix = new Matrix();
+        if (request.centerCrop && (targetWidth != 0) && (targetHeight != 0)) {
+            float widthRatio = targetWidth / (float) inWidth;
+            float heightRatio = targetHeight / (float) inHeight;
+            float scale;
+            if (widthRatio > heightRatio) {
+                int newSize = (int) Math.ceil(inHeight * (heightRatio / widthRatio));
+                drawY = (inHeight - newSize) / 2;
+                drawHeight = newSize;
+                scale = widthRatio;
+            } else {
+                int newSize = (int) Math.ceil(inWidth * (widthRatio / heightRatio));
+                drawX = (inWidth - newSize) / 2;
+                drawWidth = newSize;
+                scale = heightRatio;
+            }
+            matrix.preScale(scale, scale);
+        } else if (request.centerInside && (targetWidth != 0) && (targetHeight != 0)) {
+            float scale = Math.min(targetWidth / (float) inWidth, targetHeight / (float) inHeight);
+            matrix.preScale(scale, scale);
+        } else if ((targetWidth != 0) && (targetHeight != 0) &&
+                   ((targetWidth != inWidth) || (targetHeight != inHeight))) {
+            matrix.preScale(targetWidth / (float) inWidth, targetHeight / (float) inHeight);
+        }
+
+        return Bitmap.createBitmap(source, drawX, drawY, drawWidth, drawHeight, matrix, true);
+    }
+}
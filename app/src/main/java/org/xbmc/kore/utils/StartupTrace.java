@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.utils;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Traces the steps taken when the app starts, until the first frame is drawn and the first
+ * command to Kodi finishes, so that whatever delays them can be spotted.
+ * <p>
+ * Steps are traced with {@link #begin(String)} and {@link Span#end()}, noting the thread
+ * they ran on. Once the startup is over, tracing is a no-op.
+ * <p>
+ * The times to first frame and command are measured from the process start, unless the process
+ * was started in the background, by a job or a service. Then they're measured from the creation
+ * of the first activity, and the commands sent before it are left out.
+ */
+public class StartupTrace {
+    private static final String TAG = LogUtils.makeLogTag(StartupTrace.class);
+
+    private static final int MAX_SPANS = 64;
+
+    private static StartupTrace instance = null;
+
+    /**
+     * Returns the singleton
+     */
+    public static synchronized StartupTrace getInstance() {
+        if (instance == null) {
+            instance = new StartupTrace();
+        }
+        return instance;
+    }
+
+    /**
+     * A traced step. Call {@link #end()} when it's done
+     */
+    public class Span {
+        final String name;
+        final String threadName;
+        final boolean onMainThread;
+        final long startedAt;
+        final long startNanos;
+        long durationNanos = -1;
+
+        Span(String name) {
+            this.name = name;
+            this.threadName = Thread.currentThread().getName();
+            this.onMainThread = (Looper.myLooper() == Looper.getMainLooper());
+            this.startedAt = SystemClock.elapsedRealtime();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * The step is done
+         */
+        public void end() {
+            synchronized (StartupTrace.this) {
+                if (durationNanos == -1)
+                    durationNanos = System.nanoTime() - startNanos;
+            }
+        }
+    }
+
+    private final Span noOpSpan;
+    private final long processStartedAt;
+    private final List<Span> spans = new ArrayList<>();
+    private long firstFrameAt = -1, firstCommandAt = -1;
+    private String firstCommandName;
+    // Time the first frame and command are measured from
+    private long startedAt;
+    private boolean activityCreated = false, startedInBackground = false;
+
+    StartupTrace() {
+        // Before Nougat the process start time isn't available, the earliest is when this is
+        // first used, from the content provider, which is created before any activity
+        processStartedAt = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) ?
+                           Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+        startedAt = processStartedAt;
+        noOpSpan = new Span("");
+        noOpSpan.durationNanos = 0;
+    }
+
+    /**
+     * Starts tracing a step, if the startup isn't over
+     * @param name Name of the step
+     * @return Span to end when the step is done
+     */
+    public synchronized Span begin(String name) {
+        if (isStartupOver() || (spans.size() >= MAX_SPANS))
+            return noOpSpan;
+        Span span = new Span(name);
+        spans.add(span);
+        return span;
+    }
+
+    /**
+     * Called on the main thread when the process starts, from the content provider, to find out
+     * whether it was started to show an activity. If so, the launch of the activity is already
+     * queued on the main thread, so the activity is created before what's posted here runs
+     */
+    public void processStarted() {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                checkStartedInBackground();
+            }
+        });
+    }
+
+    synchronized void checkStartedInBackground() {
+        if (!activityCreated) {
+            startedInBackground = true;
+            LogUtils.LOGD(TAG, "Process started in the background");
+        }
+    }
+
+    /**
+     * Called when an activity is created. If the process was started in the background, the
+     * first one is where the times to first frame and command are measured from
+     */
+    public synchronized void activityCreated() {
+        if (activityCreated)
+            return;
+        activityCreated = true;
+        if (startedInBackground)
+            startedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Runs the given work on the main thread right after the first frame of the activity is
+     * drawn, recording the time to first frame if it's the first one of the app. Use it for
+     * the work that isn't needed to show the activity
+     * @param activity Activity being started
+     * @param afterFirstFrame Work to run once it's shown
+     */
+    public void runAfterFirstFrame(Activity activity, final Runnable afterFirstFrame) {
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                firstFrame();
+                // Posted, so that it only runs after this frame is drawn
+                decorView.post(afterFirstFrame);
+                return true;
+            }
+        });
+    }
+
+    synchronized void firstFrame() {
+        if (firstFrameAt == -1) {
+            firstFrameAt = SystemClock.elapsedRealtime();
+            LogUtils.LOGD(TAG, "Time to first frame: " + (firstFrameAt - startedAt) + "ms");
+        }
+    }
+
+    /**
+     * A command to Kodi finished, recording the time to first command if it's the first one.
+     * If the process was started in the background, commands finished before the first
+     * activity was created are ignored
+     * @param methodName Method of the command
+     */
+    public synchronized void commandFinished(String methodName) {
+        if (startedInBackground && !activityCreated)
+            return;
+        if (firstCommandAt == -1) {
+            firstCommandAt = SystemClock.elapsedRealtime();
+            firstCommandName = methodName;
+            LogUtils.LOGD(TAG, "Time to first command: " + (firstCommandAt - startedAt) + "ms");
+        }
+    }
+
+    private boolean isStartupOver() {
+        return (firstFrameAt != -1) && (firstCommandAt != -1);
+    }
+
+    /**
+     * Returns a human readable report of the startup, with the time of each step since the
+     * process started
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("Startup trace\n");
+        if (startedInBackground)
+            report.append("  Started in the background, times to first frame and command since the first activity\n");
+        report.append("  Time to first frame: ")
+              .append(formatSinceStart(firstFrameAt))
+              .append('\n');
+        report.append("  Time to first command: ")
+              .append(formatSinceStart(firstCommandAt));
+        if (firstCommandName != null)
+            report.append(" (").append(firstCommandName).append(')');
+        report.append('\n');
+
+        long mainThreadNanos = 0;
+        for (Span span : spans) {
+            report.append(String.format(Locale.US, "  +%5d ms %7s  %-5s %s\n",
+                                        span.startedAt - processStartedAt,
+                                        (span.durationNanos < 0) ?
+                                        "running" : String.format(Locale.US, "%.1f ms", span.durationNanos / 1e6),
+                                        span.onMainThread ? "main" : "bg",
+                                        span.onMainThread ? span.name : span.name + " [" + span.threadName + "]"));
+            if (span.onMainThread && (span.durationNanos > 0))
+                mainThreadNanos += span.durationNanos;
+        }
+        report.append(String.format(Locale.US, "  Traced on the main thread: %.1f ms\n", mainThreadNanos / 1e6));
+        return report.toString();
+    }
+
+    private String formatSinceStart(long time) {
+        return (time == -1) ? "not yet" : (time - startedAt) + " ms";
+    }
+}
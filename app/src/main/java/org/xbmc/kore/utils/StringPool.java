@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.utils;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scoped string deduplication pool.
+ * <p>
+ * Library objects decoded during a sync repeat the same small strings (genres, studios, codecs,
+ * languages, artist names...) thousands of times. While a scope is open (see {@link #open()}),
+ * {@link #get(String)} returns a canonical instance for each distinct value, so that only one
+ * copy is kept in the heap. When no scope is open the pool is dropped and {@link #get(String)}
+ * returns its argument unchanged, so callers outside a sync pay no cost.
+ * <p>
+ * Json trees built with {@link #NODE_FACTORY} pool their text values as they are parsed, so
+ * that the tree of a big response doesn't hold a copy of each repeated value either. Jackson
+ * already shares the field names.
+ * <p>
+ * Scopes are reference counted, so overlapping syncs share the same pool, which is released
+ * when the last one closes it.
+ */
+public class StringPool {
+    private static final String TAG = LogUtils.makeLogTag(StringPool.class);
+
+    /**
+     * Strings longer than this aren't pooled. Long strings (plots, descriptions, file paths)
+     * are unlikely to repeat and would only bloat the pool
+     */
+    public static final int MAX_POOLED_LENGTH = 128;
+
+    /**
+     * Maximum number of distinct strings kept. After this, new values are returned as is
+     */
+    public static final int MAX_POOL_SIZE = 16 * 1024;
+
+    /**
+     * Node factory that pools text values, to set on the {@link com.fasterxml.jackson.databind.ObjectMapper}
+     * that parses the responses
+     */
+    public static final JsonNodeFactory NODE_FACTORY = new JsonNodeFactory(false) {
+        @Override
+        public TextNode textNode(String text) {
+            return super.textNode(get(text));
+        }
+    };
+
+    private static final Object lock = new Object();
+    private static volatile ConcurrentHashMap<String, String> pool = null;
+    private static int openScopes = 0;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Opens a deduplication scope. Must be paired with a call to {@link #close()}
+     */
+    public static void open() {
+        synchronized (lock) {
+            if (openScopes++ == 0) {
+                pool = new ConcurrentHashMap<>(256);
+                hits.set(0);
+                misses.set(0);
+            }
+        }
+    }
+
+    /**
+     * Closes a deduplication scope. When the last scope is closed the pool is released
+     */
+    public static void close() {
+        synchronized (lock) {
+            if (openScopes == 0) return;
+            if (--openScopes == 0) {
+                LogUtils.LOGD(TAG, "Closing string pool. Distinct strings: " + pool.size() +
+                                   ", hits: " + hits.get() + ", misses: " + misses.get());
+                pool = null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a deduplication scope is currently open
+     */
+    public static boolean isOpen() {
+        return pool != null;
+    }
+
+    /**
+     * Returns the canonical instance of the given string, if a scope is open.
+     * @param value String to deduplicate
+     * @return Canonical instance equal to value, or value itself
+     */
+    public static String get(String value) {
+        ConcurrentHashMap<String, String> currentPool = pool;
+        if ((currentPool == null) || (value == null) || (value.length() > MAX_POOLED_LENGTH))
+            return value;
+
+        String pooled = currentPool.get(value);
+        if (pooled != null) {
+            hits.incrementAndGet();
+            return pooled;
+        }
+
+        misses.incrementAndGet();
+        if (currentPool.size() >= MAX_POOL_SIZE)
+            return value;
+        pooled = currentPool.putIfAbsent(value, value);
+        return (pooled == null) ? value : pooled;
+    }
+
+    /**
+     * Replaces, in place, each element of the list by its canonical instance
+     * @param list List of strings to deduplicate
+     * @return The same list
+     */
+    public static List<String> get(List<String> list) {
+        if ((pool == null) || (list == null)) return list;
+        for (int i = 0; i < list.size(); i++) {
+            list.set(i, get(list.get(i)));
+        }
+        return list;
+    }
+
+    /**
+     * Concats a list of strings, returning a canonical instance of the result.
+     * Single element lists, the common case for genres, studios, etc, return the element itself
+     * without allocating a new string.
+     * @param list List to concat
+     * @param delimiter Delimiter
+     * @return Concatenated string
+     */
+    public static String concat(List<String> list, String delimiter) {
+        if ((list != null) && (list.size() == 1) && (list.get(0) != null)) {
+            return get(list.get(0));
+        }
+        return get(Utils.listStringConcat(list, delimiter));
+    }
+
+    /**
+     * Number of lookups that returned an already pooled instance in the current scope
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of distinct strings currently pooled, or 0 if no scope is open
+     */
+    public static int size() {
+        ConcurrentHashMap<String, String> currentPool = pool;
+        return (currentPool == null) ? 0 : currentPool.size();
+    }
+}
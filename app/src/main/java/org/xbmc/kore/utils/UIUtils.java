@@ -53,6 +53,8 @@ import org.xbmc.kore.R;
 import org.xbmc.kore.Settings;
 import org.xbmc.kore.host.HostInfo;
 import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.host.HostWaker;
+import org.xbmc.kore.jsonrpc.HostConnection;
 import org.xbmc.kore.jsonrpc.type.GlobalType;
 import org.xbmc.kore.jsonrpc.type.PlayerType;
 import org.xbmc.kore.jsonrpc.type.VideoType;
@@ -122,6 +124,13 @@ public class UIUtils {
      * Formats a file size, ISO prefixes
      */
     public static String formatFileSize(int bytes) {
+        return formatFileSize((long) bytes);
+    }
+
+    /**
+     * Formats a file size, ISO prefixes. For files of 2 GB or more
+     */
+    public static String formatFileSize(long bytes) {
         if (bytes <= 0) return null;
 
         if (bytes < 1024) {
@@ -135,6 +144,56 @@ public class UIUtils {
         }
     }
 
+    /**
+     * Returns the size at which info screens load their poster
+     * @param context Context
+     * @param squarePoster Whether the poster is square
+     * @return Width and height, in pixels
+     */
+    public static int[] getInfoPosterSize(Context context, boolean squarePoster) {
+        Resources resources = context.getResources();
+        if (squarePoster) {
+            return new int[] {resources.getDimensionPixelOffset(R.dimen.detail_poster_width_square),
+                              resources.getDimensionPixelOffset(R.dimen.detail_poster_height_square)};
+        } else {
+            return new int[] {resources.getDimensionPixelOffset(R.dimen.detail_poster_width_nonsquare),
+                              resources.getDimensionPixelOffset(R.dimen.detail_poster_height_nonsquare)};
+        }
+    }
+
+    /**
+     * Returns the size at which info screens load their fanart
+     * @param context Context
+     * @return Width and height, in pixels
+     */
+    public static int[] getInfoArtSize(Context context) {
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        WindowManager windowManager = (WindowManager)context.getSystemService(Context.WINDOW_SERVICE);
+        windowManager.getDefaultDisplay().getMetrics(displayMetrics);
+
+        return new int[] {displayMetrics.widthPixels,
+                          context.getResources().getDimensionPixelOffset(R.dimen.detail_art_height)};
+    }
+
+    /**
+     * Returns the size at which {@link #setupCastInfo(Activity, List, GridLayout, Intent)} loads
+     * the actor images
+     * @param context Context
+     * @param numColumns Number of columns of the cast list
+     * @return Width and height, in pixels
+     */
+    public static int[] getCastImageSize(Context context, int numColumns) {
+        Resources resources = context.getResources();
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        WindowManager windowManager = (WindowManager)context.getSystemService(Context.WINDOW_SERVICE);
+        windowManager.getDefaultDisplay().getMetrics(displayMetrics);
+
+        int layoutMarginPx = 2 * resources.getDimensionPixelSize(R.dimen.remote_content_hmargin);
+        int imageMarginPx = 2 * resources.getDimensionPixelSize(R.dimen.image_grid_margin);
+        int imageWidth = (displayMetrics.widthPixels - layoutMarginPx - numColumns * imageMarginPx) / numColumns;
+        return new int[] {imageWidth, (int)(imageWidth * 1.5)};
+    }
+
     /**
      * Loads an image into an imageview
      * @param hostManager Hostmanager connected to the host
@@ -269,9 +328,6 @@ public class UIUtils {
                                      final Intent allCastActivityLaunchIntent) {
         HostManager hostManager = HostManager.getInstance(activity);
         Resources resources = activity.getResources();
-        DisplayMetrics displayMetrics = new DisplayMetrics();
-        WindowManager windowManager = (WindowManager)activity.getSystemService(Context.WINDOW_SERVICE);
-        windowManager.getDefaultDisplay().getMetrics(displayMetrics);
 
         View.OnClickListener castListClickListener = new View.OnClickListener() {
             @Override
@@ -285,10 +341,9 @@ public class UIUtils {
         int numRows = resources.getInteger(R.integer.cast_grid_view_rows);
         int maxCastPictures = numColumns * numRows;
 
-        int layoutMarginPx = 2 * resources.getDimensionPixelSize(R.dimen.remote_content_hmargin);
-        int imageMarginPx = 2 * resources.getDimensionPixelSize(R.dimen.image_grid_margin);
-        int imageWidth = (displayMetrics.widthPixels - layoutMarginPx - numColumns * imageMarginPx) / numColumns;
-        int imageHeight = (int)(imageWidth * 1.5);
+        int[] imageSize = getCastImageSize(activity, numColumns);
+        int imageWidth = imageSize[0];
+        int imageHeight = imageSize[1];
 
         for (int i = 0; i < Math.min(castList.size(), maxCastPictures); i++) {
             VideoType.Cast actor = castList.get(i);
@@ -333,8 +388,9 @@ public class UIUtils {
     }
 
     /**
-     * Simple wrapper to {@link NetUtils#sendWolMagicPacket(String, String, int)}
-     * that sends a WoL magic packet in a new thread
+     * Wakes up a host through {@link HostWaker}, showing a toast when it's ready.
+     * If it's the current host, the calls made on its connection meanwhile are held back
+     * and sent as soon as it's ready
      *
      * @param context Context
      * @param hostInfo Host to send WoL
@@ -343,14 +399,29 @@ public class UIUtils {
         if (hostInfo == null)
             return;
 
-        // Send WoL magic packet on a new thread
-        new Thread(new Runnable() {
+        final Context appContext = context.getApplicationContext();
+        HostManager hostManager = HostManager.getInstance(appContext);
+        HostInfo currentHostInfo = hostManager.getHostInfo();
+        HostConnection hostConnection =
+                ((currentHostInfo != null) && (currentHostInfo.getId() == hostInfo.getId())) ?
+                hostManager.getConnection() : null;
+
+        HostWaker.getInstance().wake(hostInfo, hostConnection, new HostWaker.WakeListener() {
             @Override
-            public void run() {
-                NetUtils.sendWolMagicPacket(hostInfo.getMacAddress(),
-                                            hostInfo.getAddress(), hostInfo.getWolPort());
+            public void onHostReady(HostInfo hostInfo, long timeToReady) {
+                Toast.makeText(appContext,
+                               appContext.getString(R.string.wol_ready, hostInfo.getName(),
+                                                    timeToReady / 1000f),
+                               Toast.LENGTH_SHORT).show();
             }
-        }).start();
+
+            @Override
+            public void onHostNotReady(HostInfo hostInfo) {
+                Toast.makeText(appContext,
+                               appContext.getString(R.string.wol_not_ready, hostInfo.getName()),
+                               Toast.LENGTH_SHORT).show();
+            }
+        });
         Toast.makeText(context, R.string.wol_sent, Toast.LENGTH_SHORT).show();
     }
 
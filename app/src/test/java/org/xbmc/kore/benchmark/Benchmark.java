@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Runs benchmarks and writes their results as JSON.
+ * <p>
+ * Benchmarks are only run when the system property {@code kore.benchmark} is true, which the
+ * build sets with {@code ./gradlew testDebugUnitTest -Pbenchmark}. The library sizes come from
+ * {@code kore.benchmark.sizes} (set with {@code -PbenchmarkSizes=1000,10000}), and the results
+ * are written to the directory in {@code kore.benchmark.output}, one file per suite.
+ * <p>
+ * Each result has the throughput in items per second, the latency percentiles of the
+ * samples in ms, and the bytes allocated per run by the threads of the code being measured.
+ * Threads of the test fixtures, like the mock server, aren't counted.
+ * <p>
+ * To catch regressions, point {@code kore.benchmark.baseline} to a directory with the results
+ * of a previous run (set with {@code -PbenchmarkBaseline=<dir>}). Each suite then fails if any
+ * of its results is slower, or allocates more, than the baseline by more than
+ * {@code kore.benchmark.tolerance} (0.2 by default, set with {@code -PbenchmarkTolerance})
+ */
+public class Benchmark {
+    private static final String PROPERTY_ENABLED = "kore.benchmark";
+    private static final String PROPERTY_SIZES = "kore.benchmark.sizes";
+    private static final String PROPERTY_OUTPUT = "kore.benchmark.output";
+    private static final String PROPERTY_BASELINE = "kore.benchmark.baseline";
+    private static final String PROPERTY_TOLERANCE = "kore.benchmark.tolerance";
+
+    /**
+     * Prefixes of the names of the threads whose allocations aren't counted
+     */
+    private static final String[] FIXTURE_THREAD_PREFIXES = {"MockTcpServer"};
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+
+    /**
+     * Code to measure. Each call is one sample
+     */
+    public interface Task {
+        /**
+         * Runs the task
+         * @return Number of items processed
+         */
+        int run() throws Exception;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY_ENABLED);
+    }
+
+    /**
+     * Returns the library sizes to benchmark
+     */
+    public static int[] getSizes() {
+        String[] sizes = System.getProperty(PROPERTY_SIZES, "1000,10000,100000").split(",");
+        int[] result = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            result[i] = Integer.parseInt(sizes[i].trim());
+        }
+        return result;
+    }
+
+    private final String suite;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ArrayNode results = objectMapper.createArrayNode();
+
+    /**
+     * Constructor
+     * @param suite Name of the suite, used as the name of the results file
+     */
+    public Benchmark(String suite) {
+        this.suite = suite;
+    }
+
+    /**
+     * Measures a task, after warming it up
+     * @param name Name of the benchmark
+     * @param size Library size
+     * @param task Task to measure
+     * @return Result of the benchmark
+     */
+    public ObjectNode measure(String name, int size, Task task) throws Exception {
+        return measure(name, size, WARMUP_RUNS, MEASURED_RUNS, task);
+    }
+
+    /**
+     * Measures a task, after warming it up
+     * @param name Name of the benchmark
+     * @param size Library size
+     * @param warmupRuns Number of runs to discard
+     * @param measuredRuns Number of runs to measure
+     * @param task Task to measure
+     * @return Result of the benchmark
+     */
+    public ObjectNode measure(String name, int size, int warmupRuns, int measuredRuns, Task task)
+            throws Exception {
+        for (int i = 0; i < warmupRuns; i++) {
+            task.run();
+        }
+
+        long[] nanos = new long[measuredRuns];
+        long totalNanos = 0, totalItems = 0, allocated = 0;
+        for (int i = 0; i < measuredRuns; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            totalItems += task.run();
+            nanos[i] = System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+            totalNanos += nanos[i];
+        }
+        Arrays.sort(nanos);
+
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("name", name);
+        result.put("size", size);
+        result.put("runs", measuredRuns);
+        result.put("itemsPerSecond", (totalNanos == 0) ? 0 : totalItems * 1e9 / totalNanos);
+        result.put("p50Millis", percentile(nanos, 50) / 1e6);
+        result.put("p90Millis", percentile(nanos, 90) / 1e6);
+        result.put("maxMillis", nanos[nanos.length - 1] / 1e6);
+        result.put("allocatedBytesPerRun", allocated / measuredRuns);
+        results.add(result);
+        return result;
+    }
+
+    /**
+     * Writes the results of the suite to {@code <output>/<suite>.json}, and then checks them
+     * against the baseline, if there's one
+     * @throws AssertionError If a result regressed from the baseline
+     */
+    public void writeResults() throws IOException {
+        File directory = new File(System.getProperty(PROPERTY_OUTPUT, "build/benchmarks"));
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create " + directory);
+        }
+        ObjectNode report = objectMapper.createObjectNode();
+        report.put("suite", suite);
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("vm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        report.set("results", results);
+        objectMapper.writerWithDefaultPrettyPrinter()
+                    .writeValue(new File(directory, suite + ".json"), report);
+
+        checkBaseline();
+    }
+
+    /**
+     * Compares the results with the ones of the same name and size on the baseline
+     */
+    private void checkBaseline() throws IOException {
+        String baselineDirectory = System.getProperty(PROPERTY_BASELINE, "");
+        if (baselineDirectory.isEmpty())
+            return;
+        File baselineFile = new File(baselineDirectory, suite + ".json");
+        if (!baselineFile.exists())
+            return;
+        double tolerance = Double.parseDouble(System.getProperty(PROPERTY_TOLERANCE, "0.2"));
+
+        JsonNode baseline = objectMapper.readTree(baselineFile).get("results");
+        StringBuilder regressions = new StringBuilder();
+        for (JsonNode result : results) {
+            for (JsonNode previous : baseline) {
+                if (!previous.get("name").asText().equals(result.get("name").asText()) ||
+                    (previous.get("size").asInt() != result.get("size").asInt()))
+                    continue;
+
+                double itemsPerSecond = result.get("itemsPerSecond").asDouble(),
+                        previousItemsPerSecond = previous.get("itemsPerSecond").asDouble();
+                if (itemsPerSecond < previousItemsPerSecond * (1 - tolerance)) {
+                    regressions.append(String.format(Locale.US, "\n%s[%d]: %.0f items/s, was %.0f",
+                                                     result.get("name").asText(), result.get("size").asInt(),
+                                                     itemsPerSecond, previousItemsPerSecond));
+                }
+                long allocated = result.get("allocatedBytesPerRun").asLong(),
+                        previousAllocated = previous.get("allocatedBytesPerRun").asLong();
+                if ((previousAllocated > 0) && (allocated > previousAllocated * (1 + tolerance))) {
+                    regressions.append(String.format(Locale.US, "\n%s[%d]: %d B/run, was %d",
+                                                     result.get("name").asText(), result.get("size").asInt(),
+                                                     allocated, previousAllocated));
+                }
+            }
+        }
+        if (regressions.length() > 0) {
+            throw new AssertionError("Suite " + suite + " regressed from " + baselineFile + ":" + regressions);
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Returns the bytes allocated so far by the live threads, except the ones of the fixtures,
+     * or 0 if the VM can't tell
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return 0;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported() || !threadBean.isThreadAllocatedMemoryEnabled())
+            return 0;
+
+        long total = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (isFixtureThread(thread))
+                continue;
+            long bytes = threadBean.getThreadAllocatedBytes(thread.getId());
+            if (bytes > 0)
+                total += bytes;
+        }
+        return total;
+    }
+
+    private static boolean isFixtureThread(Thread thread) {
+        for (String prefix : FIXTURE_THREAD_PREFIXES) {
+            if (thread.getName().startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.ApiList;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.AudioLibrary;
+import org.xbmc.kore.jsonrpc.method.VideoLibrary;
+import org.xbmc.kore.jsonrpc.type.AudioType;
+import org.xbmc.kore.jsonrpc.type.ListType;
+import org.xbmc.kore.jsonrpc.type.VideoType;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.provider.MediaProvider;
+import org.xbmc.kore.service.library.SyncItem;
+import org.xbmc.kore.service.library.SyncMovies;
+import org.xbmc.kore.service.library.SyncMusic;
+import org.xbmc.kore.service.library.SyncOrchestrator;
+import org.xbmc.kore.service.library.SyncTVShows;
+import org.xbmc.kore.service.library.SyncUtils;
+import org.xbmc.kore.testutils.Database;
+import org.xbmc.kore.testutils.SyntheticLibrary;
+import org.xbmc.kore.testutils.tcpserver.MockTcpServer;
+import org.xbmc.kore.testutils.tcpserver.handlers.JSONConnectionHandlerManager;
+import org.xbmc.kore.testutils.tcpserver.handlers.LibraryHandler;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmarks of the library sync path, from the connection to the database, against
+ * libraries of each of the {@link Benchmark#getSizes()}.
+ * Skipped unless benchmarks are enabled, see {@link Benchmark}
+ */
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class LibraryBenchmark {
+    private static final String AUTHORITY = "org.xbmc.kore.provider";
+    private static final int SYNC_TIMEOUT_MINUTES = 10;
+    private static final int PAGE_SIZE = 300;
+
+    private Context context;
+    private ContentResolver contentResolver;
+    private MockTcpServer server;
+    private HostConnection hostConnection;
+    private HostInfo hostInfo;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(Benchmark.isEnabled());
+
+        context = ApplicationProvider.getApplicationContext();
+        contentResolver = context.getContentResolver();
+        ProviderInfo info = new ProviderInfo();
+        info.authority = AUTHORITY;
+        Robolectric.buildContentProvider(MediaProvider.class).create(info);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        stopServer();
+    }
+
+    @Test
+    public void decode() throws Exception {
+        Benchmark benchmark = new Benchmark("decode");
+        for (final int size : Benchmark.getSizes()) {
+            SyntheticLibrary library = new SyntheticLibrary(context, size);
+
+            final String movies = library.getResponse("VideoLibrary.GetMovies", null);
+            benchmark.measure("movies", size, new Benchmark.Task() {
+                @Override
+                public int run() throws Exception {
+                    return new VideoLibrary.GetMovies().resultFromJson(movies).items.size();
+                }
+            });
+
+            final String songs = library.getResponse("AudioLibrary.GetSongs", null);
+            benchmark.measure("songs", size, new Benchmark.Task() {
+                @Override
+                public int run() throws Exception {
+                    return new AudioLibrary.GetSongs().resultFromJson(songs).items.size();
+                }
+            });
+
+            final String episodes = library.getResponse("VideoLibrary.GetEpisodes", null);
+            benchmark.measure("episodes", size, new Benchmark.Task() {
+                @Override
+                public int run() throws Exception {
+                    return new VideoLibrary.GetEpisodes(-1).resultFromJson(episodes).size();
+                }
+            });
+        }
+        benchmark.writeResults();
+    }
+
+    @Test
+    public void connection() throws Exception {
+        Benchmark benchmark = new Benchmark("connection");
+        for (final int size : Benchmark.getSizes()) {
+            final SyntheticLibrary library = startServer(size);
+            benchmark.measure("getMoviesPaged", size, new Benchmark.Task() {
+                @Override
+                public int run() throws Exception {
+                    int received = 0;
+                    while (received < library.getMovieCount()) {
+                        ListType.Limits limits = new ListType.Limits(received, received + PAGE_SIZE);
+                        ApiList<VideoType.DetailsMovie> page =
+                                hostConnection.execute(new VideoLibrary.GetMovies(limits)).get();
+                        received += page.items.size();
+                    }
+                    return received;
+                }
+            });
+            stopServer();
+        }
+        benchmark.writeResults();
+    }
+
+    @Test
+    public void provider() throws Exception {
+        Benchmark benchmark = new Benchmark("provider");
+        hostInfo = Database.addHost(context);
+        for (final int size : Benchmark.getSizes()) {
+            SyntheticLibrary library = new SyntheticLibrary(context, size);
+            List<VideoType.DetailsMovie> movies = new VideoLibrary.GetMovies()
+                    .resultFromJson(library.getResponse("VideoLibrary.GetMovies", null)).items;
+            final ContentValues[] values = new ContentValues[movies.size()];
+            for (int i = 0; i < movies.size(); i++) {
+                values[i] = SyncUtils.contentValuesFromMovie(hostInfo.getId(), movies.get(i));
+            }
+            movies = null;
+
+            benchmark.measure("bulkInsertMovies", size, new Benchmark.Task() {
+                @Override
+                public int run() throws Exception {
+                    contentResolver.delete(MediaContract.Movies.CONTENT_URI, null, null);
+                    return contentResolver.bulkInsert(MediaContract.Movies.CONTENT_URI, values);
+                }
+            });
+        }
+        contentResolver.delete(MediaContract.Movies.CONTENT_URI, null, null);
+        benchmark.writeResults();
+    }
+
+    @Test
+    public void sync() throws Exception {
+        Benchmark benchmark = new Benchmark("sync");
+        for (final int size : Benchmark.getSizes()) {
+            final SyntheticLibrary library = startServer(size);
+
+            benchmark.measure("movies", size, 1, 3, new Benchmark.Task() {
+                @Override
+                public int run() throws Exception {
+                    runSyncItem(new SyncMovies(hostInfo.getId(), new Bundle()));
+                    return library.getMovieCount();
+                }
+            });
+            assertEquals(library.getMovieCount(), count(MediaContract.Movies.CONTENT_URI));
+
+            benchmark.measure("music", size, 1, 3, new Benchmark.Task() {
+                @Override
+                public int run() throws Exception {
+                    runSyncItem(new SyncMusic(new Bundle()));
+                    return library.getArtistCount() + SyntheticLibrary.GENRES +
+                           library.getAlbumCount() + library.getSongCount();
+                }
+            });
+            assertEquals(library.getSongCount(), count(MediaContract.Songs.CONTENT_URI));
+
+            benchmark.measure("tvshows", size, 1, 3, new Benchmark.Task() {
+                @Override
+                public int run() throws Exception {
+                    runSyncItem(new SyncTVShows(hostInfo.getId(), new Bundle()));
+                    return library.getTVShowCount() * (1 + SyntheticLibrary.SEASONS_PER_TVSHOW) +
+                           library.getEpisodeCount();
+                }
+            });
+            assertEquals(library.getEpisodeCount(), count(MediaContract.Episodes.CONTENT_URI));
+
+            stopServer();
+        }
+        benchmark.writeResults();
+    }
+
+    /**
+     * Starts a mock server with a library of the given size, and connects to it over TCP
+     */
+    private SyntheticLibrary startServer(int size) throws Exception {
+        SyntheticLibrary library = new SyntheticLibrary(context, size);
+        JSONConnectionHandlerManager manager = new JSONConnectionHandlerManager();
+        manager.addHandler(new LibraryHandler(library));
+        server = new MockTcpServer(manager);
+        server.setResponseInterval(1);
+        server.start();
+
+        hostInfo = Database.addHost(context, server.getHostName(), HostConnection.PROTOCOL_TCP,
+                                    HostInfo.DEFAULT_HTTP_PORT, server.getPort(), false,
+                                    HostInfo.DEFAULT_KODI_VERSION_MAJOR);
+        hostConnection = new HostConnection(hostInfo);
+        return library;
+    }
+
+    private void stopServer() throws Exception {
+        if (hostConnection != null) {
+            hostConnection.disconnect();
+            hostConnection = null;
+        }
+        if (server != null) {
+            server.shutdown();
+            server = null;
+        }
+    }
+
+    /**
+     * Runs a sync item to the end. Callbacks run on the connection's listener thread, as there's
+     * no callback handler
+     */
+    private void runSyncItem(SyncItem syncItem) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final int[] error = {-1};
+        SyncOrchestrator orchestrator = new SyncOrchestrator(null, 0, hostInfo, null, contentResolver) {
+            @Override
+            public void syncItemFinished() {
+                latch.countDown();
+            }
+
+            @Override
+            public void syncItemFailed(int errorCode, String description) {
+                error[0] = errorCode;
+                latch.countDown();
+            }
+        };
+        syncItem.sync(orchestrator, hostConnection, null, contentResolver);
+        assertTrue(latch.await(SYNC_TIMEOUT_MINUTES, TimeUnit.MINUTES));
+        assertEquals(-1, error[0]);
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
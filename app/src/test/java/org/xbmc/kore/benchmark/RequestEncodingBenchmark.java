@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.benchmark;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.method.Input;
+import org.xbmc.kore.jsonrpc.method.JSONRPC;
+import org.xbmc.kore.jsonrpc.method.Player;
+import org.xbmc.kore.jsonrpc.method.VideoLibrary;
+import org.xbmc.kore.jsonrpc.type.ListType;
+import org.xbmc.kore.jsonrpc.type.PlayerType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the allocations of encoding requests through a string, as they used to be sent,
+ * with streaming them through {@link ApiMethod#writeJson(OutputStream)}. Both include building
+ * the request. Skipped unless benchmarks are enabled, see {@link Benchmark}
+ */
+public class RequestEncodingBenchmark {
+    private static final int REQUESTS = 10000;
+
+    private interface RequestFactory {
+        ApiMethod<?> create();
+    }
+
+    private static final OutputStream nullOutputStream = new OutputStream() {
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    };
+
+    @Before
+    public void setUp() {
+        assumeTrue(Benchmark.isEnabled());
+    }
+
+    @Test
+    public void encoding() throws Exception {
+        Benchmark benchmark = new Benchmark("encoding");
+        measure(benchmark, "inputUp", new RequestFactory() {
+            @Override
+            public ApiMethod<?> create() {
+                return new Input.Up();
+            }
+        });
+        measure(benchmark, "ping", new RequestFactory() {
+            @Override
+            public ApiMethod<?> create() {
+                return new JSONRPC.Ping();
+            }
+        });
+        measure(benchmark, "playerGetProperties", new RequestFactory() {
+            @Override
+            public ApiMethod<?> create() {
+                return new Player.GetProperties(1, PlayerType.PropertyName.SPEED,
+                                                PlayerType.PropertyName.PERCENTAGE,
+                                                PlayerType.PropertyName.TIME,
+                                                PlayerType.PropertyName.TOTALTIME);
+            }
+        });
+        measure(benchmark, "libraryPage", new RequestFactory() {
+            int page = 0;
+
+            @Override
+            public ApiMethod<?> create() {
+                // Never repeated, so never gets a template
+                page++;
+                return new VideoLibrary.GetMovies(new ListType.Limits(page * 300, page * 300 + 300));
+            }
+        });
+        benchmark.writeResults();
+    }
+
+    private void measure(Benchmark benchmark, String name, final RequestFactory factory)
+            throws Exception {
+        ObjectNode string = benchmark.measure(name + ".string", REQUESTS, new Benchmark.Task() {
+            @Override
+            public int run() throws IOException {
+                for (int i = 0; i < REQUESTS; i++) {
+                    nullOutputStream.write(factory.create().toJsonString().getBytes("UTF-8"));
+                }
+                return REQUESTS;
+            }
+        });
+        ObjectNode streamed = benchmark.measure(name + ".streamed", REQUESTS, new Benchmark.Task() {
+            @Override
+            public int run() throws IOException {
+                for (int i = 0; i < REQUESTS; i++) {
+                    factory.create().writeJson(nullOutputStream);
+                }
+                return REQUESTS;
+            }
+        });
+        // Both build the request, so streaming should always allocate less
+        assertTrue(name + " streamed allocated " + streamed.get("allocatedBytesPerRun") +
+                   " B/run, through a string " + string.get("allocatedBytesPerRun"),
+                   streamed.get("allocatedBytesPerRun").asLong() <= string.get("allocatedBytesPerRun").asLong());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.host;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.provider.mediaprovider.AbstractTestClass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class HostDiscoveryTest extends AbstractTestClass {
+    private static final String UUID = "f1f2f3f4-0000-1111-2222-333344445555";
+
+    private HostDiscovery hostDiscovery;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        hostDiscovery = new HostDiscovery(ApplicationProvider.getApplicationContext());
+    }
+
+    @Test
+    public void sameNameOnAnotherAddressIsNotMovedTest() {
+        HostInfo saved = savedHost(1, "Kodi", "192.168.1.10", null);
+        List<HostInfo> macCandidates = new ArrayList<>();
+
+        List<HostInfo> moved = hostDiscovery.findMovedHosts(Collections.singletonList(saved),
+                                                            foundHost("Kodi", "192.168.1.20"),
+                                                            UUID, macCandidates);
+
+        assertTrue(moved.isEmpty());
+        assertTrue(macCandidates.isEmpty());
+    }
+
+    @Test
+    public void hostIsRecognizedByItsUuidTest() {
+        HostInfo saved = savedHost(2, "Living room", "192.168.1.10", null);
+        List<HostInfo> savedHosts = Collections.singletonList(saved);
+        List<HostInfo> macCandidates = new ArrayList<>();
+
+        // Seen on its saved address, which remembers its uuid
+        assertTrue(hostDiscovery.findMovedHosts(savedHosts, foundHost("Kodi", "192.168.1.10"),
+                                                UUID, macCandidates).isEmpty());
+        // Another Kodi on another address isn't it
+        assertTrue(hostDiscovery.findMovedHosts(savedHosts, foundHost("Kodi", "192.168.1.30"),
+                                                "another-uuid", macCandidates).isEmpty());
+
+        List<HostInfo> moved = hostDiscovery.findMovedHosts(savedHosts, foundHost("Kodi", "192.168.1.20"),
+                                                            UUID, macCandidates);
+        assertEquals(1, moved.size());
+        assertEquals(saved.getId(), moved.get(0).getId());
+        assertTrue(macCandidates.isEmpty());
+    }
+
+    @Test
+    public void hostWithoutKnownUuidIsMatchedByMacAddressTest() {
+        HostInfo withMac = savedHost(3, "Bedroom", "192.168.1.10", "52:54:00:12:35:02");
+        HostInfo withoutMac = savedHost(4, "Kitchen", "192.168.1.11", null);
+        List<HostInfo> macCandidates = new ArrayList<>();
+
+        List<HostInfo> moved = hostDiscovery.findMovedHosts(Arrays.asList(withMac, withoutMac),
+                                                            foundHost("Kodi", "192.168.1.20"),
+                                                            null, macCandidates);
+
+        assertTrue(moved.isEmpty());
+        assertEquals(1, macCandidates.size());
+        assertEquals(withMac.getId(), macCandidates.get(0).getId());
+    }
+
+    @Test
+    public void onlyRecognizableHostsAreRelocatedTest() {
+        assertFalse(hostDiscovery.canRelocate(savedHost(6, "Kodi", "kodi.local", "52:54:00:12:35:02")));
+        assertFalse(hostDiscovery.canRelocate(savedHost(7, "Kodi", "192.168.1.10", null)));
+        assertTrue(hostDiscovery.canRelocate(savedHost(8, "Kodi", "192.168.1.10", "52:54:00:12:35:02")));
+
+        // Its uuid is remembered once it's seen on its saved address
+        HostInfo withoutMac = savedHost(9, "Kodi", "192.168.1.11", null);
+        hostDiscovery.findMovedHosts(Collections.singletonList(withoutMac),
+                                     foundHost("Kodi", "192.168.1.11"), UUID, new ArrayList<HostInfo>());
+        assertTrue(hostDiscovery.canRelocate(withoutMac));
+    }
+
+    @Test
+    public void hostSavedWithHostnameIsNotMovedTest() {
+        HostInfo saved = savedHost(5, "Kodi", "kodi.local", "52:54:00:12:35:02");
+        List<HostInfo> macCandidates = new ArrayList<>();
+
+        List<HostInfo> moved = hostDiscovery.findMovedHosts(Collections.singletonList(saved),
+                                                            foundHost("Kodi", "192.168.1.20"),
+                                                            UUID, macCandidates);
+
+        assertTrue(moved.isEmpty());
+        assertTrue(macCandidates.isEmpty());
+    }
+
+    @Test
+    public void sameMacAddressTest() {
+        assertTrue(HostDiscovery.isSameMacAddress("52:54:00:12:35:02", "52-54-00-12-35-02"));
+        assertTrue(HostDiscovery.isSameMacAddress("52:54:00:AB:35:02", "52:54:00:ab:35:02"));
+        assertFalse(HostDiscovery.isSameMacAddress("52:54:00:12:35:02", "52:54:00:12:35:03"));
+        assertFalse(HostDiscovery.isSameMacAddress("", ""));
+        assertFalse(HostDiscovery.isSameMacAddress(null, "52:54:00:12:35:02"));
+    }
+
+    @Test
+    public void updateHostAddressUpdatesTheHostListTest() {
+        HostManager hostManager = HostManager.getInstance(ApplicationProvider.getApplicationContext());
+        hostManager.switchHost(hostInfo);
+
+        HostInfo updated = hostManager.updateHostAddress(hostInfo, "192.168.1.20");
+
+        assertNotNull(updated);
+        assertEquals("192.168.1.20", updated.getAddress());
+        assertEquals(hostInfo.getMacAddress(), updated.getMacAddress());
+        assertEquals("192.168.1.20", hostManager.getHostInfo().getAddress());
+        boolean found = false;
+        for (HostInfo host : hostManager.getHosts()) {
+            if (host.getId() == hostInfo.getId()) {
+                assertEquals("192.168.1.20", host.getAddress());
+                found = true;
+            }
+        }
+        assertTrue(found);
+    }
+
+    private static HostInfo savedHost(int id, String name, String address, String macAddress) {
+        return new HostInfo(id, name, address, HostConnection.PROTOCOL_TCP,
+                            HostInfo.DEFAULT_HTTP_PORT, HostInfo.DEFAULT_TCP_PORT, null, null,
+                            macAddress, HostInfo.DEFAULT_WOL_PORT, true, false,
+                            HostInfo.DEFAULT_EVENT_SERVER_PORT, HostInfo.DEFAULT_KODI_VERSION_MAJOR,
+                            HostInfo.DEFAULT_KODI_VERSION_MINOR, HostInfo.DEFAULT_KODI_VERSION_REVISION,
+                            HostInfo.DEFAULT_KODI_VERSION_TAG, 0, false);
+    }
+
+    private static HostInfo foundHost(String name, String address) {
+        return new HostInfo(name, address, HostConnection.PROTOCOL_TCP, HostInfo.DEFAULT_HTTP_PORT,
+                            HostInfo.DEFAULT_TCP_PORT, null, null, true,
+                            HostInfo.DEFAULT_EVENT_SERVER_PORT, false, true);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xbmc.kore.host;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.xbmc.kore.jsonrpc.HostConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class HostReachabilityTest {
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private HostReachability hostReachability;
+    private List<Integer> notifiedStatuses;
+    private HostReachability.StatusListener listener = new HostReachability.StatusListener() {
+        @Override
+        public void onHostStatusChanged(HostInfo hostInfo, int status) {
+            notifiedStatuses.add(status);
+        }
+    };
+
+    /**
+     * Reports the hosts with an odd id as available, counting the probes
+     */
+    private static class CountingProber implements HostReachability.Prober {
+        final AtomicInteger probes = new AtomicInteger(0);
+
+        @Override
+        public int probe(HostInfo hostInfo) {
+            probes.incrementAndGet();
+            return (hostInfo.getId() % 2 == 1) ?
+                   HostReachability.STATUS_AVAILABLE : HostReachability.STATUS_UNAVAILABLE;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        hostReachability = HostReachability.getInstance();
+        hostReachability.invalidate();
+        hostReachability.registerListener(listener);
+        notifiedStatuses = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        hostReachability.unregisterListener(listener);
+        hostReachability.setProber(null, null);
+    }
+
+    @Test
+    public void probesHostsConcurrently() throws Exception {
+        // Each probe waits for the other one to start, which only happens if they run concurrently
+        final CountDownLatch probesStarted = new CountDownLatch(2);
+        final AtomicBoolean concurrent = new AtomicBoolean(true);
+        final CountingProber countingProber = new CountingProber();
+        hostReachability.setProber(new HostReachability.Prober() {
+            @Override
+            public int probe(HostInfo hostInfo) {
+                probesStarted.countDown();
+                try {
+                    if (!probesStarted.await(5, TimeUnit.SECONDS)) concurrent.set(false);
+                } catch (InterruptedException e) {
+                    concurrent.set(false);
+                }
+                return countingProber.probe(hostInfo);
+            }
+        }, null);
+
+        HostInfo available = createHostInfo(1, HostInfo.DEFAULT_HTTP_PORT);
+        HostInfo unavailable = createHostInfo(2, HostInfo.DEFAULT_HTTP_PORT);
+        List<HostInfo> hosts = new ArrayList<>();
+        hosts.add(available);
+        hosts.add(unavailable);
+
+        hostReachability.refresh(hosts, false);
+        waitForStatus(available);
+        waitForStatus(unavailable);
+
+        assertTrue(concurrent.get());
+        assertEquals(2, countingProber.probes.get());
+        assertEquals(HostReachability.STATUS_AVAILABLE, hostReachability.getStatus(available));
+        assertEquals(HostReachability.STATUS_UNAVAILABLE, hostReachability.getStatus(unavailable));
+        assertEquals(2, notifiedStatuses.size());
+    }
+
+    @Test
+    public void unchangedStatusIsNotNotified() throws Exception {
+        CountingProber prober = new CountingProber();
+        hostReachability.setProber(prober, DIRECT_EXECUTOR);
+
+        HostInfo hostInfo = createHostInfo(3, HostInfo.DEFAULT_HTTP_PORT);
+        hostReachability.refresh(hostInfo, false);
+        ShadowLooper.idleMainLooper();
+        assertEquals(1, prober.probes.get());
+        assertEquals(1, notifiedStatuses.size());
+
+        // Current status, not probed
+        hostReachability.refresh(hostInfo, false);
+        ShadowLooper.idleMainLooper();
+        assertEquals(1, prober.probes.get());
+        assertEquals(1, notifiedStatuses.size());
+
+        // Expired status, probed again with the same result
+        ShadowLooper.idleMainLooper(HostReachability.STATUS_TTL, TimeUnit.MILLISECONDS);
+        hostReachability.refresh(hostInfo, false);
+        ShadowLooper.idleMainLooper();
+        assertEquals(2, prober.probes.get());
+        assertEquals(1, notifiedStatuses.size());
+        assertEquals(HostReachability.STATUS_AVAILABLE, hostReachability.getStatus(hostInfo));
+    }
+
+    @Test
+    public void forcedRefreshProbesCurrentStatusTest() throws Exception {
+        CountingProber prober = new CountingProber();
+        hostReachability.setProber(prober, DIRECT_EXECUTOR);
+
+        HostInfo hostInfo = createHostInfo(5, HostInfo.DEFAULT_HTTP_PORT);
+        hostReachability.refresh(hostInfo, false);
+        ShadowLooper.idleMainLooper();
+        hostReachability.refresh(hostInfo, true);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(2, prober.probes.get());
+        assertEquals(1, notifiedStatuses.size());
+    }
+
+    @Test
+    public void changedAddressIsUnknown() throws Exception {
+        hostReachability.setProber(new CountingProber(), DIRECT_EXECUTOR);
+
+        HostInfo hostInfo = createHostInfo(7, HostInfo.DEFAULT_HTTP_PORT);
+        hostReachability.refresh(hostInfo, false);
+        ShadowLooper.idleMainLooper();
+        assertEquals(HostReachability.STATUS_AVAILABLE, hostReachability.getStatus(hostInfo));
+
+        HostInfo moved = createHostInfo(7, HostInfo.DEFAULT_HTTP_PORT + 1);
+        assertEquals(HostReachability.STATUS_UNKNOWN, hostReachability.getStatus(moved));
+    }
+
+    @Test
+    public void hostAnsweringPingIsAvailableTest() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        try {
+            answerOnce(serverSocket, "HTTP/1.1 200 OK",
+                       "{\"id\":1,\"jsonrpc\":\"2.0\",\"result\":\"pong\"}");
+            HostInfo hostInfo = createHostInfo(9, serverSocket.getLocalPort());
+            hostReachability.refresh(hostInfo, false);
+            waitForStatus(hostInfo);
+
+            assertEquals(HostReachability.STATUS_AVAILABLE, hostReachability.getStatus(hostInfo));
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void openPortWithoutJsonRpcIsUnavailableTest() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        try {
+            answerOnce(serverSocket, "HTTP/1.1 404 Not Found", "");
+            HostInfo hostInfo = createHostInfo(11, serverSocket.getLocalPort());
+            hostReachability.refresh(hostInfo, false);
+            waitForStatus(hostInfo);
+
+            assertEquals(HostReachability.STATUS_UNAVAILABLE, hostReachability.getStatus(hostInfo));
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    private void waitForStatus(HostInfo hostInfo) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((hostReachability.getStatus(hostInfo) == HostReachability.STATUS_UNKNOWN) &&
+               (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(50);
+            ShadowLooper.idleMainLooper();
+        }
+    }
+
+    /**
+     * Answers the first HTTP request made to a server socket, on a background thread
+     */
+    private static void answerOnce(final ServerSocket serverSocket, final String statusLine,
+                                   final String body) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = serverSocket.accept()) {
+                    readRequest(socket.getInputStream());
+                    byte[] bodyBytes = body.getBytes(Charset.forName("UTF-8"));
+                    OutputStream out = socket.getOutputStream();
+                    out.write((statusLine + "\r\n" +
+                               "Content-Type: application/json\r\n" +
+                               "Content-Length: " + bodyBytes.length + "\r\n" +
+                               "Connection: close\r\n\r\n").getBytes(Charset.forName("UTF-8")));
+                    out.write(bodyBytes);
+                    out.flush();
+                } catch (IOException ignored) {
+                }
+            }
+        }).start();
+    }
+
+    private static void readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        while (!headers.toString("UTF-8").endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b == -1) return;
+            headers.write(b);
+        }
+        int contentLength = 0;
+        for (String header : headers.toString("UTF-8").split("\r\n")) {
+            if (header.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+        for (int i = 0; i < contentLength; i++) {
+            if (in.read() == -1) return;
+        }
+    }
+
+    private HostInfo createHostInfo(int id, int port) {
+        return new HostInfo(id, "Kodi " + id, "127.0.0.1", HostConnection.PROTOCOL_HTTP, port,
+                            HostInfo.DEFAULT_TCP_PORT, null, null, null, HostInfo.DEFAULT_WOL_PORT,
+                            false, false, HostInfo.DEFAULT_EVENT_SERVER_PORT,
+                            HostInfo.DEFAULT_KODI_VERSION_MAJOR, HostInfo.DEFAULT_KODI_VERSION_MINOR,
+                            HostInfo.DEFAULT_KODI_VERSION_REVISION, HostInfo.DEFAULT_KODI_VERSION_TAG,
+                            0, false);
+    }
+}
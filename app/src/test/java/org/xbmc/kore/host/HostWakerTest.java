@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.host;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiException;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.Application;
+import org.xbmc.kore.jsonrpc.method.JSONRPC;
+import org.xbmc.kore.testutils.tcpserver.MockTcpServer;
+import org.xbmc.kore.testutils.tcpserver.handlers.ApplicationHandler;
+import org.xbmc.kore.testutils.tcpserver.handlers.JSONConnectionHandlerManager;
+import org.xbmc.kore.testutils.tcpserver.handlers.JSONRPCHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class HostWakerTest {
+
+    private MockTcpServer server;
+    private HostInfo hostInfo;
+    private HostConnection hostConnection;
+    private CountDownLatch wolReleased;
+    private AtomicInteger wolSent;
+
+    @Before
+    public void setUp() throws Exception {
+        JSONConnectionHandlerManager manager = new JSONConnectionHandlerManager();
+        manager.addHandler(new JSONRPCHandler());
+        manager.addHandler(new ApplicationHandler());
+        server = new MockTcpServer(manager);
+        server.setResponseInterval(1);
+        server.start();
+
+        hostInfo = new HostInfo(10, "Kodi", server.getHostName(), HostConnection.PROTOCOL_TCP,
+                                HostInfo.DEFAULT_HTTP_PORT, server.getPort(), null, null,
+                                "52:54:00:12:35:02", HostInfo.DEFAULT_WOL_PORT, false, false,
+                                HostInfo.DEFAULT_EVENT_SERVER_PORT,
+                                HostInfo.DEFAULT_KODI_VERSION_MAJOR, HostInfo.DEFAULT_KODI_VERSION_MINOR,
+                                HostInfo.DEFAULT_KODI_VERSION_REVISION, HostInfo.DEFAULT_KODI_VERSION_TAG,
+                                0, false);
+        hostConnection = new HostConnection(hostInfo);
+
+        // Keeps the host waking up until the test releases it
+        wolReleased = new CountDownLatch(1);
+        wolSent = new AtomicInteger();
+        HostWaker.getInstance().setWolSender(new HostWaker.WolSender() {
+            @Override
+            public void send(HostInfo hostInfo) {
+                wolSent.incrementAndGet();
+                try {
+                    wolReleased.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        wolReleased.countDown();
+        HostWaker.getInstance().setWolSender(null);
+        hostConnection.disconnect();
+        server.shutdown();
+    }
+
+    @Test
+    public void heldCallsAreSentWhenReady() throws Exception {
+        final List<String> answered = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch allAnswered = new CountDownLatch(2);
+        final int[] supersededError = {-1};
+        final long[] timeToReady = {-1};
+        HostWaker.getInstance().wake(hostInfo, hostConnection, new HostWaker.WakeListener() {
+            @Override
+            public void onHostReady(HostInfo hostInfo, long millis) {
+                timeToReady[0] = millis;
+            }
+
+            @Override
+            public void onHostNotReady(HostInfo hostInfo) { }
+        });
+        assertTrue(HostWaker.getInstance().isWaking(hostInfo));
+
+        hostConnection.execute(new JSONRPC.Ping(), new ApiCallback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                answered.add("superseded " + JSONRPC.Ping.METHOD_NAME);
+            }
+
+            @Override
+            public void onError(int errorCode, String description) {
+                supersededError[0] = errorCode;
+            }
+        }, null);
+        hostConnection.execute(new Application.SetMute(), new ApiCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                answered.add(Application.SetMute.METHOD_NAME);
+                allAnswered.countDown();
+            }
+
+            @Override
+            public void onError(int errorCode, String description) { }
+        }, null);
+        hostConnection.execute(new JSONRPC.Ping(), new ApiCallback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                answered.add(JSONRPC.Ping.METHOD_NAME);
+                allAnswered.countDown();
+            }
+
+            @Override
+            public void onError(int errorCode, String description) { }
+        }, null);
+
+        // Only the latest call of each method is held, and nothing is sent yet
+        assertEquals(ApiException.IO_EXCEPTION_WHILE_CONNECTING, supersededError[0]);
+        assertEquals(Arrays.asList(Application.SetMute.METHOD_NAME, JSONRPC.Ping.METHOD_NAME),
+                     HostWaker.getInstance().getHeldMethods(hostInfo));
+        assertTrue(answered.isEmpty());
+
+        wolReleased.countDown();
+
+        assertTrue(allAnswered.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Application.SetMute.METHOD_NAME, JSONRPC.Ping.METHOD_NAME),
+                     answered);
+        assertEquals(1, wolSent.get());
+        assertFalse(HostWaker.getInstance().isWaking(hostInfo));
+        assertTrue(HostWaker.getInstance().getHeldMethods(hostInfo).isEmpty());
+        ShadowLooper.idleMainLooper();
+        assertTrue(timeToReady[0] >= 0);
+    }
+
+    @Test
+    public void repeatedCommandsAreAllHeldTest() throws Exception {
+        final CountDownLatch allAnswered = new CountDownLatch(2);
+        final AtomicInteger errors = new AtomicInteger();
+        HostWaker.getInstance().wake(hostInfo, hostConnection, null);
+
+        for (int i = 0; i < 2; i++) {
+            hostConnection.execute(new Application.SetMute(), new ApiCallback<Boolean>() {
+                @Override
+                public void onSuccess(Boolean result) {
+                    allAnswered.countDown();
+                }
+
+                @Override
+                public void onError(int errorCode, String description) {
+                    errors.incrementAndGet();
+                }
+            }, null);
+        }
+
+        assertEquals(Arrays.asList(Application.SetMute.METHOD_NAME, Application.SetMute.METHOD_NAME),
+                     HostWaker.getInstance().getHeldMethods(hostInfo));
+
+        wolReleased.countDown();
+
+        assertTrue(allAnswered.await(10, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void concurrentWakesAreMerged() throws Exception {
+        final CountDownLatch ready = new CountDownLatch(2);
+        HostWaker.WakeListener listener = new HostWaker.WakeListener() {
+            @Override
+            public void onHostReady(HostInfo hostInfo, long millis) {
+                ready.countDown();
+            }
+
+            @Override
+            public void onHostNotReady(HostInfo hostInfo) { }
+        };
+        HostWaker.getInstance().wake(hostInfo, hostConnection, listener);
+        HostWaker.getInstance().wake(hostInfo, hostConnection, listener);
+        wolReleased.countDown();
+
+        for (int i = 0; i < 100 && HostWaker.getInstance().isWaking(hostInfo); i++) {
+            Thread.sleep(100);
+        }
+        ShadowLooper.idleMainLooper();
+        assertEquals(0, ready.getCount());
+        assertEquals(1, wolSent.get());
+    }
+}
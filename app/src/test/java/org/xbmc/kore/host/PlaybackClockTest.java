@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.host;
+
+import android.os.SystemClock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.xbmc.kore.jsonrpc.type.GlobalType;
+import org.xbmc.kore.jsonrpc.type.PlayerType;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class PlaybackClockTest {
+
+    private static final int PLAYER_ID = 1;
+
+    private ObjectMapper objectMapper;
+    private PlaybackClock playbackClock;
+
+    @Before
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        playbackClock = new PlaybackClock();
+    }
+
+    @Test
+    public void extrapolatesPositionWhilePlaying() {
+        playbackClock.update(PLAYER_ID, propertyValue(1, 60, 600));
+        assertTrue(playbackClock.isRunning());
+
+        advance(10000);
+        assertEquals(70, playbackClock.getPosition());
+        assertEquals(600, playbackClock.getTotalTime());
+    }
+
+    @Test
+    public void pausedClockDoesNotMove() {
+        playbackClock.update(PLAYER_ID, propertyValue(1, 60, 600));
+        advance(5000);
+        playbackClock.setSpeed(0);
+        assertFalse(playbackClock.isRunning());
+
+        advance(10000);
+        assertEquals(65, playbackClock.getPosition());
+    }
+
+    @Test
+    public void speedChangeKeepsPosition() {
+        playbackClock.update(PLAYER_ID, propertyValue(1, 60, 600));
+        advance(10000);
+        playbackClock.setSpeed(4);
+
+        advance(10000);
+        assertEquals(110, playbackClock.getPosition());
+    }
+
+    @Test
+    public void positionIsClampedToTotalTime() {
+        playbackClock.update(PLAYER_ID, propertyValue(1, 590, 600));
+        advance(30000);
+        assertEquals(600, playbackClock.getPosition());
+
+        playbackClock.setSpeed(-32);
+        advance(60000);
+        assertEquals(0, playbackClock.getPosition());
+    }
+
+    @Test
+    public void seekMovesPosition() {
+        playbackClock.update(PLAYER_ID, propertyValue(1, 60, 600));
+        playbackClock.seek(time(300));
+        advance(2000);
+        assertEquals(302, playbackClock.getPosition());
+
+        playbackClock.seekToSeconds(10);
+        assertEquals(10, playbackClock.getPosition());
+    }
+
+    @Test
+    public void updateReturnsDrift() {
+        assertEquals(0, playbackClock.update(PLAYER_ID, propertyValue(1, 60, 600)));
+
+        advance(10000);
+        assertEquals(0, playbackClock.update(PLAYER_ID, propertyValue(1, 70, 600)));
+
+        advance(10000);
+        assertEquals(5000, playbackClock.update(PLAYER_ID, propertyValue(1, 75, 600)));
+
+        // A different player isn't drift
+        assertEquals(0, playbackClock.update(PLAYER_ID + 1, propertyValue(1, 0, 100)));
+    }
+
+    @Test
+    public void resetStopsClock() {
+        playbackClock.update(PLAYER_ID, propertyValue(1, 60, 600));
+        playbackClock.reset();
+        assertFalse(playbackClock.isActive());
+
+        advance(10000);
+        assertEquals(0, playbackClock.getPosition());
+    }
+
+    private void advance(long millis) {
+        SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + millis);
+    }
+
+    private PlayerType.PropertyValue propertyValue(int speed, int time, int totalTime) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put(PlayerType.PropertyName.SPEED, speed);
+        node.set(PlayerType.PropertyName.TIME, timeNode(time));
+        node.set(PlayerType.PropertyName.TOTALTIME, timeNode(totalTime));
+        return new PlayerType.PropertyValue(node);
+    }
+
+    private GlobalType.Time time(int seconds) {
+        return new GlobalType.Time(timeNode(seconds));
+    }
+
+    private ObjectNode timeNode(int seconds) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put(GlobalType.Time.HOURS, seconds / 3600);
+        node.put(GlobalType.Time.MINUTES, (seconds / 60) % 60);
+        node.put(GlobalType.Time.SECONDS, seconds % 60);
+        node.put(GlobalType.Time.MILLISECONDS, 0);
+        return node;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.host;
+
+import android.os.Handler;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiException;
+import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.Playlist;
+import org.xbmc.kore.jsonrpc.type.PlaylistType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class PlaylistEditorTest {
+
+    private static final int PLAYLIST_ID = 1;
+
+    private PlaylistEditor playlistEditor;
+    private HostInfo hostInfo;
+    private FakeConnection connection;
+    private int editsApplied, editsFailed;
+
+    /**
+     * Connection that records the batches instead of sending them
+     */
+    private static class FakeConnection extends HostConnection {
+        final List<List<? extends ApiMethod<?>>> batches = new ArrayList<>();
+        final List<ApiCallback<Integer>> callbacks = new ArrayList<>();
+
+        FakeConnection(HostInfo hostInfo) {
+            super(hostInfo);
+        }
+
+        @Override
+        public void executeBatch(List<? extends ApiMethod<?>> methods,
+                                 ApiCallback<Integer> callback, Handler handler) {
+            batches.add(methods);
+            callbacks.add(callback);
+        }
+
+        void finishBatch(int index) {
+            callbacks.get(index).onSuccess(batches.get(index).size());
+        }
+
+        void failBatch(int index) {
+            callbacks.get(index).onError(ApiException.API_ERROR, "Invalid params");
+        }
+    }
+
+    @Before
+    public void setUp() {
+        hostInfo = new HostInfo("Kodi", "127.0.0.1", HostConnection.PROTOCOL_HTTP,
+                                HostInfo.DEFAULT_HTTP_PORT, HostInfo.DEFAULT_TCP_PORT,
+                                null, null, false, HostInfo.DEFAULT_EVENT_SERVER_PORT,
+                                false, false);
+        connection = new FakeConnection(hostInfo);
+        playlistEditor = createEditor(new PlaylistEditor.ConnectionProvider() {
+            @Override
+            public HostConnection getConnection() {
+                return connection;
+            }
+        });
+    }
+
+    @Test
+    public void shortMoveIsSentAsSwaps() {
+        playlistEditor.move(PLAYLIST_ID, 3, 1, songItem(10));
+
+        List<ApiMethod<String>> methods = playlistEditor.getPendingMethods();
+        assertEquals(2, methods.size());
+        assertSwap(methods.get(0), 3, 2);
+        assertSwap(methods.get(1), 2, 1);
+    }
+
+    @Test
+    public void longMoveIsSentAsRemoveAndInsert() {
+        playlistEditor.move(PLAYLIST_ID, 0, 20, songItem(10));
+
+        List<ApiMethod<String>> methods = playlistEditor.getPendingMethods();
+        assertEquals(2, methods.size());
+        assertEquals(Playlist.Remove.METHOD_NAME, methods.get(0).getMethodName());
+        assertEquals(0, params(methods.get(0)).get("position").asInt());
+        assertEquals(Playlist.Insert.METHOD_NAME, methods.get(1).getMethodName());
+        assertEquals(20, params(methods.get(1)).get("position").asInt());
+        assertEquals(10, params(methods.get(1)).get("item").get("songid").asInt());
+    }
+
+    @Test
+    public void itemsThatCantBeInsertedAreSwapped() {
+        playlistEditor.move(PLAYLIST_ID, 5, 9, null);
+
+        List<ApiMethod<String>> methods = playlistEditor.getPendingMethods();
+        assertEquals(4, methods.size());
+        for (int i = 0; i < 4; i++) {
+            assertSwap(methods.get(i), 5 + i, 6 + i);
+        }
+    }
+
+    @Test
+    public void consecutiveMovesOfSameItemAreMerged() {
+        playlistEditor.move(PLAYLIST_ID, 2, 6, songItem(10));
+        playlistEditor.move(PLAYLIST_ID, 6, 12, songItem(10));
+        assertEquals(2, playlistEditor.getPendingMethods().size());
+
+        // Moving it back cancels the edit
+        playlistEditor.move(PLAYLIST_ID, 12, 2, songItem(10));
+        assertFalse(playlistEditor.hasPendingEdits());
+    }
+
+    @Test
+    public void multipleRemovesStartFromTheEnd() {
+        playlistEditor.remove(PLAYLIST_ID, new int[] {4, 9, 1});
+
+        List<ApiMethod<String>> methods = playlistEditor.getPendingMethods();
+        assertEquals(3, methods.size());
+        assertEquals(9, params(methods.get(0)).get("position").asInt());
+        assertEquals(4, params(methods.get(1)).get("position").asInt());
+        assertEquals(1, params(methods.get(2)).get("position").asInt());
+    }
+
+    @Test
+    public void commitSendsAllEditsInOneBatchTest() {
+        // Moving the playing item takes a swap per position, but a single request
+        playlistEditor.move(PLAYLIST_ID, 0, 8, null);
+        playlistEditor.remove(PLAYLIST_ID, 3);
+        playlistEditor.commit();
+
+        assertEquals(1, connection.batches.size());
+        assertEquals(9, connection.batches.get(0).size());
+        assertFalse(playlistEditor.hasPendingEdits());
+
+        connection.finishBatch(0);
+        assertEquals(1, editsApplied);
+        assertEquals(0, editsFailed);
+    }
+
+    @Test
+    public void editsMadeWhileCommittingAreSentAfterwardsTest() {
+        playlistEditor.move(PLAYLIST_ID, 1, 2, songItem(10));
+        playlistEditor.commit();
+        playlistEditor.remove(PLAYLIST_ID, 5);
+        playlistEditor.commit();
+        assertEquals(1, connection.batches.size());
+
+        connection.finishBatch(0);
+        assertEquals(2, connection.batches.size());
+        assertEquals(Playlist.Remove.METHOD_NAME, connection.batches.get(1).get(0).getMethodName());
+        assertEquals(0, editsApplied);
+
+        connection.finishBatch(1);
+        assertEquals(1, editsApplied);
+    }
+
+    @Test
+    public void failedCommitDropsQueuedEditsTest() {
+        playlistEditor.move(PLAYLIST_ID, 1, 2, songItem(10));
+        playlistEditor.commit();
+        playlistEditor.remove(PLAYLIST_ID, 5);
+
+        connection.failBatch(0);
+
+        // The listener reloads the playlist once, and the edits made on the stale one are dropped
+        assertEquals(1, editsFailed);
+        assertEquals(0, editsApplied);
+        assertFalse(playlistEditor.hasPendingEdits());
+        assertEquals(1, connection.batches.size());
+
+        // Edits made after the reload are sent normally
+        playlistEditor.remove(PLAYLIST_ID, 2);
+        playlistEditor.commit();
+        assertEquals(2, connection.batches.size());
+    }
+
+    @Test
+    public void connectionIsResolvedOnCommitTest() {
+        final FakeConnection[] current = {null};
+        PlaylistEditor editor = createEditor(new PlaylistEditor.ConnectionProvider() {
+            @Override
+            public HostConnection getConnection() {
+                return current[0];
+            }
+        });
+
+        // No host, the edits fail
+        editor.remove(PLAYLIST_ID, 1);
+        editor.commit();
+        assertEquals(1, editsFailed);
+        assertFalse(editor.hasPendingEdits());
+
+        // Host switched after the editor was created
+        FakeConnection first = new FakeConnection(hostInfo);
+        current[0] = first;
+        editor.remove(PLAYLIST_ID, 1);
+        editor.commit();
+        first.finishBatch(0);
+
+        FakeConnection second = new FakeConnection(hostInfo);
+        current[0] = second;
+        editor.remove(PLAYLIST_ID, 2);
+        editor.commit();
+
+        assertEquals(1, first.batches.size());
+        assertEquals(1, second.batches.size());
+        assertTrue(connection.batches.isEmpty());
+    }
+
+    private PlaylistEditor createEditor(PlaylistEditor.ConnectionProvider connectionProvider) {
+        PlaylistEditor editor = new PlaylistEditor(connectionProvider, new Handler());
+        editor.setListener(new PlaylistEditor.Listener() {
+            @Override
+            public void onEditsApplied() {
+                editsApplied++;
+            }
+
+            @Override
+            public void onEditsFailed(int errorCode, String description) {
+                editsFailed++;
+            }
+        });
+        return editor;
+    }
+
+    private void assertSwap(ApiMethod<String> method, int position1, int position2) {
+        assertEquals(Playlist.Swap.METHOD_NAME, method.getMethodName());
+        assertEquals(position1, params(method).get("position1").asInt());
+        assertEquals(position2, params(method).get("position2").asInt());
+    }
+
+    private ObjectNode params(ApiMethod<String> method) {
+        return (ObjectNode) method.toJsonObject().get(ApiMethod.PARAMS_NODE);
+    }
+
+    private PlaylistType.Item songItem(int songId) {
+        PlaylistType.Item item = new PlaylistType.Item();
+        item.songid = songId;
+        return item;
+    }
+}
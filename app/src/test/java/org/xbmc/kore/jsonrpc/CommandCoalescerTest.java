@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.jsonrpc;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.method.Application;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class CommandCoalescerTest {
+
+    private RecordingHostConnection hostConnection;
+    private CommandCoalescer coalescer;
+
+    /**
+     * Connection that records the methods executed, and lets the test complete them
+     */
+    private static class RecordingHostConnection extends HostConnection {
+        final List<ApiMethod<?>> methods = new ArrayList<>();
+        final List<ApiCallback<?>> callbacks = new ArrayList<>();
+
+        RecordingHostConnection(HostInfo hostInfo) {
+            super(hostInfo);
+        }
+
+        @Override
+        public <T> void execute(ApiMethod<T> method, ApiCallback<T> callback, Handler handler) {
+            methods.add(method);
+            callbacks.add(callback);
+        }
+
+        @SuppressWarnings("unchecked")
+        void completeFirstPending() {
+            ((ApiCallback<Integer>) callbacks.remove(0)).onSuccess(0);
+        }
+    }
+
+    @Before
+    public void setup() {
+        HostInfo hostInfo = new HostInfo("TESTHOST", "127.0.0.1", HostConnection.PROTOCOL_TCP,
+                                         HostInfo.DEFAULT_HTTP_PORT, HostInfo.DEFAULT_TCP_PORT,
+                                         null, null, true, HostInfo.DEFAULT_EVENT_SERVER_PORT,
+                                         false, false);
+        hostConnection = new RecordingHostConnection(hostInfo);
+        coalescer = new CommandCoalescer(hostConnection, new Handler(Looper.getMainLooper()));
+    }
+
+    @After
+    public void tearDown() {
+        hostConnection.disconnect();
+    }
+
+    @Test
+    public void keepsOnlyLatestPendingValue() {
+        Application.SetVolume last = null;
+        for (int volume = 1; volume <= 10; volume++) {
+            last = new Application.SetVolume(volume);
+            coalescer.execute(CommandCoalescer.TARGET_VOLUME, last, null);
+        }
+
+        // First one is sent right away, the rest wait for it
+        assertEquals(1, hostConnection.methods.size());
+
+        hostConnection.completeFirstPending();
+        assertEquals(2, hostConnection.methods.size());
+        assertSame(last, hostConnection.methods.get(1));
+        assertEquals(8, coalescer.getElidedCount());
+
+        // Nothing else is sent after the last one completes
+        hostConnection.completeFirstPending();
+        assertEquals(2, hostConnection.methods.size());
+    }
+
+    @Test
+    public void targetsAreIndependent() {
+        coalescer.execute(CommandCoalescer.TARGET_VOLUME, new Application.SetVolume(1), null);
+        coalescer.execute(CommandCoalescer.TARGET_SEEK, new Application.SetVolume(2), null);
+
+        assertEquals(2, hostConnection.methods.size());
+        assertEquals(0, coalescer.getElidedCount());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.jsonrpc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionMetricsTest {
+
+    private ConnectionMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = ConnectionMetrics.getInstance();
+        metrics.reset();
+    }
+
+    @Test
+    public void successfulCallRecordsAllPhases() {
+        ConnectionMetrics.Trace trace = metrics.startTrace("Player.GetItem", HostConnection.PROTOCOL_HTTP);
+        trace.sent(100);
+        trace.received(250);
+        trace.decoded();
+        trace.dispatch(new Runnable() {
+            @Override
+            public void run() { }
+        }, -1).run();
+
+        ConnectionMetrics.MethodMetrics methodMetrics =
+                metrics.getMethodMetrics("Player.GetItem", HostConnection.PROTOCOL_HTTP);
+        assertNotNull(methodMetrics);
+        assertEquals(1, methodMetrics.getCalls());
+        assertEquals(0, methodMetrics.getErrors());
+        assertEquals(100, methodMetrics.requestBytes);
+        assertEquals(250, methodMetrics.responseBytes);
+        for (int phase = ConnectionMetrics.PHASE_QUEUE; phase <= ConnectionMetrics.PHASE_CALLBACK; phase++) {
+            assertEquals(1, methodMetrics.getPhase(phase).getCount());
+        }
+        assertNull(metrics.getMethodMetrics("Player.GetItem", HostConnection.PROTOCOL_TCP));
+    }
+
+    @Test
+    public void errorsAreCountedByCode() {
+        for (int i = 0; i < 3; i++) {
+            ConnectionMetrics.Trace trace = metrics.startTrace("Files.GetDirectory", HostConnection.PROTOCOL_TCP);
+            trace.sent(10);
+            trace.finish(ApiException.API_ERROR);
+            // Finishing twice is ignored
+            trace.finish(ApiException.API_ERROR);
+        }
+
+        ConnectionMetrics.MethodMetrics methodMetrics =
+                metrics.getMethodMetrics("Files.GetDirectory", HostConnection.PROTOCOL_TCP);
+        assertEquals(3, methodMetrics.getCalls());
+        assertEquals(3, methodMetrics.getErrors());
+        assertEquals(3L, (long) methodMetrics.errorCodes.get(ApiException.API_ERROR));
+        assertEquals(3, methodMetrics.getPhase(ConnectionMetrics.PHASE_QUEUE).getCount());
+        assertEquals(0, methodMetrics.getPhase(ConnectionMetrics.PHASE_NETWORK).getCount());
+        assertTrue(metrics.getReport().contains("Files.GetDirectory (TCP)"));
+    }
+
+    @Test
+    public void kodiErrorsAreCountedByJsonRpcCodeTest() {
+        ObjectNode response = new ObjectMapper().createObjectNode();
+        ObjectNode error = response.putObject(ApiMethod.ERROR_NODE);
+        error.put("code", -32602);
+        error.put("message", "Invalid params.");
+        ConnectionMetrics.Trace trace = metrics.startTrace("Player.Seek", HostConnection.PROTOCOL_TCP);
+        trace.finish(new ApiException(ApiException.API_ERROR, response));
+        trace = metrics.startTrace("Player.Seek", HostConnection.PROTOCOL_TCP);
+        trace.finish(new ApiException(ApiException.IO_EXCEPTION_WHILE_SENDING_REQUEST, "Closed"));
+
+        ConnectionMetrics.MethodMetrics methodMetrics =
+                metrics.getMethodMetrics("Player.Seek", HostConnection.PROTOCOL_TCP);
+        assertEquals(2, methodMetrics.getErrors());
+        assertEquals(1L, (long) methodMetrics.errorCodes.get(ApiException.API_ERROR));
+        assertEquals(1L, (long) methodMetrics.errorCodes.get(ApiException.IO_EXCEPTION_WHILE_SENDING_REQUEST));
+        assertEquals(1, methodMetrics.jsonRpcErrorCodes.size());
+        assertEquals(1L, (long) methodMetrics.jsonRpcErrorCodes.get(-32602));
+        assertTrue(metrics.getReport().contains("JSON RPC error -32602: 1 times"));
+    }
+
+    @Test
+    public void decodingAfterTheLastReadIsntNetworkTimeTest() throws Exception {
+        ConnectionMetrics.Trace trace = metrics.startTrace("AudioLibrary.GetSongs", HostConnection.PROTOCOL_TCP);
+        trace.sent(-1);
+        long readAt = System.nanoTime();
+        Thread.sleep(20);
+        trace.received(1000, readAt);
+        trace.decoded();
+
+        assertEquals(readAt - trace.sentAt, trace.getPhaseNanos(ConnectionMetrics.PHASE_NETWORK));
+        assertTrue(trace.getPhaseNanos(ConnectionMetrics.PHASE_DECODE) >= 20 * 1000000L);
+    }
+
+    @Test
+    public void percentilesUseBucketBounds() {
+        ConnectionMetrics.Histogram histogram = new ConnectionMetrics.Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.add(3 * 1000000L);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.add(150 * 1000000L);
+        }
+        assertEquals(5, histogram.getPercentileMillis(50));
+        assertEquals(200, histogram.getPercentileMillis(95));
+        assertEquals(150.0, histogram.getMaxMillis(), 0.001);
+    }
+}
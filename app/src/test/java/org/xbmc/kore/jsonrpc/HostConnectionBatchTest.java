@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xbmc.kore.jsonrpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.method.JSONRPC;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class HostConnectionBatchTest {
+
+    private StandInServer server;
+    private HostConnection hostConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInServer();
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        HostInfo hostInfo = new HostInfo("Kodi", "127.0.0.1", HostConnection.PROTOCOL_HTTP,
+                                         server.getListeningPort(), HostInfo.DEFAULT_TCP_PORT, null, null,
+                                         false, HostInfo.DEFAULT_EVENT_SERVER_PORT, false, false);
+        hostConnection = new HostConnection(hostInfo);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void failedMethodDoesntFailTheOthersTest() throws Exception {
+        server.failedPosition = 1;
+        BatchResult<String> results = executePings(3);
+
+        assertEquals(3, results.size());
+        assertTrue(results.isSuccess(0));
+        assertEquals("pong", results.get(0));
+        assertFalse(results.isSuccess(1));
+        assertNull(results.getResult(1));
+        assertEquals(ApiException.API_ERROR, results.getError(1).getCode());
+        assertTrue(results.isSuccess(2));
+        assertEquals("pong", results.get(2));
+        assertEquals(results.getError(1), results.getFirstError());
+    }
+
+    @Test
+    public void resultsAreMatchedByIdTest() throws Exception {
+        server.reversed = true;
+        server.failedPosition = 0;
+        BatchResult<String> results = executePings(2);
+
+        assertFalse(results.isSuccess(0));
+        assertTrue(results.isSuccess(1));
+    }
+
+    @Test
+    public void missingResultFailsOnlyItsMethodTest() throws Exception {
+        server.omittedPosition = 2;
+        BatchResult<String> results = executePings(3);
+
+        assertTrue(results.isSuccess(0));
+        assertTrue(results.isSuccess(1));
+        assertFalse(results.isSuccess(2));
+        assertEquals(ApiException.INVALID_JSON_RESPONSE_FROM_HOST, results.getError(2).getCode());
+    }
+
+    @Test
+    public void sizesAreCountedInBytesTest() throws Exception {
+        ConnectionMetrics.getInstance().reset();
+        server.failedPosition = 0;
+        server.errorMessage = "Paramètres invalides";
+        executePings(2);
+
+        ConnectionMetrics.MethodMetrics methodMetrics = ConnectionMetrics.getInstance()
+                .getMethodMetrics("Batch of " + JSONRPC.Ping.METHOD_NAME, HostConnection.PROTOCOL_HTTP);
+        assertEquals(server.lastResponseBytes, methodMetrics.responseBytes);
+        assertEquals(server.lastRequestBytes, methodMetrics.requestBytes);
+    }
+
+    @Test
+    public void repeatedMethodsAreWrittenFromTemplatesTest() throws Exception {
+        BatchResult<String> results = executePings(3);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(results.isSuccess(i));
+        }
+        // Each ping is written with its own id, the later ones from the ping's template
+        assertEquals(3, server.lastRequestIds.size());
+        assertTrue(RequestTemplates.getInstance().getTemplateCount() > 0);
+    }
+
+    private BatchResult<String> executePings(int count) throws Exception {
+        List<JSONRPC.Ping> methods = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            methods.add(new JSONRPC.Ping());
+        }
+        return hostConnection.executeBatch(methods).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Answers pings, with an error for the one at {@link #failedPosition} and leaving out the
+     * one at {@link #omittedPosition}
+     */
+    private static class StandInServer extends NanoHTTPD {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        volatile int failedPosition = -1;
+        volatile int omittedPosition = -1;
+        volatile boolean reversed = false;
+        volatile String errorMessage = "Invalid params.";
+        volatile long lastRequestBytes, lastResponseBytes;
+        final Set<String> lastRequestIds = Collections.synchronizedSet(new HashSet<String>());
+
+        StandInServer() {
+            super("127.0.0.1", 0);
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            try {
+                Map<String, String> body = new HashMap<>();
+                session.parseBody(body);
+                String postData = body.get("postData");
+                lastRequestBytes = postData.getBytes("UTF-8").length;
+                JsonNode requests = objectMapper.readTree(postData);
+                lastRequestIds.clear();
+                for (JsonNode request : requests) {
+                    lastRequestIds.add(request.get("id").asText());
+                }
+
+                ArrayNode responses = objectMapper.createArrayNode();
+                for (int i = 0; i < requests.size(); i++) {
+                    if (i == omittedPosition)
+                        continue;
+                    ObjectNode response = objectMapper.createObjectNode();
+                    response.put("jsonrpc", "2.0");
+                    response.set("id", requests.get(i).get("id"));
+                    if (i == failedPosition) {
+                        ObjectNode error = response.putObject("error");
+                        error.put("code", -32602);
+                        error.put("message", errorMessage);
+                    } else {
+                        response.put("result", "pong");
+                    }
+                    if (reversed) {
+                        responses.insert(0, response);
+                    } else {
+                        responses.add(response);
+                    }
+                }
+                byte[] response = objectMapper.writeValueAsBytes(responses);
+                lastResponseBytes = response.length;
+                return newFixedLengthResponse(Response.Status.OK, "application/json",
+                                              new ByteArrayInputStream(response), response.length);
+            } catch (Exception e) {
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain",
+                                              e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.jsonrpc;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.squareup.okhttp.OkHttpClient;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.xbmc.kore.host.HostInfo;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class HostTransportTest {
+
+    @Test
+    public void connectionsToSameHostShareClient() {
+        HostInfo hostInfo = createHostInfo("Kodi", "192.168.1.10", "kodi", "secret");
+        HostConnection first = new HostConnection(hostInfo);
+        HostConnection second = new HostConnection(hostInfo);
+
+        assertSame(first.getOkHttpClient(), second.getOkHttpClient());
+        assertSame(first.getOkHttpClient().getConnectionPool(),
+                   new HostConnection(createHostInfo("Other", "192.168.1.11", null, null))
+                           .getOkHttpClient().getConnectionPool());
+    }
+
+    @Test
+    public void differentCredentialsGetDifferentClients() {
+        HostConnection first = new HostConnection(createHostInfo("Kodi", "192.168.1.10", "kodi", "secret"));
+        HostConnection second = new HostConnection(createHostInfo("Kodi", "192.168.1.10", "kodi", "other"));
+
+        assertNotSame(first.getOkHttpClient(), second.getOkHttpClient());
+    }
+
+    @Test
+    public void tasksAreCountedPerHost() throws Exception {
+        HostInfo hostInfo = createHostInfo("Counted", "192.168.1.12", null, null);
+        HostTransport transport = HostTransport.getInstance();
+
+        int result = transport.submit(hostInfo, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 42;
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals(42, result);
+
+        String debugInfo = transport.getDebugInfo();
+        assertTrue(debugInfo, debugInfo.contains(HostTransport.hostKey(hostInfo) +
+                                                 ": 0 running, 0 queued, 1 executed tasks"));
+    }
+
+    @Test
+    public void callablesUseAWorkerEachTest() throws Exception {
+        HostConnection hostConnection = new HostConnection(createHostInfo("Callables", "192.168.1.13", null, null));
+        Handler handler = new Handler(Looper.getMainLooper());
+
+        // Every callable waits for all the others to start, so they all need a worker at once
+        final CountDownLatch started = new CountDownLatch(HostTransport.MAX_TASKS_PER_HOST);
+        final CountDownLatch finished = new CountDownLatch(HostTransport.MAX_TASKS_PER_HOST);
+        for (int i = 0; i < HostTransport.MAX_TASKS_PER_HOST; i++) {
+            hostConnection.execute(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    started.countDown();
+                    boolean allStarted = started.await(10, TimeUnit.SECONDS);
+                    if (allStarted) finished.countDown();
+                    return allStarted;
+                }
+            }, new ApiCallback<Boolean>() {
+                @Override
+                public void onSuccess(Boolean result) { }
+
+                @Override
+                public void onError(int errorCode, String description) { }
+            }, handler);
+        }
+
+        assertTrue(finished.await(15, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void busyHostDoesntStarveOthersTest() throws Exception {
+        HostTransport transport = HostTransport.getInstance();
+        HostInfo busyHost = createHostInfo("Busy", "192.168.1.14", null, null);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger busyRunning = new AtomicInteger();
+        try {
+            for (int i = 0; i < HostTransport.MAX_WORKER_THREADS; i++) {
+                transport.execute(busyHost, new Runnable() {
+                    @Override
+                    public void run() {
+                        busyRunning.incrementAndGet();
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            int result = transport.submit(createHostInfo("Other", "192.168.1.15", null, null), new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return 42;
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertEquals(42, result);
+            assertTrue(busyRunning.get() <= HostTransport.MAX_TASKS_PER_HOST);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedClientsAreDroppedTest() {
+        HostTransport transport = HostTransport.getInstance();
+        HostInfo first = createHostInfo("Scanned", "10.0.0.1", null, null);
+        OkHttpClient firstClient = transport.getOkHttpClient(first, 1000);
+        for (int i = 0; i < HostTransport.MAX_HTTP_CLIENTS; i++) {
+            transport.getOkHttpClient(createHostInfo("Scanned", "10.0.1." + i, null, null), 1000);
+        }
+
+        assertNotSame(firstClient, transport.getOkHttpClient(first, 1000));
+    }
+
+    private HostInfo createHostInfo(String name, String address, String username, String password) {
+        return new HostInfo(name, address, HostConnection.PROTOCOL_HTTP, HostInfo.DEFAULT_HTTP_PORT,
+                            HostInfo.DEFAULT_TCP_PORT, username, password, false,
+                            HostInfo.DEFAULT_EVENT_SERVER_PORT, false, false);
+    }
+}
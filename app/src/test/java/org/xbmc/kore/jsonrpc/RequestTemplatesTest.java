@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.jsonrpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xbmc.kore.jsonrpc.method.Input;
+import org.xbmc.kore.jsonrpc.method.Player;
+import org.xbmc.kore.jsonrpc.type.PlayerType;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class RequestTemplatesTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private RequestTemplates templates;
+
+    @Before
+    public void setUp() {
+        templates = new RequestTemplates(objectMapper);
+    }
+
+    @Test
+    public void repeatedRequestsMatchTheirTree() throws Exception {
+        // First one is streamed, the rest come from the template
+        for (int i = 0; i < 3; i++) {
+            assertWrittenAsTree(new Input.Up());
+            assertWrittenAsTree(new Player.GetProperties(1, PlayerType.PropertyName.SPEED,
+                                                         PlayerType.PropertyName.TIME));
+        }
+    }
+
+    @Test
+    public void differentParametersDontShareTemplates() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            assertWrittenAsTree(new Player.GetProperties(1, PlayerType.PropertyName.SPEED));
+            assertWrittenAsTree(new Player.GetProperties(2, PlayerType.PropertyName.SPEED));
+        }
+    }
+
+    @Test
+    public void droppedRequestsAreStillWritten() throws Exception {
+        for (int i = 0; i < RequestTemplates.MAX_TEMPLATES * 2; i++) {
+            assertWrittenAsTree(new Player.GetProperties(i, PlayerType.PropertyName.SPEED));
+        }
+        for (int i = 0; i < RequestTemplates.MAX_TEMPLATES * 2; i++) {
+            assertWrittenAsTree(new Player.GetProperties(i, PlayerType.PropertyName.SPEED));
+        }
+    }
+
+    @Test
+    public void requestGetsATemplateWhenRepeatedTest() throws Exception {
+        assertWrittenAsTree(new Input.Up());
+        assertEquals(0, templates.getTemplateCount());
+        assertWrittenAsTree(new Input.Up());
+        assertEquals(1, templates.getTemplateCount());
+        assertWrittenAsTree(new Input.Up());
+        assertEquals(1, templates.getTemplateCount());
+    }
+
+    @Test
+    public void bigRequestsDontGetTemplatesTest() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertWrittenAsTree(new BigMethod(RequestTemplates.MAX_TEMPLATE_NODES));
+        }
+        assertEquals(0, templates.getTemplateCount());
+
+        // Just small enough, with the params node itself
+        for (int i = 0; i < 2; i++) {
+            assertWrittenAsTree(new BigMethod(RequestTemplates.MAX_TEMPLATE_NODES - 2));
+        }
+        assertEquals(1, templates.getTemplateCount());
+    }
+
+    @Test
+    public void fieldOrderDoesntChangeTheTemplateTest() throws Exception {
+        assertWrittenAsTree(new TwoFieldsMethod(false));
+        assertWrittenAsTree(new TwoFieldsMethod(true));
+        assertEquals(1, templates.getTemplateCount());
+    }
+
+    /**
+     * Method with an array parameter of the given number of elements
+     */
+    private static class BigMethod extends ApiMethod<String> {
+        BigMethod(int elements) {
+            super();
+            String[] properties = new String[elements];
+            for (int i = 0; i < elements; i++) {
+                properties[i] = "property" + i;
+            }
+            addParameterToRequest("properties", properties);
+        }
+
+        @Override
+        public String getMethodName() { return "Test.Big"; }
+
+        @Override
+        public String resultFromJson(ObjectNode jsonObject) { return null; }
+    }
+
+    /**
+     * Method with the same two parameters, added in either order
+     */
+    private static class TwoFieldsMethod extends ApiMethod<String> {
+        TwoFieldsMethod(boolean reversed) {
+            super();
+            if (reversed) {
+                addParameterToRequest("second", 2);
+                addParameterToRequest("first", 1);
+            } else {
+                addParameterToRequest("first", 1);
+                addParameterToRequest("second", 2);
+            }
+        }
+
+        @Override
+        public String getMethodName() { return "Test.TwoFields"; }
+
+        @Override
+        public String resultFromJson(ObjectNode jsonObject) { return null; }
+    }
+
+    private void assertWrittenAsTree(ApiMethod<?> method) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int bytes = templates.write(method, out);
+
+        assertEquals(out.size(), bytes);
+        JsonNode written = objectMapper.readTree(out.toByteArray());
+        assertEquals(method.toJsonObject(), written);
+    }
+}
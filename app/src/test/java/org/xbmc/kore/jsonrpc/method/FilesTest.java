@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.jsonrpc.method;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Test;
+import org.xbmc.kore.jsonrpc.ApiList;
+import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.type.ListType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilesTest {
+
+    private static final int DIRECTORY_SIZE = 450;
+    private static final int PAGE_SIZE = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void directoryPageRequestsItsLimitsTest() {
+        Files.GetDirectoryPage page = new Files.GetDirectoryPage(
+                "/music/", Files.Media.MUSIC, null, new ListType.Limits(200, 400),
+                ListType.FieldsFiles.FILE);
+
+        JsonNode params = page.toJsonObject().get(ApiMethod.PARAMS_NODE);
+        assertEquals("/music/", params.get("directory").textValue());
+        assertEquals(200, params.get("limits").get(ListType.Limits.START).intValue());
+        assertEquals(400, params.get("limits").get(ListType.Limits.END).intValue());
+    }
+
+    @Test
+    public void directoryIsReadThroughAllItsPagesTest() throws Exception {
+        List<String> files = new ArrayList<>();
+        int pages = 0, total = -1;
+        do {
+            Files.GetDirectoryPage page = new Files.GetDirectoryPage(
+                    "/music/", Files.Media.MUSIC, null,
+                    new ListType.Limits(files.size(), files.size() + PAGE_SIZE),
+                    ListType.FieldsFiles.FILE);
+            ApiList<ListType.ItemFileSummary> result = page.resultFromJson(respond(page));
+            for (ListType.ItemFileSummary item : result.items) {
+                files.add(item.file);
+            }
+            total = result.limits.total;
+            pages++;
+        } while (files.size() < total);
+
+        assertEquals(3, pages);
+        assertEquals(DIRECTORY_SIZE, files.size());
+        for (int i = 0; i < DIRECTORY_SIZE; i++) {
+            assertEquals(file(i), files.get(i));
+        }
+    }
+
+    @Test
+    public void directoryPageStripsLabelMarkupTest() throws Exception {
+        Files.GetDirectoryPage page = new Files.GetDirectoryPage(
+                "/music/", Files.Media.MUSIC, null, new ListType.Limits(0, PAGE_SIZE),
+                ListType.FieldsFiles.FILE);
+        ObjectNode response = respond(page);
+        ((ObjectNode) response.get(ApiMethod.RESULT_NODE).get(Files.GetDirectoryPage.FILE_NODE).get(0))
+                .put("label", "[B]Bold[/B] song");
+
+        ApiList<ListType.ItemFileSummary> result = page.resultFromJson(response);
+        assertEquals("Bold song", result.items.get(0).label);
+    }
+
+    @Test
+    public void bigFileSizesAreNotTruncatedTest() throws Exception {
+        Files.GetDirectoryPage page = new Files.GetDirectoryPage(
+                "/music/", Files.Media.MUSIC, null, new ListType.Limits(0, PAGE_SIZE),
+                ListType.FieldsFiles.FILE);
+        ObjectNode response = respond(page);
+        long size = 5L * 1024 * 1024 * 1024;
+        ((ObjectNode) response.get(ApiMethod.RESULT_NODE).get(Files.GetDirectoryPage.FILE_NODE).get(0))
+                .put(ListType.ItemFile.SIZE, size);
+
+        ApiList<ListType.ItemFileSummary> result = page.resultFromJson(response);
+        assertEquals(size, result.items.get(0).size);
+    }
+
+    @Test
+    public void emptyDirectoryPageHasNoItemsTest() throws Exception {
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode result = response.putObject(ApiMethod.RESULT_NODE);
+        result.putNull(Files.GetDirectoryPage.FILE_NODE);
+        ObjectNode limits = result.putObject("limits");
+        limits.put("start", 0);
+        limits.put("end", 0);
+        limits.put("total", 0);
+
+        ApiList<ListType.ItemFileSummary> page = new Files.GetDirectoryPage(
+                "/empty/", Files.Media.MUSIC, null, new ListType.Limits(0, PAGE_SIZE),
+                ListType.FieldsFiles.FILE).resultFromJson(response);
+        assertTrue(page.items.isEmpty());
+        assertEquals(0, page.limits.total);
+    }
+
+    /**
+     * Answers a page request like Kodi does, for a directory of {@link #DIRECTORY_SIZE} files
+     */
+    private ObjectNode respond(Files.GetDirectoryPage page) {
+        JsonNode limits = page.toJsonObject().get(ApiMethod.PARAMS_NODE).get("limits");
+        int start = limits.get(ListType.Limits.START).intValue();
+        int end = Math.min(limits.get(ListType.Limits.END).intValue(), DIRECTORY_SIZE);
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode result = response.putObject(ApiMethod.RESULT_NODE);
+        ArrayNode items = result.putArray(Files.GetDirectoryPage.FILE_NODE);
+        for (int i = start; i < end; i++) {
+            ObjectNode item = items.addObject();
+            item.put("label", "Song " + i);
+            item.put("file", file(i));
+            item.put("filetype", ListType.ItemFile.FILETYPE_FILE);
+            item.put("type", "unknown");
+        }
+        ObjectNode returnedLimits = result.putObject("limits");
+        returnedLimits.put("start", start);
+        returnedLimits.put("end", end);
+        returnedLimits.put("total", DIRECTORY_SIZE);
+        return response;
+    }
+
+    private static String file(int i) {
+        return "/music/song" + i + ".mp3";
+    }
+}
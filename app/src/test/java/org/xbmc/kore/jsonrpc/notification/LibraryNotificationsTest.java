@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.jsonrpc.notification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LibraryNotificationsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void videoLibraryOnUpdate() throws IOException {
+        VideoLibrary.OnUpdate notification = new VideoLibrary.OnUpdate(params(
+                "{\"data\":{\"id\":12,\"type\":\"movie\",\"added\":true},\"sender\":\"xbmc\"}"));
+
+        assertEquals(12, notification.itemId);
+        assertEquals(VideoLibrary.TYPE_MOVIE, notification.itemType);
+        assertTrue(notification.added);
+    }
+
+    @Test
+    public void videoLibraryOnUpdateWithItemNode() throws IOException {
+        VideoLibrary.OnUpdate notification = new VideoLibrary.OnUpdate(params(
+                "{\"data\":{\"item\":{\"id\":7,\"type\":\"episode\"},\"playcount\":1},\"sender\":\"xbmc\"}"));
+
+        assertEquals(7, notification.itemId);
+        assertEquals(VideoLibrary.TYPE_EPISODE, notification.itemType);
+        assertFalse(notification.added);
+    }
+
+    @Test
+    public void videoLibraryOnRemove() throws IOException {
+        VideoLibrary.OnRemove notification = new VideoLibrary.OnRemove(params(
+                "{\"data\":{\"id\":3,\"type\":\"tvshow\"},\"sender\":\"xbmc\"}"));
+
+        assertEquals(3, notification.itemId);
+        assertEquals(VideoLibrary.TYPE_TVSHOW, notification.itemType);
+    }
+
+    @Test
+    public void audioLibraryOnUpdate() throws IOException {
+        AudioLibrary.OnUpdate notification = new AudioLibrary.OnUpdate(params(
+                "{\"data\":{\"id\":42,\"type\":\"song\"},\"sender\":\"xbmc\"}"));
+
+        assertEquals(42, notification.itemId);
+        assertEquals("song", notification.itemType);
+    }
+
+    private ObjectNode params(String json) throws IOException {
+        return (ObjectNode) objectMapper.readTree(json);
+    }
+}
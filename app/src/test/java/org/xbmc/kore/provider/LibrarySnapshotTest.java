@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xbmc.kore.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.xbmc.kore.provider.mediaprovider.AbstractTestClass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LibrarySnapshotTest extends AbstractTestClass {
+
+    private static final String[] PROJECTION = {
+            BaseColumns._ID,
+            MediaContract.Artists.ARTISTID,
+            MediaContract.Artists.ARTIST,
+            MediaContract.Artists.THUMBNAIL,
+    };
+    private static final String SORT_ASC = MediaContract.Artists.ARTIST + " COLLATE NOCASE ASC";
+    private static final String SORT_DESC = MediaContract.Artists.ARTIST + " COLLATE NOCASE DESC";
+
+    @Test
+    public void firstScreenMatchesDatabaseTest() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        Uri uri = MediaContract.Artists.buildArtistsListUri(hostInfo.getId());
+        LibrarySnapshot.saveQuery(context, LibrarySnapshot.Type.ARTISTS, PROJECTION, SORT_ASC);
+        LibrarySnapshot.saveQuery(context, LibrarySnapshot.Type.ARTISTS, PROJECTION, SORT_DESC);
+        LibrarySnapshot.write(context, hostInfo.getId(), LibrarySnapshot.Type.ARTISTS);
+
+        for (String sortOrder : new String[] {SORT_ASC, SORT_DESC}) {
+            Cursor snapshot = LibrarySnapshot.readFirstScreen(context, hostInfo.getId(), uri,
+                                                              PROJECTION, sortOrder);
+            Cursor expected = context.getContentResolver().query(uri, PROJECTION, null, null, sortOrder);
+            assertNotNull(snapshot);
+            assertNotNull(expected);
+            assertEquals(LibrarySnapshot.FIRST_SCREEN_ROWS, snapshot.getCount());
+            while (snapshot.moveToNext()) {
+                assertTrue(expected.moveToNext());
+                for (int column = 0; column < PROJECTION.length; column++) {
+                    assertEquals(expected.getString(column), snapshot.getString(column));
+                }
+            }
+            expected.close();
+        }
+    }
+
+    @Test
+    public void missingColumnsAreNullTest() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        Uri uri = MediaContract.Artists.buildArtistsListUri(hostInfo.getId());
+        LibrarySnapshot.saveQuery(context, LibrarySnapshot.Type.ARTISTS, PROJECTION, SORT_ASC);
+        LibrarySnapshot.write(context, hostInfo.getId(), LibrarySnapshot.Type.ARTISTS);
+
+        String[] projection = {MediaContract.Artists.ARTIST, MediaContract.Artists.DESCRIPTION};
+        Cursor snapshot = LibrarySnapshot.readFirstScreen(context, hostInfo.getId(), uri,
+                                                          projection, SORT_ASC);
+        assertNotNull(snapshot);
+        assertTrue(snapshot.moveToFirst());
+        assertNotNull(snapshot.getString(0));
+        assertTrue(snapshot.isNull(1));
+    }
+
+    @Test
+    public void unknownQueriesHaveNoSnapshotTest() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        Uri uri = MediaContract.Artists.buildArtistsListUri(hostInfo.getId());
+        LibrarySnapshot.saveQuery(context, LibrarySnapshot.Type.ARTISTS, PROJECTION, SORT_ASC);
+        LibrarySnapshot.write(context, hostInfo.getId(), LibrarySnapshot.Type.ARTISTS);
+
+        assertNull(LibrarySnapshot.readFirstScreen(context, hostInfo.getId(), uri, PROJECTION, SORT_DESC));
+        assertNull(LibrarySnapshot.readFirstScreen(context, hostInfo.getId(),
+                                                   MediaContract.Movies.buildMoviesListUri(hostInfo.getId()),
+                                                   PROJECTION, SORT_ASC));
+        assertNull(LibrarySnapshot.readFirstScreen(context, hostInfo.getId() + 1,
+                                                   MediaContract.Artists.buildArtistsListUri(hostInfo.getId() + 1),
+                                                   PROJECTION, SORT_ASC));
+    }
+
+    @Test
+    public void unchangedSnapshotIsNotRewrittenTest() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        Uri uri = MediaContract.Artists.buildArtistsListUri(hostInfo.getId());
+        LibrarySnapshot.saveQuery(context, LibrarySnapshot.Type.ARTISTS, PROJECTION, SORT_ASC);
+        LibrarySnapshot.write(context, hostInfo.getId(), LibrarySnapshot.Type.ARTISTS);
+
+        assertFalse(LibrarySnapshot.write(context, hostInfo.getId(), LibrarySnapshot.Type.ARTISTS));
+
+        Cursor cursor = context.getContentResolver().query(uri, new String[] {MediaContract.Artists.ARTISTID},
+                                                           null, null, SORT_ASC);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        int artistId = cursor.getInt(0);
+        cursor.close();
+        ContentValues values = new ContentValues();
+        values.put(MediaContract.Artists.ARTIST, "!A renamed artist");
+        assertEquals(1, context.getContentResolver()
+                               .update(MediaContract.Artists.buildArtistUri(hostInfo.getId(), artistId),
+                                       values, null, null));
+
+        // Sorts first, so it's on the first screen
+        assertTrue(LibrarySnapshot.write(context, hostInfo.getId(), LibrarySnapshot.Type.ARTISTS));
+        Cursor snapshot = LibrarySnapshot.readFirstScreen(context, hostInfo.getId(), uri, PROJECTION, SORT_ASC);
+        assertNotNull(snapshot);
+        boolean renamed = false;
+        while (snapshot.moveToNext()) {
+            renamed |= "!A renamed artist".equals(snapshot.getString(2));
+        }
+        assertTrue(renamed);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.provider.mediaprovider;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.junit.Test;
+import org.xbmc.kore.jsonrpc.type.AddonType;
+import org.xbmc.kore.provider.MediaContract;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class AddonsTest extends AbstractTestClass {
+    @Test
+    public void queryAllAddonsTest() throws Exception {
+        Uri uri = MediaContract.Addons.buildAddonsListUri(hostInfo.getId());
+
+        Cursor cursor = client.query(uri, new String[] {MediaContract.Addons.ADDONID},
+                                     null, null, null);
+
+        assertNotNull(cursor);
+        assertEquals("cursor size ", 41, cursor.getCount());
+    }
+
+    @Test
+    public void queryAddonsOfTypeTest() throws Exception {
+        Uri uri = MediaContract.Addons.buildAddonsListUri(hostInfo.getId());
+
+        Cursor cursor = client.query(uri, new String[] {MediaContract.Addons.ADDONID},
+                                     MediaContract.Addons.TYPE + "=? AND " +
+                                     MediaContract.Addons.ENABLED + "=1",
+                                     new String[] {AddonType.Types.XBMC_PYTHON_PLUGINSOURCE},
+                                     null);
+
+        assertNotNull(cursor);
+        assertEquals("cursor size ", 8, cursor.getCount());
+    }
+
+    @Test
+    public void addonsAreRemovedWithHostTest() throws Exception {
+        client.delete(MediaContract.Hosts.buildHostUri(hostInfo.getId()), null, null);
+
+        Cursor cursor = client.query(MediaContract.Addons.buildAddonsListUri(hostInfo.getId()),
+                                     new String[] {MediaContract.Addons.ADDONID},
+                                     null, null, null);
+
+        assertNotNull(cursor);
+        assertEquals("cursor size ", 0, cursor.getCount());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.provider.mediaprovider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.junit.Test;
+import org.xbmc.kore.provider.MediaContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the lists can be queried while the library sync is writing
+ */
+public class ConcurrentSyncTest extends AbstractTestClass {
+    private static final int SYNC_ROWS = 50000;
+    private static final int SYNC_PAGE_SIZE = 600;
+    // Minimum number of queries that must run while the sync is writing
+    private static final int MIN_QUERIES = 10;
+    // Worst case latency of a query while syncing, as a fraction of the sync duration. A query
+    // that waits for the sync's transactions takes about as long as the sync
+    private static final int MAX_QUERY_SYNC_FRACTION = 4;
+    private static final long MAX_P95_MILLIS = 500;
+
+    @Test
+    public void queriesDontWaitForSyncTest() throws Exception {
+        final int hostId = hostInfo.getId();
+        final AtomicBoolean syncing = new AtomicBoolean(true);
+        final Throwable[] syncError = {null};
+        final CountDownLatch syncStarted = new CountDownLatch(1);
+        final long[] syncMillis = {0};
+
+        client.delete(MediaContract.Songs.CONTENT_URI, null, null);
+        Thread sync = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long syncStart = System.nanoTime();
+                try {
+                    syncStarted.countDown();
+                    for (int start = 0; start < SYNC_ROWS; start += SYNC_PAGE_SIZE) {
+                        int end = Math.min(start + SYNC_PAGE_SIZE, SYNC_ROWS);
+                        ContentValues[] page = new ContentValues[end - start];
+                        for (int i = start; i < end; i++) {
+                            page[i - start] = song(hostId, i);
+                        }
+                        client.bulkInsert(MediaContract.Songs.CONTENT_URI, page);
+                    }
+                } catch (Throwable e) {
+                    syncError[0] = e;
+                } finally {
+                    syncMillis[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - syncStart);
+                    syncing.set(false);
+                }
+            }
+        });
+        sync.start();
+        assertTrue(syncStarted.await(10, TimeUnit.SECONDS));
+
+        // The lists that don't change with the sync, so that only the waits are measured
+        List<Long> latencies = new ArrayList<>();
+        while (syncing.get()) {
+            long start = System.nanoTime();
+            query(MediaContract.Albums.buildAlbumsListUri(hostId));
+            query(MediaContract.Movies.buildMoviesListUri(hostId));
+            long end = System.nanoTime();
+            // Only the queries that ran entirely during the sync
+            if (syncing.get())
+                latencies.add(TimeUnit.NANOSECONDS.toMillis(end - start));
+        }
+        sync.join();
+
+        assertNull(syncError[0]);
+        assertEquals(SYNC_ROWS, query(MediaContract.Songs.CONTENT_URI));
+        assertTrue("Only " + latencies.size() + " queries during the sync",
+                   latencies.size() >= MIN_QUERIES);
+        Collections.sort(latencies);
+        long p95 = latencies.get(latencies.size() * 95 / 100),
+                max = latencies.get(latencies.size() - 1);
+        assertTrue("p95 query latency " + p95 + " ms while syncing", p95 < MAX_P95_MILLIS);
+        assertTrue("Query took " + max + " ms of a " + syncMillis[0] + " ms sync",
+                   max < syncMillis[0] / MAX_QUERY_SYNC_FRACTION);
+    }
+
+    private int query(Uri uri) throws Exception {
+        Cursor cursor = client.query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues song(int hostId, int i) {
+        ContentValues values = new ContentValues();
+        values.put(MediaContract.Songs.HOST_ID, hostId);
+        values.put(MediaContract.Songs.ALBUMID, i / 10 + 1);
+        values.put(MediaContract.Songs.SONGID, i + 1);
+        values.put(MediaContract.Songs.TITLE, "Song " + (i + 1));
+        values.put(MediaContract.Songs.TRACK, i % 10 + 1);
+        values.put(MediaContract.Songs.DURATION, 180);
+        values.put(MediaContract.Songs.FILE, "/music/song" + (i + 1) + ".mp3");
+        return values;
+    }
+}
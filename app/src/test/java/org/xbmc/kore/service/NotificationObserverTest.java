@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.service;
+
+import android.app.Application;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowLooper;
+import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.jsonrpc.type.ListType;
+import org.xbmc.kore.jsonrpc.type.PlayerType;
+import org.xbmc.kore.provider.mediaprovider.AbstractTestClass;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class NotificationObserverTest extends AbstractTestClass {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private NotificationObserver notificationObserver;
+    private PlayerType.GetActivePlayersReturnType activePlayer;
+    private PlayerType.PropertyValue playing;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        Application application = ApplicationProvider.getApplicationContext();
+        HostManager.getInstance(application).switchHost(hostInfo);
+        notificationObserver = new NotificationObserver(
+                Robolectric.buildService(ConnectionObserversManagerService.class).get());
+
+        ObjectNode player = objectMapper.createObjectNode();
+        player.put("playerid", 1);
+        player.put("type", "video");
+        activePlayer = new PlayerType.GetActivePlayersReturnType(player);
+
+        ObjectNode properties = objectMapper.createObjectNode();
+        properties.put(PlayerType.PropertyValue.SPEED, 0);
+        playing = new PlayerType.PropertyValue(properties);
+
+        // The test clock starts right after boot, move it past the rebuild rate limit
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void unchangedNotificationIsNotRebuiltTest() {
+        notificationObserver.playerOnPause(activePlayer, playing, movie("Movie"));
+        notificationObserver.playerOnPause(activePlayer, playing, movie("Movie"));
+        notificationObserver.playerOnPause(activePlayer, playing, movie("Movie"));
+
+        assertEquals(1, notificationObserver.getCurrentRebuildCount());
+        assertEquals(2, notificationObserver.getCurrentSkippedCount());
+    }
+
+    @Test
+    public void changesInARowAreCoalescedTest() {
+        notificationObserver.playerOnPause(activePlayer, playing, movie("First"));
+        notificationObserver.playerOnPause(activePlayer, playing, movie("Second"));
+        notificationObserver.playerOnPause(activePlayer, playing, movie("Third"));
+        assertEquals(1, notificationObserver.getCurrentRebuildCount());
+
+        // Only the last change is shown once the rate limit expires
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+        assertEquals(2, notificationObserver.getCurrentRebuildCount());
+        assertEquals(1, notificationObserver.getCurrentSkippedCount());
+
+        notificationObserver.playerOnPause(activePlayer, playing, movie("Third"));
+        assertEquals(2, notificationObserver.getCurrentRebuildCount());
+    }
+
+    @Test
+    public void revertedChangeIsNotShownTest() {
+        notificationObserver.playerOnPause(activePlayer, playing, movie("First"));
+        notificationObserver.playerOnPause(activePlayer, playing, movie("Second"));
+        notificationObserver.playerOnPause(activePlayer, playing, movie("First"));
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+
+        assertEquals(1, notificationObserver.getCurrentRebuildCount());
+        assertEquals(2, notificationObserver.getCurrentSkippedCount());
+    }
+
+    private ListType.ItemsAll movie(String title) {
+        ObjectNode item = objectMapper.createObjectNode();
+        item.put("type", ListType.ItemsAll.TYPE_MOVIE);
+        item.put("title", title);
+        item.put("label", title);
+        return new ListType.ItemsAll(item);
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2016 Martijn Brekhof. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.ApiCallback;
+import org.xbmc.kore.jsonrpc.ApiMethod;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.jsonrpc.method.VideoLibrary;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.provider.mediaprovider.AbstractTestClass;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ItemRevalidatorTest extends AbstractTestClass {
+    private static final int REMOTE_PLAYCOUNT = 42;
+
+    private StandInServer server;
+    private CountingConnection hostConnection;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new StandInServer();
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        HostInfo remoteHostInfo = new HostInfo("Kodi", "127.0.0.1", HostConnection.PROTOCOL_HTTP,
+                                               server.getListeningPort(), HostInfo.DEFAULT_TCP_PORT,
+                                               null, null, false, HostInfo.DEFAULT_EVENT_SERVER_PORT,
+                                               false, false);
+        hostConnection = new CountingConnection(remoteHostInfo);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void changedItemIsUpdatedTest() throws Exception {
+        ContentResolver contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        Uri uri = firstMovieUri(contentResolver);
+        int movieId = Integer.parseInt(uri.getLastPathSegment());
+        final AtomicInteger changes = new AtomicInteger();
+
+        ItemRevalidator.getInstance().revalidate(
+                hostConnection, contentResolver, ItemRevalidator.movie(hostInfo.getId(), movieId),
+                new ItemRevalidator.Listener() {
+                    @Override
+                    public void onItemChanged() {
+                        changes.incrementAndGet();
+                    }
+                });
+
+        // Fingerprint, then details
+        assertTrue(hostConnection.await(2));
+        ShadowLooper.idleMainLooper();
+        assertEquals(2, server.requests.get());
+        assertEquals(1, changes.get());
+        assertEquals(REMOTE_PLAYCOUNT, localValues(contentResolver, uri)
+                .getAsInteger(MediaContract.Movies.PLAYCOUNT).intValue());
+        assertEquals(1, count(contentResolver,
+                              MediaContract.MovieCast.buildMovieCastListUri(hostInfo.getId(), movieId)));
+    }
+
+    @Test
+    public void missingRowIsSkippedTest() throws Exception {
+        ContentResolver contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        int movieId = 987654;
+        Uri moviesUri = MediaContract.Movies.buildMoviesListUri(hostInfo.getId());
+        int movies = count(contentResolver, moviesUri);
+        final AtomicInteger changes = new AtomicInteger();
+
+        ItemRevalidator.getInstance().revalidate(
+                hostConnection, contentResolver, ItemRevalidator.movie(hostInfo.getId(), movieId),
+                new ItemRevalidator.Listener() {
+                    @Override
+                    public void onItemChanged() {
+                        changes.incrementAndGet();
+                    }
+                });
+
+        assertTrue(hostConnection.await(2));
+        ShadowLooper.idleMainLooper();
+        assertEquals(0, changes.get());
+        assertEquals(movies, count(contentResolver, moviesUri));
+        assertFalse(rowExists(contentResolver, MediaContract.Movies.buildMovieUri(hostInfo.getId(), movieId)));
+        assertEquals(0, count(contentResolver,
+                              MediaContract.MovieCast.buildMovieCastListUri(hostInfo.getId(), movieId)));
+    }
+
+    @Test
+    public void unchangedFingerprintMatchesTest() {
+        ContentResolver contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        Uri uri = firstMovieUri(contentResolver);
+
+        assertTrue(ItemRevalidator.matchesLocalRow(contentResolver, uri, localValues(contentResolver, uri)));
+    }
+
+    @Test
+    public void onlyChangedColumnsAreReturnedTest() {
+        ContentResolver contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        Uri uri = firstMovieUri(contentResolver);
+        ContentValues values = localValues(contentResolver, uri);
+        values.put(MediaContract.Movies.PLAYCOUNT, values.getAsInteger(MediaContract.Movies.PLAYCOUNT) + 1);
+
+        ContentValues changed = ItemRevalidator.changedValues(contentResolver, uri, values);
+        assertEquals(1, changed.size());
+        assertEquals(values.getAsInteger(MediaContract.Movies.PLAYCOUNT),
+                     changed.getAsInteger(MediaContract.Movies.PLAYCOUNT));
+
+        contentResolver.update(uri, changed, null, null);
+        assertTrue(ItemRevalidator.matchesLocalRow(contentResolver, uri, values));
+    }
+
+    @Test
+    public void missingRowDoesntMatchTest() {
+        ContentResolver contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        Uri uri = MediaContract.Movies.buildMovieUri(hostInfo.getId(), -1);
+        ContentValues values = new ContentValues();
+        values.put(MediaContract.Movies.TITLE, "Missing");
+
+        assertEquals(1, ItemRevalidator.changedValues(contentResolver, uri, values).size());
+    }
+
+    private int count(ContentResolver contentResolver, Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private boolean rowExists(ContentResolver contentResolver, Uri uri) {
+        return count(contentResolver, uri) > 0;
+    }
+
+    private Uri firstMovieUri(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(MediaContract.Movies.buildMoviesListUri(hostInfo.getId()),
+                                              new String[] {MediaContract.Movies.MOVIEID},
+                                              null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        int movieId = cursor.getInt(0);
+        cursor.close();
+        return MediaContract.Movies.buildMovieUri(hostInfo.getId(), movieId);
+    }
+
+    private ContentValues localValues(ContentResolver contentResolver, Uri uri) {
+        Cursor cursor = contentResolver.query(uri, new String[] {
+                MediaContract.Movies.TITLE, MediaContract.Movies.PLAYCOUNT,
+                MediaContract.Movies.RATING}, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        ContentValues values = new ContentValues();
+        values.put(MediaContract.Movies.TITLE, cursor.getString(0));
+        values.put(MediaContract.Movies.PLAYCOUNT, cursor.getInt(1));
+        values.put(MediaContract.Movies.RATING, cursor.getDouble(2));
+        cursor.close();
+        return values;
+    }
+
+    /**
+     * Connection that counts the calls whose callbacks returned
+     */
+    private static class CountingConnection extends HostConnection {
+        private final Object lock = new Object();
+        private int done = 0;
+
+        CountingConnection(HostInfo hostInfo) {
+            super(hostInfo);
+        }
+
+        @Override
+        public <T> void execute(ApiMethod<T> method, final ApiCallback<T> callback, Handler handler) {
+            super.execute(method, new ApiCallback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    callback.onSuccess(result);
+                    done();
+                }
+
+                @Override
+                public void onError(int errorCode, String description) {
+                    callback.onError(errorCode, description);
+                    done();
+                }
+            }, handler);
+        }
+
+        private void done() {
+            synchronized (lock) {
+                done++;
+                lock.notifyAll();
+            }
+        }
+
+        /**
+         * Waits for the given number of calls to be done
+         */
+        boolean await(int calls) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            synchronized (lock) {
+                while (done < calls) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                        return false;
+                    lock.wait(remaining);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Answers movie details with a different play count and one cast member, for any movie
+     */
+    private static class StandInServer extends NanoHTTPD {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        final AtomicInteger requests = new AtomicInteger();
+
+        StandInServer() {
+            super("127.0.0.1", 0);
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            try {
+                Map<String, String> body = new HashMap<>();
+                session.parseBody(body);
+                JsonNode request = objectMapper.readTree(body.get("postData"));
+                requests.incrementAndGet();
+
+                ObjectNode response = objectMapper.createObjectNode();
+                response.put("jsonrpc", "2.0");
+                response.set("id", request.get("id"));
+                ObjectNode details = response.putObject("result").putObject("moviedetails");
+                details.put("movieid", request.get("params").get("movieid").asInt());
+                details.put("label", "Remote title");
+                details.put("title", "Remote title");
+                details.put("playcount", REMOTE_PLAYCOUNT);
+                details.put("file", "smb://kodi/remote.mkv");
+                ObjectNode member = details.putArray("cast").addObject();
+                member.put("name", "Remote actor");
+                member.put("role", "Remote role");
+                member.put("order", 0);
+
+                byte[] bytes = objectMapper.writeValueAsBytes(response);
+                return newFixedLengthResponse(Response.Status.OK, "application/json",
+                                              new ByteArrayInputStream(bytes), bytes.length);
+            } catch (Exception e) {
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain",
+                                              e.getMessage());
+            }
+        }
+    }
+}
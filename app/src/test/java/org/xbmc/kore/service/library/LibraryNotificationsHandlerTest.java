@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.service.library;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowLooper;
+import org.xbmc.kore.jsonrpc.notification.VideoLibrary;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.provider.mediaprovider.AbstractTestClass;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+public class LibraryNotificationsHandlerTest extends AbstractTestClass {
+
+    private Application application;
+    private ContentResolver contentResolver;
+    private LibraryNotificationsHandler handler;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        application = ApplicationProvider.getApplicationContext();
+        contentResolver = application.getContentResolver();
+        handler = new LibraryNotificationsHandler(application, hostInfo, Looper.getMainLooper());
+    }
+
+    @Test
+    public void notificationsAreCoalescedTest() {
+        handler.onVideoLibraryUpdate(update(VideoLibrary.TYPE_MOVIE, 1));
+        ShadowLooper.idleMainLooper(LibraryNotificationsHandler.COALESCE_DELAY - 1, TimeUnit.MILLISECONDS);
+        handler.onVideoLibraryUpdate(update(VideoLibrary.TYPE_MOVIE, 2));
+        handler.onVideoLibraryUpdate(update(VideoLibrary.TYPE_MOVIE, 1));
+        ShadowLooper.idleMainLooper(LibraryNotificationsHandler.COALESCE_DELAY - 1, TimeUnit.MILLISECONDS);
+        assertNull(shadowOf(application).getNextStartedService());
+
+        ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+        HashSet<Integer> syncedMovies = new HashSet<>();
+        Intent syncIntent;
+        while ((syncIntent = shadowOf(application).getNextStartedService()) != null) {
+            assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_SINGLE_MOVIE, false));
+            syncedMovies.add(syncIntent.getIntExtra(LibrarySyncService.SYNC_MOVIEID, -1));
+        }
+        assertEquals(2, syncedMovies.size());
+        assertTrue(syncedMovies.contains(1));
+        assertTrue(syncedMovies.contains(2));
+    }
+
+    @Test
+    public void manyUpdatesSyncTheWholeTypeTest() {
+        LibraryFingerprint<?> fingerprint = LibraryFingerprint.forSyncType(LibrarySyncService.SYNC_ALL_MOVIES);
+        fingerprint.store(application, hostInfo.getId(), "fingerprint");
+
+        for (int i = 0; i < LibraryNotificationsHandler.MAX_SINGLE_SYNCS; i++) {
+            handler.onVideoLibraryUpdate(update(VideoLibrary.TYPE_MOVIE, i));
+        }
+        ShadowLooper.idleMainLooper(LibraryNotificationsHandler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+        assertEquals(LibraryNotificationsHandler.MAX_SINGLE_SYNCS,
+                     countStartedServices(LibrarySyncService.SYNC_SINGLE_MOVIE));
+        assertNotNull(fingerprint.getStored(application, contentResolver, hostInfo.getId()));
+
+        for (int i = 0; i <= LibraryNotificationsHandler.MAX_SINGLE_SYNCS; i++) {
+            handler.onVideoLibraryUpdate(update(VideoLibrary.TYPE_MOVIE, i));
+        }
+        ShadowLooper.idleMainLooper(LibraryNotificationsHandler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+        Intent syncIntent = shadowOf(application).getNextStartedService();
+        assertNotNull(syncIntent);
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_MOVIES, false));
+        assertTrue(syncIntent.getBundleExtra(LibrarySyncService.SYNC_EXTRAS)
+                             .getBoolean(LibrarySyncService.SILENT_SYNC));
+        assertNull(shadowOf(application).getNextStartedService());
+        assertNull(fingerprint.getStored(application, contentResolver, hostInfo.getId()));
+    }
+
+    @Test
+    public void removedMovieIsDeletedLocallyTest() {
+        int movieId = firstId(MediaContract.MovieCast.CONTENT_URI, MediaContract.MovieCast.MOVIEID);
+        Uri movieUri = MediaContract.Movies.buildMovieUri(hostInfo.getId(), movieId);
+        Uri castUri = MediaContract.MovieCast.buildMovieCastListUri(hostInfo.getId(), movieId);
+        assertTrue(count(castUri) > 0);
+
+        // The removal wins over an earlier update of the same movie
+        handler.onVideoLibraryUpdate(update(VideoLibrary.TYPE_MOVIE, movieId));
+        handler.onVideoLibraryRemove(remove(VideoLibrary.TYPE_MOVIE, movieId));
+        ShadowLooper.idleMainLooper(LibraryNotificationsHandler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, count(movieUri));
+        assertEquals(0, count(castUri));
+        assertNull(shadowOf(application).getNextStartedService());
+    }
+
+    @Test
+    public void episodeOfKnownTVShowSyncsTheTVShowTest() {
+        Cursor cursor = contentResolver.query(
+                MediaContract.Episodes.CONTENT_URI,
+                new String[] {MediaContract.Episodes.EPISODEID, MediaContract.Episodes.TVSHOWID},
+                MediaContract.Episodes.HOST_ID + "=?", new String[] {String.valueOf(hostInfo.getId())},
+                null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        int episodeId = cursor.getInt(0);
+        int tvshowId = cursor.getInt(1);
+        cursor.close();
+
+        handler.onVideoLibraryUpdate(update(VideoLibrary.TYPE_EPISODE, episodeId));
+        ShadowLooper.idleMainLooper(LibraryNotificationsHandler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+
+        Intent syncIntent = shadowOf(application).getNextStartedService();
+        assertNotNull(syncIntent);
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_SINGLE_TVSHOW, false));
+        assertEquals(tvshowId, syncIntent.getIntExtra(LibrarySyncService.SYNC_TVSHOWID, -1));
+        assertNull(shadowOf(application).getNextStartedService());
+    }
+
+    @Test
+    public void unknownEpisodeSyncsAllTVShowsTest() {
+        LibraryFingerprint<?> fingerprint = LibraryFingerprint.forSyncType(LibrarySyncService.SYNC_ALL_TVSHOWS);
+        fingerprint.store(application, hostInfo.getId(), "fingerprint");
+
+        handler.onVideoLibraryUpdate(update(VideoLibrary.TYPE_EPISODE, 987654));
+        ShadowLooper.idleMainLooper(LibraryNotificationsHandler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+
+        ShadowApplication shadowApplication = shadowOf(application);
+        Intent syncIntent = shadowApplication.getNextStartedService();
+        assertNotNull(syncIntent);
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_TVSHOWS, false));
+        assertNull(shadowApplication.getNextStartedService());
+        assertNull(fingerprint.getStored(application, contentResolver, hostInfo.getId()));
+    }
+
+    private static VideoLibrary.OnUpdate update(String type, int id) {
+        return new VideoLibrary.OnUpdate(notification(type, id));
+    }
+
+    private static VideoLibrary.OnRemove remove(String type, int id) {
+        return new VideoLibrary.OnRemove(notification(type, id));
+    }
+
+    private static ObjectNode notification(String type, int id) {
+        ObjectNode node = new ObjectMapper().createObjectNode();
+        node.put("sender", "xbmc");
+        ObjectNode data = node.putObject("data");
+        data.put("id", id);
+        data.put("type", type);
+        return node;
+    }
+
+    private int countStartedServices(String syncType) {
+        int count = 0;
+        Intent syncIntent;
+        while ((syncIntent = shadowOf(application).getNextStartedService()) != null) {
+            assertTrue(syncIntent.getBooleanExtra(syncType, false));
+            count++;
+        }
+        return count;
+    }
+
+    private int firstId(Uri uri, String column) {
+        Cursor cursor = contentResolver.query(uri, new String[] {column}, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        int id = cursor.getInt(0);
+        cursor.close();
+        return id;
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+}
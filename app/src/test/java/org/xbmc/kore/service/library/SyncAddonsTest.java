@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 Martijn Brekhof. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.provider.mediaprovider.AbstractTestClass;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyncAddonsTest extends AbstractTestClass {
+    private StandInServer server;
+    private HostConnection hostConnection;
+    private ContentResolver contentResolver;
+
+    @Before
+    public void startServer() throws Exception {
+        contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        server = new StandInServer();
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        HostInfo remoteHostInfo = new HostInfo("Kodi", "127.0.0.1", HostConnection.PROTOCOL_HTTP,
+                                               server.getListeningPort(), HostInfo.DEFAULT_TCP_PORT,
+                                               null, null, false, HostInfo.DEFAULT_EVENT_SERVER_PORT,
+                                               false, false);
+        hostConnection = new HostConnection(remoteHostInfo);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void unchangedAddonsAreNotSyncedTest() throws Exception {
+        Cursor cursor = contentResolver.query(addonsUri(), new String[] {
+                MediaContract.Addons.ADDONID, MediaContract.Addons.VERSION,
+                MediaContract.Addons.ENABLED}, null, null, null);
+        assertTrue(cursor.getCount() > 0);
+        List<String> localAddonIds = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            ObjectNode addon = server.addons.addObject();
+            addon.put("addonid", cursor.getString(0));
+            addon.put("version", cursor.getString(1));
+            addon.put("enabled", cursor.getInt(2) != 0);
+            localAddonIds.add(cursor.getString(0));
+        }
+        cursor.close();
+        Collections.sort(localAddonIds);
+
+        TestOrchestrator orchestrator = sync();
+
+        assertFalse(orchestrator.failed);
+        assertEquals(1, server.requests.get());
+        assertEquals(localAddonIds, localAddonIds());
+    }
+
+    @Test
+    public void changedAddonsAreReplacedTest() throws Exception {
+        ObjectNode addon = server.addons.addObject();
+        addon.put("addonid", "plugin.video.first");
+        addon.put("name", "First");
+        addon.put("version", "1.0.0");
+        addon.put("enabled", true);
+        addon = server.addons.addObject();
+        addon.put("addonid", "plugin.video.second");
+        addon.put("name", "Second");
+        addon.put("version", "2.0.0");
+        addon.put("enabled", false);
+
+        TestOrchestrator orchestrator = sync();
+
+        assertFalse(orchestrator.failed);
+        // Fingerprint, then details
+        assertEquals(2, server.requests.get());
+        List<String> expected = new ArrayList<>();
+        expected.add("plugin.video.first");
+        expected.add("plugin.video.second");
+        assertEquals(expected, localAddonIds());
+    }
+
+    private TestOrchestrator sync() throws InterruptedException {
+        TestOrchestrator orchestrator = new TestOrchestrator();
+        new SyncAddons(hostInfo.getId(), true, null)
+                .sync(orchestrator, hostConnection, null, contentResolver);
+        assertTrue(orchestrator.done.await(10, TimeUnit.SECONDS));
+        return orchestrator;
+    }
+
+    private Uri addonsUri() {
+        return MediaContract.Addons.buildAddonsListUri(hostInfo.getId());
+    }
+
+    private List<String> localAddonIds() {
+        Cursor cursor = contentResolver.query(addonsUri(), new String[] {MediaContract.Addons.ADDONID},
+                                              null, null, null);
+        List<String> addonIds = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            addonIds.add(cursor.getString(0));
+        }
+        cursor.close();
+        Collections.sort(addonIds);
+        return addonIds;
+    }
+
+    /**
+     * Orchestrator that only records how the sync item ended
+     */
+    private static class TestOrchestrator extends SyncOrchestrator {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean failed;
+
+        TestOrchestrator() {
+            super(null, -1, hostInfo, null, null);
+        }
+
+        @Override
+        public void syncItemFinished() {
+            done.countDown();
+        }
+
+        @Override
+        public void syncItemFailed(int errorCode, String description) {
+            failed = true;
+            done.countDown();
+        }
+    }
+
+    /**
+     * Answers Addons.GetAddons with the given addons, whatever the requested properties
+     */
+    private static class StandInServer extends NanoHTTPD {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        final ArrayNode addons = objectMapper.createArrayNode();
+        final AtomicInteger requests = new AtomicInteger();
+
+        StandInServer() {
+            super("127.0.0.1", 0);
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            try {
+                Map<String, String> body = new HashMap<>();
+                session.parseBody(body);
+                JsonNode request = objectMapper.readTree(body.get("postData"));
+                requests.incrementAndGet();
+
+                ObjectNode response = objectMapper.createObjectNode();
+                response.put("jsonrpc", "2.0");
+                response.set("id", request.get("id"));
+                response.putObject("result").set("addons", addons);
+
+                byte[] bytes = objectMapper.writeValueAsBytes(response);
+                return newFixedLengthResponse(Response.Status.OK, "application/json",
+                                              new ByteArrayInputStream(bytes), bytes.length);
+            } catch (Exception e) {
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "text/plain",
+                                              e.getMessage());
+            }
+        }
+    }
+}
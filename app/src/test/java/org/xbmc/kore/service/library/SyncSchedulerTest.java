@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Martijn Brekhof. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.service.library;
+
+import android.app.Application;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowLooper;
+import org.xbmc.kore.host.HostManager;
+import org.xbmc.kore.provider.mediaprovider.AbstractTestClass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+public class SyncSchedulerTest extends AbstractTestClass {
+
+    private Application application;
+    private SyncScheduler syncScheduler;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        application = ApplicationProvider.getApplicationContext();
+        HostManager.getInstance(application).switchHost(hostInfo);
+        syncScheduler = new SyncScheduler(application);
+    }
+
+    @Test
+    public void requestsAreCoalescedTest() {
+        syncScheduler.requestSync(LibrarySyncService.SYNC_ALL_MOVIES);
+        syncScheduler.requestSync(LibrarySyncService.SYNC_ALL_TVSHOWS);
+        syncScheduler.requestSync(LibrarySyncService.SYNC_ALL_MOVIES);
+        ShadowLooper.idleMainLooper(SyncScheduler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+
+        ShadowApplication shadowApplication = shadowOf(application);
+        Intent syncIntent = shadowApplication.getNextStartedService();
+        assertNotNull(syncIntent);
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_MOVIES, false));
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_TVSHOWS, false));
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ONLY_IF_CHANGED, false));
+        assertEquals(3, syncIntent.getStringArrayListExtra(LibrarySyncService.SYNC_SCHEDULING_NOTES).size());
+        assertNull(shadowApplication.getNextStartedService());
+    }
+
+    @Test
+    public void recentlySyncedTypeIsSkippedTest() {
+        SyncScheduler.markSynced(application, hostInfo.getId(), LibrarySyncService.SYNC_ALL_MOVIES);
+
+        syncScheduler.requestSync(LibrarySyncService.SYNC_ALL_MOVIES);
+        ShadowLooper.idleMainLooper(SyncScheduler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+        assertNull(shadowOf(application).getNextStartedService());
+
+        // The skipped request is reported on the next sync
+        syncScheduler.requestSync(LibrarySyncService.SYNC_ALL_TVSHOWS);
+        ShadowLooper.idleMainLooper(SyncScheduler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+        Intent syncIntent = shadowOf(application).getNextStartedService();
+        assertNotNull(syncIntent);
+        assertFalse(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_MOVIES, false));
+        ArrayList<String> notes = syncIntent.getStringArrayListExtra(LibrarySyncService.SYNC_SCHEDULING_NOTES);
+        assertEquals(2, notes.size());
+        assertTrue(notes.get(0).startsWith(LibrarySyncService.SYNC_ALL_MOVIES + " requested, skipped"));
+    }
+
+    @Test
+    public void backgroundSyncOnlyTakesDueTypesTest() {
+        SyncScheduler.markSynced(application, hostInfo.getId(), LibrarySyncService.SYNC_ALL_MUSIC);
+        syncScheduler.requestSync(LibrarySyncService.SYNC_ALL_ADDONS);
+
+        Intent syncIntent = syncScheduler.takeBackgroundSync(hostInfo);
+        assertNotNull(syncIntent);
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_MOVIES, false));
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_TVSHOWS, false));
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_MUSIC_VIDEOS, false));
+        assertTrue(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_ADDONS, false));
+        assertFalse(syncIntent.getBooleanExtra(LibrarySyncService.SYNC_ALL_MUSIC, false));
+
+        // The pending request was taken by the background sync
+        ShadowLooper.idleMainLooper(SyncScheduler.COALESCE_DELAY, TimeUnit.MILLISECONDS);
+        assertNull(shadowOf(application).getNextStartedService());
+    }
+
+    @Test
+    public void syncInProgressIsNotStartedAgainTest() {
+        int hostId = hostInfo.getId();
+        assertTrue(SyncScheduler.startSyncing(hostId, LibrarySyncService.SYNC_ALL_MOVIES));
+        try {
+            // As when the background job and the sync service both sync the movies
+            assertFalse(SyncScheduler.startSyncing(hostId, LibrarySyncService.SYNC_ALL_MOVIES));
+            assertTrue(SyncScheduler.startSyncing(hostId, LibrarySyncService.SYNC_ALL_TVSHOWS));
+            assertTrue(SyncScheduler.startSyncing(hostId + 1, LibrarySyncService.SYNC_ALL_MOVIES));
+        } finally {
+            SyncScheduler.syncingFinished(hostId, LibrarySyncService.SYNC_ALL_MOVIES);
+            SyncScheduler.syncingFinished(hostId, LibrarySyncService.SYNC_ALL_TVSHOWS);
+            SyncScheduler.syncingFinished(hostId + 1, LibrarySyncService.SYNC_ALL_MOVIES);
+        }
+
+        assertTrue(SyncScheduler.startSyncing(hostId, LibrarySyncService.SYNC_ALL_MOVIES));
+        SyncScheduler.syncingFinished(hostId, LibrarySyncService.SYNC_ALL_MOVIES);
+    }
+
+    @Test
+    public void backgroundSyncJobIsPersistedTest() {
+        JobScheduler jobScheduler = (JobScheduler) application.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        // As scheduled by older versions
+        jobScheduler.schedule(new JobInfo.Builder(SyncScheduler.BACKGROUND_SYNC_JOB_ID,
+                                                  new ComponentName(application, LibrarySyncJobService.class))
+                                      .setPeriodic(SyncScheduler.BACKGROUND_SYNC_PERIOD)
+                                      .setPersisted(false)
+                                      .build());
+
+        syncScheduler.updateBackgroundSync();
+
+        List<JobInfo> jobs = jobScheduler.getAllPendingJobs();
+        assertEquals(1, jobs.size());
+        assertEquals(SyncScheduler.BACKGROUND_SYNC_JOB_ID, jobs.get(0).getId());
+        assertTrue(jobs.get(0).isPersisted());
+    }
+}
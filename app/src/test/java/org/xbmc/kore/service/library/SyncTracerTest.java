@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Martijn Brekhof. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.service.library;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.ApiException;
+import org.xbmc.kore.jsonrpc.ConnectionMetrics;
+import org.xbmc.kore.jsonrpc.HostConnection;
+import org.xbmc.kore.provider.MediaContract;
+import org.xbmc.kore.provider.mediaprovider.AbstractTestClass;
+import org.xbmc.kore.testutils.Database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SyncTracerTest extends AbstractTestClass {
+
+    @Test
+    public void reportListsItemsAndPagesTest() {
+        SyncTracer tracer = new SyncTracer(hostInfo);
+        tracer.addNote("Movies only");
+        tracer.startItem("Movies");
+        ConnectionMetrics.Trace trace = startTrace(tracer, "VideoLibrary.GetMovies");
+        trace.sent(100);
+        trace.received(5000);
+        trace.decoded();
+        trace.finish(-1);
+        tracer.finishItem(false);
+
+        tracer.startItem("Music");
+        trace = startTrace(tracer, "AudioLibrary.GetSongs");
+        trace.sent(100);
+        trace.finish(ApiException.API_ERROR);
+        tracer.finishItem(true);
+        tracer.finish();
+
+        String report = tracer.getReport();
+        assertTrue(report, report.contains("1 failed items"));
+        assertTrue(report, report.contains("Scheduling: Movies only"));
+        assertTrue(report, report.contains("Movies: "));
+        assertTrue(report, report.contains("1 pages, 0 rows, 5000 B"));
+        assertTrue(report, report.contains("VideoLibrary.GetMovies: 0 rows, 5000 B"));
+        assertTrue(report, report.contains("Music (failed)"));
+        assertTrue(report, report.contains("AudioLibrary.GetSongs (failed)"));
+    }
+
+    @Test
+    public void lastPageBelongsToTheItemThatRequestedItTest() throws Exception {
+        SyncTracer tracer = new SyncTracer(hostInfo);
+        tracer.startItem("Movies");
+        ConnectionMetrics.Trace trace = startTrace(tracer, "VideoLibrary.GetMovies");
+        trace.sent(100);
+        trace.received(5000);
+        trace.decoded();
+        // The callback of the last page starts the next item before the page is finished
+        Thread.sleep(2);
+        tracer.finishItem(false);
+        tracer.startItem("TV shows");
+        trace.finish(-1);
+        tracer.finish();
+
+        String report = tracer.getReport();
+        assertTrue(report, report.matches("(?s).*Movies: -?\\d+ ms, 1 pages.*"));
+        assertTrue(report, report.matches("(?s).*TV shows: -?\\d+ ms, 0 pages.*"));
+    }
+
+    @Test
+    public void reportsArePrunedPerHostTest() {
+        ContentResolver contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        HostInfo otherHost = Database.addHost(ApplicationProvider.getApplicationContext(), "127.0.0.2",
+                                              HostConnection.PROTOCOL_TCP, HostInfo.DEFAULT_HTTP_PORT,
+                                              HostInfo.DEFAULT_TCP_PORT, false,
+                                              HostInfo.DEFAULT_KODI_VERSION_MAJOR);
+
+        // The other host's reports are older than all of these
+        for (int i = 0; i < 2; i++) {
+            saveReport(contentResolver, otherHost);
+        }
+        for (int i = 0; i < MediaContract.SyncReports.MAX_REPORTS + 3; i++) {
+            saveReport(contentResolver, hostInfo);
+        }
+
+        assertEquals(MediaContract.SyncReports.MAX_REPORTS, countReports(contentResolver, hostInfo));
+        assertEquals(2, countReports(contentResolver, otherHost));
+    }
+
+    private ConnectionMetrics.Trace startTrace(SyncTracer tracer, String methodName) {
+        return ConnectionMetrics.getInstance().startTrace(methodName, HostConnection.PROTOCOL_HTTP, tracer);
+    }
+
+    private void saveReport(ContentResolver contentResolver, HostInfo host) {
+        SyncTracer tracer = new SyncTracer(host);
+        tracer.startItem("Movies");
+        tracer.finishItem(false);
+        tracer.finish();
+        tracer.saveReport(contentResolver);
+    }
+
+    private int countReports(ContentResolver contentResolver, HostInfo host) {
+        Cursor cursor = contentResolver.query(MediaContract.SyncReports.CONTENT_URI,
+                                              new String[] {MediaContract.SyncReports._ID},
+                                              MediaContract.SyncReports.HOST_ID + "=?",
+                                              new String[] {String.valueOf(host.getId())}, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.ui;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class PrefetchSchedulerTest {
+
+    /**
+     * Items are their positions, each with one image whose url is the position
+     */
+    private static class FakeSource implements PrefetchScheduler.Source<Integer> {
+        final List<Integer> requestedImages = new ArrayList<>();
+        int imageWidth = 10, imageHeight = 10;
+
+        @Override
+        public Integer getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public void addImages(Integer item, List<PrefetchScheduler.Image> images) {
+            requestedImages.add(item);
+            images.add(new PrefetchScheduler.Image(String.valueOf(item), imageWidth, imageHeight));
+        }
+    }
+
+    private static class FakeFetcher implements PrefetchScheduler.Fetcher {
+        final List<Integer> fetched = new ArrayList<>();
+        int cancelled = 0;
+
+        @Override
+        public void fetch(List<PrefetchScheduler.Image> images, Object tag) {
+            for (PrefetchScheduler.Image image : images) {
+                fetched.add(Integer.valueOf(image.url));
+            }
+        }
+
+        @Override
+        public void cancel(Object tag) {
+            cancelled++;
+        }
+    }
+
+    private FakeSource source;
+    private FakeFetcher fetcher;
+    private PrefetchScheduler<Integer> prefetchScheduler;
+
+    @Before
+    public void setUp() {
+        source = new FakeSource();
+        fetcher = new FakeFetcher();
+        // The images are got on the main looper, which only runs when the test idles it
+        ShadowLooper.pauseMainLooper();
+        prefetchScheduler = new PrefetchScheduler<>(ApplicationProvider.getApplicationContext(), source,
+                                                    new Handler(Looper.getMainLooper()), fetcher);
+    }
+
+    @Test
+    public void nearestItemsAreFetchedFirstTest() {
+        prefetchScheduler.prefetch(10, 14, 100);
+        ShadowLooper.idleMainLooper();
+
+        // Two ahead for each one behind
+        assertEquals(Arrays.asList(15, 16, 9, 17, 18, 8, 19, 20), fetcher.fetched);
+    }
+
+    @Test
+    public void itemCountIsBoundedTest() {
+        prefetchScheduler.prefetch(0, 4, 100);
+        ShadowLooper.idleMainLooper();
+        assertEquals(PrefetchScheduler.MAX_ITEMS, fetcher.fetched.size());
+        assertEquals(PrefetchScheduler.MAX_ITEMS, source.requestedImages.size());
+
+        // At the end of the list, only the items behind are left
+        fetcher.fetched.clear();
+        prefetchScheduler.prefetch(97, 99, 100);
+        ShadowLooper.idleMainLooper();
+        assertEquals(PrefetchScheduler.MAX_ITEMS, fetcher.fetched.size());
+        assertEquals(96, fetcher.fetched.get(0).intValue());
+        assertEquals(89, fetcher.fetched.get(PrefetchScheduler.MAX_ITEMS - 1).intValue());
+    }
+
+    @Test
+    public void bytesAreBoundedTest() {
+        // A third of the budget per image, decoded as ARGB_8888
+        source.imageWidth = 1024;
+        source.imageHeight = (int) (PrefetchScheduler.MAX_BYTES / 3 / 4 / 1024);
+
+        prefetchScheduler.prefetch(0, 4, 100);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Arrays.asList(5, 6, 7), fetcher.fetched);
+        // Items past the budget aren't looked up
+        assertEquals(4, source.requestedImages.size());
+    }
+
+    @Test
+    public void scrollingCancelsThePrefetchTest() {
+        prefetchScheduler.prefetch(10, 14, 100);
+        prefetchScheduler.onScrollStateChanged(null, RecyclerView.SCROLL_STATE_DRAGGING);
+        ShadowLooper.idleMainLooper();
+
+        assertTrue(source.requestedImages.isEmpty());
+        assertTrue(fetcher.fetched.isEmpty());
+
+        // Fetched images are cancelled too
+        prefetchScheduler.prefetch(10, 14, 100);
+        ShadowLooper.idleMainLooper();
+        assertEquals(PrefetchScheduler.MAX_ITEMS, fetcher.fetched.size());
+        prefetchScheduler.onScrollStateChanged(null, RecyclerView.SCROLL_STATE_DRAGGING);
+        assertEquals(1, fetcher.cancelled);
+    }
+}
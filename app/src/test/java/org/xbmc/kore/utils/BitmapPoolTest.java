@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.utils;
+
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class BitmapPoolTest {
+
+    @Test
+    public void smallestSuitableBitmapIsTakenTest() {
+        BitmapPool bitmapPool = new BitmapPool(1024 * 1024);
+        Bitmap large = Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888);
+        Bitmap small = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        bitmapPool.put(large);
+        bitmapPool.put(small);
+
+        assertSame(small, bitmapPool.get(50, 100, Bitmap.Config.ARGB_8888));
+        assertSame(large, bitmapPool.get(50, 100, Bitmap.Config.ARGB_8888));
+        assertNull(bitmapPool.get(50, 100, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void otherConfigsAreNotTakenTest() {
+        BitmapPool bitmapPool = new BitmapPool(1024 * 1024);
+        bitmapPool.put(Bitmap.createBitmap(100, 100, Bitmap.Config.RGB_565));
+
+        assertNull(bitmapPool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void oldestBitmapsAreEvictedTest() {
+        BitmapPool bitmapPool = new BitmapPool(2 * 100 * 100 * 4);
+        Bitmap first = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap third = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        bitmapPool.put(first);
+        bitmapPool.put(second);
+        bitmapPool.put(third);
+
+        assertTrue(first.isRecycled());
+        assertSame(second, bitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+        assertSame(third, bitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+        assertNull(bitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void immutableBitmapsAreNotPooledTest() {
+        BitmapPool bitmapPool = new BitmapPool(1024 * 1024);
+        Bitmap immutable = Bitmap.createBitmap(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888),
+                                               0, 0, 50, 50);
+        bitmapPool.put(immutable);
+
+        assertNull(bitmapPool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+}
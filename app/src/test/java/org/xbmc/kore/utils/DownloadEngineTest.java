@@ -0,0 +1,391 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.xbmc.kore.host.HostInfo;
+import org.xbmc.kore.jsonrpc.HostConnection;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class DownloadEngineTest {
+
+    private static final int FILE_SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StandInServer server;
+    private HostInfo hostInfo;
+    private byte[] content;
+    private DownloadEngine downloadEngine;
+    private CountDownLatch idleLatch;
+    private List<DownloadEngine.Download> finishedDownloads;
+    private AtomicInteger resolvedUrls, checkedSizes, refusedUrls;
+    private volatile CountDownLatch resolveGate;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[FILE_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        server = new StandInServer();
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        hostInfo = new HostInfo("Kodi", "127.0.0.1", HostConnection.PROTOCOL_HTTP,
+                                server.getListeningPort(), HostInfo.DEFAULT_TCP_PORT, null, null,
+                                false, HostInfo.DEFAULT_EVENT_SERVER_PORT, false, false);
+
+        resolvedUrls = new AtomicInteger(0);
+        checkedSizes = new AtomicInteger(0);
+        refusedUrls = new AtomicInteger(0);
+        downloadEngine = new DownloadEngine(new DownloadEngine.UrlResolver() {
+            @Override
+            public List<String> getUrls(List<DownloadEngine.Download> downloads) {
+                CountDownLatch gate = resolveGate;
+                if (gate != null) {
+                    try {
+                        gate.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) { }
+                }
+                resolvedUrls.addAndGet(downloads.size());
+                List<String> urls = new ArrayList<>();
+                for (DownloadEngine.Download download : downloads) {
+                    if (download.sourcePath.startsWith("refused")) {
+                        // Kodi answers with an error for this file alone
+                        refusedUrls.incrementAndGet();
+                        urls.add(null);
+                    } else {
+                        urls.add("http://127.0.0.1:" + server.getListeningPort() + "/" + download.sourcePath);
+                    }
+                }
+                return urls;
+            }
+
+            @Override
+            public List<Long> getSizes(List<DownloadEngine.Download> downloads) {
+                checkedSizes.addAndGet(downloads.size());
+                List<Long> sizes = new ArrayList<>();
+                for (DownloadEngine.Download download : downloads) {
+                    sizes.add((long) content.length);
+                }
+                return sizes;
+            }
+        }, null);
+        finishedDownloads = Collections.synchronizedList(new ArrayList<DownloadEngine.Download>());
+        downloadEngine.setListener(new DownloadEngine.Listener() {
+            @Override
+            public void onProgress(DownloadEngine.Progress progress) { }
+
+            @Override
+            public void onDownloadFinished(DownloadEngine.Download download) {
+                finishedDownloads.add(download);
+            }
+
+            @Override
+            public void onIdle(DownloadEngine.Progress progress) {
+                idleLatch.countDown();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void downloadsAreBoundedPerHost() throws Exception {
+        server.readDelay = 5;
+        idleLatch = new CountDownLatch(1);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(downloadEngine.enqueue(download("file" + i, false)));
+        }
+        assertTrue(idleLatch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(5, finishedDownloads.size());
+        for (DownloadEngine.Download download : finishedDownloads) {
+            assertEquals(DownloadEngine.STATUS_COMPLETED, download.getStatus());
+            assertContent(download.getDestination());
+        }
+        assertTrue("Max concurrent requests: " + server.maxConcurrentRequests.get(),
+                   server.maxConcurrentRequests.get() <= DownloadEngine.MAX_PARALLEL_DOWNLOADS_PER_HOST);
+    }
+
+    @Test
+    public void interruptedDownloadIsResumed() throws Exception {
+        server.failAfterBytes = FILE_SIZE / 2;
+        idleLatch = new CountDownLatch(1);
+        DownloadEngine.Download download = download("resumed", false);
+        downloadEngine.enqueue(download);
+        assertTrue(idleLatch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(DownloadEngine.STATUS_COMPLETED, download.getStatus());
+        assertContent(download.getDestination());
+        assertTrue(server.rangeRequests.get() > 0);
+        assertFalse(new File(download.getDestination().getPath() +
+                             DownloadEngine.PARTIAL_FILE_SUFFIX).exists());
+    }
+
+    @Test
+    public void filesAlreadyPresentAreSkipped() throws Exception {
+        File existing = new File(temporaryFolder.getRoot(), "present");
+        writeFile(existing, content);
+
+        idleLatch = new CountDownLatch(1);
+        DownloadEngine.Download download = download("present", false);
+        downloadEngine.enqueue(download);
+        assertTrue(idleLatch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(DownloadEngine.STATUS_SKIPPED, download.getStatus());
+        assertEquals(existing, download.getDestination());
+        // Skipped before resolving its URL or requesting it
+        assertEquals(1, checkedSizes.get());
+        assertEquals(0, resolvedUrls.get());
+        assertEquals(0, server.requests.get());
+    }
+
+    @Test
+    public void presentFilesAreCheckedTogether() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            writeFile(new File(temporaryFolder.getRoot(), "present" + i), content);
+        }
+
+        idleLatch = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            downloadEngine.enqueue(download("present" + i, false));
+        }
+        downloadEngine.enqueue(download("missing", false));
+        assertTrue(idleLatch.await(30, TimeUnit.SECONDS));
+
+        int skipped = 0;
+        for (DownloadEngine.Download download : finishedDownloads) {
+            if (download.getStatus() == DownloadEngine.STATUS_SKIPPED) skipped++;
+        }
+        assertEquals(4, skipped);
+        assertEquals(4, checkedSizes.get());
+        assertEquals(1, resolvedUrls.get());
+        assertEquals(1, server.requests.get());
+    }
+
+    @Test
+    public void cancelledBeforeResolvingIsNotRequested() throws Exception {
+        resolveGate = new CountDownLatch(1);
+        idleLatch = new CountDownLatch(1);
+        DownloadEngine.Download download = download("cancelled", false);
+        downloadEngine.enqueue(download);
+
+        downloadEngine.cancelAll();
+        resolveGate.countDown();
+        assertTrue(idleLatch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(DownloadEngine.STATUS_CANCELLED, download.getStatus());
+        assertEquals(0, server.requests.get());
+    }
+
+    @Test
+    public void unresolvableFileFailsAloneTest() throws Exception {
+        idleLatch = new CountDownLatch(1);
+        DownloadEngine.Download refused = download("refused", false);
+        downloadEngine.enqueue(download("file0", false));
+        downloadEngine.enqueue(refused);
+        downloadEngine.enqueue(download("file1", false));
+        downloadEngine.enqueue(download("file2", false));
+        assertTrue(idleLatch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(4, finishedDownloads.size());
+        for (DownloadEngine.Download download : finishedDownloads) {
+            if (download == refused) {
+                assertEquals(DownloadEngine.STATUS_FAILED, download.getStatus());
+            } else {
+                assertEquals(DownloadEngine.STATUS_COMPLETED, download.getStatus());
+                assertContent(download.getDestination());
+            }
+        }
+        // Asked for once, neither retried nor requested
+        assertEquals(1, refusedUrls.get());
+        assertEquals(3, server.requests.get());
+    }
+
+    @Test
+    public void differentFileIsSavedWithNewName() throws Exception {
+        File existing = new File(temporaryFolder.getRoot(), "other.mp3");
+        writeFile(existing, new byte[10]);
+
+        idleLatch = new CountDownLatch(1);
+        DownloadEngine.Download download = download("other.mp3", false);
+        downloadEngine.enqueue(download);
+        assertTrue(idleLatch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(DownloadEngine.STATUS_COMPLETED, download.getStatus());
+        assertEquals("other (1).mp3", download.getDestination().getName());
+        assertEquals(10, existing.length());
+        assertContent(download.getDestination());
+    }
+
+    @Test
+    public void sameDestinationIsQueuedOnce() throws Exception {
+        server.readDelay = 5;
+        idleLatch = new CountDownLatch(1);
+        assertTrue(downloadEngine.enqueue(download("twice", true)));
+        assertFalse(downloadEngine.enqueue(download("twice", true)));
+        assertTrue(idleLatch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(1, finishedDownloads.size());
+    }
+
+    private DownloadEngine.Download download(String name, boolean overwrite) {
+        return new DownloadEngine.Download(hostInfo, name, new File(temporaryFolder.getRoot(), name),
+                                           name, overwrite);
+    }
+
+    private void assertContent(File file) throws IOException {
+        byte[] read = new byte[(int) file.length()];
+        InputStream in = new java.io.FileInputStream(file);
+        try {
+            int offset = 0, count;
+            while ((offset < read.length) && ((count = in.read(read, offset, read.length - offset)) > 0)) {
+                offset += count;
+            }
+        } finally {
+            in.close();
+        }
+        assertArrayEquals(content, read);
+    }
+
+    private void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Local stand-in for Kodi's web server, supporting range requests
+     */
+    private class StandInServer extends NanoHTTPD {
+        volatile int readDelay = 0;
+        volatile int failAfterBytes = -1;
+        final AtomicInteger concurrentRequests = new AtomicInteger(0);
+        final AtomicInteger maxConcurrentRequests = new AtomicInteger(0);
+        final AtomicInteger rangeRequests = new AtomicInteger(0);
+        final AtomicInteger requests = new AtomicInteger(0);
+
+        StandInServer() {
+            super("127.0.0.1", 0);
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            requests.incrementAndGet();
+            int offset = 0;
+            String range = session.getHeaders().get("range");
+            if (range != null) {
+                rangeRequests.incrementAndGet();
+                offset = Integer.parseInt(range.replace("bytes=", "").replace("-", ""));
+            }
+
+            int failAt = failAfterBytes;
+            failAfterBytes = -1;
+            InputStream data = new TrackedStream(Arrays.copyOfRange(content, offset, content.length),
+                                                 failAt);
+            Response response = newFixedLengthResponse(
+                    (offset > 0) ? Response.Status.PARTIAL_CONTENT : Response.Status.OK,
+                    "application/octet-stream", data, content.length - offset);
+            if (offset > 0) {
+                response.addHeader("Content-Range",
+                                   "bytes " + offset + "-" + (content.length - 1) + "/" + content.length);
+            }
+            return response;
+        }
+
+        /**
+         * Counts the concurrent transfers, and optionally fails after some bytes
+         */
+        private class TrackedStream extends ByteArrayInputStream {
+            private final int failAt;
+            private boolean finished = false;
+
+            TrackedStream(byte[] data, int failAt) {
+                super(data);
+                this.failAt = failAt;
+                int concurrent = concurrentRequests.incrementAndGet();
+                while (concurrent > maxConcurrentRequests.get()) {
+                    maxConcurrentRequests.set(concurrent);
+                }
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if ((failAt >= 0) && (pos >= failAt)) {
+                    finish();
+                    throw new IllegalStateException("Simulated connection drop");
+                }
+                if (readDelay > 0) {
+                    try {
+                        Thread.sleep(readDelay);
+                    } catch (InterruptedException ignored) { }
+                }
+                int read = super.read(b, off, Math.min(len, 8192));
+                if (read == -1) finish();
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+                super.close();
+            }
+
+            private void finish() {
+                if (!finished) {
+                    finished = true;
+                    concurrentRequests.decrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbmc.kore.utils;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class PooledNetworkRequestHandlerTest {
+    private static final Uri IMAGE_URI = Uri.parse("http://kodi/image/poster.jpg");
+
+    @Test
+    public void sampleSizeIsAPowerOfTwoTest() {
+        Request centerCrop = new Request.Builder(IMAGE_URI).resize(300, 300).centerCrop().build();
+        assertEquals(2, PooledNetworkRequestHandler.calculateInSampleSize(1000, 1000, centerCrop));
+
+        Request centerInside = new Request.Builder(IMAGE_URI).resize(300, 300).centerInside().build();
+        assertEquals(8, PooledNetworkRequestHandler.calculateInSampleSize(1000, 3000, centerInside));
+
+        assertEquals(1, PooledNetworkRequestHandler.calculateInSampleSize(200, 200, centerCrop));
+    }
+
+    @Test
+    public void loadedFromIsKeptTest() throws Exception {
+        final Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        final boolean[] cached = {true};
+        PooledNetworkRequestHandler requestHandler = new PooledNetworkRequestHandler(new Downloader() {
+            @Override
+            public Response load(Uri uri, int networkPolicy) {
+                return new Response(bitmap, cached[0], 100);
+            }
+
+            @Override
+            public void shutdown() { }
+        }, new BitmapPool(1024 * 1024));
+        Request request = new Request.Builder(IMAGE_URI).build();
+
+        RequestHandler.Result result = requestHandler.load(request, 0);
+        assertEquals(Picasso.LoadedFrom.DISK, result.getLoadedFrom());
+
+        cached[0] = false;
+        result = requestHandler.load(request, 0);
+        assertEquals(Picasso.LoadedFrom.NETWORK, result.getLoadedFrom());
+    }
+}
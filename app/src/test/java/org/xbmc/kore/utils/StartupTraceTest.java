@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.utils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class StartupTraceTest {
+
+    @Test
+    public void stepsAreTracedUntilStartupIsOverTest() {
+        StartupTrace startupTrace = new StartupTrace();
+        startupTrace.begin("Load hosts").end();
+        startupTrace.firstFrame();
+        startupTrace.begin("Create connection").end();
+        startupTrace.commandFinished("JSONRPC.Ping");
+        startupTrace.begin("Create image loader").end();
+
+        String report = startupTrace.getReport();
+        assertTrue(report.contains("Load hosts"));
+        assertTrue(report.contains("Create connection"));
+        assertFalse(report.contains("Create image loader"));
+        assertTrue(report.contains("(JSONRPC.Ping)"));
+        assertFalse(report.contains("not yet"));
+    }
+
+    @Test
+    public void onlyTheFirstCommandIsReportedTest() {
+        StartupTrace startupTrace = new StartupTrace();
+        startupTrace.commandFinished("JSONRPC.Ping");
+        startupTrace.commandFinished("Player.GetActivePlayers");
+
+        String report = startupTrace.getReport();
+        assertTrue(report.contains("(JSONRPC.Ping)"));
+        assertFalse(report.contains("Player.GetActivePlayers"));
+        assertTrue(report.contains("Time to first frame: not yet"));
+    }
+
+    @Test
+    public void backgroundStartIsMeasuredFromFirstActivityTest() {
+        ShadowLooper.pauseMainLooper();
+        StartupTrace startupTrace = new StartupTrace();
+        startupTrace.processStarted();
+        ShadowLooper.idleMainLooper();
+        startupTrace.commandFinished("VideoLibrary.GetMovies");
+
+        String report = startupTrace.getReport();
+        assertTrue(report.contains("Started in the background"));
+        assertTrue(report.contains("Time to first command: not yet"));
+
+        startupTrace.activityCreated();
+        startupTrace.commandFinished("JSONRPC.Ping");
+        report = startupTrace.getReport();
+        assertTrue(report.contains("(JSONRPC.Ping)"));
+        assertFalse(report.contains("VideoLibrary.GetMovies"));
+    }
+
+    @Test
+    public void activityStartIsMeasuredFromProcessStartTest() {
+        ShadowLooper.pauseMainLooper();
+        StartupTrace startupTrace = new StartupTrace();
+        startupTrace.processStarted();
+        startupTrace.activityCreated();
+        ShadowLooper.idleMainLooper();
+        startupTrace.commandFinished("JSONRPC.Ping");
+
+        String report = startupTrace.getReport();
+        assertFalse(report.contains("Started in the background"));
+        assertTrue(report.contains("(JSONRPC.Ping)"));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Synced Synapse. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xbmc.kore.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.xbmc.kore.jsonrpc.type.AudioType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class StringPoolTest {
+
+    private static final int SYNTHETIC_SONGS = 40000;
+
+    /**
+     * Sizes on a 32 bit runtime: a String holds a header, the array reference, offset, count
+     * and hash. A char array holds a header and its length
+     */
+    private static final long STRING_SHALLOW_SIZE = 24, ARRAY_HEADER_SIZE = 12;
+
+    @After
+    public void tearDown() {
+        while (StringPool.isOpen()) StringPool.close();
+    }
+
+    @Test
+    public void returnsArgumentWhenClosed() {
+        String a = new String("Rock");
+        String b = new String("Rock");
+        assertFalse(StringPool.isOpen());
+        assertSame(a, StringPool.get(a));
+        assertSame(b, StringPool.get(b));
+    }
+
+    @Test
+    public void deduplicatesWhenOpen() {
+        StringPool.open();
+        String a = new String("Rock");
+        String b = new String("Rock");
+        assertSame(a, StringPool.get(a));
+        assertSame(a, StringPool.get(b));
+        assertEquals(1, StringPool.size());
+        assertEquals(1, StringPool.getHits());
+    }
+
+    @Test
+    public void scopesAreReferenceCounted() {
+        StringPool.open();
+        StringPool.open();
+        StringPool.close();
+        assertTrue(StringPool.isOpen());
+        StringPool.close();
+        assertFalse(StringPool.isOpen());
+        assertEquals(0, StringPool.size());
+    }
+
+    @Test
+    public void longStringsAreNotPooled() {
+        StringPool.open();
+        char[] chars = new char[StringPool.MAX_POOLED_LENGTH + 1];
+        Arrays.fill(chars, 'a');
+        String a = new String(chars);
+        String b = new String(chars);
+        StringPool.get(a);
+        assertNotSame(a, StringPool.get(b));
+        assertEquals(0, StringPool.size());
+    }
+
+    @Test
+    public void concatReusesSingleElement() {
+        StringPool.open();
+        String genre = StringPool.get(new String("Jazz"));
+        List<String> list = new ArrayList<>();
+        list.add(new String("Jazz"));
+        assertSame(genre, StringPool.concat(list, ", "));
+
+        list.add("Blues");
+        String first = StringPool.concat(list, ", ");
+        assertEquals("Jazz, Blues", first);
+        assertSame(first, StringPool.concat(list, ", "));
+    }
+
+    @Test
+    public void valuesArePooledWhileParsing() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().setNodeFactory(StringPool.NODE_FACTORY);
+        String json = "[{\"genre\": \"Rock\"}, {\"genre\": \"Rock\"}]";
+
+        JsonNode unpooled = objectMapper.readTree(json);
+        assertNotSame(unpooled.get(0).get("genre").textValue(), unpooled.get(1).get("genre").textValue());
+
+        StringPool.open();
+        JsonNode pooled = objectMapper.readTree(json);
+        assertSame(pooled.get(0).get("genre").textValue(), pooled.get(1).get("genre").textValue());
+        assertEquals(1, StringPool.size());
+    }
+
+    /**
+     * Decodes a synthetic 40k song library with and without the pool, and compares the heap
+     * retained by the strings of the repeated fields of the decoded objects
+     */
+    @Test
+    public void syntheticLibraryRetainsLessHeap() {
+        ArrayNode songs = createSyntheticSongs(SYNTHETIC_SONGS);
+
+        long withoutPool = retainedStringBytes(decodeSongs(songs));
+
+        StringPool.open();
+        long withPool = retainedStringBytes(decodeSongs(songs));
+        StringPool.close();
+
+        assertTrue("Retained without pool: " + withoutPool + " B, with pool: " + withPool + " B",
+                   withPool * 10 < withoutPool);
+    }
+
+    private ArrayNode createSyntheticSongs(int count) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ArrayNode songs = objectMapper.createArrayNode();
+        for (int i = 0; i < count; i++) {
+            ObjectNode song = objectMapper.createObjectNode();
+            song.put(AudioType.DetailsSong.SONGID, i);
+            song.put(AudioType.DetailsSong.TITLE, "Song " + i);
+            song.put(AudioType.DetailsSong.ALBUM, "Album " + (i / 10));
+            song.put(AudioType.DetailsSong.DISPLAYARTIST, "Artist " + (i % 500));
+            song.putArray(AudioType.DetailsSong.ARTIST).add("Artist " + (i % 500));
+            song.putArray(AudioType.DetailsSong.GENRE).add("Genre " + (i % 20));
+            songs.add(song);
+        }
+        return songs;
+    }
+
+    private List<AudioType.DetailsSong> decodeSongs(ArrayNode songs) {
+        List<AudioType.DetailsSong> result = new ArrayList<>(songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            result.add(new AudioType.DetailsSong(songs.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the heap retained by the distinct string instances of the repeated fields of the
+     * songs, each one taking a {@link String} object and its backing char array
+     */
+    private long retainedStringBytes(List<AudioType.DetailsSong> songs) {
+        IdentityHashMap<String, Boolean> instances = new IdentityHashMap<>();
+        for (AudioType.DetailsSong song : songs) {
+            instances.put(song.album, true);
+            instances.put(song.displayartist, true);
+            for (String artist : song.artist) instances.put(artist, true);
+            for (String genre : song.genre) instances.put(genre, true);
+        }
+        long bytes = 0;
+        for (String s : instances.keySet()) bytes += STRING_SHALLOW_SIZE + align(ARRAY_HEADER_SIZE + 2L * s.length());
+        return bytes;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}